@@ -0,0 +1,37 @@
+package com.smartdocumentchat.config;
+
+import com.smartdocumentchat.service.DocumentChunker;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "document.ingestion")
+public class IngestionProperties {
+
+    // Chunking - גבולות ה-chunks; הגודל וה-overlap לפי ה-ChunkStrategy של המשתמש, ואלה רק ברירת מחדל
+    private DocumentChunker.ChunkingMode chunkingMode = DocumentChunker.ChunkingMode.PARAGRAPH;
+    private int chunkSize = 1200;
+    private int chunkOverlap = 200;
+
+    // Parsing - PDF עמוד אחרי עמוד מקובץ זמני (chunks לא חוצים עמודים), או פרסור של כל המסמך בזיכרון
+    private boolean streamingParse = true;
+    // זיכרון ה-scratch של PDFBox לפני גלישה לקבצים זמניים; בחילוץ מקבילי מתחלק בין העותקים
+    private long parserMainMemoryBytes = 16L * 1024 * 1024;
+
+    // Extraction - מסמך מעל הסף מחולץ בטווחי עמודים במקביל; 0 ב-parallelism = מספר הליבות
+    private int parallelExtractionMinPages = 64;
+    private int extractionParallelism = 0;
+    private int extractionRangePages = 8;
+
+    // Embedding stage - כמה segments בכל קריאת embedding וכמה קריאות במקביל
+    private int embeddingBatchSize = 64;
+    private int embeddingParallelism = 4;
+
+    // Backpressure - מקסימום batches שנשלחו ל-embedding ועוד לא נכתבו ל-Qdrant
+    private int maxInFlightBatches = 8;
+
+    // Upsert stage - כמה נקודות בכל כתיבה ל-Qdrant
+    private int upsertBatchSize = 256;
+}
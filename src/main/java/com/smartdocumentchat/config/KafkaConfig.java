@@ -3,6 +3,7 @@ package com.smartdocumentchat.config;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,8 +13,11 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.backoff.ExponentialBackOff;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -31,6 +35,26 @@ public class KafkaConfig {
     // Topic names
     public static final String DOCUMENT_PROCESSING_TOPIC = "document-processing";
     public static final String DOCUMENT_PROCESSING_STATUS_TOPIC = "document-processing-status";
+    public static final String CHAT_TRANSCRIPT_TOPIC = "chat-transcript";
+    public static final String CHAT_TRANSCRIPT_DLT_TOPIC = CHAT_TRANSCRIPT_TOPIC + ".DLT";
+
+    // כמה סבבי שיחה לכל poll - וכך גודל ה-batch שנכתב ל-DB
+    @Value("${chat.transcript.batch-size:200}")
+    private int transcriptBatchSize;
+
+    // ניסיונות חוזרים לכתיבת batch שנכשל: השהייה שמכפילה את עצמה עד התקרה, ואחרי
+    // max-elapsed הסבבים עוברים ל-dead letter topic במקום לחסום את ה-partition
+    @Value("${chat.transcript.retry.initial-interval-ms:1000}")
+    private long transcriptRetryInitialIntervalMs;
+
+    @Value("${chat.transcript.retry.multiplier:2.0}")
+    private double transcriptRetryMultiplier;
+
+    @Value("${chat.transcript.retry.max-interval-ms:60000}")
+    private long transcriptRetryMaxIntervalMs;
+
+    @Value("${chat.transcript.retry.max-elapsed-ms:600000}")
+    private long transcriptRetryMaxElapsedMs;
 
     // Producer Configuration
     @Bean
@@ -55,17 +79,7 @@ public class KafkaConfig {
     // Consumer Configuration
     @Bean
     public ConsumerFactory<String, Object> consumerFactory() {
-        Map<String, Object> configProps = new HashMap<>();
-        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        configProps.put(ConsumerConfig.GROUP_ID_CONFIG, consumerGroupId);
-        configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
-        configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
-        configProps.put(JsonDeserializer.TRUSTED_PACKAGES, "com.smartdocumentchat.*");
-        configProps.put(JsonDeserializer.VALUE_DEFAULT_TYPE, "com.smartdocumentchat.event.DocumentProcessingEvent");
-
-        return new DefaultKafkaConsumerFactory<>(configProps);
+        return new DefaultKafkaConsumerFactory<>(consumerProps());
     }
 
     @Bean
@@ -80,6 +94,56 @@ public class KafkaConfig {
         return factory;
     }
 
+    /**
+     * listener ב-batches לכתיבת תמליל השיחות - כל poll נכתב ל-DB ב-batch אחד
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> chatTranscriptListenerContainerFactory() {
+        Map<String, Object> configProps = consumerProps();
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, transcriptBatchSize);
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(configProps));
+        factory.setConcurrency(3);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(
+                org.springframework.kafka.listener.ContainerProperties.AckMode.MANUAL);
+        factory.setCommonErrorHandler(chatTranscriptErrorHandler(kafkaTemplate()));
+
+        return factory;
+    }
+
+    /**
+     * טיפול בכשלון כתיבת batch של תמליל: ה-batch כולו נשלח שוב ל-listener עם exponential
+     * back off (הכתיבה אידמפוטנטית לפי turnId), וכשהזמן נגמר כל רשומה נשלחת ל-DLT
+     * ומאושרת - כך ה-consumer לא נתקע על batch שלא ייכתב לעולם.
+     */
+    public DefaultErrorHandler chatTranscriptErrorHandler(KafkaOperations<String, Object> template) {
+        ExponentialBackOff backOff = new ExponentialBackOff(
+                transcriptRetryInitialIntervalMs, transcriptRetryMultiplier);
+        backOff.setMaxInterval(transcriptRetryMaxIntervalMs);
+        backOff.setMaxElapsedTime(transcriptRetryMaxElapsedMs);
+
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(template,
+                (record, exception) -> new TopicPartition(
+                        CHAT_TRANSCRIPT_DLT_TOPIC, record.partition()));
+        return new DefaultErrorHandler(recoverer, backOff);
+    }
+
+    private Map<String, Object> consumerProps() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ConsumerConfig.GROUP_ID_CONFIG, consumerGroupId);
+        configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        configProps.put(JsonDeserializer.TRUSTED_PACKAGES, "com.smartdocumentchat.*");
+        configProps.put(JsonDeserializer.VALUE_DEFAULT_TYPE, "com.smartdocumentchat.event.DocumentProcessingEvent");
+        return configProps;
+    }
+
     // Topics Configuration
     @Bean
     public NewTopic documentProcessingTopic() {
@@ -96,4 +160,20 @@ public class KafkaConfig {
                 .replicas(1)
                 .build();
     }
+
+    @Bean
+    public NewTopic chatTranscriptTopic() {
+        return TopicBuilder.name(CHAT_TRANSCRIPT_TOPIC)
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+
+    @Bean
+    public NewTopic chatTranscriptDeadLetterTopic() {
+        return TopicBuilder.name(CHAT_TRANSCRIPT_DLT_TOPIC)
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
 }
\ No newline at end of file
@@ -1,15 +1,18 @@
 package com.smartdocumentchat.config;
 
-import dev.langchain4j.chain.ConversationalRetrievalChain;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
-import dev.langchain4j.retriever.EmbeddingStoreRetriever;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QdrantGrpcClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -28,111 +31,71 @@ public class QdrantConfig {
     @Value("${OPENAI_API_KEY}")
     private String openaiApiKey;
 
+    @Value("${openai.embedding-model:text-embedding-3-large}")
+    private String embeddingModelName;
+
     @Bean
     public EmbeddingModel embeddingModel() {
-        log.info("Creating OpenAI embedding model");
+        log.info("Creating OpenAI embedding model: {}", embeddingModelName);
         return OpenAiEmbeddingModel.builder()
                 .apiKey(openaiApiKey)
-                .modelName("text-embedding-3-large")
-                .build();
-    }
-
-    /**
-     * Default embedding store - משמש כברירת מחדל וכ-fallback
-     */
-    @Bean(name = "defaultEmbeddingStore")
-    public EmbeddingStore<TextSegment> defaultEmbeddingStore() {
-        log.info("Creating default Qdrant embedding store - Host: {}, Port: {}, Collection: {}",
-                qdrantProperties.getHost(),
-                qdrantProperties.getPort(),
-                qdrantProperties.getCollectionName());
-
-        return QdrantEmbeddingStore.builder()
-                .host(qdrantProperties.getHost())
-                .port(qdrantProperties.getPort())
-                .collectionName(qdrantProperties.getCollectionName())
+                .modelName(embeddingModelName)
                 .build();
     }
 
     /**
-     * Embedding store ingestor עם session awareness
+     * מודל צ'אט משותף - מופע אחד עם connection pool משותף לכל השיחות
      */
     @Bean
-    public EmbeddingStoreIngestor embeddingStoreIngestor() {
-        log.info("Creating embedding store ingestor with chunk size: 1200, overlap: 200");
-        return EmbeddingStoreIngestor.builder()
-                .documentSplitter(DocumentSplitters.recursive(1200, 200))
-                .embeddingModel(embeddingModel())
-                .embeddingStore(defaultEmbeddingStore()) // Uses default store for general ingestion
-                .build();
+    public ChatLanguageModel chatLanguageModel() {
+        log.info("Creating shared OpenAI chat model");
+        return OpenAiChatModel.withApiKey(openaiApiKey);
     }
 
     /**
-     * Session-aware embedding store ingestor factory
+     * מודל צ'אט בזרימה - עבור תשובות token-by-token
      */
     @Bean
-    public SessionAwareIngestorFactory sessionAwareIngestorFactory() {
-        return new SessionAwareIngestorFactory();
+    public StreamingChatLanguageModel streamingChatLanguageModel() {
+        log.info("Creating OpenAI streaming chat model");
+        return OpenAiStreamingChatModel.withApiKey(openaiApiKey);
     }
 
     /**
-     * Conversational retrieval chain - עודכן לתמיכה בsessions
+     * ספירת tokens מקומית (ללא קריאה ל-API) - לתקציבי הקשר. אותו מודל שה-chat models משתמשים בו כברירת מחדל
      */
     @Bean
-    public ConversationalRetrievalChain conversationalRetrievalChain() {
-        log.info("Creating conversational retrieval chain with default embedding store");
-        return ConversationalRetrievalChain.builder()
-                .chatLanguageModel(OpenAiChatModel.withApiKey(openaiApiKey))
-                .retriever(EmbeddingStoreRetriever.from(defaultEmbeddingStore(), embeddingModel()))
-                .build();
+    public Tokenizer tokenizer() {
+        return new OpenAiTokenizer("gpt-3.5-turbo");
     }
 
     /**
-     * Factory class for creating session-specific ingestors
+     * Qdrant gRPC client משותף - ערוץ אחד לכל ה-collections
      */
-    public class SessionAwareIngestorFactory {
-
-        /**
-         * יצירת ingestor עבור embedding store ספציפי
-         */
-        public EmbeddingStoreIngestor createIngestorForStore(EmbeddingStore<TextSegment> embeddingStore) {
-            log.debug("Creating embedding store ingestor for specific session store");
-
-            return EmbeddingStoreIngestor.builder()
-                    .documentSplitter(DocumentSplitters.recursive(1200, 200))
-                    .embeddingModel(embeddingModel())
-                    .embeddingStore(embeddingStore)
-                    .build();
+    @Bean(destroyMethod = "close")
+    public QdrantClient qdrantClient() {
+        log.info("Creating shared Qdrant gRPC client - Host: {}, Port: {}, TLS: {}",
+                qdrantProperties.getHost(), qdrantProperties.getPort(), qdrantProperties.isUseTls());
+
+        QdrantGrpcClient.Builder grpcClientBuilder = QdrantGrpcClient.newBuilder(
+                qdrantProperties.getHost(), qdrantProperties.getPort(), qdrantProperties.isUseTls());
+        if (qdrantProperties.getApiKey() != null && !qdrantProperties.getApiKey().isBlank()) {
+            grpcClientBuilder.withApiKey(qdrantProperties.getApiKey());
         }
 
-        /**
-         * יצירת retrieval chain עבור session ספציפי
-         */
-        public ConversationalRetrievalChain createChainForStore(EmbeddingStore<TextSegment> embeddingStore) {
-            log.debug("Creating conversational retrieval chain for specific session store");
-
-            return ConversationalRetrievalChain.builder()
-                    .chatLanguageModel(OpenAiChatModel.withApiKey(openaiApiKey))
-                    .retriever(EmbeddingStoreRetriever.from(embeddingStore, embeddingModel()))
-                    .build();
-        }
-
-        /**
-         * יצירת retriever עבור session ספציפי
-         */
-        public EmbeddingStoreRetriever createRetrieverForStore(EmbeddingStore<TextSegment> embeddingStore) {
-            return createRetrieverForStore(embeddingStore, 5); // Default max results
-        }
-
-        /**
-         * יצירת retriever עבור session ספציפי עם הגדרת max results
-         */
-        public EmbeddingStoreRetriever createRetrieverForStore(EmbeddingStore<TextSegment> embeddingStore,
-                                                               int maxResults) {
-            log.debug("Creating embedding store retriever for specific session store (maxResults: {})", maxResults);
+        return new QdrantClient(grpcClientBuilder.build());
+    }
 
-            return EmbeddingStoreRetriever.from(embeddingStore, embeddingModel(), maxResults);
-        }
+    /**
+     * Default embedding store - משמש כברירת מחדל וכ-fallback
+     */
+    @Bean(name = "defaultEmbeddingStore")
+    public EmbeddingStore<TextSegment> defaultEmbeddingStore() {
+        log.info("Creating default Qdrant embedding store - Collection: {}", qdrantProperties.getCollectionName());
 
+        return QdrantEmbeddingStore.builder()
+                .client(qdrantClient())
+                .collectionName(qdrantProperties.getCollectionName())
+                .build();
     }
-}
\ No newline at end of file
+}
@@ -18,4 +18,17 @@ public class QdrantProperties {
     // Embedding configuration
     private int dimension = 3072; // OpenAI text-embedding-3-large dimension
     private String distance = "Cosine"; // Distance metric for similarity search
-}
\ No newline at end of file
+
+    // Storage mode: collection לכל שיחה, או collection משותף עם סינון לפי payload
+    private StorageMode storageMode = StorageMode.PER_SESSION;
+    private String sharedCollectionName = "session_documents";
+
+    // Registry של embedding stores לשיחות - חסום בגודל ובזמן חוסר פעילות
+    private int storeRegistryMaxSize = 1000;
+    private int storeRegistryIdleTimeoutMinutes = 30;
+
+    public enum StorageMode {
+        PER_SESSION,
+        SHARED
+    }
+}
@@ -7,8 +7,11 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import com.smartdocumentchat.service.CacheService;
 import lombok.extern.slf4j.Slf4j;
 
 @Configuration
@@ -65,4 +68,18 @@ public class RedisConfig {
         log.info("Redis template configured successfully");
         return template;
     }
-}
\ No newline at end of file
+
+    /**
+     * האזנה להודעות invalidation של ה-near cache מ-nodes אחרים
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       CacheService cacheService) {
+        log.info("Subscribing to cache invalidation channel: {}", cacheService.getInvalidationChannel());
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheService, new ChannelTopic(cacheService.getInvalidationChannel()));
+        return container;
+    }
+}
@@ -2,6 +2,7 @@ package com.smartdocumentchat.config;
 
 import com.smartdocumentchat.config.JwtAuthenticationFilter;
 import com.smartdocumentchat.service.CustomUserDetailsService;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
@@ -93,6 +94,9 @@ public class SecurityConfig {
     private void configureEndpointAuthorization(
             AuthorizeHttpRequestsConfigurer<HttpSecurity>.AuthorizationManagerRequestMatcherRegistry authz) {
         authz
+                // Async dispatch של תשובות בזרימה (SSE) - הבקשה המקורית כבר עברה הרשאה
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                 // Public endpoints - אין צורך באימות
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/status").permitAll()
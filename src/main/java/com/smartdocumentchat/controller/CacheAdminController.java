@@ -0,0 +1,34 @@
+package com.smartdocumentchat.controller;
+
+import com.smartdocumentchat.service.CacheSerializer;
+import com.smartdocumentchat.service.CacheService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@PreAuthorize("hasRole('ADMIN')")
+@RestController
+@RequestMapping("/api/admin/cache")
+@RequiredArgsConstructor
+@Slf4j
+public class CacheAdminController {
+
+    private final CacheService cacheService;
+    private final CacheSerializer cacheSerializer;
+
+    /**
+     * סטטיסטיקות ה-near cache וה-codecs
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<?> getCacheStats() {
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "nearCache", cacheService.getNearCacheStats(),
+                "codecs", cacheSerializer.getStats()
+        ));
+    }
+}
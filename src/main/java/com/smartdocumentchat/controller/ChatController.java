@@ -3,9 +3,12 @@ package com.smartdocumentchat.controller;
 import com.smartdocumentchat.service.PdfProcessingService;
 import com.smartdocumentchat.service.QdrantVectorService;
 import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.Document;
 import com.smartdocumentchat.entity.User;
 import com.smartdocumentchat.service.ChatSessionService;
 import com.smartdocumentchat.service.UserService;
+import com.smartdocumentchat.service.CacheService;
+import com.smartdocumentchat.util.CursorPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -13,6 +16,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -27,6 +31,7 @@ public class ChatController {
     private final UserService userService;
     private final PdfProcessingService pdfProcessingService;
     private final QdrantVectorService qdrantVectorService;
+    private final CacheService cacheService;
 
     /**
      * יצירת שיחה חדשה (כפתור + בפאנל השמאלי)
@@ -82,33 +87,35 @@ public class ChatController {
     public ResponseEntity<?> getUserSessions(
             @RequestParam(value = "userId", required = false) Long userId,
             @RequestParam(value = "includeInactive", defaultValue = "false") boolean includeInactive,
-            @RequestParam(value = "sortBy", defaultValue = "updated") String sortBy) {
+            @RequestParam(value = "sortBy", defaultValue = "updated") String sortBy,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit) {
         try {
             User currentUser = getCurrentUser(userId);
-            List<ChatSession> sessions = chatSessionService.getUserSessions(currentUser);
 
-            // Filter active/inactive if needed
-            if (!includeInactive) {
-                sessions = sessions.stream()
-                        .filter(ChatSession::getActive)
-                        .toList();
-            }
-
-            // Sort sessions based on parameter
-            sessions = sortSessions(sessions, sortBy);
+            // עמוד אחד ב-keyset pagination - הסינון והמיון נעשים בשאילתה
+            CursorPage<ChatSession> page = chatSessionService.getUserSessionsPage(
+                    currentUser, sortBy, includeInactive, cursor, limit);
 
-            List<Map<String, Object>> sessionList = sessions.stream()
+            List<Map<String, Object>> sessionList = page.items.stream()
                     .map(this::buildSessionSummary)
                     .toList();
 
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "sessions", sessionList,
-                    "totalSessions", sessions.size(),
-                    "userId", currentUser.getId(),
-                    "username", currentUser.getUsername()
-            ));
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("sessions", sessionList);
+            response.put("totalSessions", chatSessionService.countUserSessions(currentUser, includeInactive));
+            response.put("nextCursor", page.nextCursor);
+            response.put("hasMore", page.isHasMore());
+            response.put("userId", currentUser.getId());
+            response.put("username", currentUser.getUsername());
+            return ResponseEntity.ok(response);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (SecurityException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
                     "success", false,
@@ -389,6 +396,7 @@ public class ChatController {
             User currentUser = getCurrentUser(userId);
             long userSessions = chatSessionService.countUserSessions(currentUser);
             PdfProcessingService.DocumentStats stats = pdfProcessingService.getUserDocumentStats(currentUser);
+            Map<Document.ProcessingStatus, Long> byStatus = pdfProcessingService.getUserStatusHistogram(currentUser);
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
@@ -402,7 +410,8 @@ public class ChatController {
                     "documents", Map.of(
                             "total", stats.totalDocuments,
                             "processing", stats.processingDocuments,
-                            "failed", stats.failedDocuments
+                            "failed", stats.failedDocuments,
+                            "byStatus", byStatus
                     ),
                     "qdrantCollection", qdrantVectorService.getCurrentCollectionName(),
                     "chunkingSettings", Map.of(
@@ -412,7 +421,8 @@ public class ChatController {
                     ),
                     "cacheStatus", Map.of(
                             "redisConnected", true,
-                            "cacheEnabled", true
+                            "cacheEnabled", true,
+                            "nearCache", cacheService.getNearCacheStats()
                     )
             ));
 
@@ -463,35 +473,6 @@ public class ChatController {
         return summary;
     }
 
-    private List<ChatSession> sortSessions(List<ChatSession> sessions, String sortBy) {
-        return switch (sortBy.toLowerCase()) {
-            case "created" -> sessions.stream()
-                    .sorted((s1, s2) -> s2.getCreatedAt().compareTo(s1.getCreatedAt()))
-                    .toList();
-            case "title" -> sessions.stream()
-                    .sorted((s1, s2) -> s1.getDisplayTitle().compareToIgnoreCase(s2.getDisplayTitle()))
-                    .toList();
-            case "activity" -> sessions.stream()
-                    .sorted((s1, s2) -> {
-                        LocalDateTime activity1 = s1.getLastActivityAt() != null ?
-                                s1.getLastActivityAt() : s1.getCreatedAt();
-                        LocalDateTime activity2 = s2.getLastActivityAt() != null ?
-                                s2.getLastActivityAt() : s2.getCreatedAt();
-                        return activity2.compareTo(activity1);
-                    })
-                    .toList();
-            default -> sessions.stream() // "updated" - default
-                    .sorted((s1, s2) -> {
-                        LocalDateTime updated1 = s1.getUpdatedAt() != null ?
-                                s1.getUpdatedAt() : s1.getCreatedAt();
-                        LocalDateTime updated2 = s2.getUpdatedAt() != null ?
-                                s2.getUpdatedAt() : s2.getCreatedAt();
-                        return updated2.compareTo(updated1);
-                    })
-                    .toList();
-        };
-    }
-
     // Request DTOs
 
     public static class SessionCreationRequest {
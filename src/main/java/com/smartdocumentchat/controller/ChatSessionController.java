@@ -1,26 +1,37 @@
 package com.smartdocumentchat.controller;
 
-import com.smartdocumentchat.config.QdrantConfig;
 import com.smartdocumentchat.service.PdfProcessingService;
+import com.smartdocumentchat.service.PromptAssembler;
 import com.smartdocumentchat.service.QdrantVectorService;
+import com.smartdocumentchat.entity.ChatMessage;
 import com.smartdocumentchat.entity.ChatSession;
 import com.smartdocumentchat.entity.Document;
 import com.smartdocumentchat.entity.User;
 import com.smartdocumentchat.service.ChatSessionService;
+import com.smartdocumentchat.service.ChatTranscriptService;
+import com.smartdocumentchat.service.ConversationMemoryService;
+import com.smartdocumentchat.service.HybridRetriever;
+import com.smartdocumentchat.service.LexicalIndexService;
 import com.smartdocumentchat.service.UserService;
 import com.smartdocumentchat.service.CacheService;
 import com.smartdocumentchat.service.QuestionHashService;
+import com.smartdocumentchat.service.RetrievalChainFactory;
+import com.smartdocumentchat.service.SemanticAnswerCache;
+import com.smartdocumentchat.service.StreamingChatService;
+import com.smartdocumentchat.service.VectorGarbageCollector;
 import com.smartdocumentchat.util.AuthenticationUtils;
+import com.smartdocumentchat.util.CursorPage;
 import dev.langchain4j.chain.ConversationalRetrievalChain;
-import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -34,14 +45,21 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ChatSessionController {
 
-    private final ConversationalRetrievalChain conversationalRetrievalChain;
     private final PdfProcessingService pdfProcessingService;
     private final QdrantVectorService qdrantVectorService;
     private final UserService userService;
     private final ChatSessionService chatSessionService;
     private final CacheService cacheService;
     private final QuestionHashService questionHashService;
-    private final QdrantConfig.SessionAwareIngestorFactory ingestorFactory;
+    private final RetrievalChainFactory retrievalChainFactory;
+    private final StreamingChatService streamingChatService;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final ChatTranscriptService chatTranscriptService;
+    private final ConversationMemoryService conversationMemoryService;
+    private final PromptAssembler promptAssembler;
+    private final HybridRetriever hybridRetriever;
+    private final LexicalIndexService lexicalIndexService;
+    private final VectorGarbageCollector vectorGarbageCollector;
 
     /**
      * קבלת פרטי השיחה הפעילה (פאנל ימין) - עם אבטחה מחוזקת
@@ -310,6 +328,7 @@ public class ChatSessionController {
 
         long startTime = System.currentTimeMillis();
         boolean cacheHit = false;
+        String cacheType = "none";
 
         try {
             if (request.getText() == null || request.getText().trim().isEmpty()) {
@@ -319,6 +338,8 @@ public class ChatSessionController {
                 ));
             }
 
+            HybridRetriever.SearchMode searchMode = hybridRetriever.resolveMode(request.getSearchMode());
+
             // קבלת המשתמש
             User currentUser = getCurrentUser(userId);
 
@@ -369,40 +390,56 @@ public class ChatSessionController {
                     .map(doc -> doc.getId().toString())
                     .collect(Collectors.toList());
 
+            // זיכרון השיחה: שאלת המשך מנוסחת כשאלה עצמאית - היא מפתח ה-cache ושאילתת השליפה
+            ConversationMemoryService.ConversationContext conversation =
+                    conversationMemoryService.getContext(chatSession, currentUser);
+            String standaloneQuestion = conversationMemoryService.condenseQuestion(request.getText(), conversation);
+
             // **עדכון מרכזי: שימוש ב-session ID ב-hash**
-            String questionHash = questionHashService.generateQuestionHash(
-                    request.getText() + "_session_" + sessionId + "_user_" + currentUser.getId(),
-                    documentIds);
+            String questionHash = generateSessionQuestionHash(standaloneQuestion, sessionId,
+                    currentUser.getId(), documentIds);
+
+            // השליפה לפי השאלה בלבד; רשימת המסמכים וההוראות רק בפרומפט למודל
+            PromptAssembler.AssembledPrompt prompt = promptAssembler.forQuestion(standaloneQuestion, documents,
+                    chatSession, conversation.tokens);
 
             // בדיקה אם יש תשובה בcache
             String cachedAnswer = cacheService.getCachedQAResult(questionHash);
             String answer;
 
+            SemanticAnswerCache.Lookup semanticLookup = null;
+
             if (cachedAnswer != null) {
                 answer = cachedAnswer;
                 cacheHit = true;
+                cacheType = "exact";
                 log.debug("Cache HIT for question hash: {} (session: {}, user: {})",
                         questionHash, sessionId, currentUser.getId());
+            } else if ((semanticLookup = semanticAnswerCache.lookup(standaloneQuestion, sessionId,
+                    currentUser.getId(), documentIds)).isHit()) {
+                // שאלה דומה כבר נענתה על אותם מסמכים - שומרים גם ב-cache המדויק לשאלה הזו
+                answer = semanticLookup.answer;
+                cacheHit = true;
+                cacheType = "semantic";
+                cacheService.cacheQAResult(questionHash, answer);
+                log.debug("Semantic cache HIT for question hash: {} (score: {}, session: {}, user: {})",
+                        questionHash, semanticLookup.score, sessionId, currentUser.getId());
             } else {
                 // **עדכון מרכזי: שימוש ב-session-specific retrieval chain**
 
-                // קבלת embedding store ספציפי לשיחה
-                EmbeddingStore<TextSegment> sessionEmbeddingStore =
-                        qdrantVectorService.getEmbeddingStoreForSession(chatSession);
-
-                // יצירת retrieval chain ספציפי לשיחה
-                ConversationalRetrievalChain sessionChain =
-                        ingestorFactory.createChainForStore(sessionEmbeddingStore);
-
-                // עיבוד השאלה עם הקשר של השיחה
-                String enhancedQuestion = enhanceQuestionForSession(request.getText(), documents,
-                        currentUser, chatSession);
+                // retrieval chain ספציפי לשיחה - החיפוש ב-Qdrant מצומצם למסמכים שנבחרו
+                ConversationalRetrievalChain sessionChain = retrievalChainFactory.createChain(chatSession,
+                        retrievalDocumentIds(documents, totalAvailableDocuments), null, null,
+                        conversation.toChatMemory(), prompt.retrievalQuery, semanticLookup.questionEmbedding,
+                        searchMode);
 
                 // ביצוע השאלה עם ה-chain הספציפי לשיחה
-                answer = sessionChain.execute(enhancedQuestion);
+                answer = sessionChain.execute(prompt.generationPrompt);
 
                 // שמור בcache
                 cacheService.cacheQAResult(questionHash, answer);
+                semanticAnswerCache.store(semanticLookup, standaloneQuestion, answer, sessionId,
+                        currentUser.getId(), documentIds);
                 log.debug("Cache MISS for question hash: {}, answer cached (session: {}, user: {})",
                         questionHash, sessionId, currentUser.getId());
             }
@@ -412,9 +449,13 @@ public class ChatSessionController {
 
             long processingTime = System.currentTimeMillis() - startTime;
 
+            // התמליל נכתב ברקע (Kafka -> batch ל-DB) - לא מוסיף כתיבה סינכרונית לנתיב הזה
+            chatTranscriptService.recordTurn(chatSession, request.getText(), answer, cacheType,
+                    processingTime, null);
+
             log.info("Question processed for session {} by user {} in {}ms (cache: {}, collection: {})",
                     chatSession.getId(), currentUser.getId(), processingTime,
-                    cacheHit ? "HIT" : "MISS",
+                    cacheHit ? "HIT (" + cacheType + ")" : "MISS",
                     qdrantVectorService.generateSessionCollectionName(sessionId, currentUser.getId()));
 
             return ResponseEntity.ok(
@@ -422,6 +463,10 @@ public class ChatSessionController {
                             Map.entry("success", true),
                             Map.entry("answer", answer),
                             Map.entry("originalQuestion", request.getText()),
+                            Map.entry("standaloneQuestion", standaloneQuestion),
+                            Map.entry("contextTurns", conversation.turns.size()),
+                            Map.entry("contextTokens", conversation.tokens),
+                            Map.entry("promptTokens", prompt.tokens.toMap()),
                             Map.entry("sessionId", chatSession.getId()),
                             Map.entry("userId", currentUser.getId()),
                             Map.entry("documentsCount", documents.size()),
@@ -432,6 +477,7 @@ public class ChatSessionController {
                             )),
                             Map.entry("processingTime", processingTime),
                             Map.entry("cacheHit", cacheHit),
+                            Map.entry("cacheType", cacheType),
                             Map.entry("questionHash", questionHash),
                             Map.entry("collectionName", qdrantVectorService.generateSessionCollectionName(sessionId, currentUser.getId()))
                     )
@@ -444,6 +490,13 @@ public class ChatSessionController {
                     "error", e.getMessage()
             ));
 
+        } catch (IllegalArgumentException e) {
+            log.warn("פרמטרים לא תקינים בשיחה {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+
         } catch (Exception e) {
             log.error("שגיאה בביצוע שיחה", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
@@ -453,12 +506,116 @@ public class ChatSessionController {
         }
     }
 
+    /**
+     * שליחת שאלה בשיחה הפעילה עם תשובה בזרימה (SSE).
+     * אירועים: sources (המקורות שנשלפו), token (חלקי התשובה), done (סיכום) או error.
+     */
+    @PostMapping(value = "/{sessionId}/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChatInActiveSession(
+            @PathVariable Long sessionId,
+            @RequestBody ChatRequest request,
+            @RequestParam(value = "userId", required = false) Long userId) {
+
+        // מצב חיפוש לא מוכר נדחה ב-400 לפני שנפתח הזרם
+        HybridRetriever.SearchMode searchMode;
+        try {
+            searchMode = hybridRetriever.resolveMode(request.getSearchMode());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+
+        try {
+            if (request.getText() == null || request.getText().trim().isEmpty()) {
+                return streamingChatService.errorEmitter("השאלה לא יכולה להיות ריקה");
+            }
+
+            // קבלת המשתמש
+            User currentUser = getCurrentUser(userId);
+
+            // קבלת שיחה עם בדיקת הרשאות
+            Optional<ChatSession> sessionOpt = chatSessionService.findById(sessionId);
+            if (sessionOpt.isEmpty()) {
+                return streamingChatService.errorEmitter("שיחה לא נמצאה");
+            }
+
+            ChatSession chatSession = sessionOpt.get();
+
+            if (!isUserAuthorizedForSession(currentUser, chatSession)) {
+                return streamingChatService.errorEmitter("אין הרשאה לשיחה זו");
+            }
+
+            List<Document> documents = pdfProcessingService.getDocumentsBySession(chatSession);
+            int totalAvailableDocuments = documents.size();
+
+            if (request.getDocumentIds() != null && !request.getDocumentIds().isEmpty()) {
+                documents = documents.stream()
+                        .filter(doc -> request.getDocumentIds().contains(doc.getId()))
+                        .collect(Collectors.toList());
+            }
+
+            if (documents.isEmpty()) {
+                return streamingChatService.errorEmitter("לא נמצאו מסמכים בשיחה. אנא העלה קובץ PDF תחילה");
+            }
+
+            List<String> documentIds = documents.stream()
+                    .map(doc -> doc.getId().toString())
+                    .collect(Collectors.toList());
+
+            // זיכרון השיחה - כמו ב-endpoint הרגיל
+            ConversationMemoryService.ConversationContext conversation =
+                    conversationMemoryService.getContext(chatSession, currentUser);
+            String standaloneQuestion = conversationMemoryService.condenseQuestion(request.getText(), conversation);
+
+            // אותו hash כמו ב-endpoint הרגיל - ה-cache של Q&A משותף לשניהם
+            String questionHash = generateSessionQuestionHash(standaloneQuestion, sessionId,
+                    currentUser.getId(), documentIds);
+
+            PromptAssembler.AssembledPrompt prompt = promptAssembler.forQuestion(standaloneQuestion, documents,
+                    chatSession, conversation.tokens);
+
+            // עדכון זמן פעילות השיחה
+            chatSessionService.updateLastActivity(chatSession.getId());
+
+            Map<String, Object> responseMetadata = Map.ofEntries(
+                    Map.entry("originalQuestion", request.getText()),
+                    Map.entry("standaloneQuestion", standaloneQuestion),
+                    Map.entry("contextTurns", conversation.turns.size()),
+                    Map.entry("contextTokens", conversation.tokens),
+                    Map.entry("promptTokens", prompt.tokens.toMap()),
+                    Map.entry("sessionId", chatSession.getId()),
+                    Map.entry("userId", currentUser.getId()),
+                    Map.entry("documentsCount", documents.size()),
+                    Map.entry("totalAvailableDocuments", totalAvailableDocuments),
+                    Map.entry("questionHash", questionHash),
+                    Map.entry("collectionName", qdrantVectorService.generateSessionCollectionName(sessionId, currentUser.getId()))
+            );
+
+            log.info("Streaming question for session {} by user {} ({} documents)",
+                    chatSession.getId(), currentUser.getId(), documents.size());
+
+            return streamingChatService.streamAnswer(chatSession, request.getText(), standaloneQuestion,
+                    prompt, questionHash, documentIds,
+                    retrievalDocumentIds(documents, totalAvailableDocuments), searchMode, conversation.toMessages(),
+                    responseMetadata);
+
+        } catch (SecurityException e) {
+            log.warn("שגיאת הרשאות בשיחה: {}", e.getMessage());
+            return streamingChatService.errorEmitter(e.getMessage());
+
+        } catch (Exception e) {
+            log.error("שגיאה בביצוע שיחה בזרימה", e);
+            return streamingChatService.errorEmitter("שגיאה בעיבוד השאלה: " + e.getMessage());
+        }
+    }
+
     /**
      * קבלת רשימת מסמכים בשיחה הפעילה
      */
     @GetMapping("/{sessionId}/documents")
     public ResponseEntity<?> getSessionDocuments(
             @PathVariable Long sessionId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
             @RequestParam(value = "userId", required = false) Long userId) {
         try {
             User currentUser = getCurrentUser(userId);
@@ -481,15 +638,23 @@ public class ChatSessionController {
                 ));
             }
 
-            List<Document> documents = pdfProcessingService.getDocumentsBySession(session);
+            CursorPage<Document> page = pdfProcessingService.getSessionDocumentsPage(
+                    session, null, null, null, "uploadTime", "desc", cursor, limit);
 
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "sessionId", sessionId,
-                    "documents", documents.stream().map(this::buildDocumentSummary).toList(),
-                    "totalDocuments", documents.size()
-            ));
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("sessionId", sessionId);
+            response.put("documents", page.items.stream().map(this::buildDocumentSummary).toList());
+            response.put("totalDocuments", pdfProcessingService.getSessionDocumentStats(session).totalDocuments);
+            response.put("nextCursor", page.nextCursor);
+            response.put("hasMore", page.isHasMore());
+            return ResponseEntity.ok(response);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (SecurityException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
                     "success", false,
@@ -504,6 +669,77 @@ public class ChatSessionController {
         }
     }
 
+    /**
+     * קבלת הודעות השיחה, עמוד אחר עמוד לפי סדר ההודעות
+     */
+    @GetMapping("/{sessionId}/messages")
+    public ResponseEntity<?> getSessionMessages(
+            @PathVariable Long sessionId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "userId", required = false) Long userId) {
+        try {
+            User currentUser = getCurrentUser(userId);
+            Optional<ChatSession> sessionOpt = chatSessionService.findById(sessionId);
+
+            if (sessionOpt.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of(
+                        "success", false,
+                        "error", "שיחה לא נמצאה"
+                ));
+            }
+
+            ChatSession session = sessionOpt.get();
+
+            if (!isUserAuthorizedForSession(currentUser, session)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+                        "success", false,
+                        "error", "אין הרשאה לשיחה זו"
+                ));
+            }
+
+            CursorPage<ChatMessage> page = chatSessionService.getSessionMessagesPage(session, cursor, limit);
+
+            List<Map<String, Object>> messages = page.items.stream()
+                    .map(message -> {
+                        Map<String, Object> summary = new HashMap<>();
+                        summary.put("id", message.getId());
+                        summary.put("type", message.getMessageType().name());
+                        summary.put("content", message.getContent());
+                        summary.put("order", message.getMessageOrder());
+                        summary.put("createdAt", message.getCreatedAt());
+                        summary.put("processingTimeMs", message.getProcessingTimeMs());
+                        return summary;
+                    })
+                    .toList();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("sessionId", sessionId);
+            response.put("messages", messages);
+            response.put("nextCursor", page.nextCursor);
+            response.put("hasMore", page.isHasMore());
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        } catch (Exception e) {
+            log.error("שגיאה בקבלת הודעות השיחה: {}", sessionId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "error", "שגיאה בקבלת הודעות השיחה"
+            ));
+        }
+    }
+
     /**
      * מחיקת מסמך מהשיחה הפעילה
      */
@@ -727,8 +963,9 @@ public class ChatSessionController {
                 ));
             }
 
-            // הסרה מהcache (הcollection עצמו ב-Qdrant יישאר)
+            // הסרה מהcache; ב-Qdrant נשארים רק ה-vectors של מסמכים פעילים (השאר נמחקים ברקע)
             qdrantVectorService.removeEmbeddingStoreForSession(sessionId, currentUser.getId());
+            vectorGarbageCollector.reconcileSessionAsync(sessionId, currentUser.getId());
 
             // פינוי cache מקושר
             invalidateSessionCache(sessionId, currentUser.getId());
@@ -763,22 +1000,27 @@ public class ChatSessionController {
             int sessionsWithDocuments = 0;
             int totalProcessedDocuments = 0;
 
+            Map<Long, List<Document>> documentsBySession = pdfProcessingService.getDocumentsBySessions(userSessions);
+
             for (ChatSession session : userSessions) {
-                List<Document> docs = pdfProcessingService.getDocumentsBySession(session);
+                List<Document> docs = documentsBySession.get(session.getId());
                 if (!docs.isEmpty()) {
                     sessionsWithDocuments++;
                     totalProcessedDocuments += (int) docs.stream().filter(Document::isProcessed).count();
                 }
             }
 
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "userId", currentUser.getId(),
-                    "totalSessions", totalSessions,
-                    "sessionsWithDocuments", sessionsWithDocuments,
-                    "totalProcessedDocuments", totalProcessedDocuments,
-                    "activeCollections", qdrantVectorService.getActiveCollectionsCount(),
-                    "qdrantStats", qdrantVectorService.getUsageStats()
+            return ResponseEntity.ok(Map.ofEntries(
+                    Map.entry("success", true),
+                    Map.entry("userId", currentUser.getId()),
+                    Map.entry("totalSessions", totalSessions),
+                    Map.entry("sessionsWithDocuments", sessionsWithDocuments),
+                    Map.entry("totalProcessedDocuments", totalProcessedDocuments),
+                    Map.entry("activeCollections", qdrantVectorService.getActiveCollectionsCount()),
+                    Map.entry("qdrantStats", qdrantVectorService.getUsageStats()),
+                    Map.entry("semanticCacheStats", semanticAnswerCache.getStats()),
+                    Map.entry("conversationMemoryStats", conversationMemoryService.getStats()),
+                    Map.entry("lexicalIndexStats", lexicalIndexService.getStats())
             ));
 
         } catch (Exception e) {
@@ -844,57 +1086,28 @@ public class ChatSessionController {
     }
 
     /**
-     * מתודה חדשה לשיפור השאלה עם הקשר השיחה
+     * מזהי המסמכים לצמצום ה-retrieval, או null אם נבחרו כל מסמכי השיחה (אין צורך ב-filter)
      */
-    private String enhanceQuestionForSession(String originalQuestion, List<Document> documents,
-                                             User user, ChatSession chatSession) {
-        StringBuilder documentsList = new StringBuilder();
-
-        // הוסף מידע מפורט על כל מסמך
-        for (int i = 0; i < documents.size(); i++) {
-            Document doc = documents.get(i);
-            documentsList.append(String.format("%d. %s (ID: %d, סוג: %s, גודל: %s, %d תווים)\n",
-                    i + 1,
-                    doc.getOriginalFileName(),
-                    doc.getId(),
-                    doc.getFileType() != null ? doc.getFileType() : "unknown",
-                    doc.getFileSizeFormatted(),
-                    doc.getCharacterCount() != null ? doc.getCharacterCount() : 0));
-        }
-
-        String enhancedQuestion = String.format(
-                "בהקשר של השיחה '%s' עם %d מסמכים:\n%s\n" +
-                        "ענה על השאלה: %s\n\n" +
-                        "חשוב:\n" +
-                        "1. ענה רק על בסיס המידע שמופיע במסמכים האלה\n" +
-                        "2. אם מידע מופיע במספר מסמכים - השווה ביניהם והזכר הבדלים\n" +
-                        "3. ציין מאיזה מסמך (לפי שמו או מספרו) לקחת כל חלק מהמידע\n" +
-                        "4. אם המידע לא מופיע במסמכים - ציין זאת במפורש",
-                chatSession.getDisplayTitle(),
-                documents.size(),
-                documentsList.toString(),
-                originalQuestion
-        );
-
-        // שיפורים ספציפיים לסוגי שאלות
-        String lowerQuestion = originalQuestion.toLowerCase();
-        if (lowerQuestion.contains("השווה") || lowerQuestion.contains("compare") ||
-                lowerQuestion.contains("הבדל")) {
-            enhancedQuestion += "\n\nהשווה את המידע בין המסמכים השונים והצג הבדלים ודמיון.";
-        } else if (lowerQuestion.contains("סיכום") || lowerQuestion.contains("summary") ||
-                lowerQuestion.contains("תמצית")) {
-            enhancedQuestion += "\n\nצור סיכום מקיף המשלב מידע מכל המסמכים.";
-        } else if (lowerQuestion.contains("מצא") || lowerQuestion.contains("find") ||
-                lowerQuestion.contains("חפש")) {
-            enhancedQuestion += "\n\nחפש במסמכים וציין בדיוק באילו מסמכים נמצא המידע.";
+    private List<Long> retrievalDocumentIds(List<Document> selectedDocuments, int totalDocuments) {
+        if (selectedDocuments.size() >= totalDocuments) {
+            return null;
         }
+        return selectedDocuments.stream()
+                .map(Document::getId)
+                .collect(Collectors.toList());
+    }
 
-        return enhancedQuestion;
+    /**
+     * hash לשאלה עם הקשר שיחה-משתמש - משותף ל-endpoint הרגיל ול-endpoint בזרימה
+     */
+    private String generateSessionQuestionHash(String question, Long sessionId, Long userId,
+                                               List<String> documentIds) {
+        return questionHashService.generateQuestionHash(
+                question + "_session_" + sessionId + "_user_" + userId, documentIds);
     }
 
     private void invalidateSessionCache(Long sessionId, Long userId) {
-        String userSessionKey = "user_" + userId + "_session_" + sessionId;
-        cacheService.delete(userSessionKey);
+        cacheService.invalidateTags(CacheService.sessionTag(sessionId), CacheService.userTag(userId));
 
         log.debug("Invalidating cache for session: {} and user: {}", sessionId, userId);
     }
@@ -911,6 +1124,8 @@ public class ChatSessionController {
         long startTime = System.currentTimeMillis();
 
         try {
+            HybridRetriever.SearchMode searchMode = hybridRetriever.resolveMode(request.getSearchMode());
+
             User currentUser = getCurrentUser(userId);
             Optional<ChatSession> sessionOpt = chatSessionService.findById(sessionId);
 
@@ -988,16 +1203,16 @@ public class ChatSessionController {
             }
 
             // ביצוע החיפוש
-            String enhancedQuestion = enhanceQuestionForSession(
-                    request.getQuery(), filteredDocuments, currentUser, chatSession);
-
-            EmbeddingStore<TextSegment> sessionEmbeddingStore =
-                    qdrantVectorService.getEmbeddingStoreForSession(chatSession);
+            PromptAssembler.AssembledPrompt prompt = promptAssembler.forQuestion(
+                    request.getQuery(), filteredDocuments, chatSession, 0);
 
-            ConversationalRetrievalChain sessionChain =
-                    ingestorFactory.createChainForStore(sessionEmbeddingStore);
+            // הסינונים (מסמכים, סוג, גודל, תאריך) נדחפים ל-Qdrant כ-filter על document_id
+            ConversationalRetrievalChain sessionChain = retrievalChainFactory.createChain(chatSession,
+                    retrievalDocumentIds(filteredDocuments, allDocuments.size()),
+                    request.getMaxResults(), request.getMinRelevanceScore(), null, prompt.retrievalQuery, null,
+                    searchMode);
 
-            String answer = sessionChain.execute(enhancedQuestion);
+            String answer = sessionChain.execute(prompt.generationPrompt);
 
             long processingTime = System.currentTimeMillis() - startTime;
 
@@ -1009,10 +1224,18 @@ public class ChatSessionController {
                             .map(this::buildDocumentSummary)
                             .collect(Collectors.toList()),
                     "filteringInfo", filteringInfo,
+                    "searchMode", searchMode.name().toLowerCase(),
+                    "promptTokens", prompt.tokens.toMap(),
                     "processingTime", processingTime,
                     "sessionId", chatSession.getId()
             ));
 
+        } catch (IllegalArgumentException e) {
+            log.warn("פרמטרים לא תקינים בחיפוש מתקדם בשיחה {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (Exception e) {
             log.error("שגיאה בחיפוש מתקדם", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
@@ -1112,6 +1335,8 @@ public class ChatSessionController {
             @RequestParam(value = "status", required = false) String status,
             @RequestParam(value = "sortBy", defaultValue = "uploadTime") String sortBy,
             @RequestParam(value = "sortOrder", defaultValue = "desc") String sortOrder,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
             @RequestParam(value = "userId", required = false) Long userId) {
         try {
             User currentUser = getCurrentUser(userId);
@@ -1133,49 +1358,36 @@ public class ChatSessionController {
                 ));
             }
 
-            // קבלת כל המסמכים
-            List<Document> documents = pdfProcessingService.getDocumentsBySession(session);
-
-            // סינון לפי חיפוש
-            if (searchQuery != null && !searchQuery.trim().isEmpty()) {
-                String query = searchQuery.toLowerCase();
-                documents = documents.stream()
-                        .filter(doc -> doc.getOriginalFileName().toLowerCase().contains(query))
-                        .collect(Collectors.toList());
-            }
-
-            // סינון לפי סוג קובץ
-            if (fileType != null && !fileType.trim().isEmpty()) {
-                documents = documents.stream()
-                        .filter(doc -> fileType.equalsIgnoreCase(doc.getFileType()))
-                        .collect(Collectors.toList());
-            }
-
-            // סינון לפי סטטוס
-            if (status != null && !status.trim().isEmpty()) {
-                Document.ProcessingStatus filterStatus = Document.ProcessingStatus.valueOf(status.toUpperCase());
-                documents = documents.stream()
-                        .filter(doc -> doc.getProcessingStatus() == filterStatus)
-                        .collect(Collectors.toList());
-            }
-
-            // מיון
-            documents = sortDocuments(documents, sortBy, sortOrder);
-
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "sessionId", sessionId,
-                    "documents", documents.stream().map(this::buildDocumentSummary).toList(),
-                    "totalResults", documents.size(),
-                    "filters", Map.of(
-                            "query", searchQuery != null ? searchQuery : "",
-                            "fileType", fileType != null ? fileType : "",
-                            "status", status != null ? status : "",
-                            "sortBy", sortBy,
-                            "sortOrder", sortOrder
-                    )
+            Document.ProcessingStatus filterStatus = status != null && !status.trim().isEmpty()
+                    ? Document.ProcessingStatus.valueOf(status.trim().toUpperCase())
+                    : null;
+
+            // סינון, מיון ועימוד ב-DB - עמוד אחד בכל קריאה
+            CursorPage<Document> page = pdfProcessingService.getSessionDocumentsPage(
+                    session, searchQuery, fileType, filterStatus, sortBy, sortOrder, cursor, limit);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("sessionId", sessionId);
+            response.put("documents", page.items.stream().map(this::buildDocumentSummary).toList());
+            response.put("totalResults", pdfProcessingService.countSessionDocuments(
+                    session, searchQuery, fileType, filterStatus));
+            response.put("nextCursor", page.nextCursor);
+            response.put("hasMore", page.isHasMore());
+            response.put("filters", Map.of(
+                    "query", searchQuery != null ? searchQuery : "",
+                    "fileType", fileType != null ? fileType : "",
+                    "status", status != null ? status : "",
+                    "sortBy", sortBy,
+                    "sortOrder", sortOrder
             ));
+            return ResponseEntity.ok(response);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (Exception e) {
             log.error("שגיאה בחיפוש מסמכים בשיחה: {}", sessionId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
@@ -1206,6 +1418,9 @@ public class ChatSessionController {
                 ));
             }
 
+            // keyword/exact עונים מהאינדקס ה-lexical בלי קריאת embedding
+            HybridRetriever.SearchMode searchMode = hybridRetriever.resolveMode(request.getSearchMode());
+
             Optional<ChatSession> sessionOpt = chatSessionService.findById(sessionId);
             if (sessionOpt.isEmpty()) {
                 return ResponseEntity.badRequest().body(Map.of(
@@ -1225,6 +1440,7 @@ public class ChatSessionController {
 
             // קבלת מסמכים לחיפוש
             List<Document> documents = pdfProcessingService.getDocumentsBySession(chatSession);
+            int totalSessionDocuments = documents.size();
 
             // סינון לפי מסמכים ספציפיים אם צוין
             if (request.getDocumentIds() != null && !request.getDocumentIds().isEmpty()) {
@@ -1244,24 +1460,20 @@ public class ChatSessionController {
                 ));
             }
 
-            // בניית שאלה משופרת עבור מסמכים ספציפיים
-            String enhancedQuery = buildEnhancedSearchQuery(
+            // בניית הבקשה עבור מסמכים ספציפיים - השליפה לפי השאילתה בלבד
+            PromptAssembler.AssembledPrompt prompt = promptAssembler.forSearch(
                     request.getQuery(),
                     documents,
-                    chatSession,
-                    request.getSearchMode()
+                    searchMode
             );
 
-            // קבלת embedding store ספציפי לשיחה
-            EmbeddingStore<TextSegment> sessionEmbeddingStore =
-                    qdrantVectorService.getEmbeddingStoreForSession(chatSession);
-
-            // יצירת retrieval chain ספציפי לשיחה
-            ConversationalRetrievalChain sessionChain =
-                    ingestorFactory.createChainForStore(sessionEmbeddingStore);
+            // retrieval chain ספציפי לשיחה - החיפוש ב-Qdrant מצומצם למסמכים שנבחרו
+            ConversationalRetrievalChain sessionChain = retrievalChainFactory.createChain(chatSession,
+                    retrievalDocumentIds(documents, totalSessionDocuments), request.getMaxResults(), null,
+                    null, prompt.retrievalQuery, null, searchMode);
 
             // ביצוע החיפוש
-            String answer = sessionChain.execute(enhancedQuery);
+            String answer = sessionChain.execute(prompt.generationPrompt);
 
             long processingTime = System.currentTimeMillis() - startTime;
 
@@ -1276,12 +1488,18 @@ public class ChatSessionController {
                             .map(this::buildDocumentSummary)
                             .collect(Collectors.toList()),
                     "documentCount", documents.size(),
-                    "searchMode", request.getSearchMode() != null ?
-                            request.getSearchMode() : "semantic",
+                    "searchMode", searchMode.name().toLowerCase(),
+                    "promptTokens", prompt.tokens.toMap(),
                     "processingTime", processingTime,
                     "sessionId", sessionId
             ));
 
+        } catch (IllegalArgumentException e) {
+            log.warn("פרמטרים לא תקינים בחיפוש בשיחה {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (Exception e) {
             log.error("שגיאה בחיפוש במסמכים", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
@@ -1291,84 +1509,12 @@ public class ChatSessionController {
         }
     }
 
-    /**
-     * בניית שאלה משופרת לחיפוש במסמכים ספציפיים
-     */
-    private String buildEnhancedSearchQuery(String originalQuery, List<Document> documents,
-                                            ChatSession chatSession, String searchMode) {
-        StringBuilder query = new StringBuilder();
-
-        // כותרת
-        query.append("חפש במסמכים הבאים");
-
-        if (documents.size() == 1) {
-            query.append(" במסמך: ").append(documents.get(0).getOriginalFileName());
-        } else {
-            query.append(" ב-").append(documents.size()).append(" מסמכים:\n");
-            for (int i = 0; i < Math.min(documents.size(), 5); i++) {
-                query.append((i + 1)).append(". ")
-                        .append(documents.get(i).getOriginalFileName()).append("\n");
-            }
-            if (documents.size() > 5) {
-                query.append("ועוד ").append(documents.size() - 5).append(" מסמכים...\n");
-            }
-        }
-
-        query.append("\n");
-
-        // הוראות חיפוש לפי מצב
-        if ("exact".equals(searchMode)) {
-            query.append("חפש התאמה מדויקת לטקסט: \"").append(originalQuery).append("\"\n");
-            query.append("החזר את הקטעים המדויקים שמכילים את הטקסט הזה.\n");
-        } else if ("keyword".equals(searchMode)) {
-            query.append("חפש מילות מפתח: ").append(originalQuery).append("\n");
-            query.append("מצא קטעים שמכילים את מילות המפתח האלה.\n");
-        } else { // semantic - ברירת מחדל
-            query.append("שאלה: ").append(originalQuery).append("\n");
-            query.append("ענה על בסיס ההקשר והמשמעות של השאלה.\n");
-        }
-
-        query.append("\nחשוב:\n");
-        query.append("1. ציין מאיזה מסמך לקחת כל מידע (בשם המסמך)\n");
-        query.append("2. אם המידע לא קיים במסמכים - ציין זאת במפורש\n");
-        query.append("3. אם יש מידע דומה במספר מסמכים - ציין את ההבדלים\n");
-
-        return query.toString();
-    }
-
-
-    // Helper method למיון מסמכים
-    private List<Document> sortDocuments(List<Document> documents, String sortBy, String sortOrder) {
-        Comparator<Document> comparator;
-
-        switch (sortBy.toLowerCase()) {
-            case "name":
-                comparator = Comparator.comparing(Document::getOriginalFileName);
-                break;
-            case "size":
-                comparator = Comparator.comparing(Document::getFileSize);
-                break;
-            case "status":
-                comparator = Comparator.comparing(Document::getProcessingStatus);
-                break;
-            case "uploadtime":
-            default:
-                comparator = Comparator.comparing(Document::getCreatedAt);
-                break;
-        }
-
-        if ("desc".equalsIgnoreCase(sortOrder)) {
-            comparator = comparator.reversed();
-        }
-
-        return documents.stream().sorted(comparator).collect(Collectors.toList());
-    }
 
     // Request DTO לחיפוש במסמכים
     public static class DocumentSearchRequest {
         private String query;
         private List<Long> documentIds;  // מסמכים ספציפיים לחיפוש
-        private String searchMode;        // "semantic", "keyword", "exact"
+        private String searchMode;        // "hybrid" (ברירת מחדל), "semantic", "keyword", "exact"
         private Integer maxResults;
 
         public DocumentSearchRequest() {}
@@ -1406,6 +1552,7 @@ public class ChatSessionController {
         private LocalDateTime uploadedAfter;
         private Double minRelevanceScore;
         private Integer maxResults;
+        private String searchMode;        // "hybrid" (ברירת מחדל), "semantic", "keyword", "exact"
 
         public AdvancedSearchRequest() {}
 
@@ -1433,13 +1580,16 @@ public class ChatSessionController {
 
         public Integer getMaxResults() { return maxResults; }
         public void setMaxResults(Integer maxResults) { this.maxResults = maxResults; }
+
+        public String getSearchMode() { return searchMode; }
+        public void setSearchMode(String searchMode) { this.searchMode = searchMode; }
     }
 
     // Request DTO
     public static class ChatRequest {
         private String text;
         private List<Long> documentIds;        // חדש - לבחירת מסמכים ספציפיים
-        private String searchMode;             // חדש - סוג החיפוש
+        private String searchMode;             // "hybrid" (ברירת מחדל), "semantic", "keyword", "exact"
 
         public ChatRequest() {}
 
@@ -0,0 +1,91 @@
+package com.smartdocumentchat.controller;
+
+import com.smartdocumentchat.service.QdrantCollectionMigrationService;
+import com.smartdocumentchat.service.QdrantVectorService;
+import com.smartdocumentchat.service.VectorGarbageCollector;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@PreAuthorize("hasRole('ADMIN')")
+@RestController
+@RequestMapping("/api/admin/qdrant")
+@RequiredArgsConstructor
+@Slf4j
+public class QdrantAdminController {
+
+    private final QdrantCollectionMigrationService migrationService;
+    private final QdrantVectorService qdrantVectorService;
+    private final VectorGarbageCollector vectorGarbageCollector;
+
+    /**
+     * העברת collections לכל שיחה ל-collection המשותף
+     */
+    @PostMapping("/migrate-to-shared")
+    public ResponseEntity<?> migrateToSharedCollection(
+            @RequestParam(value = "deleteSource", defaultValue = "false") boolean deleteSource,
+            @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun) {
+        try {
+            QdrantCollectionMigrationService.MigrationReport report =
+                    migrationService.migrateSessionCollections(deleteSource, dryRun);
+
+            return ResponseEntity.ok(Map.of(
+                    "success", report.failedCollections.isEmpty(),
+                    "dryRun", report.dryRun,
+                    "sourceCollections", report.sourceCollections,
+                    "migratedCollections", report.migratedCollections,
+                    "deletedCollections", report.deletedCollections,
+                    "migratedPoints", report.migratedPoints,
+                    "failedCollections", report.failedCollections,
+                    "durationMs", report.durationMs,
+                    "storageMode", qdrantVectorService.isSharedCollectionMode() ? "SHARED" : "PER_SESSION"
+            ));
+
+        } catch (Exception e) {
+            log.error("שגיאה בהעברת collections", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "error", "שגיאה בהעברת collections: " + e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * סטטיסטיקות Qdrant
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<?> getQdrantStats() {
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "stats", qdrantVectorService.getUsageStats(),
+                "garbageCollector", vectorGarbageCollector.getStats()
+        ));
+    }
+
+    /**
+     * reconciliation מיידי של Qdrant מול ה-DB: מחיקת vectors של מסמכים ושיחות שנמחקו
+     */
+    @PostMapping("/gc/reconcile")
+    public ResponseEntity<?> reconcileVectors() {
+        try {
+            VectorGarbageCollector.ReconcileReport report = vectorGarbageCollector.reconcileNow();
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "report", report
+            ));
+
+        } catch (Exception e) {
+            log.error("שגיאה ב-reconciliation של vectors", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "error", "שגיאה ב-reconciliation של vectors: " + e.getMessage()
+            ));
+        }
+    }
+}
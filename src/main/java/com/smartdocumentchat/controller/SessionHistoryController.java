@@ -3,6 +3,7 @@ package com.smartdocumentchat.controller;
 import com.smartdocumentchat.entity.User;
 import com.smartdocumentchat.service.SessionHistoryService;
 import com.smartdocumentchat.service.UserService;
+import com.smartdocumentchat.util.CursorPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -12,6 +13,7 @@ import org.springframework.web.bind.annotation.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -74,27 +76,35 @@ public class SessionHistoryController {
     public ResponseEntity<?> getUserSessionsHistory(
             @RequestParam(value = "limit", defaultValue = "50") int limit,
             @RequestParam(value = "sortBy", defaultValue = "updated") String sortBy,
+            @RequestParam(value = "cursor", required = false) String cursor,
             @RequestParam(value = "userId", required = false) Long userId) {
         try {
             User currentUser = getCurrentUser(userId);
 
-            List<SessionHistoryService.SessionSummary> sessionsHistory =
-                    sessionHistoryService.getUserSessionsHistory(currentUser, limit, sortBy);
+            CursorPage<SessionHistoryService.SessionSummary> sessionsHistory =
+                    sessionHistoryService.getUserSessionsHistory(currentUser, limit, sortBy, cursor);
 
-            List<Map<String, Object>> formattedHistory = sessionsHistory.stream()
+            List<Map<String, Object>> formattedHistory = sessionsHistory.items.stream()
                     .map(this::formatSessionSummary)
                     .collect(Collectors.toList());
 
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "sessionsHistory", formattedHistory,
-                    "totalSessions", formattedHistory.size(),
-                    "limit", limit,
-                    "sortBy", sortBy,
-                    "userId", currentUser.getId(),
-                    "username", currentUser.getUsername()
-            ));
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("sessionsHistory", formattedHistory);
+            response.put("totalSessions", formattedHistory.size());
+            response.put("limit", limit);
+            response.put("sortBy", sortBy);
+            response.put("nextCursor", sessionsHistory.nextCursor);
+            response.put("hasMore", sessionsHistory.isHasMore());
+            response.put("userId", currentUser.getId());
+            response.put("username", currentUser.getUsername());
+            return ResponseEntity.ok(response);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (SecurityException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
                     "success", false,
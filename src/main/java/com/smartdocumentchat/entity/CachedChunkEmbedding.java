@@ -0,0 +1,71 @@
+package com.smartdocumentchat.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * chunk בודד ו-vector שלו בתוך רשומת cache של embeddings
+ */
+@Entity
+@Table(name = "cached_chunk_embeddings",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_cached_chunk_entry_index",
+                columnNames = {"cache_entry_id", "chunk_index"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedChunkEmbedding {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "cache_entry_id", nullable = false)
+    private Long cacheEntryId;
+
+    @Column(name = "chunk_index", nullable = false)
+    private Integer chunkIndex;
+
+    @Column(name = "text", columnDefinition = "TEXT", nullable = false)
+    private String text;
+
+    // מיקום ה-chunk במסמך - משוחזר ל-metadata כשה-chunks נלקחים מה-cache
+    @Column(name = "page_number")
+    private Integer pageNumber;
+
+    @Column(name = "start_offset")
+    private Integer startOffset;
+
+    @Column(name = "end_offset")
+    private Integer endOffset;
+
+    @Column(name = "section", length = 200)
+    private String section;
+
+    // float32 little-endian
+    @Column(name = "vector", columnDefinition = "bytea", nullable = false)
+    private byte[] vector;
+
+    // Helper methods
+    public static byte[] encodeVector(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES)
+                .order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+        return buffer.array();
+    }
+
+    public float[] decodeVector() {
+        ByteBuffer buffer = ByteBuffer.wrap(vector).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        float[] result = new float[vector.length / Float.BYTES];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = buffer.getFloat();
+        }
+        return result;
+    }
+}
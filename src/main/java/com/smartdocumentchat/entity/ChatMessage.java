@@ -9,7 +9,10 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+        @Index(name = "idx_chat_messages_session_order", columnList = "chat_session_id, message_order", unique = true),
+        @Index(name = "idx_chat_messages_turn", columnList = "turn_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -38,6 +41,10 @@ public class ChatMessage {
     @Column(name = "message_order", nullable = false)
     private Integer messageOrder;
 
+    // הסבב (שאלה + תשובה) שההודעה נכתבה ממנו - לזיהוי סבב שנשלח פעמיים
+    @Column(name = "turn_id", length = 36)
+    private String turnId;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -12,8 +12,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 
+// האינדקס למיון לפי כותרת (user_id, lower(title), id) מוגדר ב-schema.sql - JPA לא תומך באינדקס על ביטוי
 @Entity
-@Table(name = "chat_sessions")
+@Table(name = "chat_sessions", indexes = {
+        @Index(name = "idx_chat_sessions_user_updated", columnList = "user_id, updated_at, id"),
+        @Index(name = "idx_chat_sessions_user_created", columnList = "user_id, created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -36,8 +40,9 @@ public class ChatSession {
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
+    // לא null - ה-keyset pagination משווה וממיין לפיו
     @UpdateTimestamp
-    @Column(name = "updated_at")
+    @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
     @Column(name = "last_activity_at")
@@ -56,6 +61,13 @@ public class ChatSession {
     @OneToMany(mappedBy = "chatSession", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Document> documents = new ArrayList<>();
 
+    // לשיחה שפוענחה מה-cache אין את האוספים עצמם - רק המונים שלהם
+    @Transient
+    private Integer cachedMessageCount;
+
+    @Transient
+    private Integer cachedDocumentCount;
+
     // Helper methods
     public void addMessage(ChatMessage message) {
         messages.add(message);
@@ -79,11 +91,11 @@ public class ChatSession {
     }
 
     public int getMessageCount() {
-        return messages.size();
+        return cachedMessageCount != null ? cachedMessageCount : messages.size();
     }
 
     public int getDocumentCount() {
-        return documents.size();
+        return cachedDocumentCount != null ? cachedDocumentCount : documents.size();
     }
 
     public String getDisplayTitle() {
@@ -1,16 +1,22 @@
 package com.smartdocumentchat.entity;
 
+import com.smartdocumentchat.service.DocumentStatsListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = {
+        @Index(name = "idx_documents_session_created", columnList = "chat_session_id, created_at, id")
+})
+@EntityListeners(DocumentStatsListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -77,6 +83,12 @@ public class Document {
     @JoinColumn(name = "chat_session_id", nullable = false)
     private ChatSession chatSession;
 
+    // המצב האחרון שנטען/נשמר - בסיס לעדכון המצטבר של הסטטיסטיקות
+    @Transient
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private DocumentStatsState persistedStatsState;
+
     // Enum for processing status
     public enum ProcessingStatus {
         PENDING,      // ממתין לעיבוד
@@ -0,0 +1,36 @@
+package com.smartdocumentchat.entity;
+
+/**
+ * מה שמסמך תורם לסטטיסטיקות (סטטוס, פעיל, תווים, chunks) כפי שהוא שמור ב-DB.
+ * נשמר על הישות בטעינה ובכל שמירה, כך שבשמירה הבאה אפשר לחשב רק את ההפרש.
+ */
+public final class DocumentStatsState {
+
+    public final Long userId;
+    public final Long sessionId;
+    public final Document.ProcessingStatus status;
+    public final boolean active;
+    public final long characters;
+    public final long chunks;
+
+    private DocumentStatsState(Long userId, Long sessionId, Document.ProcessingStatus status, boolean active,
+                               long characters, long chunks) {
+        this.userId = userId;
+        this.sessionId = sessionId;
+        this.status = status;
+        this.active = active;
+        this.characters = characters;
+        this.chunks = chunks;
+    }
+
+    // getId על proxy של Hibernate לא טוען את הישות
+    public static DocumentStatsState of(Document document) {
+        return new DocumentStatsState(
+                document.getUser() != null ? document.getUser().getId() : null,
+                document.getChatSession() != null ? document.getChatSession().getId() : null,
+                document.getProcessingStatus(),
+                Boolean.TRUE.equals(document.getActive()),
+                document.getCharacterCount() != null ? document.getCharacterCount() : 0,
+                document.getChunkCount() != null ? document.getChunkCount() : 0);
+    }
+}
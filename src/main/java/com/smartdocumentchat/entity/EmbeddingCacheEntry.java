@@ -0,0 +1,57 @@
+package com.smartdocumentchat.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * רשומת cache של embeddings לפי hash התוכן, פרמטרי ה-chunking ומודל ה-embedding.
+ * משותפת לכל השיחות והמשתמשים - אותו קובץ מועלה ל-40 שיחות משלם embedding פעם אחת.
+ */
+@Entity
+@Table(name = "embedding_cache_entries",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_embedding_cache_key",
+                columnNames = {"content_hash", "chunking_signature", "embedding_model"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingCacheEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(name = "chunking_signature", nullable = false, length = 100)
+    private String chunkingSignature;
+
+    @Column(name = "embedding_model", nullable = false, length = 100)
+    private String embeddingModel;
+
+    @Column(name = "chunk_count", nullable = false)
+    private Integer chunkCount;
+
+    @Column(name = "character_count")
+    private Integer characterCount;
+
+    // נכתב רק אחרי שכל ה-chunks נשמרו - רשומה חלקית לא משמשת ל-hit
+    @Column(columnDefinition = "boolean default false")
+    private Boolean complete = false;
+
+    @Column(name = "hit_count")
+    private Long hitCount = 0L;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_used_at")
+    private LocalDateTime lastUsedAt;
+}
@@ -0,0 +1,50 @@
+package com.smartdocumentchat.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * סבב שאלה-תשובה בשיחה, בדרך לשמירה כשתי הודעות (USER + ASSISTANT).
+ * המפתח ב-Kafka הוא מזהה השיחה - כל הסבבים של שיחה עוברים באותו partition ונכתבים לפי הסדר.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatTurnEvent {
+
+    // מזהה יציב לסבב - מאפשר לדלג על סבב שכבר נכתב אם ה-batch נשלח שוב
+    private String turnId;
+    private Long sessionId;
+    private Long userId;
+    private String question;
+    private String answer;
+    private String modelUsed;
+    private Long processingTimeMs;
+    private Integer questionTokens;
+    private Integer answerTokens;
+    private LocalDateTime askedAt;
+    private LocalDateTime answeredAt;
+
+    public static ChatTurnEvent of(Long sessionId, Long userId, String question, String answer,
+                                   String modelUsed, long processingTimeMs,
+                                   Integer questionTokens, Integer answerTokens) {
+        LocalDateTime answeredAt = LocalDateTime.now();
+        ChatTurnEvent event = new ChatTurnEvent();
+        event.setTurnId(UUID.randomUUID().toString());
+        event.setSessionId(sessionId);
+        event.setUserId(userId);
+        event.setQuestion(question);
+        event.setAnswer(answer);
+        event.setModelUsed(modelUsed);
+        event.setProcessingTimeMs(processingTimeMs);
+        event.setQuestionTokens(questionTokens);
+        event.setAnswerTokens(answerTokens);
+        event.setAskedAt(answeredAt.minusNanos(processingTimeMs * 1_000_000L));
+        event.setAnsweredAt(answeredAt);
+        return event;
+    }
+}
@@ -18,7 +18,8 @@ public class DocumentProcessingEvent {
     private String fileType;
     private Long fileSize;
     private String contentHash;
-    private byte[] fileContent;
+    private String objectKey;      // מפתח האובייקט ב-MinIO (claim-check)
+    private byte[] fileContent;    // תוכן inline - רק כשמצב claim-check כבוי
     private ProcessingAction action;
     private LocalDateTime timestamp;
     private String correlationId;
@@ -30,7 +31,26 @@ public class DocumentProcessingEvent {
         CANCEL_PROCESSING
     }
 
-    // Helper constructor for processing new document
+    // Helper constructor for processing new document (claim-check - התוכן נקרא מ-MinIO)
+    public static DocumentProcessingEvent forProcessing(Long documentId, Long userId, Long sessionId,
+                                                        String fileName, String fileType, Long fileSize,
+                                                        String contentHash, String objectKey) {
+        DocumentProcessingEvent event = new DocumentProcessingEvent();
+        event.setDocumentId(documentId);
+        event.setUserId(userId);
+        event.setSessionId(sessionId);
+        event.setFileName(fileName);
+        event.setFileType(fileType);
+        event.setFileSize(fileSize);
+        event.setContentHash(contentHash);
+        event.setObjectKey(objectKey);
+        event.setAction(ProcessingAction.PROCESS_DOCUMENT);
+        event.setTimestamp(LocalDateTime.now());
+        event.setCorrelationId(generateCorrelationId(documentId, userId));
+        return event;
+    }
+
+    // Helper constructor for processing new document with inline content
     public static DocumentProcessingEvent forProcessing(Long documentId, Long userId, Long sessionId,
                                                         String fileName, String fileType, Long fileSize,
                                                         String contentHash, byte[] fileContent) {
@@ -51,13 +71,14 @@ public class DocumentProcessingEvent {
 
     // Helper constructor for reprocessing
     public static DocumentProcessingEvent forReprocessing(Long documentId, Long userId, Long sessionId,
-                                                          String fileName, byte[] fileContent) {
+                                                          String fileName, String objectKey, String contentHash) {
         DocumentProcessingEvent event = new DocumentProcessingEvent();
         event.setDocumentId(documentId);
         event.setUserId(userId);
         event.setSessionId(sessionId);
         event.setFileName(fileName);
-        event.setFileContent(fileContent);
+        event.setObjectKey(objectKey);
+        event.setContentHash(contentHash);
         event.setAction(ProcessingAction.REPROCESS_DOCUMENT);
         event.setTimestamp(LocalDateTime.now());
         event.setCorrelationId(generateCorrelationId(documentId, userId));
@@ -92,4 +113,8 @@ public class DocumentProcessingEvent {
     public boolean isCancellationAction() {
         return action == ProcessingAction.CANCEL_PROCESSING;
     }
+
+    public boolean hasInlineContent() {
+        return fileContent != null && fileContent.length > 0;
+    }
 }
\ No newline at end of file
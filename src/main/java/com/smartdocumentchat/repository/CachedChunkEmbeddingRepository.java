@@ -0,0 +1,34 @@
+package com.smartdocumentchat.repository;
+
+import com.smartdocumentchat.entity.CachedChunkEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface CachedChunkEmbeddingRepository extends JpaRepository<CachedChunkEmbedding, Long> {
+
+    /**
+     * קבלת טווח chunks לפי סדר (לקריאה בדפים בלי לטעון את כל ה-vectors לזיכרון)
+     */
+    List<CachedChunkEmbedding> findByCacheEntryIdAndChunkIndexBetweenOrderByChunkIndexAsc(
+            Long cacheEntryId, Integer fromIndex, Integer toIndex);
+
+    /**
+     * ספירת chunks שנשמרו לרשומה
+     */
+    long countByCacheEntryId(Long cacheEntryId);
+
+    /**
+     * מחיקת כל ה-chunks של רשומה
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM CachedChunkEmbedding c WHERE c.cacheEntryId = :cacheEntryId")
+    void deleteByCacheEntryId(@Param("cacheEntryId") Long cacheEntryId);
+}
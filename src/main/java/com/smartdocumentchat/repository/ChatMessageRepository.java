@@ -2,7 +2,6 @@ package com.smartdocumentchat.repository;
 
 import com.smartdocumentchat.entity.ChatMessage;
 import com.smartdocumentchat.entity.ChatSession;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -10,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,9 +22,10 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     List<ChatMessage> findByChatSessionOrderByMessageOrderAsc(ChatSession chatSession);
 
     /**
-     * מציאת הודעות עם פגינציה
+     * עמוד הודעות ב-keyset על message_order - ההודעות שאחרי afterOrder (0 לעמוד הראשון), בלי OFFSET
      */
-    Page<ChatMessage> findByChatSessionOrderByMessageOrderAsc(ChatSession chatSession, Pageable pageable);
+    List<ChatMessage> findByChatSessionAndMessageOrderGreaterThanOrderByMessageOrderAsc(
+            ChatSession chatSession, Integer afterOrder, Pageable pageable);
 
     /**
      * מציאת הודעות לפי סוג
@@ -63,10 +64,18 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     long countByChatSession(ChatSession chatSession);
 
     /**
-     * מציאת המספר הסידורי הבא להודעה
+     * המספר הסידורי האחרון בכל שיחה, לכמה שיחות בשאילתה אחת. משמש רק את כותב התמליל -
+     * הכותב היחיד של כל שיחה (partition לפי שיחה), כך שאין מרוץ בין קריאה להקצאה.
      */
-    @Query("SELECT COALESCE(MAX(cm.messageOrder), 0) + 1 FROM ChatMessage cm WHERE cm.chatSession = :chatSession")
-    Integer findNextMessageOrder(@Param("chatSession") ChatSession chatSession);
+    @Query("SELECT new com.smartdocumentchat.repository.SessionMessageOrder(cm.chatSession.id, MAX(cm.messageOrder)) " +
+            "FROM ChatMessage cm WHERE cm.chatSession.id IN :sessionIds GROUP BY cm.chatSession.id")
+    List<SessionMessageOrder> findLastMessageOrders(@Param("sessionIds") Collection<Long> sessionIds);
+
+    /**
+     * סבבים מתוך הרשימה שכבר נכתבו
+     */
+    @Query("SELECT DISTINCT cm.turnId FROM ChatMessage cm WHERE cm.turnId IN :turnIds")
+    List<String> findExistingTurnIds(@Param("turnIds") Collection<String> turnIds);
 
     /**
      * מציאת הודעות משתמש בלבד
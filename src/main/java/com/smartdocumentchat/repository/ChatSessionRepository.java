@@ -2,12 +2,16 @@ package com.smartdocumentchat.repository;
 
 import com.smartdocumentchat.entity.ChatSession;
 import com.smartdocumentchat.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -72,10 +76,87 @@ public interface ChatSessionRepository extends JpaRepository<ChatSession, Long>
     List<ChatSession> findSessionsWithDocuments(@Param("user") User user);
 
     /**
-     * עדכון זמן פעילות אחרונה
+     * עדכון זמן פעילות אחרונה (גם updatedAt, כמו ב-save - הרשימות ממוינות לפיו).
+     * טרנזקציה משלו - נקרא גם מחוץ לטרנזקציה (setActiveSession, החלפת שיחות)
      */
-    @Query("UPDATE ChatSession cs SET cs.lastActivityAt = :activityTime " +
+    @Transactional
+    @Modifying
+    @Query("UPDATE ChatSession cs SET cs.lastActivityAt = :activityTime, cs.updatedAt = :activityTime " +
             "WHERE cs.id = :sessionId")
     void updateLastActivityTime(@Param("sessionId") Long sessionId,
                                 @Param("activityTime") LocalDateTime activityTime);
-}
\ No newline at end of file
+
+    // read models - שיחות עם מוני הודעות ומסמכים בשאילתה אחת, בלי לטעון את האוספים
+
+    @Query(ChatSessionView.SELECT + "WHERE cs.id = :sessionId")
+    Optional<ChatSessionView> findViewById(@Param("sessionId") Long sessionId);
+
+    @Query(ChatSessionView.SELECT + "WHERE cs.user = :user AND cs.active = true ORDER BY cs.updatedAt DESC")
+    List<ChatSessionView> findActiveViewsByUser(@Param("user") User user, Pageable pageable);
+
+    @Query(ChatSessionView.SELECT + "WHERE cs.user = :user ORDER BY cs.updatedAt DESC")
+    List<ChatSessionView> findViewsByUser(@Param("user") User user);
+
+    @Query(ChatSessionView.SELECT + "WHERE cs.user = :user AND cs.createdAt BETWEEN :startDate AND :endDate " +
+            "ORDER BY cs.createdAt DESC")
+    List<ChatSessionView> findViewsByUserAndCreatedAtBetween(@Param("user") User user,
+                                                             @Param("startDate") LocalDateTime startDate,
+                                                             @Param("endDate") LocalDateTime endDate);
+
+    @Query(ChatSessionView.SELECT + "WHERE cs.user = :user AND cs.active = true AND " +
+            "LOWER(cs.title) LIKE LOWER(CONCAT('%', :title, '%'))")
+    List<ChatSessionView> findActiveViewsByUserAndTitleContaining(@Param("user") User user,
+                                                                  @Param("title") String title);
+
+    // keyset pagination - העמוד הבא מתחיל אחרי (ערך המיון, id) של השורה האחרונה, בלי OFFSET.
+    // activeStates הוא [true] או [true, false]; ה-limit מגיע מה-Pageable (עמוד 0 תמיד).
+    // עמודות המיון אינן null (updated_at הוגדר NOT NULL ב-schema.sql).
+
+    @Query(ChatSessionView.SELECT + "WHERE cs.user = :user AND cs.active IN :activeStates AND " +
+            "(cs.updatedAt < :updatedAt OR (cs.updatedAt = :updatedAt AND cs.id < :id)) " +
+            "ORDER BY cs.updatedAt DESC, cs.id DESC")
+    List<ChatSessionView> findViewsPageByUpdatedAt(@Param("user") User user,
+                                                   @Param("activeStates") Collection<Boolean> activeStates,
+                                                   @Param("updatedAt") LocalDateTime updatedAt,
+                                                   @Param("id") Long id,
+                                                   Pageable pageable);
+
+    @Query(ChatSessionView.SELECT + "WHERE cs.user = :user AND cs.active IN :activeStates AND " +
+            "(cs.createdAt < :createdAt OR (cs.createdAt = :createdAt AND cs.id < :id)) " +
+            "ORDER BY cs.createdAt DESC, cs.id DESC")
+    List<ChatSessionView> findViewsPageByCreatedAt(@Param("user") User user,
+                                                   @Param("activeStates") Collection<Boolean> activeStates,
+                                                   @Param("createdAt") LocalDateTime createdAt,
+                                                   @Param("id") Long id,
+                                                   Pageable pageable);
+
+    @Query(ChatSessionView.SELECT + "WHERE cs.user = :user AND cs.active IN :activeStates AND " +
+            "(LOWER(cs.title) > LOWER(:title) OR (LOWER(cs.title) = LOWER(:title) AND cs.id > :id)) " +
+            "ORDER BY LOWER(cs.title) ASC, cs.id ASC")
+    List<ChatSessionView> findViewsPageByTitle(@Param("user") User user,
+                                               @Param("activeStates") Collection<Boolean> activeStates,
+                                               @Param("title") String title,
+                                               @Param("id") Long id,
+                                               Pageable pageable);
+
+    /**
+     * המזהים מתוך הרשימה ששייכים לשיחות קיימות
+     */
+    @Query("SELECT cs.id FROM ChatSession cs WHERE cs.id IN :sessionIds")
+    List<Long> findExistingIds(@Param("sessionIds") Collection<Long> sessionIds);
+
+    /**
+     * ספירת כל השיחות של משתמש (כולל לא פעילות)
+     */
+    long countByUser(User user);
+
+    /**
+     * סטטיסטיקות כל השיחות של משתמש בשאילתה אחת (מונים, טווח תאריכים, סך הודעות ומסמכים)
+     */
+    @Query("SELECT new com.smartdocumentchat.repository.UserSessionAggregate(COUNT(cs), " +
+            "SUM(CASE WHEN cs.active = true THEN 1 ELSE 0 END), MAX(cs.lastActivityAt), MIN(cs.createdAt), " +
+            "(SELECT COUNT(m) FROM ChatMessage m WHERE m.chatSession.user = :user), " +
+            "(SELECT COUNT(d) FROM Document d WHERE d.chatSession.user = :user)) " +
+            "FROM ChatSession cs WHERE cs.user = :user")
+    UserSessionAggregate aggregateByUser(@Param("user") User user);
+}
@@ -0,0 +1,70 @@
+package com.smartdocumentchat.repository;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * read model של שיחה לרשימות ולתצוגה: השדות הסקלריים, מזהה המשתמש, ומוני ההודעות והמסמכים
+ * מ-COUNT בשאילתה עצמה - בלי לגעת באוספים ה-lazy של הישות.
+ */
+public class ChatSessionView {
+
+    // JPQL משותף לכל השאילתות שמחזירות את ה-view; ממשיכים ב-WHERE/ORDER BY
+    static final String SELECT =
+            "SELECT new com.smartdocumentchat.repository.ChatSessionView(" +
+            "cs.id, cs.title, cs.description, cs.active, cs.createdAt, cs.updatedAt, cs.lastActivityAt, " +
+            "cs.user.id, " +
+            "(SELECT COUNT(m) FROM ChatMessage m WHERE m.chatSession = cs), " +
+            "(SELECT COUNT(d) FROM Document d WHERE d.chatSession = cs)) " +
+            "FROM ChatSession cs ";
+
+    public final Long id;
+    public final String title;
+    public final String description;
+    public final Boolean active;
+    public final LocalDateTime createdAt;
+    public final LocalDateTime updatedAt;
+    public final LocalDateTime lastActivityAt;
+    public final Long userId;
+    public final long messageCount;
+    public final long documentCount;
+
+    public ChatSessionView(Long id, String title, String description, Boolean active,
+                           LocalDateTime createdAt, LocalDateTime updatedAt, LocalDateTime lastActivityAt,
+                           Long userId, Long messageCount, Long documentCount) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.active = active;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.lastActivityAt = lastActivityAt;
+        this.userId = userId;
+        this.messageCount = messageCount != null ? messageCount : 0;
+        this.documentCount = documentCount != null ? documentCount : 0;
+    }
+
+    /**
+     * שיחה detached עם המונים - לקוד שעובד עם ChatSession.
+     * האוספים ריקים; אין לשמור (merge) אותה - לעדכונים יש לטעון את הישות המנוהלת.
+     */
+    public ChatSession toEntity() {
+        User user = new User();
+        user.setId(userId);
+
+        ChatSession session = new ChatSession();
+        session.setId(id);
+        session.setTitle(title);
+        session.setDescription(description);
+        session.setActive(active);
+        session.setCreatedAt(createdAt);
+        session.setUpdatedAt(updatedAt);
+        session.setLastActivityAt(lastActivityAt);
+        session.setUser(user);
+        session.setCachedMessageCount((int) messageCount);
+        session.setCachedDocumentCount((int) documentCount);
+        return session;
+    }
+}
@@ -4,16 +4,18 @@ import com.smartdocumentchat.entity.Document;
 import com.smartdocumentchat.entity.ChatSession;
 import com.smartdocumentchat.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface DocumentRepository extends JpaRepository<Document, Long> {
+public interface DocumentRepository extends JpaRepository<Document, Long>, JpaSpecificationExecutor<Document> {
 
     /**
      * מציאת כל המסמכים של משתמש
@@ -30,6 +32,11 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
      */
     List<Document> findByChatSessionAndActiveTrueOrderByCreatedAtDesc(ChatSession chatSession);
 
+    /**
+     * מציאת מסמכים פעילים לכמה שיחות בשאילתה אחת
+     */
+    List<Document> findByChatSessionInAndActiveTrueOrderByCreatedAtDesc(Collection<ChatSession> chatSessions);
+
     /**
      * מציאת מסמך לפי שם קובץ ושיחה
      */
@@ -128,4 +135,25 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
     @Query("SELECT d FROM Document d WHERE d.chatSession = :chatSession AND " +
             "d.processingStatus = 'COMPLETED' AND d.active = true")
     List<Document> findProcessedDocumentsBySession(@Param("chatSession") ChatSession chatSession);
-}
\ No newline at end of file
+
+    /**
+     * מונים מצטברים של המסמכים הפעילים לכל שיחה - שאילתת GROUP BY אחת לכל השיחות.
+     * תווים ו-chunks נספרים רק למסמכים שעיבודם הושלם. שיחה בלי מסמכים לא מופיעה בתוצאה.
+     */
+    @Query("SELECT new com.smartdocumentchat.repository.SessionDocumentCounts(d.chatSession.id, COUNT(d), " +
+            "SUM(CASE WHEN d.processingStatus = 'COMPLETED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN d.processingStatus = 'PROCESSING' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN d.processingStatus = 'FAILED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN d.processingStatus = 'COMPLETED' THEN COALESCE(d.characterCount, 0) ELSE 0 END), " +
+            "SUM(CASE WHEN d.processingStatus = 'COMPLETED' THEN COALESCE(d.chunkCount, 0) ELSE 0 END)) " +
+            "FROM Document d WHERE d.chatSession.id IN :sessionIds AND d.active = true " +
+            "GROUP BY d.chatSession.id")
+    List<SessionDocumentCounts> countActiveDocumentsBySessions(@Param("sessionIds") Collection<Long> sessionIds);
+
+    /**
+     * היסטוגרמת סטטוסי עיבוד של כל מסמכי המשתמש - GROUP BY אחד במקום ספירה לכל סטטוס
+     */
+    @Query("SELECT new com.smartdocumentchat.repository.DocumentStatusCount(d.processingStatus, COUNT(d)) " +
+            "FROM Document d WHERE d.user.id = :userId GROUP BY d.processingStatus")
+    List<DocumentStatusCount> countByUserGroupedByStatus(@Param("userId") Long userId);
+}
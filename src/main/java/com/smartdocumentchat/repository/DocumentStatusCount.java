@@ -0,0 +1,17 @@
+package com.smartdocumentchat.repository;
+
+import com.smartdocumentchat.entity.Document;
+
+/**
+ * שורה בהיסטוגרמת סטטוסים: סטטוס עיבוד ומספר המסמכים בו
+ */
+public class DocumentStatusCount {
+
+    public final Document.ProcessingStatus status;
+    public final long count;
+
+    public DocumentStatusCount(Document.ProcessingStatus status, Long count) {
+        this.status = status;
+        this.count = count != null ? count : 0L;
+    }
+}
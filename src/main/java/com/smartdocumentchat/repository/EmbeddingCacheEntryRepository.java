@@ -0,0 +1,49 @@
+package com.smartdocumentchat.repository;
+
+import com.smartdocumentchat.entity.EmbeddingCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface EmbeddingCacheEntryRepository extends JpaRepository<EmbeddingCacheEntry, Long> {
+
+    /**
+     * מציאת רשומת cache לפי מפתח מלא
+     */
+    Optional<EmbeddingCacheEntry> findByContentHashAndChunkingSignatureAndEmbeddingModel(
+            String contentHash, String chunkingSignature, String embeddingModel);
+
+    /**
+     * רישום שימוש ב-cache
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmbeddingCacheEntry e SET e.hitCount = e.hitCount + 1, e.lastUsedAt = :usedAt " +
+            "WHERE e.id = :entryId")
+    void recordHit(@Param("entryId") Long entryId, @Param("usedAt") LocalDateTime usedAt);
+
+    /**
+     * סימון רשומה כשלמה, עם מספר ה-chunks והתווים שנקבעו רק בסוף העיבוד
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmbeddingCacheEntry e SET e.complete = true, e.chunkCount = :chunkCount, " +
+            "e.characterCount = :characterCount WHERE e.id = :entryId")
+    void markComplete(@Param("entryId") Long entryId, @Param("chunkCount") int chunkCount,
+                      @Param("characterCount") int characterCount);
+
+    /**
+     * סטטיסטיקות
+     */
+    long countByCompleteTrue();
+
+    @Query("SELECT COALESCE(SUM(e.hitCount), 0) FROM EmbeddingCacheEntry e")
+    Long getTotalHits();
+}
@@ -0,0 +1,32 @@
+package com.smartdocumentchat.repository;
+
+/**
+ * מונים מצטברים של המסמכים הפעילים בשיחה, מ-GROUP BY אחד לכל השיחות המבוקשות
+ */
+public class SessionDocumentCounts {
+
+    public final Long sessionId;
+    public final long totalDocuments;
+    public final long completedDocuments;
+    public final long processingDocuments;
+    public final long failedDocuments;
+    public final long totalCharacters;
+    public final long totalChunks;
+
+    public SessionDocumentCounts(Long sessionId, Long totalDocuments, Long completedDocuments,
+                                 Long processingDocuments, Long failedDocuments,
+                                 Long totalCharacters, Long totalChunks) {
+        this.sessionId = sessionId;
+        this.totalDocuments = valueOf(totalDocuments);
+        this.completedDocuments = valueOf(completedDocuments);
+        this.processingDocuments = valueOf(processingDocuments);
+        this.failedDocuments = valueOf(failedDocuments);
+        this.totalCharacters = valueOf(totalCharacters);
+        this.totalChunks = valueOf(totalChunks);
+    }
+
+    // SUM על קבוצה ריקה מחזיר NULL
+    private static long valueOf(Long value) {
+        return value != null ? value : 0L;
+    }
+}
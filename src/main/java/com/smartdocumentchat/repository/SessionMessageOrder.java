@@ -0,0 +1,15 @@
+package com.smartdocumentchat.repository;
+
+/**
+ * המספר הסידורי של ההודעה האחרונה בשיחה
+ */
+public class SessionMessageOrder {
+
+    public final Long sessionId;
+    public final int lastOrder;
+
+    public SessionMessageOrder(Long sessionId, Integer lastOrder) {
+        this.sessionId = sessionId;
+        this.lastOrder = lastOrder != null ? lastOrder : 0;
+    }
+}
@@ -0,0 +1,26 @@
+package com.smartdocumentchat.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * נתונים מצטברים על כל השיחות של משתמש, משאילתה אחת
+ */
+public class UserSessionAggregate {
+
+    public final long totalSessions;
+    public final long activeSessions;
+    public final LocalDateTime lastActivity;
+    public final LocalDateTime firstSession;
+    public final long totalMessages;
+    public final long totalDocuments;
+
+    public UserSessionAggregate(Long totalSessions, Long activeSessions, LocalDateTime lastActivity,
+                                LocalDateTime firstSession, Long totalMessages, Long totalDocuments) {
+        this.totalSessions = totalSessions != null ? totalSessions : 0L;
+        this.activeSessions = activeSessions != null ? activeSessions : 0L;
+        this.lastActivity = lastActivity;
+        this.firstSession = firstSession;
+        this.totalMessages = totalMessages != null ? totalMessages : 0L;
+        this.totalDocuments = totalDocuments != null ? totalDocuments : 0L;
+    }
+}
@@ -0,0 +1,399 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.Document;
+import com.smartdocumentchat.entity.User;
+import com.smartdocumentchat.util.CacheCodec;
+import org.hibernate.Hibernate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTOs ו-codecs בינאריים לישויות שנשמרות ב-cache: שיחות, מסמכים וסטטיסטיקות.
+ * ה-DTO מגדיר בדיוק מה נשמר - השדות הסקלריים, מזהי הקשרים והמונים - בלי אוספים lazy
+ * ובלי שמות שדות ומידע טיפוס כמו ב-JSON.
+ *
+ * ישות שמפוענחת היא detached: המשתמש והשיחה הם stubs עם מזהה, והאוספים ריקים.
+ * אין לשמור (merge) שיחה שהגיעה מה-cache - orphanRemoval היה מוחק את ההודעות והמסמכים שלה.
+ */
+public final class CacheEntityCodecs {
+
+    public static final CacheCodec<ChatSession> SESSION = new SessionCodec();
+    public static final CacheCodec<List<ChatSession>> SESSION_LIST = new ListCodec<>(
+            (byte) 2, "session-list", ChatSession.class, SESSION);
+    public static final CacheCodec<Document> DOCUMENT = new DocumentCodec();
+    public static final CacheCodec<List<Document>> DOCUMENT_LIST = new ListCodec<>(
+            (byte) 4, "document-list", Document.class, DOCUMENT);
+    // id 5 היה document-stats (user_stats:) - לא לשימוש חוזר
+    public static final CacheCodec<SessionHistoryService.UserSessionsStats> USER_SESSIONS_STATS =
+            new UserSessionsStatsCodec();
+
+    private CacheEntityCodecs() {
+    }
+
+    /**
+     * מה שנשמר משיחה
+     */
+    public static class CachedSession {
+        public final Long id;
+        public final String title;
+        public final String description;
+        public final Boolean active;
+        public final LocalDateTime createdAt;
+        public final LocalDateTime updatedAt;
+        public final LocalDateTime lastActivityAt;
+        public final Long userId;
+        public final String username;
+        public final int messageCount;
+        public final int documentCount;
+
+        public CachedSession(Long id, String title, String description, Boolean active,
+                             LocalDateTime createdAt, LocalDateTime updatedAt, LocalDateTime lastActivityAt,
+                             Long userId, String username, int messageCount, int documentCount) {
+            this.id = id;
+            this.title = title;
+            this.description = description;
+            this.active = active;
+            this.createdAt = createdAt;
+            this.updatedAt = updatedAt;
+            this.lastActivityAt = lastActivityAt;
+            this.userId = userId;
+            this.username = username;
+            this.messageCount = messageCount;
+            this.documentCount = documentCount;
+        }
+
+        /**
+         * המונים נקראים מהאוספים - שיחה שהאוספים שלה לא נטענו ואין session פתוח לא נשמרת
+         */
+        public static CachedSession from(ChatSession session) {
+            User user = session.getUser();
+            return new CachedSession(session.getId(), session.getTitle(), session.getDescription(),
+                    session.getActive(), session.getCreatedAt(), session.getUpdatedAt(),
+                    session.getLastActivityAt(), user != null ? user.getId() : null, usernameOf(user),
+                    session.getMessageCount(), session.getDocumentCount());
+        }
+
+        public ChatSession toEntity() {
+            ChatSession session = new ChatSession();
+            session.setId(id);
+            session.setTitle(title);
+            session.setDescription(description);
+            session.setActive(active);
+            session.setCreatedAt(createdAt);
+            session.setUpdatedAt(updatedAt);
+            session.setLastActivityAt(lastActivityAt);
+            session.setUser(userStub(userId, username));
+            session.setCachedMessageCount(messageCount);
+            session.setCachedDocumentCount(documentCount);
+            return session;
+        }
+    }
+
+    /**
+     * מה שנשמר ממסמך
+     */
+    public static class CachedDocument {
+        public final Long id;
+        public final String fileName;
+        public final String originalFileName;
+        public final String fileType;
+        public final Long fileSize;
+        public final String contentHash;
+        public final Document.ProcessingStatus processingStatus;
+        public final Integer processingProgress;
+        public final String errorMessage;
+        public final Integer characterCount;
+        public final Integer chunkCount;
+        public final String vectorCollectionName;
+        public final Boolean active;
+        public final LocalDateTime createdAt;
+        public final LocalDateTime updatedAt;
+        public final LocalDateTime processedAt;
+        public final Long userId;
+        public final String username;
+        public final Long chatSessionId;
+
+        public CachedDocument(Long id, String fileName, String originalFileName, String fileType, Long fileSize,
+                              String contentHash, Document.ProcessingStatus processingStatus,
+                              Integer processingProgress, String errorMessage, Integer characterCount,
+                              Integer chunkCount, String vectorCollectionName, Boolean active,
+                              LocalDateTime createdAt, LocalDateTime updatedAt, LocalDateTime processedAt,
+                              Long userId, String username, Long chatSessionId) {
+            this.id = id;
+            this.fileName = fileName;
+            this.originalFileName = originalFileName;
+            this.fileType = fileType;
+            this.fileSize = fileSize;
+            this.contentHash = contentHash;
+            this.processingStatus = processingStatus;
+            this.processingProgress = processingProgress;
+            this.errorMessage = errorMessage;
+            this.characterCount = characterCount;
+            this.chunkCount = chunkCount;
+            this.vectorCollectionName = vectorCollectionName;
+            this.active = active;
+            this.createdAt = createdAt;
+            this.updatedAt = updatedAt;
+            this.processedAt = processedAt;
+            this.userId = userId;
+            this.username = username;
+            this.chatSessionId = chatSessionId;
+        }
+
+        public static CachedDocument from(Document document) {
+            User user = document.getUser();
+            ChatSession chatSession = document.getChatSession();
+            return new CachedDocument(document.getId(), document.getFileName(), document.getOriginalFileName(),
+                    document.getFileType(), document.getFileSize(), document.getContentHash(),
+                    document.getProcessingStatus(), document.getProcessingProgress(), document.getErrorMessage(),
+                    document.getCharacterCount(), document.getChunkCount(), document.getVectorCollectionName(),
+                    document.getActive(), document.getCreatedAt(), document.getUpdatedAt(),
+                    document.getProcessedAt(), user != null ? user.getId() : null, usernameOf(user),
+                    chatSession != null ? chatSession.getId() : null);
+        }
+
+        /**
+         * כל השדות הסקלריים משוחזרים, כך ש-save על מסמך מה-cache לא מאבד נתונים
+         */
+        public Document toEntity() {
+            Document document = new Document();
+            document.setId(id);
+            document.setFileName(fileName);
+            document.setOriginalFileName(originalFileName);
+            document.setFileType(fileType);
+            document.setFileSize(fileSize);
+            document.setContentHash(contentHash);
+            document.setProcessingStatus(processingStatus);
+            document.setProcessingProgress(processingProgress);
+            document.setErrorMessage(errorMessage);
+            document.setCharacterCount(characterCount);
+            document.setChunkCount(chunkCount);
+            document.setVectorCollectionName(vectorCollectionName);
+            document.setActive(active);
+            document.setCreatedAt(createdAt);
+            document.setUpdatedAt(updatedAt);
+            document.setProcessedAt(processedAt);
+            document.setUser(userStub(userId, username));
+            if (chatSessionId != null) {
+                ChatSession chatSession = new ChatSession();
+                chatSession.setId(chatSessionId);
+                document.setChatSession(chatSession);
+            }
+            return document;
+        }
+    }
+
+    // שם המשתמש רק אם ה-proxy כבר נטען - בלי לגרום לשאילתה (או לחריגה מחוץ ל-session)
+    private static String usernameOf(User user) {
+        return user != null && Hibernate.isInitialized(user) ? user.getUsername() : null;
+    }
+
+    private static User userStub(Long userId, String username) {
+        if (userId == null) {
+            return null;
+        }
+        User user = new User();
+        user.setId(userId);
+        user.setUsername(username);
+        return user;
+    }
+
+    private static class SessionCodec implements CacheCodec<ChatSession> {
+
+        @Override
+        public byte id() {
+            return 1;
+        }
+
+        @Override
+        public String name() {
+            return "session";
+        }
+
+        @Override
+        public boolean supports(Object value) {
+            return value instanceof ChatSession;
+        }
+
+        @Override
+        public void write(ChatSession value, DataOutputStream out) throws IOException {
+            CachedSession dto = CachedSession.from(value);
+            CacheCodec.writeLong(out, dto.id);
+            CacheCodec.writeString(out, dto.title);
+            CacheCodec.writeString(out, dto.description);
+            CacheCodec.writeBoolean(out, dto.active);
+            CacheCodec.writeDateTime(out, dto.createdAt);
+            CacheCodec.writeDateTime(out, dto.updatedAt);
+            CacheCodec.writeDateTime(out, dto.lastActivityAt);
+            CacheCodec.writeLong(out, dto.userId);
+            CacheCodec.writeString(out, dto.username);
+            out.writeInt(dto.messageCount);
+            out.writeInt(dto.documentCount);
+        }
+
+        @Override
+        public ChatSession read(DataInputStream in) throws IOException {
+            return new CachedSession(CacheCodec.readLong(in), CacheCodec.readString(in), CacheCodec.readString(in),
+                    CacheCodec.readBoolean(in), CacheCodec.readDateTime(in), CacheCodec.readDateTime(in),
+                    CacheCodec.readDateTime(in), CacheCodec.readLong(in), CacheCodec.readString(in),
+                    in.readInt(), in.readInt()).toEntity();
+        }
+    }
+
+    private static class DocumentCodec implements CacheCodec<Document> {
+
+        private static final Document.ProcessingStatus[] STATUSES = Document.ProcessingStatus.values();
+
+        @Override
+        public byte id() {
+            return 3;
+        }
+
+        @Override
+        public String name() {
+            return "document";
+        }
+
+        @Override
+        public boolean supports(Object value) {
+            return value instanceof Document;
+        }
+
+        @Override
+        public void write(Document value, DataOutputStream out) throws IOException {
+            CachedDocument dto = CachedDocument.from(value);
+            CacheCodec.writeLong(out, dto.id);
+            CacheCodec.writeString(out, dto.fileName);
+            CacheCodec.writeString(out, dto.originalFileName);
+            CacheCodec.writeString(out, dto.fileType);
+            CacheCodec.writeLong(out, dto.fileSize);
+            CacheCodec.writeString(out, dto.contentHash);
+            out.writeByte(dto.processingStatus != null ? dto.processingStatus.ordinal() : -1);
+            CacheCodec.writeInt(out, dto.processingProgress);
+            CacheCodec.writeString(out, dto.errorMessage);
+            CacheCodec.writeInt(out, dto.characterCount);
+            CacheCodec.writeInt(out, dto.chunkCount);
+            CacheCodec.writeString(out, dto.vectorCollectionName);
+            CacheCodec.writeBoolean(out, dto.active);
+            CacheCodec.writeDateTime(out, dto.createdAt);
+            CacheCodec.writeDateTime(out, dto.updatedAt);
+            CacheCodec.writeDateTime(out, dto.processedAt);
+            CacheCodec.writeLong(out, dto.userId);
+            CacheCodec.writeString(out, dto.username);
+            CacheCodec.writeLong(out, dto.chatSessionId);
+        }
+
+        @Override
+        public Document read(DataInputStream in) throws IOException {
+            Long id = CacheCodec.readLong(in);
+            String fileName = CacheCodec.readString(in);
+            String originalFileName = CacheCodec.readString(in);
+            String fileType = CacheCodec.readString(in);
+            Long fileSize = CacheCodec.readLong(in);
+            String contentHash = CacheCodec.readString(in);
+            byte status = in.readByte();
+            return new CachedDocument(id, fileName, originalFileName, fileType, fileSize, contentHash,
+                    status >= 0 ? STATUSES[status] : null, CacheCodec.readInt(in), CacheCodec.readString(in),
+                    CacheCodec.readInt(in), CacheCodec.readInt(in), CacheCodec.readString(in),
+                    CacheCodec.readBoolean(in), CacheCodec.readDateTime(in), CacheCodec.readDateTime(in),
+                    CacheCodec.readDateTime(in), CacheCodec.readLong(in), CacheCodec.readString(in),
+                    CacheCodec.readLong(in)).toEntity();
+        }
+    }
+
+    /**
+     * רשימה של ערכים מאותו טיפוס - מספר איברים ואז כל איבר בפורמט של ה-codec שלו
+     */
+    private static class ListCodec<E> implements CacheCodec<List<E>> {
+
+        private final byte id;
+        private final String name;
+        private final Class<E> elementType;
+        private final CacheCodec<E> elementCodec;
+
+        ListCodec(byte id, String name, Class<E> elementType, CacheCodec<E> elementCodec) {
+            this.id = id;
+            this.name = name;
+            this.elementType = elementType;
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        public byte id() {
+            return id;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public boolean supports(Object value) {
+            return value instanceof List<?> list && list.stream().allMatch(elementType::isInstance);
+        }
+
+        @Override
+        public void write(List<E> value, DataOutputStream out) throws IOException {
+            out.writeInt(value.size());
+            for (E element : value) {
+                elementCodec.write(element, out);
+            }
+        }
+
+        @Override
+        public List<E> read(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            List<E> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(elementCodec.read(in));
+            }
+            return result;
+        }
+    }
+
+    private static class UserSessionsStatsCodec implements CacheCodec<SessionHistoryService.UserSessionsStats> {
+
+        @Override
+        public byte id() {
+            return 6;
+        }
+
+        @Override
+        public String name() {
+            return "user-sessions-stats";
+        }
+
+        @Override
+        public boolean supports(Object value) {
+            return value instanceof SessionHistoryService.UserSessionsStats;
+        }
+
+        @Override
+        public void write(SessionHistoryService.UserSessionsStats value, DataOutputStream out) throws IOException {
+            out.writeLong(value.totalSessions);
+            out.writeLong(value.activeSessions);
+            out.writeLong(value.inactiveSessions);
+            out.writeLong(value.totalDocuments);
+            out.writeLong(value.totalMessages);
+            out.writeDouble(value.avgDocumentsPerSession);
+            out.writeDouble(value.avgMessagesPerSession);
+            out.writeLong(value.totalActiveDays);
+            CacheCodec.writeDateTime(out, value.lastActivity);
+            CacheCodec.writeDateTime(out, value.firstSession);
+        }
+
+        @Override
+        public SessionHistoryService.UserSessionsStats read(DataInputStream in) throws IOException {
+            return new SessionHistoryService.UserSessionsStats(in.readLong(), in.readLong(), in.readLong(),
+                    in.readLong(), in.readLong(), in.readDouble(), in.readDouble(), in.readLong(),
+                    CacheCodec.readDateTime(in), CacheCodec.readDateTime(in));
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.util.CacheCodec;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * סריאליזציה של ערכי cache: codec בינארי לפי prefix של המפתח, ו-JSON (ה-serializer של ה-RedisTemplate)
+ * לכל השאר. ערך שגדול מהסף נדחס ב-Deflate אם זה מקטין אותו.
+ *
+ * פורמט: JSON לא דחוס נשמר כמו שהוא (תואם לרשומות קיימות); כל השאר -
+ * 0x00 'C' <codec id> <flags> <payload>. JSON לעולם לא מתחיל ב-0x00.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CacheSerializer {
+
+    private static final byte CODEC_MARKER = 'C';
+    private static final byte JSON_CODEC_ID = 0;
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int HEADER_LENGTH = 4;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${cache.codec.binary-enabled:true}")
+    private boolean binaryEnabled;
+
+    // 0 או פחות - ללא דחיסה
+    @Value("${cache.codec.compression-threshold-bytes:1024}")
+    private int compressionThresholdBytes;
+
+    // prefix ארוך יותר קודם - "doc_meta:document:" לפני "doc_meta:"
+    private final Map<String, CacheCodec<?>> codecsByPrefix =
+            new TreeMap<>((a, b) -> a.length() != b.length() ? b.length() - a.length() : a.compareTo(b));
+    private final Map<Byte, CacheCodec<?>> codecsById = new ConcurrentHashMap<>();
+
+    private final AtomicLong binaryWrites = new AtomicLong();
+    private final AtomicLong jsonWrites = new AtomicLong();
+    private final AtomicLong compressedWrites = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    @PostConstruct
+    public void initialize() {
+        register("session:", CacheEntityCodecs.SESSION);
+        register("active_session:", CacheEntityCodecs.SESSION);
+        register("last_session:", CacheEntityCodecs.SESSION);
+        register("user_sessions:", CacheEntityCodecs.SESSION_LIST);
+        register("user_all_sessions:", CacheEntityCodecs.SESSION_LIST);
+        register("search_sessions:", CacheEntityCodecs.SESSION_LIST);
+        register("doc_meta:document:", CacheEntityCodecs.DOCUMENT);
+        register("doc_meta:session_docs:", CacheEntityCodecs.DOCUMENT_LIST);
+        register("user_all_docs:", CacheEntityCodecs.DOCUMENT_LIST);
+        register("user_sessions_stats:", CacheEntityCodecs.USER_SESSIONS_STATS);
+
+        log.info("Cache serializer initialized - binary codecs: {} ({} prefixes), compression threshold: {} bytes",
+                binaryEnabled ? "enabled" : "disabled", codecsByPrefix.size(), compressionThresholdBytes);
+    }
+
+    /**
+     * רישום codec למפתחות שמתחילים ב-prefix. אותו codec יכול לשמש כמה prefixes.
+     */
+    public synchronized void register(String keyPrefix, CacheCodec<?> codec) {
+        if (codec.id() <= JSON_CODEC_ID) {
+            throw new IllegalArgumentException("Codec id must be positive: " + codec.name());
+        }
+        CacheCodec<?> existing = codecsById.get(codec.id());
+        if (existing != null && existing != codec) {
+            throw new IllegalArgumentException("Codec id " + codec.id() + " already used by " + existing.name());
+        }
+
+        codecsById.put(codec.id(), codec);
+        codecsByPrefix.put(keyPrefix, codec);
+    }
+
+    /**
+     * סריאליזציה של ערך למפתח: ה-codec של ה-prefix אם הוא תומך בערך, אחרת JSON
+     */
+    public byte[] serialize(String key, Object value) {
+        Encoded encoded = encode(key, value);
+
+        if (encoded.codecId != JSON_CODEC_ID) {
+            binaryWrites.incrementAndGet();
+        } else {
+            jsonWrites.incrementAndGet();
+        }
+        if (encoded.compressed) {
+            compressedWrites.incrementAndGet();
+        }
+        uncompressedBytes.addAndGet(encoded.payloadLength);
+        storedBytes.addAndGet(encoded.bytes.length);
+        return encoded.bytes;
+    }
+
+    /**
+     * פענוח לפי הכותרת - לא תלוי במפתח או ברישום הנוכחי של prefixes
+     */
+    public Object deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_LENGTH || bytes[0] != 0 || bytes[1] != CODEC_MARKER) {
+            return jsonSerializer().deserialize(bytes);
+        }
+
+        byte codecId = bytes[2];
+        boolean compressed = (bytes[3] & FLAG_COMPRESSED) != 0;
+        byte[] payload = compressed
+                ? inflate(bytes, HEADER_LENGTH)
+                : Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+
+        if (codecId == JSON_CODEC_ID) {
+            return jsonSerializer().deserialize(payload);
+        }
+
+        CacheCodec<?> codec = codecsById.get(codecId);
+        if (codec == null) {
+            throw new SerializationException("Unknown cache codec id: " + codecId);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            return codec.read(in);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to decode cache value with codec " + codec.name(), e);
+        }
+    }
+
+    /**
+     * סריאליזציה ב-JSON בלבד (ללא codec וללא דחיסה) - להשוואה בבנצ'מרק
+     */
+    public byte[] serializeJson(Object value) {
+        return jsonSerializer().serialize(value);
+    }
+
+    public Object deserializeJson(byte[] bytes) {
+        return jsonSerializer().deserialize(bytes);
+    }
+
+    public Map<String, Object> getStats() {
+        long uncompressed = uncompressedBytes.get();
+        long stored = storedBytes.get();
+
+        Map<String, String> prefixes = new TreeMap<>();
+        synchronized (this) {
+            codecsByPrefix.forEach((prefix, codec) -> prefixes.put(prefix, codec.name()));
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("binaryEnabled", binaryEnabled);
+        stats.put("compressionThresholdBytes", compressionThresholdBytes);
+        stats.put("codecsByPrefix", prefixes);
+        stats.put("binaryWrites", binaryWrites.get());
+        stats.put("jsonWrites", jsonWrites.get());
+        stats.put("compressedWrites", compressedWrites.get());
+        stats.put("uncompressedBytes", uncompressed);
+        stats.put("storedBytes", stored);
+        stats.put("compressionRatio", uncompressed == 0 ? 1.0 : (double) stored / uncompressed);
+        return stats;
+    }
+
+    private synchronized CacheCodec<?> codecFor(String key, Object value) {
+        if (value == null) {
+            return null;
+        }
+        for (Map.Entry<String, CacheCodec<?>> entry : codecsByPrefix.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue().supports(value) ? entry.getValue() : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * קידוד בלי עדכון סטטיסטיקות (משמש גם את הבנצ'מרק)
+     */
+    Encoded encode(String key, Object value) {
+        CacheCodec<?> codec = binaryEnabled ? codecFor(key, value) : null;
+        byte codecId = codec != null ? codec.id() : JSON_CODEC_ID;
+        byte[] payload = codec != null ? writeBinary(codec, value) : jsonSerializer().serialize(value);
+
+        // JSON לא דחוס נשאר בלי כותרת. מעל הסף - דחיסה, ונשמרת רק אם היא באמת קטנה יותר.
+        byte[] body = payload;
+        boolean compressed = false;
+        if (compressionThresholdBytes > 0 && payload.length >= compressionThresholdBytes) {
+            byte[] deflated = deflate(payload);
+            if (deflated.length < payload.length) {
+                body = deflated;
+                compressed = true;
+            }
+        }
+
+        if (codecId == JSON_CODEC_ID && !compressed) {
+            return new Encoded(codecId, payload, payload.length, false);
+        }
+
+        byte[] framed = new byte[HEADER_LENGTH + body.length];
+        framed[0] = 0;
+        framed[1] = CODEC_MARKER;
+        framed[2] = codecId;
+        framed[3] = (byte) (compressed ? FLAG_COMPRESSED : 0);
+        System.arraycopy(body, 0, framed, HEADER_LENGTH, body.length);
+        return new Encoded(codecId, framed, payload.length, compressed);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] writeBinary(CacheCodec<?> codec, Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ((CacheCodec<Object>) codec).write(value, out);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to encode cache value with codec " + codec.name(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // אורך המקור נכתב לפני הנתונים הדחוסים כדי להקצות את המערך בדיוק
+    private static byte[] deflate(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + 16);
+            out.write(payload.length >>> 24);
+            out.write(payload.length >>> 16);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset) {
+        int length = ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset + 4, bytes.length - offset - 4);
+            byte[] result = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int count = inflater.inflate(result, read, length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != length) {
+                throw new SerializationException("Truncated compressed cache value: " + read + "/" + length);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new SerializationException("Corrupt compressed cache value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> jsonSerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+    }
+
+    static class Encoded {
+        final byte codecId;
+        final byte[] bytes;
+        final int payloadLength;
+        final boolean compressed;
+
+        Encoded(byte codecId, byte[] bytes, int payloadLength, boolean compressed) {
+            this.codecId = codecId;
+            this.bytes = bytes;
+            this.payloadLength = payloadLength;
+            this.compressed = compressed;
+        }
+    }
+}
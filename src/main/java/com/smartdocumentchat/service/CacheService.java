@@ -1,18 +1,109 @@
 package com.smartdocumentchat.service;
 
+import com.smartdocumentchat.util.NearCache;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Cache דו-שכבתי: near cache מקומי (in-JVM) לפני Redis.
+ * כל כתיבה/מחיקה מפורסמת ב-Redis pub/sub, וכל node מפנה את העותק המקומי שלו.
+ *
+ * רשומות יכולות להירשם תחת tags (משתמש/שיחה). לכל tag יש מונה generation ב-Redis,
+ * והרשומה שומרת את ה-generations שהיו בזמן הכתיבה. העלאת ה-generation של tag (INCR אחד)
+ * פוסלת את כל הרשומות התלויות בו בלי לסרוק או למחוק מפתחות - הן פשוט לא תקפות בקריאה הבאה.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class CacheService {
+public class CacheService implements MessageListener {
+
+    public static final String INVALIDATE_ALL = "*";
+
+    private static final String TAG_GENERATION_PREFIX = "tag_gen:";
+
+    // כל רשומה עם tags תלויה גם ב-tag הגלובלי - clearAllCache מעלה אותו במקום flushAll
+    private static final String GLOBAL_TAG = "global";
+
+    // ארוך מכל TTL של רשומה, כך שמונה שפג לא יחזיר רשומה ישנה לתוקף
+    private static final Duration TAG_GENERATION_TTL = Duration.ofDays(30);
+
+    // תחילית לרשומה עם tags: 0x00 'T' <tag=gen;tag=gen> 0x00 <value>.
+    // ערך מ-CacheSerializer הוא JSON (לא מתחיל ב-0x00) או מסגרת codec (0x00 'C'), כך שאין התנגשות
+    private static final byte TAGGED_MARKER = 'T';
+
+    // ARGV[1] = TTL בשניות, ואחריו זוגות שדה/ערך
+    private static final byte[] INIT_COUNTERS_SCRIPT = (
+            "if redis.call('EXISTS', KEYS[1]) == 0 then " +
+            "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) end return 0").getBytes(StandardCharsets.UTF_8);
+
+    // זוגות שדה/delta
+    private static final byte[] INCREMENT_COUNTERS_SCRIPT = (
+            "if redis.call('EXISTS', KEYS[1]) == 1 then " +
+            "for i = 1, #ARGV, 2 do redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1]) end end " +
+            "return 0").getBytes(StandardCharsets.UTF_8);
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final CacheSerializer cacheSerializer;
+
+    @Value("${cache.near.enabled:true}")
+    private boolean nearCacheEnabled;
+
+    @Value("${cache.near.max-size:10000}")
+    private int nearCacheMaxSize;
+
+    @Value("${cache.near.tag-generation-ttl-seconds:300}")
+    private long tagGenerationLocalTtlSeconds;
+
+    // תקרה לעותק המקומי, בלי קשר ל-TTL ב-Redis - חוסם את הזמן שהודעת invalidation שאבדה משאירה ערך ישן
+    @Value("${cache.near.max-ttl-seconds:30}")
+    private long nearCacheMaxTtlSeconds;
+
+    @Value("${cache.invalidation.channel:cache:invalidate}")
+    private String invalidationChannel;
+
+    // מזהה ה-node - הודעות invalidation שפרסמנו בעצמנו לא מטופלות שוב
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // רכיבים אחרים עם מצב מקומי שמשתמשים באותו ערוץ, לפי prefix של המפתח (למשל זיכרון השיחה)
+    private final Map<String, Consumer<String>> peerListeners = new ConcurrentHashMap<>();
+
+    private NearCache<LocalValue> nearCache;
+
+    // generations של tags שנצפו ב-Redis - מאפשר לאמת רשומה מקומית בלי round-trip
+    private NearCache<Long> tagGenerations;
+
+    private final AtomicLong staleReads = new AtomicLong();
+    private final AtomicLong tagInvalidations = new AtomicLong();
 
     // Default TTL configurations
     private static final Duration DEFAULT_TTL = Duration.ofHours(1);
@@ -20,22 +111,69 @@ public class CacheService {
     private static final Duration QA_CACHE_TTL = Duration.ofMinutes(30);
     private static final Duration DOCUMENT_METADATA_TTL = Duration.ofHours(6);
 
+    @PostConstruct
+    public void initialize() {
+        this.nearCache = new NearCache<>(Math.max(1, nearCacheMaxSize));
+        this.tagGenerations = new NearCache<>(Math.max(1, nearCacheMaxSize));
+        log.info("Cache service initialized - near cache: {} (maxSize: {}, maxTtl: {}s), invalidation channel: {}",
+                nearCacheEnabled ? "enabled" : "disabled", nearCacheMaxSize, nearCacheMaxTtlSeconds,
+                invalidationChannel);
+    }
+
     /**
-     * Basic get operation
+     * tag לכל הרשומות שתלויות בנתוני משתמש (רשימות שיחות, מסמכים, סטטיסטיקות, חיפושים)
+     */
+    public static String userTag(Long userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * tag לכל הרשומות שתלויות בשיחה אחת (השיחה עצמה, המסמכים שלה, היסטוריית פעילות)
+     */
+    public static String sessionTag(Long sessionId) {
+        return "session:" + sessionId;
+    }
+
+    /**
+     * Basic get operation - near cache ואז Redis
      */
     public Object get(String key) {
-        try {
-            Object value = redisTemplate.opsForValue().get(key);
-            if (value != null) {
-                log.debug("Cache HIT for key: {}", key);
-            } else {
-                log.debug("Cache MISS for key: {}", key);
-            }
-            return value;
-        } catch (Exception e) {
-            log.error("Error getting value from cache for key: {}", key, e);
-            return null;
+        return read(Map.of(key, List.of())).get(key);
+    }
+
+    /**
+     * קריאת רשומה שנכתבה עם tags. הרשומה מוחזרת רק אם אף אחד מה-tags שלה לא נפסל מאז הכתיבה.
+     */
+    public Object getTagged(String key, String... tags) {
+        return readTagged(key, tags).value();
+    }
+
+    /**
+     * כמו getTagged, יחד עם ה-generations שנקראו. ב-miss הערך מה-DB נכתב דרך setTagged(read, ...)
+     */
+    public TaggedRead readTagged(String key, String... tags) {
+        return read(Map.of(key, withGlobalTag(Arrays.asList(tags))));
+    }
+
+    /**
+     * Batch get - near cache ואז GET+PTTL לכל המפתחות החסרים ב-pipeline אחד.
+     * מחזיר רק מפתחות שנמצאו.
+     */
+    public Map<String, Object> multiGet(Collection<String> keys) {
+        Map<String, List<String>> tagsByKey = new LinkedHashMap<>();
+        for (String key : keys) {
+            tagsByKey.put(key, List.of());
         }
+        return read(tagsByKey).found();
+    }
+
+    /**
+     * Batch get לרשומות עם tags - הערכים וה-generations של כל ה-tags ב-pipeline אחד
+     */
+    public TaggedRead multiReadTagged(Map<String, ? extends Collection<String>> tagsByKey) {
+        Map<String, List<String>> withGlobal = new LinkedHashMap<>();
+        tagsByKey.forEach((key, tags) -> withGlobal.put(key, withGlobalTag(tags)));
+        return read(withGlobal);
     }
 
     /**
@@ -49,20 +187,61 @@ public class CacheService {
      * Set operation with custom TTL
      */
     public void set(String key, Object value, Duration ttl) {
+        write(Collections.singletonMap(key, value), Map.of(), ttl);
+    }
+
+    /**
+     * כתיבת ערך שנטען אחרי miss ב-readTagged/multiReadTagged, עם ה-generations שנקראו שם.
+     * פסילה שקרתה בין הקריאה לכתיבה משאירה את הרשומה לא תקפה, במקום לסמן ערך ישן כעדכני.
+     */
+    public void setTagged(TaggedRead read, String key, Object value, Duration ttl) {
+        multiSetTagged(read, Collections.singletonMap(key, value), ttl);
+    }
+
+    /**
+     * Batch set לערכים שנטענו אחרי miss ב-multiReadTagged (לכל מפתח ה-tags שלו מהקריאה)
+     */
+    public void multiSetTagged(TaggedRead read, Map<String, ?> entries, Duration ttl) {
+        write(entries, read.generationsByKey(entries.keySet()), ttl);
+    }
+
+    /**
+     * כתיבת רשומה תחת tags, עם ה-generations הנוכחיים. מיועד לערך שנכתב מיד אחרי השינוי עצמו
+     * (create/update) - ערך שנקרא מה-DB אחרי miss נכתב דרך setTagged(read, ...).
+     */
+    public void setTagged(String key, Object value, Duration ttl, String... tags) {
+        List<String> allTags = withGlobalTag(Arrays.asList(tags));
+        Map<String, Long> generations;
         try {
-            redisTemplate.opsForValue().set(key, value, ttl);
-            log.debug("Cached value for key: {} with TTL: {} seconds", key, ttl.toSeconds());
+            generations = currentGenerations(allTags);
         } catch (Exception e) {
-            log.error("Error setting value in cache for key: {}", key, e);
+            log.error("Error reading tag generations for key: {}", key, e);
+            return;
         }
+
+        Map<String, Long> stamp = new LinkedHashMap<>();
+        allTags.forEach(tag -> stamp.put(tag, generations.get(tag)));
+        write(Collections.singletonMap(key, value), Map.of(key, stamp), ttl);
+    }
+
+    /**
+     * Batch set - כל ה-SETs וכל הודעות ה-invalidation ב-pipeline אחד
+     */
+    public void multiSet(Map<String, ?> entries, Duration ttl) {
+        write(entries, Map.of(), ttl);
     }
 
     /**
      * Delete operation
      */
     public void delete(String key) {
+        if (nearCacheEnabled) {
+            nearCache.invalidate(key);
+        }
+
         try {
             Boolean deleted = redisTemplate.delete(key);
+            publishInvalidation(key);
             if (Boolean.TRUE.equals(deleted)) {
                 log.debug("Deleted cache entry for key: {}", key);
             } else {
@@ -73,6 +252,172 @@ public class CacheService {
         }
     }
 
+    /**
+     * Batch delete - DEL אחד לכל המפתחות, והודעות ה-invalidation באותו pipeline
+     */
+    public long multiDelete(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        if (nearCacheEnabled) {
+            keys.forEach(nearCache::invalidate);
+        }
+
+        try {
+            byte[][] rawKeys = keys.stream().map(this::rawKey).toArray(byte[][]::new);
+
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.keyCommands().del(rawKeys);
+                for (String key : keys) {
+                    connection.publish(rawChannel(), invalidationMessage(key));
+                }
+                return null;
+            }, null);
+
+            long deleted = results.get(0) instanceof Long count ? count : 0;
+            log.debug("Batch deleted {} of {} cache entries", deleted, keys.size());
+            return deleted;
+
+        } catch (Exception e) {
+            log.error("Error deleting {} values from cache", keys.size(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * פסילת כל הרשומות התלויות ב-tags: INCR אחד לכל tag, ללא סריקת מפתחות.
+     * הרשומות הישנות נשארות ב-Redis עד שה-TTL שלהן פג, אבל לא יוחזרו יותר.
+     */
+    public void invalidateTags(String... tags) {
+        if (tags.length == 0) {
+            return;
+        }
+
+        for (String tag : tags) {
+            tagGenerations.invalidate(tag);
+        }
+        long tagSequence = tagGenerations.invalidationSequence();
+
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String tag : tags) {
+                    byte[] rawTagKey = rawKey(TAG_GENERATION_PREFIX + tag);
+                    connection.stringCommands().incr(rawTagKey);
+                    connection.keyCommands().expire(rawTagKey, TAG_GENERATION_TTL.toSeconds());
+                    connection.publish(rawChannel(), invalidationMessage(TAG_GENERATION_PREFIX + tag));
+                }
+                return null;
+            }, null);
+
+            // ה-generation החדש ידוע כבר - הקריאה הבאה ב-node הזה לא צריכה לחזור ל-Redis בשבילו
+            for (int i = 0; i < tags.length; i++) {
+                if (results.get(i * 3) instanceof Long generation) {
+                    rememberGeneration(tags[i], generation, tagSequence);
+                }
+            }
+
+            tagInvalidations.addAndGet(tags.length);
+            log.debug("Invalidated cache tags: {}", Arrays.toString(tags));
+
+        } catch (Exception e) {
+            log.error("Error invalidating cache tags: {}", Arrays.toString(tags), e);
+        }
+    }
+
+    /**
+     * מונים (Redis hash של שדה -> מספר) לכמה מפתחות ב-pipeline אחד. מפתח שלא קיים לא מופיע בתוצאה.
+     * המונים לא עוברים דרך ה-near cache - הם משתנים בכל מעבר סטטוס.
+     */
+    public Map<String, Map<String, Long>> getCounters(Collection<String> keys) {
+        Map<String, Map<String, Long>> found = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return found;
+        }
+
+        List<String> keyList = new ArrayList<>(keys);
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String key : keyList) {
+                    connection.hashCommands().hGetAll(rawKey(key));
+                }
+                return null;
+            }, null);
+
+            for (int i = 0; i < keyList.size(); i++) {
+                if (results.get(i) instanceof Map<?, ?> rawHash && !rawHash.isEmpty()) {
+                    Map<String, Long> counters = new HashMap<>();
+                    rawHash.forEach((field, value) -> counters.put(
+                            new String((byte[]) field, StandardCharsets.UTF_8),
+                            Long.parseLong(new String((byte[]) value, StandardCharsets.UTF_8))));
+                    found.put(keyList.get(i), counters);
+                }
+            }
+
+        } catch (Exception e) {
+            log.error("Error reading counters from cache for keys: {}", keyList, e);
+        }
+        return found;
+    }
+
+    /**
+     * אתחול מונים מה-DB - רק למפתחות שלא קיימים, כדי לא לדרוס מונים שכבר מתעדכנים.
+     * ה-TTL מגביל סטייה אפשרית (עדכון שנפל בין הקריאה מה-DB לאתחול) - אחריו המונים נבנים מחדש.
+     */
+    public void initCounters(Map<String, Map<String, Long>> countersByKey, Duration ttl) {
+        if (countersByKey.isEmpty()) {
+            return;
+        }
+
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<String, Map<String, Long>> entry : countersByKey.entrySet()) {
+                    List<byte[]> keysAndArgs = new ArrayList<>();
+                    keysAndArgs.add(rawKey(entry.getKey()));
+                    keysAndArgs.add(rawKey(String.valueOf(ttl.toSeconds())));
+                    entry.getValue().forEach((field, value) -> {
+                        keysAndArgs.add(rawKey(field));
+                        keysAndArgs.add(rawKey(String.valueOf(value)));
+                    });
+                    connection.scriptingCommands().eval(INIT_COUNTERS_SCRIPT, ReturnType.INTEGER, 1,
+                            keysAndArgs.toArray(new byte[0][]));
+                }
+                return null;
+            }, null);
+
+        } catch (Exception e) {
+            log.error("Error initializing counters in cache for keys: {}", countersByKey.keySet(), e);
+        }
+    }
+
+    /**
+     * הוספת deltas למונים - רק למפתחות שכבר אותחלו (מפתח חסר ייבנה מה-DB בקריאה הבאה)
+     */
+    public void incrementCounters(Map<String, Map<String, Long>> deltasByKey) {
+        if (deltasByKey.isEmpty()) {
+            return;
+        }
+
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<String, Map<String, Long>> entry : deltasByKey.entrySet()) {
+                    List<byte[]> keysAndArgs = new ArrayList<>();
+                    keysAndArgs.add(rawKey(entry.getKey()));
+                    entry.getValue().forEach((field, delta) -> {
+                        keysAndArgs.add(rawKey(field));
+                        keysAndArgs.add(rawKey(String.valueOf(delta)));
+                    });
+                    connection.scriptingCommands().eval(INCREMENT_COUNTERS_SCRIPT, ReturnType.INTEGER, 1,
+                            keysAndArgs.toArray(new byte[0][]));
+                }
+                return null;
+            }, null);
+
+        } catch (Exception e) {
+            log.error("Error incrementing counters in cache for keys: {}", deltasByKey.keySet(), e);
+        }
+    }
+
     /**
      * Check if key exists
      */
@@ -102,14 +447,19 @@ public class CacheService {
     /**
      * Session-specific caching methods
      */
-    public void cacheSessionData(String sessionId, Object data) {
+    public void cacheSessionData(String sessionId, Object data, String... tags) {
+        String key = "session:" + sessionId;
+        setTagged(key, data, SESSION_TTL, tags);
+    }
+
+    public void cacheSessionData(TaggedRead read, String sessionId, Object data) {
         String key = "session:" + sessionId;
-        set(key, data, SESSION_TTL);
+        setTagged(read, key, data, SESSION_TTL);
     }
 
-    public Object getSessionData(String sessionId) {
+    public TaggedRead readSessionData(String sessionId, String... tags) {
         String key = "session:" + sessionId;
-        return get(key);
+        return readTagged(key, tags);
     }
 
     public void invalidateSession(String sessionId) {
@@ -134,26 +484,129 @@ public class CacheService {
     /**
      * Document metadata caching
      */
-    public void cacheDocumentMetadata(String documentId, Object metadata) {
+    public void cacheDocumentMetadata(String documentId, Object metadata, String... tags) {
         String key = "doc_meta:" + documentId;
-        set(key, metadata, DOCUMENT_METADATA_TTL);
+        setTagged(key, metadata, DOCUMENT_METADATA_TTL, tags);
     }
 
-    public Object getDocumentMetadata(String documentId) {
+    public void cacheDocumentMetadata(TaggedRead read, String documentId, Object metadata) {
         String key = "doc_meta:" + documentId;
-        return get(key);
+        setTagged(read, key, metadata, DOCUMENT_METADATA_TTL);
+    }
+
+    public TaggedRead readDocumentMetadata(String documentId, String... tags) {
+        String key = "doc_meta:" + documentId;
+        return readTagged(key, tags);
+    }
+
+    /**
+     * Batch document metadata - הקריאה מחזירה רק מפתחות שנמצאו (עם ה-prefix)
+     */
+    public TaggedRead readDocumentMetadataBatch(Map<String, ? extends Collection<String>> tagsByDocumentId) {
+        Map<String, Collection<String>> tagsByKey = new LinkedHashMap<>();
+        tagsByDocumentId.forEach((documentId, tags) -> tagsByKey.put("doc_meta:" + documentId, tags));
+        return multiReadTagged(tagsByKey);
+    }
+
+    public Object getDocumentMetadata(TaggedRead read, String documentId) {
+        return read.get("doc_meta:" + documentId);
+    }
+
+    public void cacheDocumentMetadataBatch(TaggedRead read, Map<String, ?> metadataById) {
+        Map<String, Object> entries = new LinkedHashMap<>();
+        metadataById.forEach((documentId, metadata) -> entries.put("doc_meta:" + documentId, metadata));
+        multiSetTagged(read, entries, DOCUMENT_METADATA_TTL);
     }
 
     /**
-     * Utility methods
+     * פסילת כל הרשומות עם tags (דרך ה-tag הגלובלי) ופינוי ה-near cache בכל ה-nodes.
+     * לא מוחק דבר מ-Redis - רשומות בלי tags (Q&A, התקדמות עיבוד) ממשיכות עד שה-TTL שלהן פג.
      */
     public void clearAllCache() {
-        try {
-            redisTemplate.getConnectionFactory().getConnection().flushAll();
-            log.info("Cleared all cache entries");
-        } catch (Exception e) {
-            log.error("Error clearing all cache", e);
+        invalidateTags(GLOBAL_TAG);
+        nearCache.invalidateAll();
+        publishInvalidation(INVALIDATE_ALL);
+        log.info("Invalidated all tagged cache entries");
+    }
+
+    /**
+     * הודעת invalidation מ-node אחר - פינוי העותק המקומי
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String payload = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = payload.indexOf('|');
+        if (separator < 0) {
+            log.warn("Ignoring malformed cache invalidation message: {}", payload);
+            return;
+        }
+
+        String sourceNode = payload.substring(0, separator);
+        if (nodeId.equals(sourceNode)) {
+            return;
         }
+
+        String key = payload.substring(separator + 1);
+        for (Map.Entry<String, Consumer<String>> listener : peerListeners.entrySet()) {
+            if (key.startsWith(listener.getKey())) {
+                listener.getValue().accept(key.substring(listener.getKey().length()));
+                return;
+            }
+        }
+
+        if (INVALIDATE_ALL.equals(key)) {
+            int removed = nearCache.invalidateAll();
+            tagGenerations.invalidateAll();
+            log.debug("Near cache cleared by node {} ({} entries)", sourceNode, removed);
+        } else if (key.startsWith(TAG_GENERATION_PREFIX)) {
+            tagGenerations.invalidate(key.substring(TAG_GENERATION_PREFIX.length()));
+            log.debug("Cache tag invalidated by node {}: {}", sourceNode, key);
+        } else {
+            nearCache.invalidate(key);
+            log.debug("Near cache entry invalidated by node {}: {}", sourceNode, key);
+        }
+    }
+
+    public String getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    /**
+     * רישום מאזין להודעות מ-nodes אחרים שהמפתח שלהן מתחיל ב-prefix. המאזין מקבל את המפתח בלי ה-prefix,
+     * ולא נקרא על הודעות שה-node הזה פרסם.
+     */
+    public void addPeerListener(String prefix, Consumer<String> listener) {
+        peerListeners.put(prefix, listener);
+    }
+
+    /**
+     * פרסום הודעה לשאר ה-nodes בערוץ ה-invalidation. לא זורק - כשל בפרסום רק נרשם ללוג
+     */
+    public void publishToPeers(String prefix, String payload) {
+        publishInvalidation(prefix + payload);
+    }
+
+    /**
+     * סטטיסטיקות ה-near cache
+     */
+    public Map<String, Object> getNearCacheStats() {
+        NearCache.Stats stats = nearCache.getStats();
+        NearCache.Stats tagStats = tagGenerations.getStats();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", nearCacheEnabled);
+        result.put("size", stats.size);
+        result.put("maxSize", stats.maxSize);
+        result.put("hits", stats.hits);
+        result.put("misses", stats.misses);
+        result.put("hitRate", stats.getHitRate());
+        result.put("evictions", stats.evictions);
+        result.put("expirations", stats.expirations);
+        result.put("invalidations", stats.invalidations);
+        result.put("knownTagGenerations", tagStats.size);
+        result.put("tagInvalidations", tagInvalidations.get());
+        result.put("staleTaggedReads", staleReads.get());
+        return result;
     }
 
     public String generateCacheKey(String prefix, String... parts) {
@@ -163,4 +616,430 @@ public class CacheService {
         }
         return key.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * קריאה משותפת לכל ה-gets: near cache, ואז pipeline אחד עם GET+PTTL לכל מפתח
+     * ו-GET לכל tag generation. רשומה עם generation ישן נחשבת miss.
+     * ה-generations שנקראו חוזרים עם התוצאה - הכתיבה אחרי miss משתמשת בהם.
+     */
+    private TaggedRead read(Map<String, List<String>> tagsByKey) {
+        Map<String, Object> found = new LinkedHashMap<>();
+        Map<String, Long> generations = new HashMap<>();
+        List<String> remoteKeys = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> entry : tagsByKey.entrySet()) {
+            LocalValue local = nearCacheEnabled ? nearCache.get(entry.getKey()) : null;
+            if (local != null && isCurrentLocally(local)) {
+                log.debug("Near cache HIT for key: {}", entry.getKey());
+                found.put(entry.getKey(), local.resolve(cacheSerializer));
+            } else {
+                remoteKeys.add(entry.getKey());
+            }
+        }
+
+        int localHits = found.size();
+        if (remoteKeys.isEmpty()) {
+            return new TaggedRead(found, tagsByKey, generations);
+        }
+
+        // פינוי שמגיע בזמן הקריאה מ-Redis מונע את הכנסת מה שנקרא לעותק המקומי
+        long nearSequence = nearCache.invalidationSequence();
+        long tagSequence = tagGenerations.invalidationSequence();
+
+        try {
+            List<String> tags = remoteKeys.stream()
+                    .flatMap(key -> tagsByKey.get(key).stream())
+                    .distinct()
+                    .collect(Collectors.toList());
+
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String key : remoteKeys) {
+                    byte[] rawKey = rawKey(key);
+                    connection.stringCommands().get(rawKey);
+                    connection.keyCommands().pTtl(rawKey);
+                }
+                for (String tag : tags) {
+                    connection.stringCommands().get(rawKey(TAG_GENERATION_PREFIX + tag));
+                }
+                return null;
+            }, null);
+
+            for (int i = 0; i < tags.size(); i++) {
+                generations.put(tags.get(i), parseGeneration((byte[]) results.get(remoteKeys.size() * 2 + i)));
+            }
+            rememberGenerations(generations, tagSequence);
+
+            for (int i = 0; i < remoteKeys.size(); i++) {
+                String key = remoteKeys.get(i);
+                byte[] rawValue = (byte[]) results.get(i * 2);
+                if (rawValue == null) {
+                    log.debug("Cache MISS for key: {}", key);
+                    continue;
+                }
+
+                TaggedPayload payload = TaggedPayload.decode(rawValue);
+                if (!payload.generations.isEmpty()) {
+                    // נכתב עם tags שלא התבקשו בקריאה - משלימים את ה-generations שלהם
+                    Map<String, Long> current = generations;
+                    Set<String> unknownTags = new LinkedHashSet<>(payload.generations.keySet());
+                    unknownTags.removeAll(generations.keySet());
+                    if (!unknownTags.isEmpty()) {
+                        current = new HashMap<>(generations);
+                        current.putAll(fetchGenerations(unknownTags));
+                    }
+
+                    if (!payload.isCurrent(current)) {
+                        staleReads.incrementAndGet();
+                        log.debug("Cache entry invalidated by tag generation: {}", key);
+                        continue;
+                    }
+                }
+
+                Object value = cacheSerializer.deserialize(payload.value);
+                found.put(key, value);
+                log.debug("Cache HIT for key: {}", key);
+
+                if (nearCacheEnabled) {
+                    nearCache.put(key, LocalValue.of(value, payload.value, payload.generations),
+                            localTtlMs((Long) results.get(i * 2 + 1)), nearSequence);
+                }
+            }
+
+            if (tagsByKey.size() > 1) {
+                log.debug("Batch get: {} keys, {} from near cache, {} from Redis",
+                        tagsByKey.size(), localHits, found.size() - localHits);
+            }
+
+        } catch (Exception e) {
+            log.error("Error getting values from cache for keys: {}", remoteKeys, e);
+        }
+
+        return new TaggedRead(found, tagsByKey, generations);
+    }
+
+    /**
+     * כתיבה משותפת לכל ה-sets: כל ה-SETs והודעות ה-invalidation ב-pipeline אחד.
+     * לכל מפתח עם tags מגיעים ה-generations שאיתם הוא נכתב (מהקריאה שקדמה ל-miss,
+     * או העדכניים בכתיבה אחרי שינוי). מפתח בלי generations לא נכתב.
+     */
+    private void write(Map<String, ?> entries, Map<String, Map<String, Long>> generationsByKey, Duration ttl) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        try {
+            Map<String, byte[]> rawValues = new LinkedHashMap<>();
+            Map<String, byte[]> serializedValues = new HashMap<>();
+
+            for (Map.Entry<String, ?> entry : entries.entrySet()) {
+                Map<String, Long> entryGenerations = generationsByKey.getOrDefault(entry.getKey(), Map.of());
+                if (entryGenerations == TaggedRead.UNKNOWN) {
+                    log.debug("Skipping cache write without tag generations for key: {}", entry.getKey());
+                    continue;
+                }
+
+                byte[] serialized = cacheSerializer.serialize(entry.getKey(), entry.getValue());
+                serializedValues.put(entry.getKey(), serialized);
+                rawValues.put(entry.getKey(), TaggedPayload.encode(entryGenerations, serialized));
+            }
+
+            if (rawValues.isEmpty()) {
+                return;
+            }
+
+            long nearSequence = nearCache.invalidationSequence();
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                Expiration expiration = Expiration.from(ttl);
+                for (Map.Entry<String, byte[]> entry : rawValues.entrySet()) {
+                    connection.stringCommands().set(rawKey(entry.getKey()), entry.getValue(), expiration,
+                            RedisStringCommands.SetOption.upsert());
+                }
+                for (String key : rawValues.keySet()) {
+                    connection.publish(rawChannel(), invalidationMessage(key));
+                }
+                return null;
+            }, null);
+
+            if (nearCacheEnabled) {
+                for (String key : rawValues.keySet()) {
+                    nearCache.put(key, LocalValue.of(entries.get(key), serializedValues.get(key),
+                            generationsByKey.getOrDefault(key, Map.of())), localTtlMs(ttl.toMillis()), nearSequence);
+                }
+            }
+
+            log.debug("Cached {} value(s) {} with TTL: {} seconds", rawValues.size(),
+                    rawValues.size() == 1 ? rawValues.keySet() : "", ttl.toSeconds());
+
+        } catch (Exception e) {
+            log.error("Error setting values in cache for keys: {}", entries.keySet(), e);
+        }
+    }
+
+    /**
+     * generations עדכניים ל-tags - מהעותק המקומי אם קיים, ואחרת ב-round-trip אחד ל-Redis
+     */
+    private Map<String, Long> currentGenerations(Collection<String> tags) {
+        Map<String, Long> generations = new HashMap<>();
+        List<String> unknownTags = new ArrayList<>();
+
+        for (String tag : tags) {
+            Long generation = tagGenerations.get(tag);
+            if (generation != null) {
+                generations.put(tag, generation);
+            } else {
+                unknownTags.add(tag);
+            }
+        }
+
+        if (!unknownTags.isEmpty()) {
+            generations.putAll(fetchGenerations(unknownTags));
+        }
+        return generations;
+    }
+
+    private Map<String, Long> fetchGenerations(Collection<String> tags) {
+        List<String> tagList = new ArrayList<>(tags);
+        long tagSequence = tagGenerations.invalidationSequence();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String tag : tagList) {
+                connection.stringCommands().get(rawKey(TAG_GENERATION_PREFIX + tag));
+            }
+            return null;
+        }, null);
+
+        Map<String, Long> generations = new HashMap<>();
+        for (int i = 0; i < tagList.size(); i++) {
+            generations.put(tagList.get(i), parseGeneration((byte[]) results.get(i)));
+        }
+        rememberGenerations(generations, tagSequence);
+        return generations;
+    }
+
+    private void rememberGenerations(Map<String, Long> generations, long tagSequence) {
+        generations.forEach((tag, generation) -> rememberGeneration(tag, generation, tagSequence));
+    }
+
+    /**
+     * generation שנקרא נשמר מקומית רק אם ה-tag לא נפסל מאז שהתחילה הקריאה, ולעולם לא מחליף
+     * generation גבוה יותר שכבר ידוע - קריאה איטית לא מחזירה tag למצב שלפני הפסילה
+     */
+    private void rememberGeneration(String tag, long generation, long tagSequence) {
+        Long known = tagGenerations.get(tag);
+        if (known == null || known < generation) {
+            tagGenerations.put(tag, generation, tagGenerationLocalTtlMs(), tagSequence);
+        }
+    }
+
+    /**
+     * רשומה מקומית תקפה אם כל ה-tags שלה ידועים מקומית באותו generation
+     */
+    private boolean isCurrentLocally(LocalValue local) {
+        for (Map.Entry<String, Long> tag : local.generations.entrySet()) {
+            if (!tag.getValue().equals(tagGenerations.get(tag.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> withGlobalTag(Collection<String> tags) {
+        List<String> result = new ArrayList<>(tags.size() + 1);
+        result.add(GLOBAL_TAG);
+        for (String tag : tags) {
+            if (!result.contains(tag)) {
+                result.add(tag);
+            }
+        }
+        return result;
+    }
+
+    // מונה שלא קיים ב-Redis שקול ל-generation 0
+    private long parseGeneration(byte[] raw) {
+        return raw == null ? 0L : Long.parseLong(new String(raw, StandardCharsets.UTF_8));
+    }
+
+    private long tagGenerationLocalTtlMs() {
+        return Duration.ofSeconds(tagGenerationLocalTtlSeconds).toMillis();
+    }
+
+    private void publishInvalidation(String key) {
+        try {
+            byte[] message = invalidationMessage(key);
+            redisTemplate.execute((RedisCallback<Object>) connection -> connection.publish(rawChannel(), message));
+        } catch (Exception e) {
+            log.warn("Failed to publish cache invalidation for key: {}", key, e);
+        }
+    }
+
+    private byte[] rawChannel() {
+        return invalidationChannel.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] invalidationMessage(String key) {
+        return (nodeId + "|" + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * TTL לעותק המקומי לפי PTTL מ-Redis, חסום ב-cache.near.max-ttl-seconds.
+     * ללא expire ב-Redis (-1) - התקרה עצמה
+     */
+    private long localTtlMs(Long redisTtlMs) {
+        if (redisTtlMs == null) {
+            return 0;
+        }
+        long maxTtlMs = Duration.ofSeconds(nearCacheMaxTtlSeconds).toMillis();
+        return redisTtlMs > 0 ? Math.min(redisTtlMs, maxTtlMs) : redisTtlMs == -1 ? maxTtlMs : 0;
+    }
+
+    private byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * תוצאת קריאה: הערכים שנמצאו, וה-generations של ה-tags כפי שנקראו מ-Redis באותו pipeline.
+     * ערך שנטען מה-DB אחרי miss נכתב עם ה-generations האלה - לא עם אלה שבזמן הכתיבה.
+     */
+    public static class TaggedRead {
+        // סימון למפתח שה-generations שלו לא נקראו (near cache hit, או Redis לא זמין) - לא נכתב
+        private static final Map<String, Long> UNKNOWN = Collections.unmodifiableMap(new HashMap<>());
+
+        private final Map<String, Object> found;
+        private final Map<String, List<String>> tagsByKey;
+        private final Map<String, Long> generations;
+
+        private TaggedRead(Map<String, Object> found, Map<String, List<String>> tagsByKey,
+                           Map<String, Long> generations) {
+            this.found = found;
+            this.tagsByKey = tagsByKey;
+            this.generations = generations;
+        }
+
+        public Object get(String key) {
+            return found.get(key);
+        }
+
+        /**
+         * הערך של קריאה למפתח יחיד
+         */
+        public Object value() {
+            return found.isEmpty() ? null : found.values().iterator().next();
+        }
+
+        public Map<String, Object> found() {
+            return Collections.unmodifiableMap(found);
+        }
+
+        private Map<String, Map<String, Long>> generationsByKey(Collection<String> keys) {
+            Map<String, Map<String, Long>> result = new HashMap<>();
+            for (String key : keys) {
+                List<String> tags = tagsByKey.get(key);
+                if (tags == null) {
+                    throw new IllegalArgumentException("Key was not part of the cache read: " + key);
+                }
+
+                Map<String, Long> stamp = new LinkedHashMap<>();
+                for (String tag : tags) {
+                    Long generation = generations.get(tag);
+                    if (generation == null) {
+                        stamp = UNKNOWN;
+                        break;
+                    }
+                    stamp.put(tag, generation);
+                }
+                result.put(key, stamp);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * ערך כפי שהוא נשמר ב-Redis: בלי tags - הערך המסורלז כמו שהוא,
+     * עם tags - כותרת עם ה-generations בזמן הכתיבה ואחריה הערך
+     */
+    private static class TaggedPayload {
+        private final Map<String, Long> generations;
+        private final byte[] value;
+
+        private TaggedPayload(Map<String, Long> generations, byte[] value) {
+            this.generations = generations;
+            this.value = value;
+        }
+
+        static byte[] encode(Map<String, Long> generations, byte[] value) {
+            if (generations.isEmpty()) {
+                return value;
+            }
+
+            String header = generations.entrySet().stream()
+                    .map(entry -> entry.getKey() + "=" + entry.getValue())
+                    .collect(Collectors.joining(";"));
+            byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(headerBytes.length + value.length + 3);
+            out.write(0);
+            out.write(TAGGED_MARKER);
+            out.write(headerBytes, 0, headerBytes.length);
+            out.write(0);
+            out.write(value, 0, value.length);
+            return out.toByteArray();
+        }
+
+        static TaggedPayload decode(byte[] raw) {
+            if (raw.length < 3 || raw[0] != 0 || raw[1] != TAGGED_MARKER) {
+                return new TaggedPayload(Map.of(), raw);
+            }
+
+            int headerEnd = 2;
+            while (headerEnd < raw.length && raw[headerEnd] != 0) {
+                headerEnd++;
+            }
+
+            Map<String, Long> generations = new LinkedHashMap<>();
+            String header = new String(raw, 2, headerEnd - 2, StandardCharsets.UTF_8);
+            for (String part : header.split(";")) {
+                int separator = part.lastIndexOf('=');
+                if (separator > 0) {
+                    generations.put(part.substring(0, separator), Long.parseLong(part.substring(separator + 1)));
+                }
+            }
+
+            return new TaggedPayload(generations, Arrays.copyOfRange(raw, Math.min(headerEnd + 1, raw.length), raw.length));
+        }
+
+        boolean isCurrent(Map<String, Long> currentGenerations) {
+            for (Map.Entry<String, Long> entry : generations.entrySet()) {
+                if (!entry.getValue().equals(currentGenerations.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * ערך ב-near cache. ערכים immutable נשמרים כמו שהם; כל השאר נשמרים כ-bytes
+     * ומפוענחים בכל hit, כך שקוד שמשנה את האובייקט שקיבל לא משנה את ה-cache.
+     */
+    private static class LocalValue {
+        private final Object value;
+        private final byte[] serialized;
+        private final Map<String, Long> generations;
+
+        private LocalValue(Object value, byte[] serialized, Map<String, Long> generations) {
+            this.value = value;
+            this.serialized = serialized;
+            this.generations = generations;
+        }
+
+        static LocalValue of(Object value, byte[] serialized, Map<String, Long> generations) {
+            if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+                return new LocalValue(value, null, generations);
+            }
+            return new LocalValue(null, serialized, generations);
+        }
+
+        Object resolve(CacheSerializer serializer) {
+            return value != null ? value : serializer.deserialize(serialized);
+        }
+    }
+}
@@ -1,24 +1,43 @@
 package com.smartdocumentchat.service;
 
+import com.smartdocumentchat.entity.ChatMessage;
 import com.smartdocumentchat.entity.ChatSession;
 import com.smartdocumentchat.entity.User;
+import com.smartdocumentchat.repository.ChatMessageRepository;
 import com.smartdocumentchat.repository.ChatSessionRepository;
+import com.smartdocumentchat.repository.ChatSessionView;
+import com.smartdocumentchat.util.CursorPage;
+import com.smartdocumentchat.util.KeysetCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ChatSessionService {
 
+    // ערך התחלה לעמוד הראשון במיון יורד לפי זמן (גדול מכל ערך אמיתי, בטווח של timestamp ב-DB)
+    private static final LocalDateTime FIRST_PAGE_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final String MESSAGES_CURSOR_SORT = "order";
+
     private final ChatSessionRepository chatSessionRepository;
+    private final ChatMessageRepository chatMessageRepository;
     private final CacheService cacheService;
+    private final VectorGarbageCollector vectorGarbageCollector;
+
+    @Value("${chat.pagination.max-page-size:100}")
+    private int maxPageSize;
 
     /**
      * יצירת שיחה חדשה עם validation משופר
@@ -59,22 +78,24 @@ public class ChatSessionService {
 
         // Try to get from cache first
         String cacheKey = "session:" + sessionId;
-        ChatSession cachedSession = (ChatSession) cacheService.getSessionData(cacheKey);
+        CacheService.TaggedRead cached = cacheService.readSessionData(cacheKey, CacheService.sessionTag(sessionId));
+        ChatSession cachedSession = (ChatSession) cached.value();
 
         if (cachedSession != null) {
             log.debug("Session {} retrieved from cache", sessionId);
             return Optional.of(cachedSession);
         }
 
-        // If not in cache, get from database
-        Optional<ChatSession> sessionOpt = chatSessionRepository.findById(sessionId);
+        // If not in cache, get the read model from database (counts included, collections not loaded)
+        Optional<ChatSession> sessionOpt = chatSessionRepository.findViewById(sessionId)
+                .map(ChatSessionView::toEntity);
 
         if (sessionOpt.isPresent()) {
             ChatSession session = sessionOpt.get();
 
             // Only cache active sessions
             if (session.getActive()) {
-                cacheSessionData(session);
+                cacheService.cacheSessionData(cached, cacheKey, session);
                 log.debug("Session {} retrieved from database and cached", sessionId);
             }
         }
@@ -90,19 +111,20 @@ public class ChatSessionService {
 
         String cacheKey = "user_sessions:" + user.getId();
 
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.userTag(user.getId()));
         @SuppressWarnings("unchecked")
-        List<ChatSession> cachedSessions = (List<ChatSession>) cacheService.get(cacheKey);
+        List<ChatSession> cachedSessions = (List<ChatSession>) cached.value();
 
         if (cachedSessions != null) {
             log.debug("User {} sessions retrieved from cache", user.getId());
             return cachedSessions;
         }
 
-        // Get from database - only active sessions
-        List<ChatSession> sessions = chatSessionRepository.findByUserAndActiveTrueOrderByUpdatedAtDesc(user);
+        // Get from database - only active sessions, with counts in the same query
+        List<ChatSession> sessions = toSessions(chatSessionRepository.findActiveViewsByUser(user, Pageable.unpaged()));
 
         // Cache the result for 15 minutes
-        cacheService.set(cacheKey, sessions, java.time.Duration.ofMinutes(15));
+        cacheService.setTagged(cached, cacheKey, sessions, java.time.Duration.ofMinutes(15));
         log.debug("User {} sessions retrieved from database and cached ({} sessions)",
                 user.getId(), sessions.size());
 
@@ -121,8 +143,9 @@ public class ChatSessionService {
 
         String cacheKey = "user_all_sessions:" + user.getId();
 
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.userTag(user.getId()));
         @SuppressWarnings("unchecked")
-        List<ChatSession> cachedSessions = (List<ChatSession>) cacheService.get(cacheKey);
+        List<ChatSession> cachedSessions = (List<ChatSession>) cached.value();
 
         if (cachedSessions != null) {
             log.debug("User {} all sessions retrieved from cache", user.getId());
@@ -130,16 +153,70 @@ public class ChatSessionService {
         }
 
         // Get all sessions from database
-        List<ChatSession> sessions = chatSessionRepository.findByUserOrderByUpdatedAtDesc(user);
+        List<ChatSession> sessions = toSessions(chatSessionRepository.findViewsByUser(user));
 
         // Cache for shorter time since this includes inactive sessions
-        cacheService.set(cacheKey, sessions, java.time.Duration.ofMinutes(10));
+        cacheService.setTagged(cached, cacheKey, sessions, java.time.Duration.ofMinutes(10));
         log.debug("User {} all sessions retrieved from database and cached ({} sessions)",
                 user.getId(), sessions.size());
 
         return sessions;
     }
 
+    /**
+     * עמוד של שיחות המשתמש ב-keyset pagination: שאילתה אחת של limit + 1 שורות על האינדקס
+     * (user_id, עמודת המיון, id), בלי לטעון את כל השיחות. "activity" ממוין כמו "updated" -
+     * כל פעילות מעדכנת גם את updatedAt.
+     */
+    public CursorPage<ChatSession> getUserSessionsPage(User user, String sortBy, boolean includeInactive,
+                                                       String cursor, int limit) {
+        validateUser(user);
+
+        SessionSort sort = SessionSort.from(sortBy);
+        KeysetCursor after = KeysetCursor.decode(cursor, sort.key);
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        List<Boolean> activeStates = includeInactive ? List.of(true, false) : List.of(true);
+        Pageable fetch = PageRequest.of(0, pageSize + 1);
+
+        List<ChatSessionView> rows = switch (sort) {
+            case CREATED -> chatSessionRepository.findViewsPageByCreatedAt(user, activeStates,
+                    after != null ? after.timeValue() : FIRST_PAGE_TIME, after != null ? after.id : Long.MAX_VALUE,
+                    fetch);
+            case TITLE -> chatSessionRepository.findViewsPageByTitle(user, activeStates,
+                    after != null ? after.value : "", after != null ? after.id : 0L, fetch);
+            default -> chatSessionRepository.findViewsPageByUpdatedAt(user, activeStates,
+                    after != null ? after.timeValue() : FIRST_PAGE_TIME, after != null ? after.id : Long.MAX_VALUE,
+                    fetch);
+        };
+
+        return CursorPage.of(toSessions(rows), pageSize, sort::cursorOf);
+    }
+
+    /**
+     * ספירת השיחות של משתמש, כולל לא פעילות אם ביקשו
+     */
+    public long countUserSessions(User user, boolean includeInactive) {
+        if (!includeInactive) {
+            return countUserSessions(user);
+        }
+        validateUser(user);
+        return chatSessionRepository.countByUser(user);
+    }
+
+    /**
+     * עמוד הודעות של שיחה לפי סדר ההודעות (keyset על message_order)
+     */
+    public CursorPage<ChatMessage> getSessionMessagesPage(ChatSession session, String cursor, int limit) {
+        KeysetCursor after = KeysetCursor.decode(cursor, MESSAGES_CURSOR_SORT);
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+
+        List<ChatMessage> rows = chatMessageRepository.findByChatSessionAndMessageOrderGreaterThanOrderByMessageOrderAsc(
+                session, after != null ? (int) after.longValue() : 0, PageRequest.of(0, pageSize + 1));
+
+        return CursorPage.of(rows, pageSize,
+                message -> KeysetCursor.encode(MESSAGES_CURSOR_SORT, message.getMessageOrder(), message.getId()));
+    }
+
     /**
      * קבלת השיחה האחרונה של משתמש עם אופטימיזציה
      */
@@ -147,18 +224,22 @@ public class ChatSessionService {
         validateUser(user);
 
         String cacheKey = "last_session:" + user.getId();
-        ChatSession cachedSession = (ChatSession) cacheService.get(cacheKey);
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.userTag(user.getId()));
+        ChatSession cachedSession = (ChatSession) cached.value();
 
         if (cachedSession != null) {
             log.debug("Last session for user {} retrieved from cache", user.getId());
             return Optional.of(cachedSession);
         }
 
-        Optional<ChatSession> sessionOpt = chatSessionRepository.findFirstByUserAndActiveTrueOrderByUpdatedAtDesc(user);
+        Optional<ChatSession> sessionOpt = chatSessionRepository.findActiveViewsByUser(user, PageRequest.of(0, 1))
+                .stream()
+                .findFirst()
+                .map(ChatSessionView::toEntity);
 
         if (sessionOpt.isPresent()) {
             // Cache for shorter time as this changes frequently
-            cacheService.set(cacheKey, sessionOpt.get(), java.time.Duration.ofMinutes(5));
+            cacheService.setTagged(cached, cacheKey, sessionOpt.get(), java.time.Duration.ofMinutes(5));
             log.debug("Last session for user {} retrieved from database and cached", user.getId());
         }
 
@@ -173,7 +254,8 @@ public class ChatSessionService {
         validateUser(user);
         validateTitle(title);
 
-        Optional<ChatSession> sessionOpt = findById(sessionId);
+        // ישות מנוהלת ולא העותק מה-cache: לעותק אין הודעות ומסמכים, ו-merge שלו היה מוחק אותם
+        Optional<ChatSession> sessionOpt = chatSessionRepository.findById(sessionId);
 
         if (sessionOpt.isEmpty()) {
             throw new IllegalArgumentException("שיחה לא נמצאה");
@@ -196,12 +278,11 @@ public class ChatSessionService {
 
         ChatSession updatedSession = chatSessionRepository.save(session);
 
-        // Update cache
+        // Invalidate everything derived from the session and the user's session lists,
+        // then cache the updated session under the new generation
+        cacheService.invalidateTags(CacheService.sessionTag(sessionId), CacheService.userTag(user.getId()));
         cacheSessionData(updatedSession);
 
-        // Invalidate user sessions cache as the list has changed
-        invalidateUserSessionsCache(user.getId());
-
         log.info("שיחה {} עודכנה: '{}' -> '{}' עבור משתמש {}",
                 sessionId, oldTitle, title, user.getUsername());
         return updatedSession;
@@ -214,7 +295,8 @@ public class ChatSessionService {
     public boolean deleteSession(Long sessionId, User user) {
         validateUser(user);
 
-        Optional<ChatSession> sessionOpt = findById(sessionId);
+        // ישות מנוהלת ולא העותק מה-cache (ראו updateSession)
+        Optional<ChatSession> sessionOpt = chatSessionRepository.findById(sessionId);
 
         if (sessionOpt.isEmpty()) {
             log.warn("ניסיון מחיקת שיחה לא קיימת: {} עבור משתמש {}", sessionId, user.getId());
@@ -239,12 +321,11 @@ public class ChatSessionService {
         session.setActive(false);
         ChatSession deletedSession = chatSessionRepository.save(session);
 
-        // Remove from cache
-        cacheService.invalidateSession("session:" + sessionId);
+        // Invalidate the session and everything derived from it or from the user's session lists
+        cacheService.invalidateTags(CacheService.sessionTag(sessionId), CacheService.userTag(user.getId()));
 
-        // Invalidate related caches
-        invalidateUserSessionsCache(user.getId());
-        cacheService.delete("last_session:" + user.getId());
+        // ה-vectors של השיחה נמחקים מ-Qdrant ברקע, אחרי ה-commit
+        vectorGarbageCollector.deleteSessionVectors(sessionId, user.getId());
 
         log.info("שיחה {} ('{}') נמחקה בהצלחה עבור משתמש {}",
                 sessionId, sessionTitle, user.getUsername());
@@ -262,16 +343,21 @@ public class ChatSessionService {
 
         Optional<ChatSession> sessionOpt = findById(sessionId);
         if (sessionOpt.isPresent()) {
+            // UPDATE ישיר במקום save - השיחה עשויה להגיע מה-cache, ו-merge שלה היה מוחק את ההודעות
+            LocalDateTime now = LocalDateTime.now();
+            chatSessionRepository.updateLastActivityTime(sessionId, now);
+
             ChatSession session = sessionOpt.get();
-            session.setLastActivityAt(LocalDateTime.now());
-            ChatSession updatedSession = chatSessionRepository.save(session);
+            session.setLastActivityAt(now);
+            session.setUpdatedAt(now);
 
             // Update cache
-            cacheSessionData(updatedSession);
+            cacheSessionData(session);
 
             // Update last session cache for user
             String lastSessionCacheKey = "last_session:" + session.getUser().getId();
-            cacheService.set(lastSessionCacheKey, updatedSession, java.time.Duration.ofMinutes(5));
+            cacheService.setTagged(lastSessionCacheKey, session, java.time.Duration.ofMinutes(5),
+                    CacheService.userTag(session.getUser().getId()));
 
             log.debug("עודכן זמן פעילות אחרונה לשיחה {}", sessionId);
         }
@@ -284,7 +370,8 @@ public class ChatSessionService {
         validateUser(user);
 
         String cacheKey = "user_sessions_count:" + user.getId();
-        Object cachedCount = cacheService.get(cacheKey);
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.userTag(user.getId()));
+        Object cachedCount = cached.value();
 
         if (cachedCount instanceof Number) {
             log.debug("Session count for user {} retrieved from cache", user.getId());
@@ -294,7 +381,7 @@ public class ChatSessionService {
         long count = chatSessionRepository.countByUserAndActiveTrue(user);
 
         // Cache for 10 minutes
-        cacheService.set(cacheKey, count, java.time.Duration.ofMinutes(10));
+        cacheService.setTagged(cached, cacheKey, count, java.time.Duration.ofMinutes(10));
         log.debug("Session count for user {} retrieved from database and cached: {}", user.getId(), count);
 
         return count;
@@ -328,23 +415,21 @@ public class ChatSessionService {
         String normalizedSearchTerm = searchTerm.trim().toLowerCase();
         String cacheKey = "search_sessions:" + user.getId() + ":" + normalizedSearchTerm.hashCode();
 
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.userTag(user.getId()));
         @SuppressWarnings("unchecked")
-        List<ChatSession> cachedResults = (List<ChatSession>) cacheService.get(cacheKey);
+        List<ChatSession> cachedResults = (List<ChatSession>) cached.value();
 
         if (cachedResults != null) {
             log.debug("Search results for user {} retrieved from cache", user.getId());
             return cachedResults;
         }
 
-        List<ChatSession> searchResults = chatSessionRepository.findByUserAndTitleContaining(user, normalizedSearchTerm);
-
-        // Only return active sessions
-        searchResults = searchResults.stream()
-                .filter(ChatSession::getActive)
-                .toList();
+        // Only active sessions
+        List<ChatSession> searchResults = toSessions(
+                chatSessionRepository.findActiveViewsByUserAndTitleContaining(user, normalizedSearchTerm));
 
         // Cache search results for shorter time
-        cacheService.set(cacheKey, searchResults, java.time.Duration.ofMinutes(5));
+        cacheService.setTagged(cached, cacheKey, searchResults, java.time.Duration.ofMinutes(5));
         log.debug("Search results for user {} retrieved from database and cached: {} results",
                 user.getId(), searchResults.size());
 
@@ -520,16 +605,57 @@ public class ChatSessionService {
         }
     }
 
+    /**
+     * מיון רשימת השיחות - לכל מיון יש שאילתת keyset ואינדקס משלו
+     */
+    public enum SessionSort {
+        UPDATED("updated"),
+        CREATED("created"),
+        TITLE("title");
+
+        private final String key;
+
+        SessionSort(String key) {
+            this.key = key;
+        }
+
+        public static SessionSort from(String sortBy) {
+            if (sortBy == null) {
+                return UPDATED;
+            }
+            return switch (sortBy.toLowerCase(Locale.ROOT)) {
+                case "created" -> CREATED;
+                case "title" -> TITLE;
+                default -> UPDATED; // "updated" / "activity"
+            };
+        }
+
+        private String cursorOf(ChatSession session) {
+            return switch (this) {
+                case CREATED -> KeysetCursor.encode(key, session.getCreatedAt(), session.getId());
+                // הכותרת כמו שהיא - ה-DB מנרמל אותה עם אותו LOWER של המיון (toLowerCase של Java יכול להיות שונה)
+                case TITLE -> KeysetCursor.encode(key, session.getTitle(), session.getId());
+                case UPDATED -> KeysetCursor.encode(key, session.getUpdatedAt(), session.getId());
+            };
+        }
+    }
+
+    private List<ChatSession> toSessions(List<ChatSessionView> views) {
+        return views.stream()
+                .map(ChatSessionView::toEntity)
+                .collect(Collectors.toList());
+    }
+
     private void cacheSessionData(ChatSession session) {
         String cacheKey = "session:" + session.getId();
-        cacheService.cacheSessionData(cacheKey, session);
+        cacheService.cacheSessionData(cacheKey, session, CacheService.sessionTag(session.getId()));
     }
 
+    /**
+     * פסילת כל ה-caches שנגזרים מרשימות השיחות של המשתמש (רשימות, ספירה, חיפושים, היסטוריה)
+     */
     private void invalidateUserSessionsCache(Long userId) {
-        cacheService.delete("user_sessions:" + userId);
-        cacheService.delete("user_all_sessions:" + userId);
-        cacheService.delete("user_sessions_count:" + userId);
-        cacheService.delete("last_session:" + userId);
+        cacheService.invalidateTags(CacheService.userTag(userId));
         log.debug("Invalidated user sessions cache for user {}", userId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.KafkaConfig;
+import com.smartdocumentchat.event.ChatTurnEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * צורך את תמליל השיחות מ-Kafka וכותב כל poll ב-batch אחד.
+ * ה-offset מאושר רק אחרי commit ב-DB: אם הכתיבה נכשלת ה-batch נשלח שוב, והסבבים שכבר
+ * נכתבו מזוהים לפי turnId ולא נכתבים פעמיים.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatTranscriptConsumer {
+
+    private final ChatTranscriptWriter chatTranscriptWriter;
+    private final CacheService cacheService;
+
+    @KafkaListener(
+            topics = KafkaConfig.CHAT_TRANSCRIPT_TOPIC,
+            groupId = "${spring.kafka.consumer.group-id}-transcript",
+            containerFactory = "chatTranscriptListenerContainerFactory"
+    )
+    public void writeTurns(@Payload List<ChatTurnEvent> events, Acknowledgment acknowledgment) {
+        long startTime = System.currentTimeMillis();
+
+        // חריגה כאן לא מאשרת את ה-batch - ה-error handler של ה-container ינסה שוב
+        List<ChatTurnEvent> written = chatTranscriptWriter.write(events);
+        acknowledgment.acknowledge();
+
+        if (!written.isEmpty()) {
+            // מוני ההודעות של השיחות והרשימות של המשתמשים נשמרים ב-cache
+            List<String> tags = new ArrayList<>();
+            for (ChatTurnEvent turn : written) {
+                tags.add(CacheService.sessionTag(turn.getSessionId()));
+                if (turn.getUserId() != null) {
+                    tags.add(CacheService.userTag(turn.getUserId()));
+                }
+            }
+            cacheService.invalidateTags(tags.stream().distinct().toArray(String[]::new));
+        }
+
+        log.info("Chat transcript batch processed: received={}, written={}, took={}ms",
+                events.size(), written.size(), System.currentTimeMillis() - startTime);
+    }
+}
@@ -0,0 +1,74 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.event.ChatTurnEvent;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.output.TokenUsage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * תמליל השיחות (write-behind): כל סבב שאלה-תשובה נשלח ל-Kafka ונכתב ל-DB ב-batches
+ * על ידי ChatTranscriptConsumer. בנתיב הבקשה אין כתיבה ל-DB - רק הוספה ל-buffer של ה-producer,
+ * והסבב שמור ב-Kafka (acks=all) גם אם האפליקציה עולה מחדש לפני שנכתב.
+ * הסבב נוסף גם לזיכרון השיחה, כך שהשאלה הבאה רואה אותו לפני שהגיע ל-DB.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatTranscriptService {
+
+    private final KafkaEventProducerService kafkaEventProducerService;
+    private final ConversationMemoryService conversationMemoryService;
+    private final Tokenizer tokenizer;
+
+    @Value("${chat.transcript.enabled:true}")
+    private boolean enabled;
+
+    // התווית שנשמרת ב-modelUsed לתשובות מהמודל; תשובות מה-cache מסומנות cache:<סוג>
+    @Value("${chat.transcript.model-label:gpt-3.5-turbo}")
+    private String modelLabel;
+
+    /**
+     * רישום סבב. לא זורק - כשל ברישום לא מכשיל את התשובה למשתמש.
+     *
+     * @param cacheType  "none" לתשובה מהמודל, אחרת סוג ה-cache שממנו הגיעה
+     * @param tokenUsage שימוש ב-tokens כפי שהמודל דיווח, או null אם לא ידוע (ואז הספירה מוערכת עם ה-Tokenizer)
+     */
+    public void recordTurn(ChatSession chatSession, String question, String answer, String cacheType,
+                           long processingTimeMs, TokenUsage tokenUsage) {
+        conversationMemoryService.appendTurn(chatSession.getId(), question, answer);
+
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            boolean fromCache = cacheType != null && !"none".equals(cacheType);
+            ChatTurnEvent event = ChatTurnEvent.of(
+                    chatSession.getId(),
+                    chatSession.getUser() != null ? chatSession.getUser().getId() : null,
+                    question,
+                    answer,
+                    fromCache ? "cache:" + cacheType : modelLabel,
+                    processingTimeMs,
+                    tokenCount(tokenUsage != null ? tokenUsage.inputTokenCount() : null, question),
+                    tokenCount(tokenUsage != null ? tokenUsage.outputTokenCount() : null, answer));
+
+            kafkaEventProducerService.sendChatTurnEvent(event);
+
+        } catch (Exception e) {
+            log.error("Failed to record chat turn for session {}", chatSession.getId(), e);
+        }
+    }
+
+    // הספירה שהמודל דיווח; אם אין (ה-chain הרגיל מחזיר רק טקסט, תשובות מה-cache) - הערכה לפי הטקסט
+    private Integer tokenCount(Integer reported, String text) {
+        if (reported != null) {
+            return reported;
+        }
+        return text != null ? tokenizer.estimateTokenCountInText(text) : null;
+    }
+}
@@ -0,0 +1,101 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatMessage;
+import com.smartdocumentchat.event.ChatTurnEvent;
+import com.smartdocumentchat.repository.ChatMessageRepository;
+import com.smartdocumentchat.repository.ChatSessionRepository;
+import com.smartdocumentchat.repository.SessionMessageOrder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * כתיבת batch של סבבי שיחה כהודעות. ההוספה עוברת ב-JdbcTemplate.batchUpdate: ל-ChatMessage יש
+ * מזהה IDENTITY, ו-Hibernate לא מאגד INSERT-ים של ישויות כאלה - כל save היה round-trip נפרד.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatTranscriptWriter {
+
+    private static final String INSERT_MESSAGE_SQL =
+            "INSERT INTO chat_messages (chat_session_id, message_type, content, token_count, processing_time_ms, " +
+            "model_used, message_order, created_at, turn_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatSessionRepository chatSessionRepository;
+
+    /**
+     * כתיבת הסבבים לפי הסדר שבו התקבלו. סבב שכבר נכתב (batch שנשלח שוב) או ששייך לשיחה
+     * שנמחקה - מדולג. מחזיר את הסבבים שנכתבו בפועל.
+     */
+    @Transactional
+    public List<ChatTurnEvent> write(List<ChatTurnEvent> events) {
+        Map<String, ChatTurnEvent> byTurnId = new LinkedHashMap<>();
+        for (ChatTurnEvent event : events) {
+            if (event != null && event.getTurnId() != null && event.getSessionId() != null) {
+                byTurnId.putIfAbsent(event.getTurnId(), event);
+            }
+        }
+        if (byTurnId.isEmpty()) {
+            return List.of();
+        }
+
+        chatMessageRepository.findExistingTurnIds(byTurnId.keySet()).forEach(byTurnId::remove);
+
+        Set<Long> sessionIds = new HashSet<>();
+        byTurnId.values().forEach(event -> sessionIds.add(event.getSessionId()));
+        Set<Long> existingSessions = sessionIds.isEmpty()
+                ? Set.of()
+                : new HashSet<>(chatSessionRepository.findExistingIds(sessionIds));
+
+        List<ChatTurnEvent> turns = new ArrayList<>();
+        for (ChatTurnEvent event : byTurnId.values()) {
+            if (existingSessions.contains(event.getSessionId())) {
+                turns.add(event);
+            } else {
+                log.warn("Dropping chat turn {} - session {} no longer exists", event.getTurnId(), event.getSessionId());
+            }
+        }
+        if (turns.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Integer> lastOrders = new HashMap<>();
+        for (SessionMessageOrder order : chatMessageRepository.findLastMessageOrders(existingSessions)) {
+            lastOrders.put(order.sessionId, order.lastOrder);
+        }
+
+        List<Object[]> rows = new ArrayList<>(turns.size() * 2);
+        for (ChatTurnEvent turn : turns) {
+            int order = lastOrders.getOrDefault(turn.getSessionId(), 0);
+
+            rows.add(new Object[]{turn.getSessionId(), ChatMessage.MessageType.USER.name(), turn.getQuestion(),
+                    turn.getQuestionTokens(), null, null, order + 1,
+                    Timestamp.valueOf(turn.getAskedAt()), turn.getTurnId()});
+            rows.add(new Object[]{turn.getSessionId(), ChatMessage.MessageType.ASSISTANT.name(), turn.getAnswer(),
+                    turn.getAnswerTokens(), turn.getProcessingTimeMs(), turn.getModelUsed(), order + 2,
+                    Timestamp.valueOf(turn.getAnsweredAt()), turn.getTurnId()});
+
+            lastOrders.put(turn.getSessionId(), order + 2);
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, rows);
+
+        log.debug("Wrote {} chat turns ({} messages) for {} sessions",
+                turns.size(), rows.size(), existingSessions.size());
+        return turns;
+    }
+}
@@ -0,0 +1,358 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.User;
+import com.smartdocumentchat.entity.UserPreferences;
+import com.smartdocumentchat.repository.ChatMessageRepository;
+import com.smartdocumentchat.util.BoundedLruCache;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * זיכרון שיחה לשאלות המשך. הסבבים האחרונים של כל שיחה נשמרים בזיכרון (LRU חסום) - נטענים מ-ChatMessage
+ * פעם אחת כשהשיחה נכנסת ל-cache ומתעדכנים בכל סבב שנרשם, כך שבנתיב החם אין קריאות DB.
+ * סבב שנרשם ב-instance אחד נשלח לשאר ה-instances בערוץ ה-invalidation של CacheService ונוסף גם לחלונות שלהם -
+ * טעינה מחדש מה-DB לא מספיקה, כי התמליל נכתב ב-write-behind וייתכן שהסבב עוד לא שם.
+ * החלון שנשלח למודל חסום גם במספר הסבבים (maxContextLength של המשתמש) וגם בתקציב tokens.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationMemoryService {
+
+    private static final String CONDENSE_PROMPT =
+            "Given the conversation below and a follow-up question, rephrase the follow-up question " +
+            "as a standalone question, in its original language, that can be understood without the conversation. " +
+            "Return only the standalone question.\n\n" +
+            "Conversation:\n%s\n" +
+            "Follow-up question: %s\n" +
+            "Standalone question:";
+
+    // ברירת המחדל של UserPreferences.maxContextLength
+    private static final int DEFAULT_CONTEXT_TURNS = 5;
+
+    // הודעת המשתמש הנוכחית ותשובת המודל שה-chain מוסיף לזיכרון מעבר להיסטוריה
+    private static final int CURRENT_TURN_MESSAGES = 2;
+
+    // הודעת סבב בערוץ: conv_turn:<sessionId>:<base64 שאלה>:<base64 תשובה>
+    private static final String TURN_MESSAGE_PREFIX = "conv_turn:";
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatLanguageModel chatLanguageModel;
+    private final Tokenizer tokenizer;
+    private final UserPreferencesService userPreferencesService;
+    private final CacheService cacheService;
+
+    @Value("${chat.memory.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.memory.max-sessions:1000}")
+    private int maxSessions;
+
+    @Value("${chat.memory.idle-timeout-minutes:30}")
+    private int idleTimeoutMinutes;
+
+    // תקרה למספר הסבבים שנשמרים לשיחה - גם הגבול העליון של maxContextLength בהעדפות
+    @Value("${chat.memory.max-turns:20}")
+    private int maxTurns;
+
+    @Value("${chat.memory.max-tokens:1500}")
+    private int maxTokens;
+
+    @Value("${chat.memory.condense-questions:true}")
+    private boolean condenseQuestions;
+
+    private BoundedLruCache<Long, SessionWindow> windows;
+
+    @PostConstruct
+    public void initialize() {
+        this.windows = new BoundedLruCache<>("conversation-memory", maxSessions,
+                Duration.ofMinutes(idleTimeoutMinutes), null);
+        cacheService.addPeerListener(TURN_MESSAGE_PREFIX, this::onPeerTurn);
+
+        log.info("Conversation memory initialized - enabled: {}, maxSessions: {}, maxTurns: {}, maxTokens: {}, condense: {}",
+                enabled, maxSessions, maxTurns, maxTokens, condenseQuestions);
+    }
+
+    /**
+     * חלון ההקשר לשאלה הבאה בשיחה: הסבבים האחרונים, מהישן לחדש, עד maxContextLength של המשתמש
+     * ועד תקציב ה-tokens. סבב שחורג מהתקציב עוצר את החלון - לא מדלגים עליו לסבבים ישנים יותר.
+     */
+    public ConversationContext getContext(ChatSession chatSession, User user) {
+        if (!enabled) {
+            return ConversationContext.EMPTY;
+        }
+
+        int turnLimit = Math.min(maxTurns, userTurnLimit(user));
+        SessionWindow window = loadWindow(chatSession);
+
+        List<Turn> selected = new ArrayList<>();
+        int tokens = 0;
+        synchronized (window) {
+            Iterator<Turn> newestFirst = window.turns.descendingIterator();
+            while (newestFirst.hasNext() && selected.size() < turnLimit) {
+                Turn turn = newestFirst.next();
+                if (tokens + turn.tokens > maxTokens) {
+                    break;
+                }
+                selected.add(turn);
+                tokens += turn.tokens;
+            }
+        }
+
+        Collections.reverse(selected);
+        return new ConversationContext(selected, tokens);
+    }
+
+    /**
+     * ניסוח שאלת המשך כשאלה עצמאית - היא זו שמשמשת לשליפה ולמפתחות ה-cache.
+     * בלי היסטוריה, או אם המודל נכשל, מוחזרת השאלה המקורית.
+     */
+    public String condenseQuestion(String question, ConversationContext context) {
+        if (!condenseQuestions || context.isEmpty()) {
+            return question;
+        }
+
+        try {
+            StringBuilder history = new StringBuilder();
+            for (Turn turn : context.turns) {
+                history.append("User: ").append(turn.question).append('\n')
+                        .append("Assistant: ").append(turn.answer).append('\n');
+            }
+
+            String standalone = chatLanguageModel.generate(String.format(CONDENSE_PROMPT, history, question));
+            if (standalone == null || standalone.isBlank()) {
+                return question;
+            }
+
+            log.debug("Condensed follow-up question ({} turns of context): '{}' -> '{}'",
+                    context.turns.size(), question, standalone.trim());
+            return standalone.trim();
+
+        } catch (Exception e) {
+            log.warn("Failed to condense follow-up question, using it as is: {}", e.getMessage());
+            return question;
+        }
+    }
+
+    /**
+     * הוספת סבב לחלון של השיחה, כאן ובשאר ה-instances. שיחה שאינה ב-cache לא נטענת כאן -
+     * הסבב יגיע מה-DB כשתיטען.
+     */
+    public void appendTurn(Long sessionId, String question, String answer) {
+        if (!enabled || sessionId == null || question == null || answer == null) {
+            return;
+        }
+
+        appendLocal(sessionId, question, answer);
+        cacheService.publishToPeers(TURN_MESSAGE_PREFIX, sessionId + ":" + encode(question) + ":" + encode(answer));
+    }
+
+    /**
+     * סבב שנרשם ב-instance אחר
+     */
+    void onPeerTurn(String message) {
+        if (!enabled) {
+            return;
+        }
+
+        String[] parts = message.split(":", -1);
+        if (parts.length != 3) {
+            log.warn("Ignoring malformed conversation turn message");
+            return;
+        }
+
+        try {
+            appendLocal(Long.parseLong(parts[0]), decode(parts[1]), decode(parts[2]));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed conversation turn message: {}", e.getMessage());
+        }
+    }
+
+    private void appendLocal(Long sessionId, String question, String answer) {
+        SessionWindow window = windows.getIfPresent(sessionId);
+        if (window == null) {
+            return;
+        }
+
+        try {
+            Turn turn = newTurn(question, answer);
+            synchronized (window) {
+                if (window.loaded) {
+                    window.add(turn, maxTurns);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to append turn to conversation memory of session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * הסרת החלון של שיחה (למשל אחרי מחיקתה)
+     */
+    public void invalidateSession(Long sessionId) {
+        windows.invalidate(sessionId);
+    }
+
+    public Map<String, Object> getStats() {
+        BoundedLruCache.Stats stats = windows.getStats();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("cachedSessions", stats.size);
+        result.put("maxSessions", stats.maxSize);
+        result.put("hits", stats.hits);
+        result.put("misses", stats.misses);
+        result.put("evictions", stats.evictions);
+        result.put("hitRate", stats.getHitRate());
+        result.put("maxTokens", maxTokens);
+        return result;
+    }
+
+    /**
+     * החלון של השיחה, נטען מה-DB בגישה הראשונה. הטעינה רצה תחת הנעילה של החלון עצמו
+     * ולא של ה-cache - רק בקשות של אותה שיחה ממתינות לה.
+     */
+    private SessionWindow loadWindow(ChatSession chatSession) {
+        SessionWindow window = windows.get(chatSession.getId(), id -> new SessionWindow());
+
+        synchronized (window) {
+            if (!window.loaded) {
+                List<com.smartdocumentchat.entity.ChatMessage> recent =
+                        chatMessageRepository.findLastMessages(chatSession, maxTurns * 2);
+
+                // findLastMessages מחזיר מהחדש לישן; סבב הוא USER ואחריו ASSISTANT
+                String pendingQuestion = null;
+                for (int i = recent.size() - 1; i >= 0; i--) {
+                    com.smartdocumentchat.entity.ChatMessage message = recent.get(i);
+                    if (message.getMessageType() == com.smartdocumentchat.entity.ChatMessage.MessageType.USER) {
+                        pendingQuestion = message.getContent();
+                    } else if (message.getMessageType() == com.smartdocumentchat.entity.ChatMessage.MessageType.ASSISTANT
+                            && pendingQuestion != null) {
+                        window.add(newTurn(pendingQuestion, message.getContent()), maxTurns);
+                        pendingQuestion = null;
+                    }
+                }
+                window.loaded = true;
+
+                log.debug("Loaded conversation memory for session {}: {} turns", chatSession.getId(), window.turns.size());
+            }
+        }
+
+        return window;
+    }
+
+    private static String encode(String text) {
+        return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String encoded) {
+        return new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
+    }
+
+    private int userTurnLimit(User user) {
+        try {
+            UserPreferences preferences = userPreferencesService.getUserPreferences(user);
+            if (preferences.getMaxContextLength() != null) {
+                return Math.max(1, preferences.getMaxContextLength());
+            }
+        } catch (Exception e) {
+            log.debug("Could not read maxContextLength for user {}: {}", user != null ? user.getId() : null, e.getMessage());
+        }
+        return DEFAULT_CONTEXT_TURNS;
+    }
+
+    private Turn newTurn(String question, String answer) {
+        int tokens = tokenizer.estimateTokenCountInText(question) + tokenizer.estimateTokenCountInText(answer);
+        return new Turn(question, answer, tokens);
+    }
+
+    /**
+     * סבב שאלה-תשובה בחלון, עם מספר ה-tokens שלו (מחושב פעם אחת בהוספה)
+     */
+    public static class Turn {
+        public final String question;
+        public final String answer;
+        public final int tokens;
+
+        Turn(String question, String answer, int tokens) {
+            this.question = question;
+            this.answer = answer;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * חלון ההקשר לבקשה אחת - עותק, לא מושפע מסבבים שנוספים אחריו
+     */
+    public static class ConversationContext {
+        public static final ConversationContext EMPTY = new ConversationContext(List.of(), 0);
+
+        public final List<Turn> turns;
+        public final int tokens;
+
+        ConversationContext(List<Turn> turns, int tokens) {
+            this.turns = turns;
+            this.tokens = tokens;
+        }
+
+        public boolean isEmpty() {
+            return turns.isEmpty();
+        }
+
+        /**
+         * ההיסטוריה כהודעות למודל, מהישנה לחדשה
+         */
+        public List<ChatMessage> toMessages() {
+            List<ChatMessage> messages = new ArrayList<>(turns.size() * 2);
+            for (Turn turn : turns) {
+                messages.add(UserMessage.from(turn.question));
+                messages.add(AiMessage.from(turn.answer));
+            }
+            return messages;
+        }
+
+        /**
+         * זיכרון ל-ConversationalRetrievalChain של בקשה אחת, עם מקום גם לסבב הנוכחי
+         */
+        public ChatMemory toChatMemory() {
+            ChatMemory memory = MessageWindowChatMemory.withMaxMessages(turns.size() * 2 + CURRENT_TURN_MESSAGES);
+            toMessages().forEach(memory::add);
+            return memory;
+        }
+    }
+
+    private static class SessionWindow {
+        private final Deque<Turn> turns = new ArrayDeque<>();
+        private boolean loaded;
+
+        void add(Turn turn, int maxTurns) {
+            turns.addLast(turn);
+            while (turns.size() > maxTurns) {
+                turns.removeFirst();
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.IngestionProperties;
+import com.smartdocumentchat.entity.User;
+import com.smartdocumentchat.entity.UserPreferences;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * מנוע ה-chunking: גודל ה-chunk וה-overlap לפי ה-ChunkStrategy של המשתמש, והגבולות לפי מצב החיתוך -
+ * עמוד, כותרות או פסקאות. ה-chunks הם תת-מחרוזות מדויקות של הטקסט, וכל אחד נושא את ה-offsets שלו
+ * במסמך (ואת מספר העמוד מהפרסור), כך שאפשר להציג ציטוט בלי לקרוא שוב את ה-PDF.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentChunker {
+
+    public static final String START_OFFSET_KEY = "start_offset";
+    public static final String END_OFFSET_KEY = "end_offset";
+    public static final String SECTION_KEY = "section";
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n[ \\t\\x0B\\f\\r]*\\n");
+    private static final Pattern LINE_BREAK = Pattern.compile("\\n");
+
+    // כותרת: markdown, מספור (1. / 2.3 / IV.), מילת פרק/סעיף, או שורה קצרה באותיות לטיניות גדולות
+    private static final Pattern HEADING_LINE = Pattern.compile(
+            "^(?:#{1,6}\\s+\\S.*" +
+            "|(?:\\d+\\.(?:\\d+\\.?)*|[IVXLC]+\\.)\\s+\\S.*" +
+            "|(?:פרק|סעיף|חלק|נספח|Chapter|Section|Part|Appendix)\\s+[\\p{L}\\p{N}][\\p{L}\\p{N}.]*(?:\\s*[:\\-–]?\\s*\\S.*)?" +
+            "|[A-Z][A-Z0-9 ,&'/\\-]{3,})$");
+    private static final int MAX_HEADING_LENGTH = 100;
+
+    // כמה מותר לחרוג מהגודל המאוזן במצב עמוד, כדי לא לייצר chunk זנב קטן
+    private static final double PAGE_BALANCE_SLACK = 1.1;
+
+    private final IngestionProperties ingestionProperties;
+    private final UserPreferencesService userPreferencesService;
+
+    /**
+     * פרמטרי החיתוך למסמך של משתמש: גודל ו-overlap מה-defaultChunkStrategy שלו, מצב החיתוך מההגדרות.
+     * אם אין העדפות זמינות - גודל ה-chunk מההגדרות.
+     */
+    public ChunkSpec specFor(User user) {
+        UserPreferences.ChunkStrategy strategy = null;
+        try {
+            strategy = userPreferencesService.getUserPreferences(user).getDefaultChunkStrategy();
+        } catch (Exception e) {
+            log.debug("Could not read chunk strategy for user {}: {}", user != null ? user.getId() : null, e.getMessage());
+        }
+
+        int chunkSize = Math.max(1, strategy != null ? strategy.getChunkSize() : ingestionProperties.getChunkSize());
+        int overlap = Math.max(0, Math.min(chunkSize / 2,
+                strategy != null ? strategy.getOverlap() : ingestionProperties.getChunkOverlap()));
+
+        return new ChunkSpec(ingestionProperties.getChunkingMode(), chunkSize, overlap,
+                ingestionProperties.isStreamingParse());
+    }
+
+    /**
+     * חיתוך עצל של רצף מסמכים (למשל עמודים): כל מסמך נחתך רק כשה-chunks הקודמים כבר נצרכו,
+     * כך שבזיכרון יש רק את ה-chunks של מסמך אחד. ה-offsets מצטברים לאורך הרצף,
+     * והכותרת האחרונה של עמוד ממשיכה לטקסט שבתחילת העמוד הבא.
+     */
+    public Iterator<TextSegment> splitLazily(Iterator<Document> documents, ChunkSpec spec) {
+        return new Iterator<>() {
+            private final SplitState state = new SplitState();
+            private Iterator<TextSegment> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && documents.hasNext()) {
+                    current = split(documents.next(), spec, state).iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public TextSegment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    private List<TextSegment> split(Document document, ChunkSpec spec, SplitState state) {
+        String text = document.text();
+        int baseOffset = state.offset;
+        state.offset += text.length();
+
+        List<Section> sections = spec.mode == ChunkingMode.HEADING
+                ? headingSections(text, state, spec.chunkSize)
+                : List.of(new Section(0, text.length(), null));
+
+        List<TextSegment> segments = new ArrayList<>();
+        for (Section section : sections) {
+            List<int[]> spans = spec.mode == ChunkingMode.PAGE
+                    ? balancedSpans(text, section, spec)
+                    : pack(text, units(text, section.start, section.end, PARAGRAPH_BREAK, spec.chunkSize),
+                            spec.chunkSize, spec.overlap);
+
+            for (int[] span : spans) {
+                Metadata metadata = document.metadata().copy();
+                metadata.put(START_OFFSET_KEY, baseOffset + span[0]);
+                metadata.put(END_OFFSET_KEY, baseOffset + span[1]);
+                if (section.heading != null) {
+                    metadata.put(SECTION_KEY, section.heading);
+                }
+                segments.add(TextSegment.from(text.substring(span[0], span[1]), metadata));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * מצב עמוד: העמוד הוא chunk אחד אם הוא נכנס בגודל; אחרת הוא מחולק לחלקים שווים בערך לפי שורות
+     */
+    private static List<int[]> balancedSpans(String text, Section section, ChunkSpec spec) {
+        int start = skipWhitespace(text, section.start, section.end);
+        int end = trimEnd(text, start, section.end);
+        if (start >= end) {
+            return List.of();
+        }
+
+        int parts = (end - start + spec.chunkSize - 1) / spec.chunkSize;
+        int target = Math.min(spec.chunkSize,
+                (int) Math.ceil((double) (end - start) / parts * PAGE_BALANCE_SLACK));
+        return pack(text, units(text, start, end, LINE_BREAK, target), target, parts > 1 ? spec.overlap : 0);
+    }
+
+    /**
+     * חלוקה לפי כותרות: כל קטע מתחיל בשורת כותרת ונמשך עד הכותרת הבאה. קטעים סמוכים קטנים מאוחדים
+     * כל עוד יחד הם נכנסים ב-chunk אחד; chunk לא חוצה גבול של קטע.
+     */
+    private static List<Section> headingSections(String text, SplitState state, int maxLength) {
+        List<Section> sections = new ArrayList<>();
+        int sectionStart = 0;
+        String heading = state.lastHeading;
+
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+
+            String line = text.substring(lineStart, lineEnd).strip();
+            if (isHeading(line)) {
+                if (lineStart > sectionStart) {
+                    sections.add(new Section(sectionStart, lineStart, heading));
+                }
+                sectionStart = lineStart;
+                heading = line;
+            }
+            lineStart = lineEnd + 1;
+        }
+        sections.add(new Section(sectionStart, text.length(), heading));
+        state.lastHeading = heading;
+
+        List<Section> merged = new ArrayList<>(sections.size());
+        Section current = sections.get(0);
+        for (int i = 1; i < sections.size(); i++) {
+            Section next = sections.get(i);
+            if (next.end - current.start <= maxLength) {
+                current = new Section(current.start, next.end, current.heading != null ? current.heading : next.heading);
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    private static boolean isHeading(String line) {
+        if (line.length() < 2 || line.length() > MAX_HEADING_LENGTH) {
+            return false;
+        }
+        char last = line.charAt(line.length() - 1);
+        if (last == '.' || last == ',' || last == ';') {
+            return false;
+        }
+        return HEADING_LINE.matcher(line).matches();
+    }
+
+    /**
+     * יחידות בסיס בתוך [start, end) לפי המפריד, בלי רווחים בקצוות. יחידה ארוכה מ-maxLength
+     * מפורקת בסוף משפט או ברווח שבחצי השני של החלון, ורק אם אין כזה - באמצע מילה.
+     */
+    private static List<int[]> units(String text, int start, int end, Pattern separator, int maxLength) {
+        List<int[]> units = new ArrayList<>();
+        Matcher matcher = separator.matcher(text).region(start, end);
+        int unitStart = start;
+        while (matcher.find()) {
+            addUnit(text, unitStart, matcher.start(), maxLength, units);
+            unitStart = matcher.end();
+        }
+        addUnit(text, unitStart, end, maxLength, units);
+        return units;
+    }
+
+    private static void addUnit(String text, int start, int end, int maxLength, List<int[]> units) {
+        int from = skipWhitespace(text, start, end);
+        int to = trimEnd(text, from, end);
+
+        while (to - from > maxLength) {
+            int cut = breakPoint(text, from, from + maxLength);
+            units.add(new int[]{from, trimEnd(text, from, cut)});
+            from = skipWhitespace(text, cut, to);
+        }
+        if (from < to) {
+            units.add(new int[]{from, to});
+        }
+    }
+
+    private static int breakPoint(String text, int from, int limit) {
+        int earliest = from + (limit - from) / 2;
+
+        for (int i = limit - 1; i > earliest; i--) {
+            char c = text.charAt(i - 1);
+            if ((c == '.' || c == '!' || c == '?' || c == ':') && Character.isWhitespace(text.charAt(i))) {
+                return i;
+            }
+        }
+        for (int i = limit; i > earliest; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * איחוד יחידות ל-chunks עד maxLength. chunk חדש מתחיל overlap תווים לפני סוף הקודם (בתחילת מילה),
+     * אלא אם אז היחידה הבאה כבר לא נכנסת
+     */
+    private static List<int[]> pack(String text, List<int[]> units, int maxLength, int overlap) {
+        List<int[]> spans = new ArrayList<>();
+        int overlapStart = -1;
+
+        int i = 0;
+        while (i < units.size()) {
+            int chunkStart = overlapStart >= 0 && units.get(i)[1] - overlapStart <= maxLength
+                    ? overlapStart : units.get(i)[0];
+            int chunkEnd = units.get(i)[1];
+            i++;
+
+            while (i < units.size() && units.get(i)[1] - chunkStart <= maxLength) {
+                chunkEnd = units.get(i)[1];
+                i++;
+            }
+
+            spans.add(new int[]{chunkStart, chunkEnd});
+            overlapStart = overlap > 0 ? overlapStart(text, chunkStart, chunkEnd, overlap) : -1;
+        }
+        return spans;
+    }
+
+    private static int overlapStart(String text, int chunkStart, int chunkEnd, int overlap) {
+        for (int i = Math.max(chunkStart + 1, chunkEnd - overlap); i < chunkEnd; i++) {
+            if (Character.isWhitespace(text.charAt(i - 1)) && !Character.isWhitespace(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String text, int from, int end) {
+        while (from < end && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(String text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    public enum ChunkingMode {
+        PAGE,       // עמוד = chunk; עמוד גדול מחולק לחלקים מאוזנים
+        HEADING,    // קטעים לפי כותרות, ובתוכם פסקאות
+        PARAGRAPH   // פסקאות שלמות עד גודל ה-chunk
+    }
+
+    /**
+     * פרמטרי החיתוך למסמך אחד
+     */
+    public static class ChunkSpec {
+        public final ChunkingMode mode;
+        public final int chunkSize;
+        public final int overlap;
+        // חלק ממפתח ה-cache של embeddings - פרמטרים שונים נותנים chunks שונים
+        public final String signature;
+
+        ChunkSpec(ChunkingMode mode, int chunkSize, int overlap, boolean paged) {
+            this.mode = mode;
+            this.chunkSize = chunkSize;
+            this.overlap = overlap;
+            this.signature = String.format("%s%s:%d:%d",
+                    mode.name().toLowerCase(), paged ? "-paged" : "", chunkSize, overlap);
+        }
+    }
+
+    private static class Section {
+        private final int start;
+        private final int end;
+        private final String heading;
+
+        Section(int start, int end, String heading) {
+            this.start = start;
+            this.end = end;
+            this.heading = heading;
+        }
+    }
+
+    private static class SplitState {
+        private int offset;
+        private String lastHeading;
+    }
+}
@@ -1,17 +1,18 @@
 package com.smartdocumentchat.service;
 
 import com.smartdocumentchat.config.KafkaConfig;
-import com.smartdocumentchat.config.QdrantConfig;
+import com.smartdocumentchat.entity.CachedChunkEmbedding;
 import com.smartdocumentchat.entity.ChatSession;
 import com.smartdocumentchat.entity.Document;
+import com.smartdocumentchat.entity.EmbeddingCacheEntry;
 import com.smartdocumentchat.event.DocumentProcessingEvent;
 import com.smartdocumentchat.event.DocumentProcessingStatusEvent;
 import com.smartdocumentchat.repository.ChatSessionRepository;
 import com.smartdocumentchat.repository.DocumentRepository;
-import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -22,8 +23,21 @@ import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
@@ -33,12 +47,19 @@ public class DocumentProcessingConsumer {
     private final DocumentRepository documentRepository;
     private final ChatSessionRepository chatSessionRepository;
     private final QdrantVectorService qdrantVectorService;
-    private final QdrantConfig.SessionAwareIngestorFactory ingestorFactory;
+    private final EmbeddingIngestionPipeline ingestionPipeline;
+    private final EmbeddingCacheService embeddingCacheService;
     private final KafkaEventProducerService kafkaEventProducerService;
     private final CacheService cacheService;
     private final DocumentProgressTrackingService progressTrackingService;
     private final DocumentProcessingErrorHandler errorHandler;
     private final FileStorageService fileStorageService;
+    private final LexicalIndexService lexicalIndexService;
+    private final StreamingPdfParser streamingPdfParser;
+    private final DocumentChunker documentChunker;
+    private final IncrementalIngestionService incrementalIngestionService;
+    private final VectorGarbageCollector vectorGarbageCollector;
+    private final SemanticAnswerCache semanticAnswerCache;
 
 
     @KafkaListener(
@@ -123,63 +144,215 @@ public class DocumentProcessingConsumer {
         // עדכון סטטוס ל-PROCESSING
         updateDocumentStatus(event.getDocumentId(), Document.ProcessingStatus.PROCESSING, 10, null);
 
-        // פרסור המסמך
+        // בדיקה ב-cache של embeddings - אותו תוכן כבר עובד (בשיחה או אצל משתמש אחר)
+        String contentHash = event.getContentHash() != null ? event.getContentHash() : document.getContentHash();
+        DocumentChunker.ChunkSpec chunkSpec = documentChunker.specFor(chatSession.getUser());
+        String chunkingSignature = chunkSpec.signature;
+
+        // הנקודות שכבר שמורות למסמך (עיבוד חוזר) - רק chunks שאינם שמורים נכתבים, והשאר נמחקות בסוף
+        IncrementalIngestionService.ChunkDiff chunkDiff = incrementalIngestionService.begin(
+                event.getSessionId(), event.getUserId(), event.getDocumentId());
+
+        Optional<EmbeddingCacheEntry> cachedEmbeddings =
+                embeddingCacheService.findComplete(contentHash, chunkingSignature);
+        if (cachedEmbeddings.isPresent()) {
+            processFromEmbeddingCache(event, document, chatSession, cachedEmbeddings.get(), chunkDiff, startTime);
+            return;
+        }
+
+        // פרסור המסמך - עמוד אחרי עמוד, ישר לחיתוך ול-embedding
         log.info("Parsing document: documentId={}, fileName={}", event.getDocumentId(), event.getFileName());
         kafkaEventProducerService.sendProcessingStatusEvent(
                 DocumentProcessingStatusEvent.parsing(
                         event.getDocumentId(), event.getUserId(), event.getSessionId(), correlationId));
 
-        dev.langchain4j.data.document.Document langchainDoc = parseDocument(
-                event.getFileContent(), event.getFileName(), event.getDocumentId(), chatSession);
+        Metadata baseMetadata = new Metadata();
+        addDocumentMetadata(baseMetadata, event.getFileName(), event.getDocumentId(), chatSession);
 
-        updateDocumentStatus(event.getDocumentId(), Document.ProcessingStatus.PROCESSING, 30, null);
+        String vectorCollectionName = qdrantVectorService.generateSessionCollectionName(
+                event.getSessionId(), event.getUserId());
 
-        // חיתוך לchunks
-        int characterCount = langchainDoc.text().length();
-        log.info("Chunking document: documentId={}, characters={}", event.getDocumentId(), characterCount);
-        kafkaEventProducerService.sendProcessingStatusEvent(
-                DocumentProcessingStatusEvent.chunking(
-                        event.getDocumentId(), event.getUserId(), event.getSessionId(),
-                        correlationId, characterCount));
+        try (StreamingPdfParser.PdfPages pages = streamingPdfParser.open(
+                openDocumentContent(event, document), baseMetadata)) {
+
+            updateDocumentStatus(event.getDocumentId(), Document.ProcessingStatus.PROCESSING, 30, null);
+
+            // מספר התווים וה-chunks ידוע רק בסוף - הדפים נחתכים תוך כדי ה-embedding
+            log.info("Chunking document: documentId={}, pages={}, chunking={}",
+                    event.getDocumentId(), pages.getPageCount(), chunkingSignature);
+            kafkaEventProducerService.sendProcessingStatusEvent(
+                    DocumentProcessingStatusEvent.chunking(
+                            event.getDocumentId(), event.getUserId(), event.getSessionId(),
+                            correlationId, null));
+
+            // רק ספירה - ה-chunks עצמם לא נשמרים, כך שהזיכרון לא גדל עם המסמך
+            AtomicInteger chunkCounter = new AtomicInteger();
+            Iterator<TextSegment> split = documentChunker.splitLazily(pages, chunkSpec);
+            Iterator<TextSegment> allSegments = new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return split.hasNext();
+                }
 
-        updateDocumentStatus(event.getDocumentId(), Document.ProcessingStatus.PROCESSING, 50, null);
+                @Override
+                public TextSegment next() {
+                    TextSegment segment = split.next();
+                    segment.metadata().put(EmbeddingCacheService.CHUNK_INDEX_KEY, chunkCounter.getAndIncrement());
+                    return segment;
+                }
+            };
+            Iterator<TextSegment> segments = chunkDiff.changedOnly(allSegments);
+
+            updateDocumentStatus(event.getDocumentId(), Document.ProcessingStatus.PROCESSING, 50, null);
+
+            // יצירת embeddings ואחסון
+            log.info("Creating embeddings: documentId={}, collection={}",
+                    event.getDocumentId(), vectorCollectionName);
+            kafkaEventProducerService.sendProcessingStatusEvent(
+                    DocumentProcessingStatusEvent.embedding(
+                            event.getDocumentId(), event.getUserId(), event.getSessionId(),
+                            correlationId, null));
+
+            updateDocumentStatus(event.getDocumentId(), Document.ProcessingStatus.PROCESSING, 70, null);
+
+            // קבלת embedding store לשיחה
+            EmbeddingStore<TextSegment> sessionEmbeddingStore =
+                    qdrantVectorService.getEmbeddingStoreForSession(chatSession);
+
+            log.info("Storing in vector database: documentId={}, collection={}",
+                    event.getDocumentId(), vectorCollectionName);
+            kafkaEventProducerService.sendProcessingStatusEvent(
+                    DocumentProcessingStatusEvent.storing(
+                            event.getDocumentId(), event.getUserId(), event.getSessionId(),
+                            correlationId, vectorCollectionName));
+
+            // פתיחת רשומה ב-cache של embeddings - ה-vectors נשמרים תוך כדי ה-pipeline.
+            // בעיבוד חוזר רק חלק מה-chunks עוברים embedding, ולכן אין רשומה שלמה לשמור
+            Optional<EmbeddingCacheEntry> cacheEntry = chunkDiff.hasStoredPoints()
+                    ? Optional.empty()
+                    : embeddingCacheService.beginEntry(contentHash, chunkingSignature);
+            AtomicBoolean cacheWriteFailed = new AtomicBoolean(false);
+
+            // embedding ב-batches מקביליים והכנסה ל-vector database ב-batches; ההתקדמות לפי עמודים
+            EmbeddingIngestionPipeline.IngestionResult ingestionResult;
+            try {
+                ingestionResult = ingestionPipeline.ingestSegments(
+                        segments,
+                        sessionEmbeddingStore,
+                        storedSegments -> updateDocumentStatus(event.getDocumentId(),
+                                Document.ProcessingStatus.PROCESSING,
+                                70 + (int) (20.0 * pages.getPagesRead() / Math.max(1, pages.getPageCount())), null),
+                        cacheEntry.isEmpty() ? null : (batchSegments, batchEmbeddings) -> {
+                            if (cacheWriteFailed.get()) {
+                                return;
+                            }
+                            try {
+                                embeddingCacheService.storeBatch(cacheEntry.get().getId(), batchSegments, batchEmbeddings);
+                            } catch (Exception e) {
+                                // כשלון ב-cache לא מכשיל את העיבוד
+                                log.warn("Failed to write embedding cache batch: entryId={}, error={}",
+                                        cacheEntry.get().getId(), e.getMessage());
+                                cacheWriteFailed.set(true);
+                            }
+                        });
+
+                if (chunkCounter.get() == 0) {
+                    throw new Exception("Document parsed but contains no text");
+                }
+            } catch (Exception e) {
+                cacheEntry.ifPresent(entry -> embeddingCacheService.discard(entry.getId()));
+                throw e;
+            }
+
+            int characterCount = (int) pages.getCharacterCount();
+            int chunkCount = chunkCounter.get();
+            cacheEntry.ifPresent(entry -> {
+                if (cacheWriteFailed.get()) {
+                    embeddingCacheService.discard(entry.getId());
+                } else {
+                    embeddingCacheService.complete(entry, chunkCount, characterCount);
+                }
+            });
+
+            incrementalIngestionService.finish(chunkDiff);
+
+            // האינדקס ה-lexical נטען מה-payload ב-Qdrant בחיפוש הראשון; גרסה קודמת של המסמך יוצאת ממנו
+            lexicalIndexService.removeDocument(event.getSessionId(), event.getDocumentId());
+
+            completeDocument(event, document, characterCount, chunkCount, vectorCollectionName, startTime);
+
+            log.info("Document processed: documentId={}, pages={}, chunks={}, embedded={}, embeddingBatches={}, " +
+                            "upsertBatches={}",
+                    event.getDocumentId(), pages.getPageCount(), chunkCount, ingestionResult.segmentCount,
+                    ingestionResult.embeddingBatches, ingestionResult.upsertBatches);
+        }
+    }
+
+    /**
+     * עיבוד מתוך ה-cache של embeddings - בלי פרסור ובלי קריאות embedding, רק upsert לשיחה
+     * של ה-chunks שעוד לא שמורים למסמך
+     */
+    private void processFromEmbeddingCache(DocumentProcessingEvent event, Document document,
+                                           ChatSession chatSession, EmbeddingCacheEntry cacheEntry,
+                                           IncrementalIngestionService.ChunkDiff chunkDiff, long startTime) {
+        String correlationId = event.getCorrelationId();
 
-        // יצירת embeddings ואחסון
         String vectorCollectionName = qdrantVectorService.generateSessionCollectionName(
                 event.getSessionId(), event.getUserId());
 
-        log.info("Creating embeddings: documentId={}, collection={}",
-                event.getDocumentId(), vectorCollectionName);
+        log.info("Reusing cached embeddings: documentId={}, cacheEntryId={}, chunks={}, collection={}",
+                event.getDocumentId(), cacheEntry.getId(), cacheEntry.getChunkCount(), vectorCollectionName);
         kafkaEventProducerService.sendProcessingStatusEvent(
-                DocumentProcessingStatusEvent.embedding(
+                DocumentProcessingStatusEvent.storing(
                         event.getDocumentId(), event.getUserId(), event.getSessionId(),
-                        correlationId, estimateChunkCount(characterCount)));
-
-        updateDocumentStatus(event.getDocumentId(), Document.ProcessingStatus.PROCESSING, 70, null);
+                        correlationId, vectorCollectionName));
 
-        // קבלת embedding store לשיחה
         EmbeddingStore<TextSegment> sessionEmbeddingStore =
                 qdrantVectorService.getEmbeddingStoreForSession(chatSession);
 
-        // יצירת ingestor ספציפי לsession
-        EmbeddingStoreIngestor sessionIngestor =
-                ingestorFactory.createIngestorForStore(sessionEmbeddingStore);
+        // metadata של המסמך הנוכחי - ה-chunks משותפים אבל השיוך לשיחה/משתמש לא
+        Metadata baseMetadata = new Metadata();
+        addDocumentMetadata(baseMetadata, event.getFileName(), event.getDocumentId(), chatSession);
+
+        embeddingCacheService.forEachPage(cacheEntry, ingestionPipeline.getUpsertBatchSize(), page -> {
+            List<TextSegment> segments = new ArrayList<>(page.size());
+            List<Embedding> embeddings = new ArrayList<>(page.size());
+
+            for (CachedChunkEmbedding chunk : page) {
+                Metadata metadata = baseMetadata.copy();
+                metadata.put(EmbeddingCacheService.CHUNK_INDEX_KEY, chunk.getChunkIndex());
+                embeddingCacheService.restorePosition(chunk, metadata);
+                TextSegment segment = TextSegment.from(chunk.getText(), metadata);
+                if (!chunkDiff.claim(segment)) {
+                    segments.add(segment);
+                    embeddings.add(Embedding.from(chunk.decodeVector()));
+                }
+            }
+
+            if (!segments.isEmpty()) {
+                ingestionPipeline.upsertPrecomputed(segments, embeddings, sessionEmbeddingStore);
+            }
+        });
 
-        log.info("Storing in vector database: documentId={}, collection={}",
-                event.getDocumentId(), vectorCollectionName);
-        kafkaEventProducerService.sendProcessingStatusEvent(
-                DocumentProcessingStatusEvent.storing(
-                        event.getDocumentId(), event.getUserId(), event.getSessionId(),
-                        correlationId, vectorCollectionName));
+        incrementalIngestionService.finish(chunkDiff);
+
+        lexicalIndexService.removeDocument(event.getSessionId(), event.getDocumentId());
 
-        // הכנסה ל-vector database
-        sessionIngestor.ingest(langchainDoc);
+        int characterCount = cacheEntry.getCharacterCount() != null ? cacheEntry.getCharacterCount() : 0;
+        completeDocument(event, document, characterCount, cacheEntry.getChunkCount(),
+                vectorCollectionName, startTime);
+    }
 
+    /**
+     * עדכון המסמך להצלחה ושליחת סטטוס "הושלם"
+     */
+    private void completeDocument(DocumentProcessingEvent event, Document document, int characterCount,
+                                  int chunkCount, String vectorCollectionName, long startTime) {
         updateDocumentStatus(event.getDocumentId(), Document.ProcessingStatus.PROCESSING, 90, null);
 
         // עדכון המסמך בDB להצלחה
         document.setCharacterCount(characterCount);
-        document.setChunkCount(estimateChunkCount(characterCount));
+        document.setChunkCount(chunkCount);
         document.setVectorCollectionName(vectorCollectionName);
         document.setProcessingStatus(Document.ProcessingStatus.COMPLETED);
         document.setProcessingProgress(100);
@@ -193,11 +366,11 @@ public class DocumentProcessingConsumer {
 
         // שליחת סטטוס "הושלם"
         kafkaEventProducerService.sendCompletedStatus(
-                event.getDocumentId(), event.getUserId(), event.getSessionId(), correlationId,
-                characterCount, estimateChunkCount(characterCount), processingTime, vectorCollectionName);
+                event.getDocumentId(), event.getUserId(), event.getSessionId(), event.getCorrelationId(),
+                characterCount, chunkCount, processingTime, vectorCollectionName);
 
         log.info("Document processed successfully: documentId={}, characters={}, chunks={}, time={}ms",
-                event.getDocumentId(), characterCount, estimateChunkCount(characterCount), processingTime);
+                event.getDocumentId(), characterCount, chunkCount, processingTime);
     }
 
     private void deleteDocument(DocumentProcessingEvent event) {
@@ -209,6 +382,10 @@ public class DocumentProcessingConsumer {
             document.setActive(false);
             documentRepository.save(document);
 
+            lexicalIndexService.removeDocument(event.getSessionId(), event.getDocumentId());
+            vectorGarbageCollector.deleteDocumentVectors(
+                    event.getSessionId(), event.getUserId(), event.getDocumentId());
+
             // פינוי cache
             invalidateCache(event.getSessionId(), event.getUserId());
 
@@ -225,29 +402,41 @@ public class DocumentProcessingConsumer {
         log.info("Document processing cancelled: documentId={}", event.getDocumentId());
     }
 
-    private dev.langchain4j.data.document.Document parseDocument(
-            byte[] fileContent, String fileName, Long documentId, ChatSession chatSession) throws Exception {
+    /**
+     * פתיחת תוכן המסמך - claim-check מ-MinIO, או תוכן inline מאירועים ישנים
+     */
+    private InputStream openDocumentContent(DocumentProcessingEvent event, Document document) {
+        if (event.hasInlineContent()) {
+            log.debug("Using inline content from event: documentId={}", event.getDocumentId());
+            return new ByteArrayInputStream(event.getFileContent());
+        }
 
-        ApachePdfBoxDocumentParser parser = new ApachePdfBoxDocumentParser();
+        // האירוע נושא רק את מפתח האובייקט; נפילה לנתיב השמור ב-DB עבור אירועים ללא מפתח
+        String objectKey = event.getObjectKey() != null ? event.getObjectKey() : document.getFileName();
+        if (objectKey == null || objectKey.isBlank()) {
+            throw new IllegalStateException("No storage object key for document: " + event.getDocumentId());
+        }
 
-        try (ByteArrayInputStream byteStream = new ByteArrayInputStream(fileContent)) {
-            dev.langchain4j.data.document.Document document = parser.parse(byteStream);
+        log.debug("Streaming document content from MinIO: documentId={}, objectKey={}",
+                event.getDocumentId(), objectKey);
 
-            if (document.text() == null || document.text().trim().isEmpty()) {
-                throw new Exception("Document parsed but contains no text");
-            }
+        String expectedHash = event.getContentHash() != null ? event.getContentHash() : document.getContentHash();
+        InputStream objectStream = fileStorageService.getFile(objectKey);
 
-            // הוספת metadata
-            document.metadata().add("source", fileName);
-            document.metadata().add("document_id", documentId.toString());
-            document.metadata().add("user_id", chatSession.getUser().getId().toString());
-            document.metadata().add("username", chatSession.getUser().getUsername());
-            document.metadata().add("session_id", chatSession.getId().toString());
-            document.metadata().add("session_title", chatSession.getDisplayTitle());
-            document.metadata().add("upload_time", LocalDateTime.now().toString());
+        return expectedHash != null
+                ? new HashVerifyingInputStream(objectStream, expectedHash, objectKey)
+                : objectStream;
+    }
 
-            return document;
-        }
+    private void addDocumentMetadata(Metadata metadata, String fileName, Long documentId,
+                                     ChatSession chatSession) {
+        metadata.add("source", fileName);
+        metadata.add("document_id", documentId.toString());
+        metadata.add("user_id", chatSession.getUser().getId().toString());
+        metadata.add("username", chatSession.getUser().getUsername());
+        metadata.add("session_id", chatSession.getId().toString());
+        metadata.add("session_title", chatSession.getDisplayTitle());
+        metadata.add("upload_time", LocalDateTime.now().toString());
     }
 
     private void updateDocumentStatus(Long documentId, Document.ProcessingStatus status,
@@ -270,13 +459,11 @@ public class DocumentProcessingConsumer {
         }
     }
 
-    private int estimateChunkCount(int characterCount) {
-        return (int) Math.ceil(characterCount / 1200.0);
-    }
-
     private void invalidateCache(Long sessionId, Long userId) {
-        String cacheKey = "session_docs:" + sessionId + "_user:" + userId;
-        cacheService.delete(cacheKey);
+        // מסמכי השיחה, וגם הסטטיסטיקות והרשימות ברמת המשתמש שתלויות בסטטוס העיבוד
+        cacheService.invalidateTags(CacheService.sessionTag(sessionId), CacheService.userTag(userId));
+        // תשובות שנגזרו מהתוכן הקודם של המסמכים
+        semanticAnswerCache.invalidateSession(sessionId, userId);
     }
 
     private String getErrorDetails(Exception e) {
@@ -285,4 +472,47 @@ public class DocumentProcessingConsumer {
         }
         return e.getMessage();
     }
-}
\ No newline at end of file
+
+    /**
+     * InputStream שמחשב SHA-256 תוך כדי קריאה ומוודא בסגירה שהתוכן מ-MinIO תואם ל-hash שבאירוע
+     */
+    private static class HashVerifyingInputStream extends FilterInputStream {
+
+        private final MessageDigest digest;
+        private final String expectedHash;
+        private final String objectKey;
+
+        HashVerifyingInputStream(InputStream in, String expectedHash, String objectKey) {
+            super(in);
+            this.digest = newSha256();
+            this.in = new DigestInputStream(in, digest);
+            this.expectedHash = expectedHash;
+            this.objectKey = objectKey;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                // קריאת שארית הזרם כדי שה-hash יכסה את כל האובייקט
+                in.transferTo(OutputStream.nullOutputStream());
+            } finally {
+                super.close();
+            }
+
+            String actualHash = HexFormat.of().formatHex(digest.digest());
+            if (!expectedHash.equalsIgnoreCase(actualHash)) {
+                throw new IllegalStateException(String.format(
+                        "Stored object content hash mismatch (corrupt object?): key=%s, expected=%s, actual=%s",
+                        objectKey, expectedHash, actualHash));
+            }
+        }
+
+        private static MessageDigest newSha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+}
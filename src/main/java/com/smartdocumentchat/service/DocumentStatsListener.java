@@ -0,0 +1,48 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.Document;
+import com.smartdocumentchat.entity.DocumentStatsState;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener על Document: כל שמירה שמשנה סטטוס, פעילות, תווים או chunks מעדכנת את מוני
+ * הסטטיסטיקות בהפרש בלבד. כך כל נתיבי הכתיבה (העלאה, consumer, טיפול בשגיאות, מחיקה) מכוסים
+ * בלי לגעת בכל אחד מהם. Hibernate יוצר את ה-listener דרך Spring.
+ */
+@Component
+public class DocumentStatsListener {
+
+    // lazy - ה-listener נוצר בזמן בניית ה-EntityManagerFactory, לפני ה-repositories
+    private final ObjectProvider<DocumentStatsService> documentStatsService;
+
+    public DocumentStatsListener(ObjectProvider<DocumentStatsService> documentStatsService) {
+        this.documentStatsService = documentStatsService;
+    }
+
+    @PostLoad
+    public void onLoad(Document document) {
+        document.setPersistedStatsState(DocumentStatsState.of(document));
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Document document) {
+        DocumentStatsState current = DocumentStatsState.of(document);
+        documentStatsService.getObject().recordChange(document.getPersistedStatsState(), current);
+        document.setPersistedStatsState(current);
+    }
+
+    @PostRemove
+    public void onRemove(Document document) {
+        DocumentStatsState previous = document.getPersistedStatsState() != null
+                ? document.getPersistedStatsState()
+                : DocumentStatsState.of(document);
+        documentStatsService.getObject().recordChange(previous, null);
+        document.setPersistedStatsState(null);
+    }
+}
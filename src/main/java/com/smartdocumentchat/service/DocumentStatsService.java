@@ -0,0 +1,205 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.Document;
+import com.smartdocumentchat.entity.DocumentStatsState;
+import com.smartdocumentchat.repository.DocumentRepository;
+import com.smartdocumentchat.repository.DocumentStatusCount;
+import com.smartdocumentchat.repository.SessionDocumentCounts;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * מוני סטטיסטיקות מסמכים ב-Redis hashes - היסטוגרמת סטטוסים למשתמש וסיכומים לשיחה.
+ * מונה חסר נבנה מ-GROUP BY אחד ב-DB; מאז הוא מתעדכן בהפרשים מה-DocumentStatsListener
+ * (HINCRBY אחרי commit) במקום לספור מחדש. ה-TTL מגביל סטייה - אחריו המונה נבנה שוב מה-DB.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentStatsService {
+
+    private static final String USER_COUNTERS_PREFIX = "doc_stats:user:";
+    private static final String SESSION_COUNTERS_PREFIX = "doc_stats:session:";
+
+    private static final String TOTAL = "total";
+    private static final String COMPLETED = "completed";
+    private static final String PROCESSING = "processing";
+    private static final String FAILED = "failed";
+    private static final String CHARACTERS = "characters";
+    private static final String CHUNKS = "chunks";
+
+    private final DocumentRepository documentRepository;
+    private final CacheService cacheService;
+
+    @Value("${stats.documents.counter-ttl-minutes:60}")
+    private long counterTtlMinutes;
+
+    /**
+     * היסטוגרמת סטטוסי עיבוד של כל מסמכי המשתמש (כולל מסמכים שנמחקו) - כל הסטטוסים מופיעים
+     */
+    public Map<Document.ProcessingStatus, Long> getUserStatusHistogram(Long userId) {
+        String key = USER_COUNTERS_PREFIX + userId;
+        Map<String, Long> counters = cacheService.getCounters(List.of(key)).get(key);
+
+        if (counters == null) {
+            counters = new HashMap<>();
+            for (Document.ProcessingStatus status : Document.ProcessingStatus.values()) {
+                counters.put(status.name(), 0L);
+            }
+            for (DocumentStatusCount row : documentRepository.countByUserGroupedByStatus(userId)) {
+                counters.put(row.status.name(), row.count);
+            }
+            cacheService.initCounters(Map.of(key, counters), counterTtl());
+            log.debug("Document status histogram for user {} loaded from database", userId);
+        }
+
+        Map<Document.ProcessingStatus, Long> histogram = new EnumMap<>(Document.ProcessingStatus.class);
+        for (Document.ProcessingStatus status : Document.ProcessingStatus.values()) {
+            histogram.put(status, Math.max(0L, counters.getOrDefault(status.name(), 0L)));
+        }
+        return histogram;
+    }
+
+    public PdfProcessingService.DocumentStats getUserStats(Long userId) {
+        Map<Document.ProcessingStatus, Long> histogram = getUserStatusHistogram(userId);
+        return new PdfProcessingService.DocumentStats(
+                histogram.get(Document.ProcessingStatus.COMPLETED),
+                histogram.get(Document.ProcessingStatus.PROCESSING),
+                histogram.get(Document.ProcessingStatus.FAILED));
+    }
+
+    /**
+     * סיכומי המסמכים הפעילים לכל שיחה מבוקשת. שיחות שאין להן מונה נטענות יחד ב-GROUP BY אחד.
+     */
+    public Map<Long, PdfProcessingService.SessionDocumentStats> getSessionStats(Collection<Long> sessionIds) {
+        Map<Long, PdfProcessingService.SessionDocumentStats> statsBySession = new HashMap<>();
+        if (sessionIds.isEmpty()) {
+            return statsBySession;
+        }
+
+        Map<String, Long> sessionIdsByKey = sessionIds.stream()
+                .distinct()
+                .collect(Collectors.toMap(id -> SESSION_COUNTERS_PREFIX + id, id -> id,
+                        (a, b) -> a, LinkedHashMap::new));
+        Map<String, Map<String, Long>> cached = cacheService.getCounters(sessionIdsByKey.keySet());
+
+        cached.forEach((key, counters) -> statsBySession.put(sessionIdsByKey.get(key), toSessionStats(counters)));
+
+        List<Long> missing = sessionIdsByKey.values().stream()
+                .filter(id -> !statsBySession.containsKey(id))
+                .toList();
+        if (!missing.isEmpty()) {
+            Map<String, Map<String, Long>> loaded = new HashMap<>();
+            for (Long sessionId : missing) {
+                loaded.put(SESSION_COUNTERS_PREFIX + sessionId, sessionCounters(0, 0, 0, 0, 0, 0));
+            }
+            for (SessionDocumentCounts counts : documentRepository.countActiveDocumentsBySessions(missing)) {
+                loaded.put(SESSION_COUNTERS_PREFIX + counts.sessionId, sessionCounters(counts.totalDocuments,
+                        counts.completedDocuments, counts.processingDocuments, counts.failedDocuments,
+                        counts.totalCharacters, counts.totalChunks));
+            }
+
+            cacheService.initCounters(loaded, counterTtl());
+            loaded.forEach((key, counters) -> statsBySession.put(sessionIdsByKey.get(key), toSessionStats(counters)));
+            log.debug("Document stats for {} sessions loaded from database", missing.size());
+        }
+
+        return statsBySession;
+    }
+
+    /**
+     * רישום מעבר של מסמך (null = לא קיים). ההפרש נכתב רק אחרי commit, כדי ש-rollback
+     * לא ישאיר מונים שלא תואמים ל-DB; מחוץ לטרנזקציה - מיד.
+     */
+    public void recordChange(DocumentStatsState before, DocumentStatsState after) {
+        Map<String, Map<String, Long>> deltas = new HashMap<>();
+        addUserDelta(deltas, before, -1);
+        addUserDelta(deltas, after, 1);
+        addSessionDelta(deltas, before, -1);
+        addSessionDelta(deltas, after, 1);
+
+        deltas.values().forEach(fields -> fields.values().removeIf(delta -> delta == 0));
+        deltas.values().removeIf(Map::isEmpty);
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cacheService.incrementCounters(deltas);
+                }
+            });
+        } else {
+            cacheService.incrementCounters(deltas);
+        }
+    }
+
+    private void addUserDelta(Map<String, Map<String, Long>> deltas, DocumentStatsState state, long sign) {
+        if (state == null || state.userId == null || state.status == null) {
+            return;
+        }
+        deltas.computeIfAbsent(USER_COUNTERS_PREFIX + state.userId, k -> new HashMap<>())
+                .merge(state.status.name(), sign, Long::sum);
+    }
+
+    // סיכומי שיחה סופרים רק מסמכים פעילים; תווים ו-chunks רק למסמכים שהושלמו
+    private void addSessionDelta(Map<String, Map<String, Long>> deltas, DocumentStatsState state, long sign) {
+        if (state == null || state.sessionId == null || !state.active) {
+            return;
+        }
+        Map<String, Long> fields = deltas.computeIfAbsent(SESSION_COUNTERS_PREFIX + state.sessionId,
+                k -> new HashMap<>());
+        fields.merge(TOTAL, sign, Long::sum);
+
+        if (state.status == Document.ProcessingStatus.COMPLETED) {
+            fields.merge(COMPLETED, sign, Long::sum);
+            fields.merge(CHARACTERS, sign * state.characters, Long::sum);
+            fields.merge(CHUNKS, sign * state.chunks, Long::sum);
+        } else if (state.status == Document.ProcessingStatus.PROCESSING) {
+            fields.merge(PROCESSING, sign, Long::sum);
+        } else if (state.status == Document.ProcessingStatus.FAILED) {
+            fields.merge(FAILED, sign, Long::sum);
+        }
+    }
+
+    private Map<String, Long> sessionCounters(long total, long completed, long processing, long failed,
+                                              long characters, long chunks) {
+        Map<String, Long> counters = new HashMap<>();
+        counters.put(TOTAL, total);
+        counters.put(COMPLETED, completed);
+        counters.put(PROCESSING, processing);
+        counters.put(FAILED, failed);
+        counters.put(CHARACTERS, characters);
+        counters.put(CHUNKS, chunks);
+        return counters;
+    }
+
+    private PdfProcessingService.SessionDocumentStats toSessionStats(Map<String, Long> counters) {
+        return new PdfProcessingService.SessionDocumentStats(
+                Math.max(0L, counters.getOrDefault(TOTAL, 0L)),
+                Math.max(0L, counters.getOrDefault(COMPLETED, 0L)),
+                Math.max(0L, counters.getOrDefault(PROCESSING, 0L)),
+                Math.max(0L, counters.getOrDefault(FAILED, 0L)),
+                (int) Math.max(0L, counters.getOrDefault(CHARACTERS, 0L)),
+                (int) Math.max(0L, counters.getOrDefault(CHUNKS, 0L)));
+    }
+
+    private Duration counterTtl() {
+        return Duration.ofMinutes(counterTtlMinutes);
+    }
+}
@@ -0,0 +1,219 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.CachedChunkEmbedding;
+import com.smartdocumentchat.entity.EmbeddingCacheEntry;
+import com.smartdocumentchat.repository.CachedChunkEmbeddingRepository;
+import com.smartdocumentchat.repository.EmbeddingCacheEntryRepository;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Cache של embeddings ברמת chunk לפי hash התוכן.
+ * המפתח כולל את פרמטרי ה-chunking ואת מודל ה-embedding, כך ששינוי באחד מהם לא מחזיר vectors ישנים.
+ * הנתונים נשמרים ב-PostgreSQL ושורדים restart.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmbeddingCacheService {
+
+    public static final String CHUNK_INDEX_KEY = "chunk_index";
+
+    private final EmbeddingCacheEntryRepository entryRepository;
+    private final CachedChunkEmbeddingRepository chunkRepository;
+
+    @Value("${openai.embedding-model:text-embedding-3-large}")
+    private String embeddingModelName;
+
+    @Value("${document.ingestion.embedding-cache.enabled:true}")
+    private boolean enabled;
+
+    // רשומה חלקית ישנה מזה נחשבת נטושה (consumer שקרס באמצע) ונבנית מחדש
+    @Value("${document.ingestion.embedding-cache.stale-entry-minutes:60}")
+    private int staleEntryMinutes;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getEmbeddingModelName() {
+        return embeddingModelName;
+    }
+
+    /**
+     * חיפוש רשומה שלמה ב-cache
+     */
+    public Optional<EmbeddingCacheEntry> findComplete(String contentHash, String chunkingSignature) {
+        if (!enabled || contentHash == null) {
+            return Optional.empty();
+        }
+
+        Optional<EmbeddingCacheEntry> entry = entryRepository
+                .findByContentHashAndChunkingSignatureAndEmbeddingModel(
+                        contentHash, chunkingSignature, embeddingModelName)
+                .filter(e -> Boolean.TRUE.equals(e.getComplete()));
+
+        if (entry.isPresent()) {
+            log.debug("Embedding cache HIT: hash={}, chunking={}, model={}",
+                    contentHash, chunkingSignature, embeddingModelName);
+        } else {
+            log.debug("Embedding cache MISS: hash={}, chunking={}, model={}",
+                    contentHash, chunkingSignature, embeddingModelName);
+        }
+        return entry;
+    }
+
+    /**
+     * פתיחת רשומה חדשה לכתיבה. מחזיר empty אם consumer אחר כבר כותב את אותו תוכן.
+     * מספר ה-chunks לא ידוע עדיין (הפרסור עמוד אחרי עמוד) - נקבע ב-complete.
+     */
+    public Optional<EmbeddingCacheEntry> beginEntry(String contentHash, String chunkingSignature) {
+        if (!enabled || contentHash == null) {
+            return Optional.empty();
+        }
+
+        Optional<EmbeddingCacheEntry> existing = entryRepository
+                .findByContentHashAndChunkingSignatureAndEmbeddingModel(
+                        contentHash, chunkingSignature, embeddingModelName);
+
+        if (existing.isPresent()) {
+            EmbeddingCacheEntry entry = existing.get();
+            boolean stale = !Boolean.TRUE.equals(entry.getComplete()) &&
+                    entry.getCreatedAt() != null &&
+                    entry.getCreatedAt().isBefore(LocalDateTime.now().minusMinutes(staleEntryMinutes));
+
+            if (!stale) {
+                return Optional.empty();
+            }
+
+            log.info("Discarding stale partial embedding cache entry: {}", entry.getId());
+            discard(entry.getId());
+        }
+
+        try {
+            EmbeddingCacheEntry entry = new EmbeddingCacheEntry();
+            entry.setContentHash(contentHash);
+            entry.setChunkingSignature(chunkingSignature);
+            entry.setEmbeddingModel(embeddingModelName);
+            entry.setChunkCount(0);
+            entry.setComplete(false);
+            return Optional.of(entryRepository.save(entry));
+
+        } catch (DataIntegrityViolationException e) {
+            // consumer אחר פתח את אותה רשומה במקביל
+            log.debug("Embedding cache entry already being written: hash={}", contentHash);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * שמירת batch של chunks ו-vectors שלהם
+     */
+    public void storeBatch(Long entryId, List<TextSegment> segments, List<Embedding> embeddings) {
+        List<CachedChunkEmbedding> rows = new ArrayList<>(segments.size());
+
+        for (int i = 0; i < segments.size(); i++) {
+            TextSegment segment = segments.get(i);
+            CachedChunkEmbedding row = new CachedChunkEmbedding();
+            row.setCacheEntryId(entryId);
+            row.setChunkIndex(segment.metadata().getInteger(CHUNK_INDEX_KEY));
+            row.setText(segment.text());
+            row.setPageNumber(segment.metadata().getInteger(StreamingPdfParser.PAGE_NUMBER_KEY));
+            row.setStartOffset(segment.metadata().getInteger(DocumentChunker.START_OFFSET_KEY));
+            row.setEndOffset(segment.metadata().getInteger(DocumentChunker.END_OFFSET_KEY));
+            row.setSection(segment.metadata().getString(DocumentChunker.SECTION_KEY));
+            row.setVector(CachedChunkEmbedding.encodeVector(embeddings.get(i).vector()));
+            rows.add(row);
+        }
+
+        chunkRepository.saveAll(rows);
+    }
+
+    /**
+     * החזרת מיקום ה-chunk (עמוד, offsets, כותרת) ל-metadata של segment שנבנה מה-cache
+     */
+    public void restorePosition(CachedChunkEmbedding chunk, Metadata metadata) {
+        if (chunk.getPageNumber() != null) {
+            metadata.put(StreamingPdfParser.PAGE_NUMBER_KEY, chunk.getPageNumber());
+        }
+        if (chunk.getStartOffset() != null) {
+            metadata.put(DocumentChunker.START_OFFSET_KEY, chunk.getStartOffset());
+        }
+        if (chunk.getEndOffset() != null) {
+            metadata.put(DocumentChunker.END_OFFSET_KEY, chunk.getEndOffset());
+        }
+        if (chunk.getSection() != null) {
+            metadata.put(DocumentChunker.SECTION_KEY, chunk.getSection());
+        }
+    }
+
+    /**
+     * סימון רשומה כשלמה - רק אם כל ה-chunks נשמרו
+     */
+    public void complete(EmbeddingCacheEntry entry, int chunkCount, int characterCount) {
+        long stored = chunkRepository.countByCacheEntryId(entry.getId());
+        if (stored != chunkCount) {
+            log.warn("Embedding cache entry {} has {} of {} chunks - discarding",
+                    entry.getId(), stored, chunkCount);
+            discard(entry.getId());
+            return;
+        }
+
+        entryRepository.markComplete(entry.getId(), chunkCount, characterCount);
+        log.info("Embedding cache entry {} completed: hash={}, chunks={}",
+                entry.getId(), entry.getContentHash(), stored);
+    }
+
+    /**
+     * מחיקת רשומה (כשלון באמצע כתיבה)
+     */
+    public void discard(Long entryId) {
+        try {
+            chunkRepository.deleteByCacheEntryId(entryId);
+            entryRepository.deleteById(entryId);
+        } catch (Exception e) {
+            log.error("Failed to discard embedding cache entry: {}", entryId, e);
+        }
+    }
+
+    /**
+     * מעבר על ה-chunks של רשומה בדפים לפי סדר
+     */
+    public void forEachPage(EmbeddingCacheEntry entry, int pageSize,
+                            Consumer<List<CachedChunkEmbedding>> pageConsumer) {
+        entryRepository.recordHit(entry.getId(), LocalDateTime.now());
+
+        for (int from = 0; from < entry.getChunkCount(); from += pageSize) {
+            int to = Math.min(from + pageSize, entry.getChunkCount()) - 1;
+            List<CachedChunkEmbedding> page = chunkRepository
+                    .findByCacheEntryIdAndChunkIndexBetweenOrderByChunkIndexAsc(entry.getId(), from, to);
+            pageConsumer.accept(page);
+        }
+    }
+
+    /**
+     * סטטיסטיקות cache
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("embeddingModel", embeddingModelName);
+        stats.put("completeEntries", entryRepository.countByCompleteTrue());
+        stats.put("totalHits", entryRepository.getTotalHits());
+        return stats;
+    }
+}
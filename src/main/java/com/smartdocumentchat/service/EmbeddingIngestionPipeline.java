@@ -0,0 +1,267 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.IngestionProperties;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Pipeline לאינג'סט מסמכים: embed -> upsert כשלבים נפרדים, מעל רצף segments (החיתוך ב-DocumentChunker).
+ * ה-embedding נשלח ב-batches במקביליות חסומה, והכתיבה ל-Qdrant מתבצעת ב-batches.
+ * מספר ה-batches שבדרך מוגבל, כך שהזיכרון חסום גם עבור מסמכים גדולים מאוד.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmbeddingIngestionPipeline {
+
+    private final EmbeddingModel embeddingModel;
+    private final IngestionProperties ingestionProperties;
+
+    private ExecutorService embeddingExecutor;
+
+    @PostConstruct
+    public void initialize() {
+        int parallelism = Math.max(1, ingestionProperties.getEmbeddingParallelism());
+        AtomicInteger threadCounter = new AtomicInteger();
+
+        // ה-workers משותפים לכל ה-listeners; כל אינג'סט מגביל בעצמו את כמות ה-batches שבדרך
+        this.embeddingExecutor = new ThreadPoolExecutor(
+                parallelism, parallelism,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "embedding-worker-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        log.info("Embedding ingestion pipeline initialized - batchSize: {}, parallelism: {}, " +
+                        "maxInFlightBatches: {}, upsertBatchSize: {}",
+                ingestionProperties.getEmbeddingBatchSize(), parallelism,
+                ingestionProperties.getMaxInFlightBatches(), ingestionProperties.getUpsertBatchSize());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (embeddingExecutor != null) {
+            embeddingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * אינג'סט של רצף segments. ה-iterator נצרך בקצב שבו ה-embedding וה-upsert מתקדמים (backpressure).
+     */
+    public IngestionResult ingestSegments(Iterator<TextSegment> segments,
+                                          EmbeddingStore<TextSegment> embeddingStore,
+                                          IntConsumer progressListener) throws Exception {
+        return ingestSegments(segments, embeddingStore, progressListener, null);
+    }
+
+    /**
+     * אינג'סט של רצף segments עם listener שמקבל כל batch אחרי embedding (לפני ה-upsert).
+     * ה-listener נקרא ב-thread של הקורא, לפי סדר סיום ה-batches.
+     */
+    public IngestionResult ingestSegments(Iterator<TextSegment> segments,
+                                          EmbeddingStore<TextSegment> embeddingStore,
+                                          IntConsumer progressListener,
+                                          BiConsumer<List<TextSegment>, List<Embedding>> embeddedBatchListener)
+            throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        int embeddingBatchSize = Math.max(1, ingestionProperties.getEmbeddingBatchSize());
+        int maxInFlight = Math.max(1, ingestionProperties.getMaxInFlightBatches());
+        int upsertBatchSize = Math.max(1, ingestionProperties.getUpsertBatchSize());
+
+        CompletionService<EmbeddedBatch> completionService = new ExecutorCompletionService<>(embeddingExecutor);
+        Set<Future<EmbeddedBatch>> pending = new HashSet<>();
+        UpsertBuffer upsertBuffer = new UpsertBuffer(
+                embeddingStore, upsertBatchSize, progressListener, embeddedBatchListener);
+
+        int inFlight = 0;
+        int embeddingBatches = 0;
+        int totalSegments = 0;
+
+        try {
+            while (segments.hasNext()) {
+                // שלב split - איסוף batch הבא
+                List<TextSegment> batch = new ArrayList<>(embeddingBatchSize);
+                while (segments.hasNext() && batch.size() < embeddingBatchSize) {
+                    batch.add(segments.next());
+                }
+                totalSegments += batch.size();
+
+                // backpressure - מחכים ל-batch שהסתיים לפני שליחת batch חדש
+                while (inFlight >= maxInFlight) {
+                    upsertBuffer.accept(consume(completionService.take(), pending));
+                    inFlight--;
+                }
+
+                // שלב embed - שליחה ל-worker
+                pending.add(completionService.submit(() -> embedBatch(batch)));
+                inFlight++;
+                embeddingBatches++;
+
+                // שלב upsert - איסוף batches שכבר הסתיימו בלי לחסום
+                Future<EmbeddedBatch> completed;
+                while ((completed = completionService.poll()) != null) {
+                    upsertBuffer.accept(consume(completed, pending));
+                    inFlight--;
+                }
+            }
+
+            while (inFlight > 0) {
+                upsertBuffer.accept(consume(completionService.take(), pending));
+                inFlight--;
+            }
+            upsertBuffer.flush();
+
+        } catch (ExecutionException e) {
+            pending.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            pending.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (RuntimeException e) {
+            // כשלון בשלב ה-upsert - עוצרים את ה-embeddings שעוד רצים
+            pending.forEach(future -> future.cancel(true));
+            throw e;
+        }
+
+        long durationMs = System.currentTimeMillis() - startTime;
+        log.info("Ingestion pipeline completed: {} segments, {} embedding batches, {} upsert batches in {}ms",
+                totalSegments, embeddingBatches, upsertBuffer.upsertBatches, durationMs);
+
+        return new IngestionResult(totalSegments, embeddingBatches, upsertBuffer.upsertBatches, durationMs);
+    }
+
+    /**
+     * כתיבת segments שכבר יש להם embeddings (למשל מה-cache) - שלב ה-upsert בלבד
+     */
+    public void upsertPrecomputed(List<TextSegment> segments, List<Embedding> embeddings,
+                                  EmbeddingStore<TextSegment> embeddingStore) {
+        UpsertBuffer upsertBuffer = new UpsertBuffer(
+                embeddingStore, Math.max(1, ingestionProperties.getUpsertBatchSize()), null, null);
+        upsertBuffer.accept(new EmbeddedBatch(segments, embeddings));
+        upsertBuffer.flush();
+    }
+
+    public int getUpsertBatchSize() {
+        return Math.max(1, ingestionProperties.getUpsertBatchSize());
+    }
+
+    private EmbeddedBatch consume(Future<EmbeddedBatch> future, Set<Future<EmbeddedBatch>> pending)
+            throws InterruptedException, ExecutionException {
+        pending.remove(future);
+        return future.get();
+    }
+
+    private EmbeddedBatch embedBatch(List<TextSegment> batch) {
+        List<Embedding> embeddings = embeddingModel.embedAll(batch).content();
+        if (embeddings.size() != batch.size()) {
+            throw new IllegalStateException(String.format(
+                    "Embedding model returned %d embeddings for %d segments", embeddings.size(), batch.size()));
+        }
+        return new EmbeddedBatch(batch, embeddings);
+    }
+
+    private record EmbeddedBatch(List<TextSegment> segments, List<Embedding> embeddings) {
+    }
+
+    /**
+     * שלב ה-upsert - צובר embeddings וכותב ל-Qdrant ב-batches בגודל קבוע
+     */
+    private static class UpsertBuffer {
+        private final EmbeddingStore<TextSegment> embeddingStore;
+        private final int batchSize;
+        private final IntConsumer progressListener;
+        private final BiConsumer<List<TextSegment>, List<Embedding>> embeddedBatchListener;
+        private final List<TextSegment> segments = new ArrayList<>();
+        private final List<Embedding> embeddings = new ArrayList<>();
+        private int storedSegments;
+        private int upsertBatches;
+
+        UpsertBuffer(EmbeddingStore<TextSegment> embeddingStore, int batchSize, IntConsumer progressListener,
+                     BiConsumer<List<TextSegment>, List<Embedding>> embeddedBatchListener) {
+            this.embeddingStore = embeddingStore;
+            this.batchSize = batchSize;
+            this.progressListener = progressListener;
+            this.embeddedBatchListener = embeddedBatchListener;
+        }
+
+        void accept(EmbeddedBatch batch) {
+            if (embeddedBatchListener != null) {
+                embeddedBatchListener.accept(batch.segments(), batch.embeddings());
+            }
+            segments.addAll(batch.segments());
+            embeddings.addAll(batch.embeddings());
+            while (segments.size() >= batchSize) {
+                write(batchSize);
+            }
+        }
+
+        void flush() {
+            if (!segments.isEmpty()) {
+                write(segments.size());
+            }
+        }
+
+        private void write(int count) {
+            List<TextSegment> segmentSlice = segments.subList(0, count);
+            List<Embedding> embeddingSlice = embeddings.subList(0, count);
+
+            embeddingStore.addAll(new ArrayList<>(embeddingSlice), new ArrayList<>(segmentSlice));
+
+            segmentSlice.clear();
+            embeddingSlice.clear();
+            storedSegments += count;
+            upsertBatches++;
+
+            if (progressListener != null) {
+                progressListener.accept(storedSegments);
+            }
+        }
+    }
+
+    public static class IngestionResult {
+        public final int segmentCount;
+        public final int embeddingBatches;
+        public final int upsertBatches;
+        public final long durationMs;
+
+        public IngestionResult(int segmentCount, int embeddingBatches, int upsertBatches, long durationMs) {
+            this.segmentCount = segmentCount;
+            this.embeddingBatches = embeddingBatches;
+            this.upsertBatches = upsertBatches;
+            this.durationMs = durationMs;
+        }
+    }
+}
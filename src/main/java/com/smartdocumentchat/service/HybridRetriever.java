@@ -0,0 +1,233 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.Document;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * שליפה לשיחה משני מקורות: dense (Qdrant) ו-lexical (LexicalIndexService), מאוחדים ב-reciprocal rank fusion.
+ * RRF משתמש רק בדירוג בכל רשימה, ולכן לא צריך לנרמל ציוני cosine מול ציוני BM25.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HybridRetriever {
+
+    private final EmbeddingModel embeddingModel;
+    private final QdrantVectorService qdrantVectorService;
+    private final LexicalIndexService lexicalIndexService;
+    private final PdfProcessingService pdfProcessingService;
+
+    // הקבוע המקובל ל-RRF - מקטין את ההשפעה של ההבדלים בראש כל רשימה
+    @Value("${chat.retrieval.rrf-k:60}")
+    private int rrfK;
+
+    // כמה מועמדים נשלפים מכל מקור לפני האיחוד, ביחס למספר התוצאות המבוקש
+    @Value("${chat.retrieval.candidate-multiplier:4}")
+    private int candidateMultiplier;
+
+    // מצב השליפה כשהבקשה לא מציינת searchMode (hybrid, semantic, keyword, exact)
+    @Value("${chat.retrieval.default-mode:hybrid}")
+    private String defaultMode;
+
+    // top-k כשהבקשה לא מציינת maxResults - אותו ערך ל-endpoint הרגיל ול-endpoint בזרימה (cache ה-Q&A משותף)
+    @Value("${chat.retrieval.default-max-results:2}")
+    private int defaultMaxResults;
+
+    /**
+     * מצב השליפה לבקשה: הערך שהתבקש, או ברירת המחדל מההגדרות
+     *
+     * @throws IllegalArgumentException אם הערך לא מוכר
+     */
+    public SearchMode resolveMode(String requested) {
+        return SearchMode.from(requested, SearchMode.from(defaultMode, SearchMode.HYBRID));
+    }
+
+    public int getDefaultMaxResults() {
+        return Math.max(1, defaultMaxResults);
+    }
+
+    /**
+     * שליפת הקטעים הרלוונטיים לשאילתה
+     *
+     * @param documentIds מסמכים לחיפוש, או null לכל מסמכי השיחה
+     * @param minScore    ציון cosine מינימלי לצד ה-dense (ל-BM25 אין סף)
+     */
+    public List<ScoredSegment> retrieve(ChatSession chatSession, String query, SearchMode mode,
+                                        Collection<Long> documentIds, int maxResults, double minScore) {
+        return retrieve(chatSession, query, mode, documentIds, maxResults, minScore, null);
+    }
+
+    /**
+     * כמו retrieve, עם embedding של השאילתה שכבר חושב (למשל ב-lookup של ה-cache הסמנטי)
+     *
+     * @param queryEmbedding ה-embedding של query, או null לחישוב כאן
+     */
+    public List<ScoredSegment> retrieve(ChatSession chatSession, String query, SearchMode mode,
+                                        Collection<Long> documentIds, int maxResults, double minScore,
+                                        Embedding queryEmbedding) {
+        int limit = Math.max(1, maxResults);
+
+        if (mode == SearchMode.SEMANTIC) {
+            return denseSearch(chatSession, query, queryEmbedding, documentIds, limit, minScore);
+        }
+
+        Collection<Long> lexicalScope = completedDocumentIds(chatSession, documentIds);
+        if (mode == SearchMode.KEYWORD || mode == SearchMode.EXACT) {
+            // בלי קריאת embedding בכלל
+            return toScored(lexicalIndexService.search(chatSession, query, lexicalScope, limit,
+                    mode == SearchMode.EXACT));
+        }
+
+        int candidates = limit * Math.max(1, candidateMultiplier);
+        List<ScoredSegment> dense = denseSearch(chatSession, query, queryEmbedding, documentIds, candidates, minScore);
+        List<ScoredSegment> lexical = toScored(
+                lexicalIndexService.search(chatSession, query, lexicalScope, candidates, false));
+
+        List<ScoredSegment> fused = fuse(dense, lexical, limit);
+        log.debug("Hybrid retrieval for session {}: dense={}, lexical={}, fused={}",
+                chatSession.getId(), dense.size(), lexical.size(), fused.size());
+        return fused;
+    }
+
+    private List<ScoredSegment> denseSearch(ChatSession chatSession, String query, Embedding queryEmbedding,
+                                            Collection<Long> documentIds, int maxResults, double minScore) {
+        Embedding embedding = queryEmbedding != null ? queryEmbedding : embeddingModel.embed(query).content();
+        List<EmbeddingMatch<TextSegment>> matches = qdrantVectorService.getEmbeddingStoreForSession(chatSession)
+                .search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(embedding)
+                        .maxResults(maxResults)
+                        .minScore(minScore)
+                        .filter(documentIds != null && !documentIds.isEmpty()
+                                ? SessionScopedEmbeddingStore.documentIdFilter(documentIds) : null)
+                        .build()).matches();
+
+        List<ScoredSegment> results = new ArrayList<>(matches.size());
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            results.add(new ScoredSegment(match.embedded(), match.score(), match.score(), null));
+        }
+        return results;
+    }
+
+    /**
+     * reciprocal rank fusion: ציון = סכום 1/(k + דירוג) על פני הרשימות שבהן הקטע מופיע
+     */
+    private List<ScoredSegment> fuse(List<ScoredSegment> dense, List<ScoredSegment> lexical, int limit) {
+        Map<String, FusedEntry> fused = new LinkedHashMap<>();
+
+        for (int rank = 0; rank < dense.size(); rank++) {
+            ScoredSegment result = dense.get(rank);
+            FusedEntry entry = fused.computeIfAbsent(segmentKey(result.segment), key -> new FusedEntry(result.segment));
+            entry.score += 1.0 / (rrfK + rank + 1);
+            entry.denseScore = result.denseScore;
+        }
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            ScoredSegment result = lexical.get(rank);
+            FusedEntry entry = fused.computeIfAbsent(segmentKey(result.segment), key -> new FusedEntry(result.segment));
+            entry.score += 1.0 / (rrfK + rank + 1);
+            entry.lexicalScore = result.lexicalScore;
+        }
+
+        return fused.values().stream()
+                .sorted(Comparator.comparingDouble((FusedEntry entry) -> entry.score).reversed())
+                .limit(limit)
+                .map(entry -> new ScoredSegment(entry.segment, entry.score, entry.denseScore, entry.lexicalScore))
+                .toList();
+    }
+
+    /**
+     * מסמכים שעיבודם הושלם מתוך ה-scope - רק אותם האינדקס ה-lexical טוען
+     */
+    private Collection<Long> completedDocumentIds(ChatSession chatSession, Collection<Long> documentIds) {
+        Set<Long> requested = documentIds != null && !documentIds.isEmpty() ? new HashSet<>(documentIds) : null;
+
+        List<Long> completed = new ArrayList<>();
+        for (Document document : pdfProcessingService.getDocumentsBySession(chatSession)) {
+            if (document.isProcessed() && (requested == null || requested.contains(document.getId()))) {
+                completed.add(document.getId());
+            }
+        }
+        return completed;
+    }
+
+    // אותו chunk משני המקורות: אותו מסמך ואותו טקסט
+    private static String segmentKey(TextSegment segment) {
+        return segment.metadata().getString(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY) + "\n" + segment.text();
+    }
+
+    private static List<ScoredSegment> toScored(List<LexicalIndexService.LexicalMatch> matches) {
+        List<ScoredSegment> results = new ArrayList<>(matches.size());
+        for (LexicalIndexService.LexicalMatch match : matches) {
+            results.add(new ScoredSegment(match.segment, match.score, null, match.score));
+        }
+        return results;
+    }
+
+    public enum SearchMode {
+        HYBRID,     // dense + lexical עם RRF
+        SEMANTIC,   // dense בלבד
+        KEYWORD,    // lexical בלבד (BM25)
+        EXACT;      // lexical, רק קטעים שמכילים את הביטוי כרצף
+
+        /**
+         * מצב לפי הערך בבקשה; null או ריק - ברירת המחדל
+         */
+        public static SearchMode from(String value, SearchMode defaultMode) {
+            if (value == null || value.isBlank()) {
+                return defaultMode;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("searchMode לא נתמך: " + value +
+                        " (hybrid, semantic, keyword, exact)");
+            }
+        }
+    }
+
+    /**
+     * קטע שנשלף. score הוא ציון הדירוג הסופי (cosine, BM25 או RRF לפי המצב);
+     * denseScore/lexicalScore הם הציונים המקוריים, או null אם הקטע לא הגיע מאותו מקור
+     */
+    public static class ScoredSegment {
+        public final TextSegment segment;
+        public final double score;
+        public final Double denseScore;
+        public final Double lexicalScore;
+
+        ScoredSegment(TextSegment segment, double score, Double denseScore, Double lexicalScore) {
+            this.segment = segment;
+            this.score = score;
+            this.denseScore = denseScore;
+            this.lexicalScore = lexicalScore;
+        }
+    }
+
+    private static class FusedEntry {
+        private final TextSegment segment;
+        private double score;
+        private Double denseScore;
+        private Double lexicalScore;
+
+        FusedEntry(TextSegment segment) {
+            this.segment = segment;
+        }
+    }
+}
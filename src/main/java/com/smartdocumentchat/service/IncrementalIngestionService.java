@@ -0,0 +1,241 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.IngestionProperties;
+import dev.langchain4j.data.segment.TextSegment;
+import io.qdrant.client.grpc.Points;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * אינג'סט אינקרמנטלי ואידמפוטנטי של מסמך. כל chunk מקבל hash של הטקסט ומודל ה-embedding (chunk_hash ב-payload),
+ * ולפני העיבוד נטענים ה-hashes של הנקודות שכבר שמורות למסמך. chunk שה-hash שלו כבר שמור לא עובר embedding
+ * (ואם רק המיקום שלו במסמך זז - ה-payload נכתב מחדש עם ה-vector הקיים), ונקודות שלא נמצא להן chunk נמחקות לפי id.
+ * כך עיבוד חוזר עולה לפי השינוי, ועיבוד חוזר של אותו תוכן לא מגדיל את ה-collection.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IncrementalIngestionService {
+
+    public static final String CHUNK_HASH_KEY = "chunk_hash";
+
+    // שדות המיקום - משתנים כשחלק קודם במסמך נערך, בלי שהטקסט או ה-vector של ה-chunk משתנים
+    private static final List<String> POSITION_KEYS = List.of(
+            EmbeddingCacheService.CHUNK_INDEX_KEY,
+            StreamingPdfParser.PAGE_NUMBER_KEY,
+            DocumentChunker.START_OFFSET_KEY,
+            DocumentChunker.END_OFFSET_KEY,
+            DocumentChunker.SECTION_KEY);
+
+    private final QdrantVectorService qdrantVectorService;
+    private final EmbeddingCacheService embeddingCacheService;
+    private final IngestionProperties ingestionProperties;
+
+    /**
+     * טעינת הנקודות השמורות של המסמך בשיחה (עיבוד ראשון - רשימה ריקה)
+     */
+    public ChunkDiff begin(Long sessionId, Long userId, Long documentId) {
+        List<QdrantVectorService.StoredPoint> storedPoints = qdrantVectorService.loadDocumentPoints(
+                sessionId, userId, documentId, ingestionProperties.getUpsertBatchSize());
+
+        log.debug("Loaded {} stored points for document {} in session {}",
+                storedPoints.size(), documentId, sessionId);
+        return new ChunkDiff(sessionId, userId, documentId, embeddingCacheService.getEmbeddingModelName(),
+                storedPoints);
+    }
+
+    /**
+     * השלמת העיבוד, אחרי שה-chunks החדשים נכתבו: עדכון המיקום של chunks שזזו ומחיקת הנקודות שלא נמצא להן chunk.
+     * המחיקה אחרונה, כך שמסמך לא נשאר בלי vectors באמצע; עיבוד שנכשל לפני כן מתוקן בעיבוד הבא.
+     */
+    public DiffResult finish(ChunkDiff diff) {
+        int repositioned = diff.moved.isEmpty() ? 0 : qdrantVectorService.rewritePayloads(
+                diff.sessionId, diff.userId, diff.moved, ingestionProperties.getUpsertBatchSize());
+
+        List<Points.PointId> stalePoints = diff.stalePoints();
+        qdrantVectorService.deletePoints(diff.sessionId, diff.userId, stalePoints);
+
+        DiffResult result = new DiffResult(diff.storedCount, diff.reused, diff.added, repositioned, stalePoints.size());
+        log.info("Incremental ingestion of document {}: stored={}, reused={}, embedded={}, repositioned={}, deleted={}",
+                diff.documentId, result.storedPoints, result.reusedChunks, result.addedChunks,
+                result.repositionedChunks, result.deletedPoints);
+        return result;
+    }
+
+    /**
+     * ההשוואה בין ה-chunks של העיבוד הנוכחי לנקודות השמורות של המסמך. לא thread-safe - נצרך ב-thread של ה-consumer.
+     */
+    public static class ChunkDiff {
+
+        private final Long sessionId;
+        private final Long userId;
+        private final Long documentId;
+        private final String embeddingModel;
+        private final int storedCount;
+
+        // נקודות שמורות לפי hash; chunk זהה שמופיע כמה פעמים במסמך מתאים לנקודות לפי הסדר
+        private final Map<String, Deque<QdrantVectorService.StoredPoint>> storedByHash = new HashMap<>();
+        // נקודות בלי hash (נכתבו לפני האינג'סט האינקרמנטלי) או בלי טקסט - אף chunk לא יתאים להן
+        private final List<Points.PointId> unmatchable = new ArrayList<>();
+        private final Map<Points.PointId, Map<String, Object>> moved = new LinkedHashMap<>();
+
+        private int reused;
+        private int added;
+
+        ChunkDiff(Long sessionId, Long userId, Long documentId, String embeddingModel,
+                  List<QdrantVectorService.StoredPoint> storedPoints) {
+            this.sessionId = sessionId;
+            this.userId = userId;
+            this.documentId = documentId;
+            this.embeddingModel = embeddingModel;
+            this.storedCount = storedPoints.size();
+
+            for (QdrantVectorService.StoredPoint point : storedPoints) {
+                String hash = point.segment != null ? point.segment.metadata().getString(CHUNK_HASH_KEY) : null;
+                if (hash == null) {
+                    unmatchable.add(point.id);
+                } else {
+                    storedByHash.computeIfAbsent(hash, h -> new ArrayDeque<>()).add(point);
+                }
+            }
+        }
+
+        /**
+         * האם יש למסמך נקודות שמורות (עיבוד חוזר)
+         */
+        public boolean hasStoredPoints() {
+            return storedCount > 0;
+        }
+
+        /**
+         * סימון ה-chunk ב-hash שלו והתאמה לנקודה שמורה
+         *
+         * @return true אם יש לו כבר נקודה שמורה (לא צריך embedding), false אם צריך לכתוב אותו
+         */
+        public boolean claim(TextSegment segment) {
+            String hash = chunkHash(embeddingModel, segment.text());
+            segment.metadata().put(CHUNK_HASH_KEY, hash);
+
+            Deque<QdrantVectorService.StoredPoint> candidates = storedByHash.get(hash);
+            QdrantVectorService.StoredPoint match = candidates != null ? candidates.pollFirst() : null;
+            if (match == null) {
+                added++;
+                return false;
+            }
+
+            Map<String, Object> positionChanges = positionChanges(match.segment, segment);
+            if (!positionChanges.isEmpty()) {
+                moved.put(match.id, positionChanges);
+            }
+            reused++;
+            return true;
+        }
+
+        /**
+         * רק ה-chunks שצריך לכתוב, מתוך רצף כל ה-chunks של המסמך (נצרך בעצלות, בקצב של ה-pipeline)
+         */
+        public Iterator<TextSegment> changedOnly(Iterator<TextSegment> chunks) {
+            return new Iterator<>() {
+                private TextSegment next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && chunks.hasNext()) {
+                        TextSegment candidate = chunks.next();
+                        if (!claim(candidate)) {
+                            next = candidate;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public TextSegment next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    TextSegment segment = next;
+                    next = null;
+                    return segment;
+                }
+            };
+        }
+
+        private List<Points.PointId> stalePoints() {
+            List<Points.PointId> stale = new ArrayList<>(unmatchable);
+            for (Deque<QdrantVectorService.StoredPoint> remaining : storedByHash.values()) {
+                for (QdrantVectorService.StoredPoint point : remaining) {
+                    stale.add(point.id);
+                }
+            }
+            return stale;
+        }
+
+        // ערכי המיקום החדשים שונים מהשמורים; ערך שנעלם נרשם כ-null (מחיקת השדה)
+        private static Map<String, Object> positionChanges(TextSegment stored, TextSegment current) {
+            Map<String, Object> changes = new HashMap<>();
+            Map<String, Object> storedValues = stored.metadata().toMap();
+            Map<String, Object> currentValues = current.metadata().toMap();
+
+            for (String key : POSITION_KEYS) {
+                Object storedValue = storedValues.get(key);
+                Object currentValue = currentValues.get(key);
+                // מספרים חוזרים מ-Qdrant כ-long - ההשוואה לפי הייצוג הטקסטואלי
+                String storedText = storedValue != null ? String.valueOf(storedValue) : null;
+                String currentText = currentValue != null ? String.valueOf(currentValue) : null;
+                if (!Objects.equals(storedText, currentText)) {
+                    changes.put(key, currentValue);
+                }
+            }
+            return changes;
+        }
+    }
+
+    /**
+     * hash של chunk: המודל נכלל, כך שהחלפת מודל embedding מחליפה את כל הנקודות
+     */
+    static String chunkHash(String embeddingModel, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(embeddingModel.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static class DiffResult {
+        public final int storedPoints;
+        public final int reusedChunks;
+        public final int addedChunks;
+        public final int repositionedChunks;
+        public final int deletedPoints;
+
+        public DiffResult(int storedPoints, int reusedChunks, int addedChunks, int repositionedChunks,
+                          int deletedPoints) {
+            this.storedPoints = storedPoints;
+            this.reusedChunks = reusedChunks;
+            this.addedChunks = addedChunks;
+            this.repositionedChunks = repositionedChunks;
+            this.deletedPoints = deletedPoints;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.smartdocumentchat.service;
 
 import com.smartdocumentchat.config.KafkaConfig;
+import com.smartdocumentchat.event.ChatTurnEvent;
 import com.smartdocumentchat.event.DocumentProcessingEvent;
 import com.smartdocumentchat.event.DocumentProcessingStatusEvent;
 import lombok.RequiredArgsConstructor;
@@ -67,6 +68,22 @@ public class KafkaEventProducerService {
                 });
     }
 
+    /**
+     * שליחת סבב שיחה לשמירה. המפתח הוא מזהה השיחה, כך שהסבבים של שיחה נשמרים לפי הסדר.
+     * השליחה אסינכרונית - ה-producer צובר ושולח ב-batches ברקע.
+     */
+    public CompletableFuture<SendResult<String, Object>> sendChatTurnEvent(ChatTurnEvent event) {
+        log.debug("Sending chat turn event: sessionId={}, turnId={}", event.getSessionId(), event.getTurnId());
+
+        return kafkaTemplate.send(KafkaConfig.CHAT_TRANSCRIPT_TOPIC, String.valueOf(event.getSessionId()), event)
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        log.error("Failed to send chat turn event: sessionId={}, turnId={}, error={}",
+                                event.getSessionId(), event.getTurnId(), ex.getMessage(), ex);
+                    }
+                });
+    }
+
     /**
      * שליחת אירוע עיבוד עם callback
      */
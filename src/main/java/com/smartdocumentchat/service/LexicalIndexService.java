@@ -0,0 +1,356 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.util.BoundedLruCache;
+import dev.langchain4j.data.segment.TextSegment;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * אינדקס הפוך (lexical) של ה-chunks לכל שיחה, לצד ה-vectors ב-Qdrant, עם דירוג BM25.
+ * מוצא מזהים, מספרי סעיפים ושמות פרטיים שחיפוש dense מפספס, ובלי קריאת embedding.
+ * האינדקס נבנה ב-instance שמגיש את החיפוש, מה-payload ב-Qdrant, בחיפוש הראשון שצריך את המסמך,
+ * ונשמר בזיכרון (LRU חסום גם במספר השיחות וגם בסך ה-chunks בכל השיחות). ה-consumer של העיבוד לא מחזיק את ה-chunks - רק מוציא גרסה קודמת של מסמך מהאינדקס.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LexicalIndexService {
+
+    // מילה, כולל מזהים מורכבים כמו 4.2.1 או ABC-123 (שנשמרים גם כמילה אחת וגם בחלקים)
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("[\\p{L}\\p{N}]+(?:[.\\-/_][\\p{L}\\p{N}]+)*");
+    private static final Pattern COMPOUND_SEPARATOR = Pattern.compile("[.\\-/_]");
+    private static final Pattern NIQQUD = Pattern.compile("[\\u0591-\\u05C7]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // אותיות שימוש בעברית (ו, ה, ב, ל, מ, ש, כ) - מילה שמתחילה באחת מהן נשמרת גם בלעדיה
+    private static final String HEBREW_PREFIXES = "והבלמשכ";
+    private static final int MIN_PREFIXED_LENGTH = 4;
+
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    private final QdrantVectorService qdrantVectorService;
+
+    @Value("${chat.lexical.max-sessions:200}")
+    private int maxSessions;
+
+    // סך ה-chunks בכל האינדקסים - שיחה עם מסמכים גדולים שוקלת יותר משיחה עם מסמך קצר
+    @Value("${chat.lexical.max-chunks:200000}")
+    private long maxChunks;
+
+    @Value("${chat.lexical.idle-timeout-minutes:30}")
+    private int idleTimeoutMinutes;
+
+    @Value("${chat.lexical.load-batch-size:256}")
+    private int loadBatchSize;
+
+    private BoundedLruCache<Long, SessionIndex> indexes;
+
+    private final AtomicLong indexedChunks = new AtomicLong();
+
+    @PostConstruct
+    public void initialize() {
+        this.indexes = new BoundedLruCache<>("lexical-indexes", maxSessions,
+                Duration.ofMinutes(idleTimeoutMinutes), (sessionId, index) -> release(index));
+
+        log.info("Lexical index service initialized - maxSessions: {}, maxChunks: {}, idleTimeout: {}min",
+                maxSessions, maxChunks, idleTimeoutMinutes);
+    }
+
+    public void removeDocument(Long sessionId, Long documentId) {
+        SessionIndex index = indexes.getIfPresent(sessionId);
+        if (index != null) {
+            synchronized (index) {
+                int before = index.chunkCount;
+                index.removeDocument(documentId);
+                account(index, index.chunkCount - before);
+            }
+        }
+    }
+
+    public void invalidateSession(Long sessionId) {
+        indexes.invalidate(sessionId);
+    }
+
+    /**
+     * חיפוש BM25 במסמכים הנתונים של השיחה. מסמכים שעדיין לא באינדקס נטענים קודם מ-Qdrant.
+     *
+     * @param documentIds  המסמכים לחיפוש - רק מסמכים שעיבודם הושלם
+     * @param exactPhrase  רק chunks שמכילים את השאילתה כרצף (אחרי נרמול רווחים ואותיות)
+     */
+    public List<LexicalMatch> search(ChatSession chatSession, String query, Collection<Long> documentIds,
+                                     int maxResults, boolean exactPhrase) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(terms(query)));
+        if (queryTerms.isEmpty() || documentIds.isEmpty()) {
+            return List.of();
+        }
+
+        SessionIndex index = indexes.get(chatSession.getId(), id -> new SessionIndex());
+        ensureIndexed(index, chatSession, documentIds);
+
+        Set<Long> scope = new HashSet<>(documentIds);
+        String phrase = exactPhrase ? normalizePhrase(query) : null;
+
+        List<LexicalMatch> matches = new ArrayList<>();
+        synchronized (index) {
+            if (index.chunkCount == 0) {
+                return List.of();
+            }
+            double averageLength = (double) index.totalLength / index.chunkCount;
+
+            Map<Chunk, Double> scores = new HashMap<>();
+            for (String term : queryTerms) {
+                List<Chunk> postings = index.postings.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (index.chunkCount - postings.size() + 0.5) / (postings.size() + 0.5));
+                for (Chunk chunk : postings) {
+                    if (!scope.contains(chunk.documentId)) {
+                        continue;
+                    }
+                    int tf = chunk.termFrequencies.get(term);
+                    double norm = tf + BM25_K1 * (1 - BM25_B + BM25_B * chunk.length / averageLength);
+                    scores.merge(chunk, idf * tf * (BM25_K1 + 1) / norm, Double::sum);
+                }
+            }
+
+            for (Map.Entry<Chunk, Double> entry : scores.entrySet()) {
+                Chunk chunk = entry.getKey();
+                if (phrase != null && !normalizePhrase(chunk.segment.text()).contains(phrase)) {
+                    continue;
+                }
+                matches.add(new LexicalMatch(chunk.segment, entry.getValue()));
+            }
+        }
+
+        matches.sort(Comparator.comparingDouble((LexicalMatch match) -> match.score).reversed());
+        return matches.size() > maxResults ? new ArrayList<>(matches.subList(0, maxResults)) : matches;
+    }
+
+    public Map<String, Object> getStats() {
+        BoundedLruCache.Stats stats = indexes.getStats();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("cachedSessions", stats.size);
+        result.put("maxSessions", stats.maxSize);
+        result.put("indexedChunks", indexedChunks.get());
+        result.put("maxChunks", maxChunks);
+        result.put("hits", stats.hits);
+        result.put("misses", stats.misses);
+        result.put("evictions", stats.evictions);
+        result.put("hitRate", stats.getHitRate());
+        return result;
+    }
+
+    /**
+     * טעינת המסמכים החסרים מה-payload ב-Qdrant. מסמך בלי chunks נרשם כריק כדי לא לטעון אותו שוב בכל חיפוש.
+     */
+    private void ensureIndexed(SessionIndex index, ChatSession chatSession, Collection<Long> documentIds) {
+        List<Long> missing;
+        synchronized (index) {
+            missing = documentIds.stream().filter(id -> !index.documents.containsKey(id)).distinct().toList();
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        Map<Long, List<TextSegment>> loaded = qdrantVectorService.loadSessionSegments(
+                chatSession.getId(), chatSession.getUser().getId(), missing, loadBatchSize);
+
+        synchronized (index) {
+            int before = index.chunkCount;
+            for (Long documentId : missing) {
+                // ייתכן שחיפוש מקביל כבר טען את המסמך
+                if (!index.documents.containsKey(documentId)) {
+                    index.replaceDocument(documentId, loaded.getOrDefault(documentId, List.of()));
+                }
+            }
+            account(index, index.chunkCount - before);
+        }
+
+        log.info("Loaded {} documents into lexical index of session {} from Qdrant in {}ms",
+                missing.size(), chatSession.getId(), System.currentTimeMillis() - startTime);
+
+        trimToBudget(chatSession.getId());
+    }
+
+    /**
+     * פינוי השיחות שלא נגעו בהן הכי הרבה זמן עד שסך ה-chunks חוזר לתקציב.
+     * השיחה שמחפשת עכשיו לא מפונה - גם אם היא לבדה מעל התקציב, היא תפונה בטעינה של שיחה אחרת.
+     */
+    private void trimToBudget(Long currentSessionId) {
+        if (indexedChunks.get() <= maxChunks) {
+            return;
+        }
+        for (Long sessionId : indexes.keys()) {
+            if (indexedChunks.get() <= maxChunks) {
+                return;
+            }
+            if (!sessionId.equals(currentSessionId)) {
+                indexes.invalidate(sessionId);
+            }
+        }
+        log.warn("Lexical index of session {} alone exceeds the chunk budget ({} > {})",
+                currentSessionId, indexedChunks.get(), maxChunks);
+    }
+
+    /**
+     * עדכון הספירה הכוללת. נקרא תחת הנעילה של האינדקס; אינדקס שכבר פונה לא נספר יותר
+     */
+    private void account(SessionIndex index, int delta) {
+        if (!index.released && delta != 0) {
+            indexedChunks.addAndGet(delta);
+        }
+    }
+
+    private void release(SessionIndex index) {
+        synchronized (index) {
+            if (!index.released) {
+                index.released = true;
+                indexedChunks.addAndGet(-index.chunkCount);
+            }
+        }
+    }
+
+    /**
+     * פירוק טקסט למילים לאינדקס ולשאילתה: NFKC, אותיות קטנות, בלי ניקוד. מזהה מורכב נשמר גם בחלקיו,
+     * ומילה עברית עם אות שימוש בתחילתה נשמרת גם בלעדיה.
+     */
+    private static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+
+        String normalized = NIQQUD.matcher(Normalizer.normalize(text, Normalizer.Form.NFKC))
+                .replaceAll("").toLowerCase(Locale.ROOT);
+        Matcher matcher = TOKEN_PATTERN.matcher(normalized);
+        while (matcher.find()) {
+            String token = matcher.group();
+            addTerm(terms, token);
+
+            String[] parts = COMPOUND_SEPARATOR.split(token);
+            if (parts.length > 1) {
+                for (String part : parts) {
+                    addTerm(terms, part);
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static void addTerm(List<String> terms, String term) {
+        terms.add(term);
+        if (term.length() >= MIN_PREFIXED_LENGTH && HEBREW_PREFIXES.indexOf(term.charAt(0)) >= 0) {
+            terms.add(term.substring(1));
+        }
+    }
+
+    private static String normalizePhrase(String text) {
+        String normalized = NIQQUD.matcher(Normalizer.normalize(text, Normalizer.Form.NFKC))
+                .replaceAll("").toLowerCase(Locale.ROOT);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * תוצאת חיפוש lexical - ציון BM25 (לא בר השוואה לציון cosine)
+     */
+    public static class LexicalMatch {
+        public final TextSegment segment;
+        public final double score;
+
+        LexicalMatch(TextSegment segment, double score) {
+            this.segment = segment;
+            this.score = score;
+        }
+    }
+
+    private static class Chunk {
+        private final Long documentId;
+        private final TextSegment segment;
+        private final Map<String, Integer> termFrequencies;
+        private final int length;
+
+        Chunk(Long documentId, TextSegment segment, List<String> terms) {
+            this.documentId = documentId;
+            this.segment = segment;
+            this.length = terms.size();
+            this.termFrequencies = new HashMap<>();
+            for (String term : terms) {
+                termFrequencies.merge(term, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * האינדקס של שיחה אחת. כל הגישות אליו תחת הנעילה שלו
+     */
+    private static class SessionIndex {
+        private final Map<Long, List<Chunk>> documents = new HashMap<>();
+        private final Map<String, List<Chunk>> postings = new HashMap<>();
+        private int chunkCount;
+        private long totalLength;
+        // הוצא מה-cache; חיפוש שעדיין מחזיק אותו יכול להמשיך, אבל בלי להשפיע על התקציב
+        private boolean released;
+
+        void replaceDocument(Long documentId, List<TextSegment> segments) {
+            removeDocument(documentId);
+
+            List<Chunk> chunks = new ArrayList<>(segments.size());
+            for (TextSegment segment : segments) {
+                Chunk chunk = new Chunk(documentId, segment, terms(segment.text()));
+                for (String term : chunk.termFrequencies.keySet()) {
+                    postings.computeIfAbsent(term, t -> new ArrayList<>()).add(chunk);
+                }
+                chunks.add(chunk);
+                chunkCount++;
+                totalLength += chunk.length;
+            }
+            documents.put(documentId, chunks);
+        }
+
+        void removeDocument(Long documentId) {
+            List<Chunk> removed = documents.remove(documentId);
+            if (removed == null || removed.isEmpty()) {
+                return;
+            }
+
+            Set<Chunk> removedSet = new HashSet<>(removed);
+            Set<String> affectedTerms = new HashSet<>();
+            for (Chunk chunk : removed) {
+                affectedTerms.addAll(chunk.termFrequencies.keySet());
+                chunkCount--;
+                totalLength -= chunk.length;
+            }
+            for (String term : affectedTerms) {
+                List<Chunk> termPostings = postings.get(term);
+                termPostings.removeIf(removedSet::contains);
+                if (termPostings.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+}
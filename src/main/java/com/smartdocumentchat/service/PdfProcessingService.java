@@ -1,28 +1,36 @@
 package com.smartdocumentchat.service;
 
-import com.smartdocumentchat.config.QdrantConfig;
 import com.smartdocumentchat.entity.ChatSession;
 import com.smartdocumentchat.entity.Document;
 import com.smartdocumentchat.entity.User;
 import com.smartdocumentchat.event.DocumentProcessingEvent;
 import com.smartdocumentchat.repository.DocumentRepository;
+import com.smartdocumentchat.util.CursorPage;
+import com.smartdocumentchat.util.KeysetCursor;
 import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import jakarta.persistence.criteria.Predicate;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -31,13 +39,20 @@ import java.util.stream.Collectors;
 @Slf4j
 public class PdfProcessingService {
 
-    private final EmbeddingStoreIngestor embeddingStoreIngestor;
     private final DocumentRepository documentRepository;
     private final CacheService cacheService;
+    private final DocumentStatsService documentStatsService;
     private final QdrantVectorService qdrantVectorService;
-    private final QdrantConfig.SessionAwareIngestorFactory ingestorFactory;
     private final KafkaEventProducerService kafkaEventProducerService;
     private final FileStorageService fileStorageService; // הוסף זאת
+    private final VectorGarbageCollector vectorGarbageCollector;
+
+    @Value("${chat.pagination.max-page-size:100}")
+    private int maxPageSize;
+
+    // claim-check: האירוע ב-Kafka נושא רק את מפתח האובייקט ב-MinIO ולא את תוכן הקובץ
+    @Value("${document.processing.claim-check.enabled:true}")
+    private boolean claimCheckEnabled;
 
     /**
      * עיבוד קובץ PDF חדש לשיחה ספציפית - גרסה אסינכרונית עם Kafka ואחסון ב-MinIO
@@ -62,9 +77,11 @@ public class PdfProcessingService {
             throw new IllegalArgumentException("קובץ עם שם זהה כבר קיים בשיחה זו");
         }
 
-        // חישוב hash של התוכן
-        byte[] fileContent = file.getBytes();
-        String contentHash = calculateFileHash(fileContent);
+        // חישוב hash של התוכן (streaming - בלי לטעון את כל הקובץ לזיכרון)
+        String contentHash;
+        try (InputStream hashStream = file.getInputStream()) {
+            contentHash = calculateFileHash(hashStream);
+        }
         Optional<Document> duplicateDoc = findDuplicateInSession(chatSession, contentHash);
 
         if (duplicateDoc.isPresent()) {
@@ -79,8 +96,8 @@ public class PdfProcessingService {
         // שמירת הקובץ ב-MinIO
         String storagePath = generateStoragePath(sessionUser.getId(), chatSession.getId(), uniqueFileName);
 
-        try {
-            fileStorageService.uploadFile(new ByteArrayInputStream(fileContent), storagePath,
+        try (InputStream uploadStream = file.getInputStream()) {
+            fileStorageService.uploadFile(uploadStream, storagePath,
                     file.getContentType(), file.getSize());
             log.info("קובץ נשמר בהצלחה ב-MinIO: {}", storagePath);
         } catch (Exception e) {
@@ -113,16 +130,25 @@ public class PdfProcessingService {
         try {
             final Long documentId = document.getId();
 
-            DocumentProcessingEvent event = DocumentProcessingEvent.forProcessing(
-                    documentId,
-                    sessionUser.getId(),
-                    chatSession.getId(),
-                    originalFileName,
-                    getFileExtension(originalFileName),
-                    file.getSize(),
-                    contentHash,
-                    fileContent
-            );
+            DocumentProcessingEvent event = claimCheckEnabled
+                    ? DocumentProcessingEvent.forProcessing(
+                            documentId,
+                            sessionUser.getId(),
+                            chatSession.getId(),
+                            originalFileName,
+                            getFileExtension(originalFileName),
+                            file.getSize(),
+                            contentHash,
+                            storagePath)
+                    : DocumentProcessingEvent.forProcessing(
+                            documentId,
+                            sessionUser.getId(),
+                            chatSession.getId(),
+                            originalFileName,
+                            getFileExtension(originalFileName),
+                            file.getSize(),
+                            contentHash,
+                            file.getBytes());
 
             // שליחה אסינכרונית ל-Kafka
             kafkaEventProducerService.sendDocumentProcessingEvent(event)
@@ -188,20 +214,144 @@ public class PdfProcessingService {
      */
     public List<Document> getDocumentsBySession(ChatSession chatSession) {
         validateChatSession(chatSession);
-        String cacheKey = "session_docs:" + chatSession.getId() + "_user:" + chatSession.getUser().getId();
+        String cacheKey = sessionDocumentsCacheKey(chatSession);
 
+        CacheService.TaggedRead cached = cacheService.readDocumentMetadata(cacheKey, sessionDocumentsTags(chatSession));
         @SuppressWarnings("unchecked")
-        List<Document> cachedDocs = (List<Document>) cacheService.getDocumentMetadata(cacheKey);
+        List<Document> cachedDocs = (List<Document>) cached.value();
 
         if (cachedDocs != null) {
             return cachedDocs;
         }
 
         List<Document> documents = documentRepository.findByChatSessionAndActiveTrueOrderByCreatedAtDesc(chatSession);
-        cacheService.cacheDocumentMetadata(cacheKey, documents);
+        cacheService.cacheDocumentMetadata(cached, cacheKey, documents);
         return documents;
     }
 
+    /**
+     * עמוד של מסמכי השיחה עם סינון ומיון ב-DB (keyset pagination של Spring Data על (עמודת המיון, id)).
+     * פרמטר סינון שהוא null לא מסנן.
+     */
+    public CursorPage<Document> getSessionDocumentsPage(ChatSession chatSession, String nameQuery, String fileType,
+                                                        Document.ProcessingStatus status, String sortBy,
+                                                        String sortOrder, String cursor, int limit) {
+        validateChatSession(chatSession);
+
+        DocumentSort sort = DocumentSort.from(sortBy);
+        boolean descending = !"asc".equalsIgnoreCase(sortOrder);
+        String cursorSort = sort.key + (descending ? "_desc" : "_asc");
+        KeysetCursor after = KeysetCursor.decode(cursor, cursorSort);
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+
+        Specification<Document> filter = sessionDocumentsFilter(chatSession, nameQuery, fileType, status);
+
+        Sort order = Sort.by(descending ? Sort.Direction.DESC : Sort.Direction.ASC, sort.property, "id");
+        ScrollPosition position = after == null
+                ? ScrollPosition.keyset()
+                : ScrollPosition.forward(Map.of(sort.property, sort.parseCursorValue(after), "id", after.id));
+
+        Window<Document> window = documentRepository.findBy(filter,
+                query -> query.sortBy(order).limit(pageSize).scroll(position));
+
+        List<Document> documents = window.getContent();
+        String nextCursor = window.hasNext() && !documents.isEmpty()
+                ? sort.cursorOf(cursorSort, documents.get(documents.size() - 1))
+                : null;
+        return new CursorPage<>(documents, nextCursor);
+    }
+
+    /**
+     * מספר מסמכי השיחה שעונים על הסינון (כל העמודים) - אותם פרמטרים כמו getSessionDocumentsPage
+     */
+    public long countSessionDocuments(ChatSession chatSession, String nameQuery, String fileType,
+                                      Document.ProcessingStatus status) {
+        validateChatSession(chatSession);
+        return documentRepository.count(sessionDocumentsFilter(chatSession, nameQuery, fileType, status));
+    }
+
+    private static Specification<Document> sessionDocumentsFilter(ChatSession chatSession, String nameQuery,
+                                                                  String fileType,
+                                                                  Document.ProcessingStatus status) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.equal(root.get("chatSession").get("id"), chatSession.getId()));
+            predicates.add(cb.isTrue(root.get("active")));
+            if (nameQuery != null && !nameQuery.isBlank()) {
+                predicates.add(cb.like(cb.lower(root.get("originalFileName")),
+                        "%" + nameQuery.trim().toLowerCase() + "%"));
+            }
+            if (fileType != null && !fileType.isBlank()) {
+                predicates.add(cb.equal(cb.lower(root.get("fileType")), fileType.trim().toLowerCase()));
+            }
+            if (status != null) {
+                predicates.add(cb.equal(root.get("processingStatus"), status));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * קבלת המסמכים של כמה שיחות: multi-get אחד ל-cache, שאילתה אחת לכל השיחות החסרות,
+     * ו-multi-set אחד לשמירתן - במקום round-trip לכל שיחה
+     */
+    public Map<Long, List<Document>> getDocumentsBySessions(List<ChatSession> chatSessions) {
+        chatSessions.forEach(this::validateChatSession);
+
+        Map<String, ChatSession> sessionsByCacheKey = new LinkedHashMap<>();
+        Map<String, List<String>> tagsByCacheKey = new LinkedHashMap<>();
+        for (ChatSession chatSession : chatSessions) {
+            String cacheKey = sessionDocumentsCacheKey(chatSession);
+            sessionsByCacheKey.put(cacheKey, chatSession);
+            tagsByCacheKey.put(cacheKey, List.of(sessionDocumentsTags(chatSession)));
+        }
+
+        CacheService.TaggedRead cached = cacheService.readDocumentMetadataBatch(tagsByCacheKey);
+
+        Map<Long, List<Document>> documentsBySession = new LinkedHashMap<>();
+        List<ChatSession> missingSessions = new ArrayList<>();
+
+        for (Map.Entry<String, ChatSession> entry : sessionsByCacheKey.entrySet()) {
+            @SuppressWarnings("unchecked")
+            List<Document> cachedDocs = (List<Document>) cacheService.getDocumentMetadata(cached, entry.getKey());
+            if (cachedDocs != null) {
+                documentsBySession.put(entry.getValue().getId(), cachedDocs);
+            } else {
+                documentsBySession.put(entry.getValue().getId(), new ArrayList<>());
+                missingSessions.add(entry.getValue());
+            }
+        }
+
+        if (!missingSessions.isEmpty()) {
+            // השאילתה ממוינת לפי createdAt desc, ולכן כל רשימה לשיחה נשארת באותו סדר כמו בשאילתה לשיחה בודדת
+            for (Document document : documentRepository.findByChatSessionInAndActiveTrueOrderByCreatedAtDesc(missingSessions)) {
+                documentsBySession.get(document.getChatSession().getId()).add(document);
+            }
+
+            Map<String, Object> toCache = new LinkedHashMap<>();
+            for (ChatSession chatSession : missingSessions) {
+                toCache.put(sessionDocumentsCacheKey(chatSession), documentsBySession.get(chatSession.getId()));
+            }
+            cacheService.cacheDocumentMetadataBatch(cached, toCache);
+        }
+
+        log.debug("Documents for {} sessions retrieved ({} from cache, {} from database)",
+                chatSessions.size(), chatSessions.size() - missingSessions.size(), missingSessions.size());
+
+        return documentsBySession;
+    }
+
+    private String sessionDocumentsCacheKey(ChatSession chatSession) {
+        return "session_docs:" + chatSession.getId() + "_user:" + chatSession.getUser().getId();
+    }
+
+    private String[] sessionDocumentsTags(ChatSession chatSession) {
+        return new String[]{
+                CacheService.sessionTag(chatSession.getId()),
+                CacheService.userTag(chatSession.getUser().getId())
+        };
+    }
+
     /**
      * קבלת מסמכים מעובדים בלבד לשיחה (לשאילת שאלות)
      */
@@ -221,8 +371,9 @@ public class PdfProcessingService {
 
         String cacheKey = "user_all_docs:" + user.getId();
 
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.userTag(user.getId()));
         @SuppressWarnings("unchecked")
-        List<Document> cachedDocs = (List<Document>) cacheService.getDocumentMetadata(cacheKey);
+        List<Document> cachedDocs = (List<Document>) cached.value();
 
         if (cachedDocs != null) {
             log.debug("All documents for user {} retrieved from cache", user.getId());
@@ -232,7 +383,7 @@ public class PdfProcessingService {
         List<Document> documents = documentRepository.findByUserOrderByCreatedAtDesc(user);
 
         // Cache for 30 minutes (shorter for user-wide queries)
-        cacheService.set(cacheKey, documents, java.time.Duration.ofMinutes(30));
+        cacheService.setTagged(cached, cacheKey, documents, java.time.Duration.ofMinutes(30));
         log.debug("All documents for user {} retrieved from database and cached: {} documents",
                 user.getId(), documents.size());
 
@@ -283,7 +434,9 @@ public class PdfProcessingService {
         validateUser(requestingUser);
 
         String cacheKey = "document:" + documentId + "_user:" + requestingUser.getId();
-        Document cachedDoc = (Document) cacheService.getDocumentMetadata(cacheKey);
+        CacheService.TaggedRead cached = cacheService.readDocumentMetadata(cacheKey,
+                CacheService.userTag(requestingUser.getId()));
+        Document cachedDoc = (Document) cached.value();
 
         if (cachedDoc != null) {
             log.debug("Document {} retrieved from cache (user {})", documentId, requestingUser.getId());
@@ -303,7 +456,7 @@ public class PdfProcessingService {
             }
 
             // Cache the document
-            cacheService.cacheDocumentMetadata(cacheKey, document);
+            cacheService.cacheDocumentMetadata(cached, cacheKey, document);
             log.debug("Document {} retrieved from database and cached (user {})",
                     documentId, requestingUser.getId());
         }
@@ -329,6 +482,10 @@ public class PdfProcessingService {
             invalidateSessionDocumentCache(document.getChatSession().getId(), requestingUser.getId());
             invalidateUserDocumentCache(requestingUser.getId());
 
+            // ה-vectors של המסמך נמחקים מ-Qdrant ברקע, כדי שלא יחזרו בשליפה
+            vectorGarbageCollector.deleteDocumentVectors(
+                    document.getChatSession().getId(), requestingUser.getId(), document.getId());
+
             log.info("מסמך {} ({}) נמחק בהצלחה על ידי משתמש {} משיחה {}",
                     document.getId(), document.getOriginalFileName(),
                     requestingUser.getUsername(), document.getChatSession().getId());
@@ -341,33 +498,19 @@ public class PdfProcessingService {
     }
 
     /**
-     * סטטיסטיקות משתמש עם caching משופר
+     * סטטיסטיקות משתמש - ממוני ה-DocumentStatsService (מתעדכנים בכל מעבר סטטוס)
      */
     public DocumentStats getUserDocumentStats(User user) {
         validateUser(user);
+        return documentStatsService.getUserStats(user.getId());
+    }
 
-        String cacheKey = "user_stats:" + user.getId();
-        DocumentStats cachedStats = (DocumentStats) cacheService.get(cacheKey);
-
-        if (cachedStats != null) {
-            log.debug("Document stats for user {} retrieved from cache", user.getId());
-            return cachedStats;
-        }
-
-        long totalDocs = documentRepository.countByUserAndProcessingStatus(
-                user, Document.ProcessingStatus.COMPLETED);
-        long processingDocs = documentRepository.countByUserAndProcessingStatus(
-                user, Document.ProcessingStatus.PROCESSING);
-        long failedDocs = documentRepository.countByUserAndProcessingStatus(
-                user, Document.ProcessingStatus.FAILED);
-
-        DocumentStats stats = new DocumentStats(totalDocs, processingDocs, failedDocs);
-
-        // Cache for 10 minutes
-        cacheService.set(cacheKey, stats, java.time.Duration.ofMinutes(10));
-        log.debug("Document stats for user {} retrieved from database and cached", user.getId());
-
-        return stats;
+    /**
+     * היסטוגרמת סטטוסי עיבוד של כל מסמכי המשתמש
+     */
+    public Map<Document.ProcessingStatus, Long> getUserStatusHistogram(User user) {
+        validateUser(user);
+        return documentStatsService.getUserStatusHistogram(user.getId());
     }
 
     /**
@@ -375,26 +518,15 @@ public class PdfProcessingService {
      */
     public SessionDocumentStats getSessionDocumentStats(ChatSession chatSession) {
         validateChatSession(chatSession);
+        return documentStatsService.getSessionStats(List.of(chatSession.getId())).get(chatSession.getId());
+    }
 
-        List<Document> documents = getDocumentsBySession(chatSession);
-
-        long totalDocs = documents.size();
-        long completedDocs = documents.stream().mapToLong(doc -> doc.isProcessed() ? 1 : 0).sum();
-        long processingDocs = documents.stream().mapToLong(doc -> doc.isProcessing() ? 1 : 0).sum();
-        long failedDocs = documents.stream().mapToLong(doc -> doc.hasFailed() ? 1 : 0).sum();
-
-        int totalCharacters = documents.stream()
-                .filter(Document::isProcessed)
-                .mapToInt(doc -> doc.getCharacterCount() != null ? doc.getCharacterCount() : 0)
-                .sum();
-
-        int totalChunks = documents.stream()
-                .filter(Document::isProcessed)
-                .mapToInt(doc -> doc.getChunkCount() != null ? doc.getChunkCount() : 0)
-                .sum();
-
-        return new SessionDocumentStats(totalDocs, completedDocs, processingDocs,
-                failedDocs, totalCharacters, totalChunks);
+    /**
+     * סטטיסטיקות מסמכים לכמה שיחות בבת אחת (בלי לטעון את המסמכים).
+     * לכל שיחה מבוקשת יש ערך - שיחה בלי מסמכים מקבלת אפסים.
+     */
+    public Map<Long, SessionDocumentStats> getSessionDocumentStats(Collection<Long> sessionIds) {
+        return documentStatsService.getSessionStats(sessionIds);
     }
 
     /**
@@ -459,33 +591,6 @@ public class PdfProcessingService {
         }
     }
 
-    private dev.langchain4j.data.document.Document createDocumentFromInputStream(
-            InputStream inputStream, String fileName, String documentId,
-            User user, ChatSession chatSession) throws IOException {
-
-        ApachePdfBoxDocumentParser parser = new ApachePdfBoxDocumentParser();
-        byte[] fileBytes = inputStream.readAllBytes();
-
-        try (ByteArrayInputStream byteStream = new ByteArrayInputStream(fileBytes)) {
-            dev.langchain4j.data.document.Document document = parser.parse(byteStream);
-
-            if (document.text() == null || document.text().trim().isEmpty()) {
-                throw new IOException("הקובץ נפרסר אבל לא מכיל טקסט");
-            }
-
-            // הוספת metadata עם פרטי משתמש ושיחה
-            document.metadata().add("source", fileName);
-            document.metadata().add("document_id", documentId);
-            document.metadata().add("user_id", user.getId().toString());
-            document.metadata().add("username", user.getUsername());
-            document.metadata().add("session_id", chatSession.getId().toString());
-            document.metadata().add("session_title", chatSession.getDisplayTitle());
-            document.metadata().add("upload_time", LocalDateTime.now().toString());
-
-            return document;
-        }
-    }
-
     private String generateUniqueFileName(String originalFileName, Long userId, Long sessionId) {
         return "s" + sessionId + "_u" + userId + "_" +
                 java.util.UUID.randomUUID().toString().substring(0, 8) + "_" +
@@ -498,10 +603,15 @@ public class PdfProcessingService {
         return (lastDot >= 0) ? fileName.substring(lastDot + 1).toLowerCase() : null;
     }
 
-    private String calculateFileHash(byte[] fileBytes) {
+    private String calculateFileHash(InputStream inputStream) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(fileBytes);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+            byte[] hash = md.digest();
             StringBuilder hexString = new StringBuilder();
             for (byte b : hash) {
                 String hex = Integer.toHexString(0xff & b);
@@ -517,15 +627,16 @@ public class PdfProcessingService {
         }
     }
 
+    /**
+     * פסילת המסמכים של השיחה וכל מה שנגזר מהם ברמת המשתמש (כל המסמכים, סטטיסטיקות, היסטוריה)
+     */
     private void invalidateSessionDocumentCache(Long sessionId, Long userId) {
-        String sessionCacheKey = "session_docs:" + sessionId + "_user:" + userId;
-        cacheService.delete(sessionCacheKey);
+        cacheService.invalidateTags(CacheService.sessionTag(sessionId), CacheService.userTag(userId));
         log.debug("Invalidated session documents cache for session {} and user {}", sessionId, userId);
     }
 
     private void invalidateUserDocumentCache(Long userId) {
-        cacheService.delete("user_all_docs:" + userId);
-        cacheService.delete("user_stats:" + userId);
+        cacheService.invalidateTags(CacheService.userTag(userId));
         log.debug("Invalidated user documents cache for user {}", userId);
     }
 
@@ -536,17 +647,71 @@ public class PdfProcessingService {
     public Document updateDocument(Document document) {
         Document updated = documentRepository.save(document);
 
+        // ניקוי cache של השיחה - לפני הכתיבה, כדי שהמסמך המעודכן יישמר תחת ה-generation החדש
+        invalidateSessionDocumentCache(document.getChatSession().getId(), document.getUser().getId());
+
         // עדכון cache
         String cacheKey = "document:" + document.getId() + "_user:" + document.getUser().getId();
-        cacheService.cacheDocumentMetadata(cacheKey, updated);
-
-        // ניקוי cache של השיחה
-        invalidateSessionDocumentCache(document.getChatSession().getId(), document.getUser().getId());
+        cacheService.cacheDocumentMetadata(cacheKey, updated, CacheService.userTag(document.getUser().getId()));
 
         log.info("מסמך {} עודכן בהצלחה", document.getId());
         return updated;
     }
 
+    /**
+     * מיון רשימת המסמכים - שם הפרמטר ב-API ושם השדה בישות
+     */
+    public enum DocumentSort {
+        UPLOAD_TIME("uploadtime", "createdAt"),
+        NAME("name", "originalFileName"),
+        SIZE("size", "fileSize"),
+        STATUS("status", "processingStatus");
+
+        private final String key;
+        private final String property;
+
+        DocumentSort(String key, String property) {
+            this.key = key;
+            this.property = property;
+        }
+
+        public static DocumentSort from(String sortBy) {
+            if (sortBy != null) {
+                for (DocumentSort sort : values()) {
+                    if (sort.key.equalsIgnoreCase(sortBy)) {
+                        return sort;
+                    }
+                }
+            }
+            return UPLOAD_TIME;
+        }
+
+        private String cursorOf(String cursorSort, Document document) {
+            Object value = switch (this) {
+                case UPLOAD_TIME -> document.getCreatedAt();
+                case NAME -> document.getOriginalFileName();
+                case SIZE -> document.getFileSize();
+                case STATUS -> document.getProcessingStatus().name();
+            };
+            return KeysetCursor.encode(cursorSort, value, document.getId());
+        }
+
+        private Object parseCursorValue(KeysetCursor cursor) {
+            return switch (this) {
+                case UPLOAD_TIME -> cursor.timeValue();
+                case NAME -> cursor.value;
+                case SIZE -> cursor.longValue();
+                case STATUS -> {
+                    try {
+                        yield Document.ProcessingStatus.valueOf(cursor.value);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("cursor לא תקין");
+                    }
+                }
+            };
+        }
+    }
+
     // Inner classes for statistics
 
     public static class DocumentStats {
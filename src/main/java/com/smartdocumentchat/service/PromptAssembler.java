@@ -0,0 +1,222 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.Document;
+import dev.langchain4j.model.Tokenizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * הרכבת הבקשה למודל משני חלקים נפרדים: שאילתת השליפה (רק השאלה - היא זו שעוברת embedding)
+ * והפרומפט לניסוח התשובה (הוראות, רשימת המסמכים והשאלה).
+ * רשימת המסמכים נחתכת לפי תקציב tokens, והמסמכים שלא נכנסו מסוכמים בשורה אחת לפי סוג.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PromptAssembler {
+
+    private static final String ANSWER_INSTRUCTIONS =
+            "חשוב:\n" +
+            "1. ענה רק על בסיס המידע שמופיע במסמכים האלה\n" +
+            "2. אם מידע מופיע במספר מסמכים - השווה ביניהם והזכר הבדלים\n" +
+            "3. ציין מאיזה מסמך (לפי שמו או מספרו) לקחת כל חלק מהמידע\n" +
+            "4. אם המידע לא מופיע במסמכים - ציין זאת במפורש";
+
+    private static final String SEARCH_INSTRUCTIONS =
+            "חשוב:\n" +
+            "1. ציין מאיזה מסמך לקחת כל מידע (בשם המסמך)\n" +
+            "2. אם המידע לא קיים במסמכים - ציין זאת במפורש\n" +
+            "3. אם יש מידע דומה במספר מסמכים - ציין את ההבדלים\n";
+
+    private final Tokenizer tokenizer;
+
+    // תקציב להיסטוריה + פרומפט הניסוח, לפני הקטעים שנשלפים (הם חסומים ב-maxResults)
+    @Value("${chat.prompt.max-tokens:3000}")
+    private int maxPromptTokens;
+
+    @Value("${chat.prompt.manifest-max-tokens:800}")
+    private int manifestMaxTokens;
+
+    /**
+     * בקשה לשאלה בשיחה
+     *
+     * @param question      השאלה (העצמאית, אחרי ניסוח לפי זיכרון השיחה)
+     * @param historyTokens tokens שכבר תפוסים על ידי היסטוריית השיחה
+     */
+    public AssembledPrompt forQuestion(String question, List<Document> documents, ChatSession chatSession,
+                                       int historyTokens) {
+        StringBuilder instructions = new StringBuilder(ANSWER_INSTRUCTIONS);
+
+        // שיפורים ספציפיים לסוגי שאלות
+        String lowerQuestion = question.toLowerCase();
+        if (lowerQuestion.contains("השווה") || lowerQuestion.contains("compare") ||
+                lowerQuestion.contains("הבדל")) {
+            instructions.append("\n\nהשווה את המידע בין המסמכים השונים והצג הבדלים ודמיון.");
+        } else if (lowerQuestion.contains("סיכום") || lowerQuestion.contains("summary") ||
+                lowerQuestion.contains("תמצית")) {
+            instructions.append("\n\nצור סיכום מקיף המשלב מידע מכל המסמכים.");
+        } else if (lowerQuestion.contains("מצא") || lowerQuestion.contains("find") ||
+                lowerQuestion.contains("חפש")) {
+            instructions.append("\n\nחפש במסמכים וציין בדיוק באילו מסמכים נמצא המידע.");
+        }
+
+        String header = String.format("בהקשר של השיחה '%s' עם %d מסמכים:\n",
+                chatSession.getDisplayTitle(), documents.size());
+        String questionPart = "ענה על השאלה: " + question + "\n\n";
+
+        return assemble(question, header, questionPart, instructions.toString(), documents, historyTokens);
+    }
+
+    /**
+     * בקשה לחיפוש במסמכים. searchMode קובע את ההוראות למודל; השליפה עצמה לפי המצב נעשית ב-HybridRetriever
+     */
+    public AssembledPrompt forSearch(String query, List<Document> documents, HybridRetriever.SearchMode searchMode) {
+        String header = documents.size() == 1
+                ? "חפש במסמכים הבאים במסמך: " + documents.get(0).getOriginalFileName() + "\n"
+                : "חפש במסמכים הבאים ב-" + documents.size() + " מסמכים:\n";
+
+        String questionPart;
+        if (searchMode == HybridRetriever.SearchMode.EXACT) {
+            questionPart = "חפש התאמה מדויקת לטקסט: \"" + query + "\"\n" +
+                    "החזר את הקטעים המדויקים שמכילים את הטקסט הזה.\n\n";
+        } else if (searchMode == HybridRetriever.SearchMode.KEYWORD) {
+            questionPart = "חפש מילות מפתח: " + query + "\n" +
+                    "מצא קטעים שמכילים את מילות המפתח האלה.\n\n";
+        } else { // hybrid / semantic
+            questionPart = "שאלה: " + query + "\n" +
+                    "ענה על בסיס ההקשר והמשמעות של השאלה.\n\n";
+        }
+
+        return assemble(query, header, questionPart, SEARCH_INSTRUCTIONS,
+                documents.size() == 1 ? List.of() : documents, 0);
+    }
+
+    private AssembledPrompt assemble(String retrievalQuery, String header, String questionPart,
+                                     String instructions, List<Document> documents, int historyTokens) {
+        int fixedTokens = tokenizer.estimateTokenCountInText(header)
+                + tokenizer.estimateTokenCountInText(questionPart)
+                + tokenizer.estimateTokenCountInText(instructions);
+        int manifestBudget = Math.max(0, Math.min(manifestMaxTokens, maxPromptTokens - historyTokens - fixedTokens));
+
+        StringBuilder manifest = new StringBuilder();
+        int manifestTokens = 0;
+        int listed = 0;
+        for (Document doc : documents) {
+            String line = String.format("%d. %s (ID: %d, סוג: %s, גודל: %s, %d תווים)\n",
+                    listed + 1,
+                    doc.getOriginalFileName(),
+                    doc.getId(),
+                    doc.getFileType() != null ? doc.getFileType() : "unknown",
+                    doc.getFileSizeFormatted(),
+                    doc.getCharacterCount() != null ? doc.getCharacterCount() : 0);
+            int lineTokens = tokenizer.estimateTokenCountInText(line);
+            if (manifestTokens + lineTokens > manifestBudget) {
+                break;
+            }
+            manifest.append(line);
+            manifestTokens += lineTokens;
+            listed++;
+        }
+
+        int omitted = documents.size() - listed;
+        if (omitted > 0) {
+            String summary = summarizeOmitted(documents.subList(listed, documents.size()));
+            manifest.append(summary);
+            manifestTokens += tokenizer.estimateTokenCountInText(summary);
+        }
+
+        String generationPrompt = header + manifest + "\n" + questionPart + instructions;
+        PromptTokens tokens = new PromptTokens(
+                tokenizer.estimateTokenCountInText(retrievalQuery),
+                manifestTokens,
+                fixedTokens,
+                historyTokens,
+                listed,
+                omitted);
+
+        log.debug("Assembled prompt: retrievalQuery={} tokens, manifest={} tokens ({} listed, {} summarized), " +
+                        "total={} tokens", tokens.retrievalQueryTokens, tokens.manifestTokens,
+                listed, omitted, tokens.getTotalTokens());
+
+        return new AssembledPrompt(retrievalQuery, generationPrompt, tokens);
+    }
+
+    /**
+     * שורת סיכום למסמכים שלא נכנסו לתקציב: כמות לפי סוג קובץ
+     */
+    private String summarizeOmitted(List<Document> omitted) {
+        Map<String, Long> byType = omitted.stream().collect(Collectors.groupingBy(
+                doc -> doc.getFileType() != null ? doc.getFileType() : "unknown",
+                TreeMap::new, Collectors.counting()));
+
+        String types = byType.entrySet().stream()
+                .map(entry -> entry.getValue() + " " + entry.getKey())
+                .collect(Collectors.joining(", "));
+        return String.format("ועוד %d מסמכים (%s)\n", omitted.size(), types);
+    }
+
+    /**
+     * תוצאת ההרכבה לבקשה אחת
+     */
+    public static class AssembledPrompt {
+        // מה שעובר embedding ונשלח ל-Qdrant
+        public final String retrievalQuery;
+        // מה שנשלח למודל (לפני הקטעים שנשלפו)
+        public final String generationPrompt;
+        public final PromptTokens tokens;
+
+        AssembledPrompt(String retrievalQuery, String generationPrompt, PromptTokens tokens) {
+            this.retrievalQuery = retrievalQuery;
+            this.generationPrompt = generationPrompt;
+            this.tokens = tokens;
+        }
+    }
+
+    public static class PromptTokens {
+        public final int retrievalQueryTokens;
+        public final int manifestTokens;
+        // כותרת, שאלה והוראות
+        public final int fixedTokens;
+        public final int historyTokens;
+        public final int listedDocuments;
+        public final int summarizedDocuments;
+
+        PromptTokens(int retrievalQueryTokens, int manifestTokens, int fixedTokens, int historyTokens,
+                     int listedDocuments, int summarizedDocuments) {
+            this.retrievalQueryTokens = retrievalQueryTokens;
+            this.manifestTokens = manifestTokens;
+            this.fixedTokens = fixedTokens;
+            this.historyTokens = historyTokens;
+            this.listedDocuments = listedDocuments;
+            this.summarizedDocuments = summarizedDocuments;
+        }
+
+        /**
+         * tokens שנשלחים למודל לפני הקטעים שנשלפו
+         */
+        public int getTotalTokens() {
+            return manifestTokens + fixedTokens + historyTokens;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("retrievalQuery", retrievalQueryTokens);
+            map.put("manifest", manifestTokens);
+            map.put("questionAndInstructions", fixedTokens);
+            map.put("history", historyTokens);
+            map.put("total", getTotalTokens());
+            map.put("listedDocuments", listedDocuments);
+            map.put("summarizedDocuments", summarizedDocuments);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.QdrantProperties;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.WithVectorsSelectorFactory;
+import io.qdrant.client.grpc.Points;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * העברת collections לכל שיחה (session_X_user_Y) אל ה-collection המשותף.
+ * הנקודות מועתקות עם אותם IDs, ולכן הרצה חוזרת בטוחה (upsert). מחיקת המקור רק אחרי אימות כמות.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class QdrantCollectionMigrationService {
+
+    private static final Pattern SESSION_COLLECTION_PATTERN = Pattern.compile("^session_(\\d+)_user_(\\d+)$");
+
+    private final QdrantClient qdrantClient;
+    private final QdrantProperties qdrantProperties;
+    private final QdrantVectorService qdrantVectorService;
+
+    @Value("${qdrant.migration.batch-size:256}")
+    private int batchSize;
+
+    /**
+     * העברת כל ה-collections לכל שיחה
+     *
+     * @param deleteSource מחיקת collection המקור אחרי העברה מאומתת
+     * @param dryRun       ספירה בלבד, בלי כתיבה ובלי מחיקה
+     */
+    public MigrationReport migrateSessionCollections(boolean deleteSource, boolean dryRun) throws Exception {
+        long startTime = System.currentTimeMillis();
+        String targetCollection = qdrantProperties.getSharedCollectionName();
+
+        if (!dryRun) {
+            qdrantVectorService.ensureSharedCollection();
+        }
+
+        List<String> sourceCollections = new ArrayList<>();
+        for (String collectionName : qdrantClient.listCollectionsAsync().get()) {
+            if (SESSION_COLLECTION_PATTERN.matcher(collectionName).matches()) {
+                sourceCollections.add(collectionName);
+            }
+        }
+
+        log.info("Starting migration of {} session collections into {} (deleteSource: {}, dryRun: {})",
+                sourceCollections.size(), targetCollection, deleteSource, dryRun);
+
+        int migratedCollections = 0;
+        int deletedCollections = 0;
+        long migratedPoints = 0;
+        List<String> failedCollections = new ArrayList<>();
+
+        for (String sourceCollection : sourceCollections) {
+            try {
+                long points = migrateCollection(sourceCollection, targetCollection, dryRun);
+                migratedPoints += points;
+                migratedCollections++;
+
+                if (deleteSource && !dryRun) {
+                    long sourceCount = qdrantClient.countAsync(sourceCollection).get();
+                    if (sourceCount == points) {
+                        qdrantClient.deleteCollectionAsync(sourceCollection).get();
+                        deletedCollections++;
+                    } else {
+                        log.warn("Not deleting {}: migrated {} points but source has {}",
+                                sourceCollection, points, sourceCount);
+                    }
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            } catch (Exception e) {
+                log.error("Failed to migrate collection: {}", sourceCollection, e);
+                failedCollections.add(sourceCollection);
+            }
+        }
+
+        // ה-stores שב-registry עלולים להצביע על collections שנמחקו
+        if (!dryRun) {
+            qdrantVectorService.clearEmbeddingStoresCache();
+        }
+
+        MigrationReport report = new MigrationReport(sourceCollections.size(), migratedCollections,
+                deletedCollections, migratedPoints, failedCollections, dryRun,
+                System.currentTimeMillis() - startTime);
+
+        log.info("Migration completed: {}/{} collections, {} points, {} deleted, {} failed in {}ms",
+                report.migratedCollections, report.sourceCollections, report.migratedPoints,
+                report.deletedCollections, report.failedCollections.size(), report.durationMs);
+
+        return report;
+    }
+
+    private long migrateCollection(String sourceCollection, String targetCollection, boolean dryRun)
+            throws InterruptedException, ExecutionException {
+        Matcher matcher = SESSION_COLLECTION_PATTERN.matcher(sourceCollection);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a session collection: " + sourceCollection);
+        }
+        String sessionId = matcher.group(1);
+        String userId = matcher.group(2);
+
+        long migrated = 0;
+        Points.PointId offset = null;
+
+        do {
+            Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                    .setCollectionName(sourceCollection)
+                    .setLimit(Math.max(1, batchSize))
+                    .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                    .setWithVectors(WithVectorsSelectorFactory.enable(true));
+            if (offset != null) {
+                request.setOffset(offset);
+            }
+
+            Points.ScrollResponse response = qdrantClient.scrollAsync(request.build()).get();
+
+            List<Points.PointStruct> points = new ArrayList<>(response.getResultCount());
+            for (Points.RetrievedPoint point : response.getResultList()) {
+                Points.PointStruct.Builder target = Points.PointStruct.newBuilder()
+                        .setId(point.getId())
+                        .setVectors(point.getVectors())
+                        .putAllPayload(point.getPayloadMap());
+
+                // chunks ישנים בלי שיוך ב-payload - השיוך נגזר משם ה-collection
+                if (!point.containsPayload(SessionScopedEmbeddingStore.USER_ID_KEY)) {
+                    target.putPayload(SessionScopedEmbeddingStore.USER_ID_KEY, ValueFactory.value(userId));
+                }
+                if (!point.containsPayload(SessionScopedEmbeddingStore.SESSION_ID_KEY)) {
+                    target.putPayload(SessionScopedEmbeddingStore.SESSION_ID_KEY, ValueFactory.value(sessionId));
+                }
+                points.add(target.build());
+            }
+
+            if (!dryRun && !points.isEmpty()) {
+                qdrantClient.upsertAsync(targetCollection, points).get();
+            }
+            migrated += points.size();
+
+            offset = response.hasNextPageOffset() ? response.getNextPageOffset() : null;
+        } while (offset != null);
+
+        log.info("Migrated collection {}: {} points{}", sourceCollection, migrated, dryRun ? " (dry run)" : "");
+        return migrated;
+    }
+
+    public static class MigrationReport {
+        public final int sourceCollections;
+        public final int migratedCollections;
+        public final int deletedCollections;
+        public final long migratedPoints;
+        public final List<String> failedCollections;
+        public final boolean dryRun;
+        public final long durationMs;
+
+        public MigrationReport(int sourceCollections, int migratedCollections, int deletedCollections,
+                               long migratedPoints, List<String> failedCollections, boolean dryRun,
+                               long durationMs) {
+            this.sourceCollections = sourceCollections;
+            this.migratedCollections = migratedCollections;
+            this.deletedCollections = deletedCollections;
+            this.migratedPoints = migratedPoints;
+            this.failedCollections = failedCollections;
+            this.dryRun = dryRun;
+            this.durationMs = durationMs;
+        }
+    }
+}
@@ -3,37 +3,92 @@ package com.smartdocumentchat.service;
 import com.smartdocumentchat.config.QdrantProperties;
 import com.smartdocumentchat.entity.ChatSession;
 import com.smartdocumentchat.entity.User;
+import com.smartdocumentchat.util.BoundedLruCache;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.ConditionFactory;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.WithVectorsSelectorFactory;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class QdrantVectorService {
 
+    // השדה שבו QdrantEmbeddingStore שומר את טקסט ה-chunk
+    private static final String TEXT_SEGMENT_PAYLOAD_KEY = "text_segment";
+
+    private static final List<String> SHARED_COLLECTION_INDEXED_FIELDS = List.of(
+            SessionScopedEmbeddingStore.USER_ID_KEY,
+            SessionScopedEmbeddingStore.SESSION_ID_KEY,
+            SessionScopedEmbeddingStore.DOCUMENT_ID_KEY);
+
     private final QdrantProperties qdrantProperties;
     private final EmbeddingStore<TextSegment> defaultEmbeddingStore;
+    private final QdrantClient qdrantClient;
+
+    // Registry חסום של embedding stores לשיחות. כל ה-stores חולקים את ה-gRPC client,
+    // ולכן פינוי store לא סוגר דבר - רק משחרר את האובייקט
+    private BoundedLruCache<String, EmbeddingStore<TextSegment>> sessionEmbeddingStores;
 
-    // Cache for session-specific embedding stores
-    private final Map<String, EmbeddingStore<TextSegment>> sessionEmbeddingStores = new ConcurrentHashMap<>();
+    // ב-SHARED mode: store יחיד על ה-collection המשותף; ה-stores לשיחות הם תצוגות מסוננות מעליו
+    private EmbeddingStore<TextSegment> sharedEmbeddingStore;
 
     @PostConstruct
     public void initialize() {
         try {
             log.info("Initializing Qdrant Vector service with session-based collections support");
+
+            this.sessionEmbeddingStores = new BoundedLruCache<>("qdrant-session-stores",
+                    qdrantProperties.getStoreRegistryMaxSize(),
+                    Duration.ofMinutes(qdrantProperties.getStoreRegistryIdleTimeoutMinutes()),
+                    (collectionName, store) ->
+                            log.debug("Evicted embedding store for collection: {}", collectionName));
+            log.info("Session store registry - maxSize: {}, idleTimeout: {}min",
+                    qdrantProperties.getStoreRegistryMaxSize(),
+                    qdrantProperties.getStoreRegistryIdleTimeoutMinutes());
             log.info("Default collection: {}, Host: {}:{}",
                     qdrantProperties.getCollectionName(),
                     qdrantProperties.getHost(),
                     qdrantProperties.getPort());
 
+            if (isSharedCollectionMode()) {
+                ensureSharedCollection();
+                this.sharedEmbeddingStore = QdrantEmbeddingStore.builder()
+                        .client(qdrantClient)
+                        .collectionName(qdrantProperties.getSharedCollectionName())
+                        .build();
+                log.info("Storage mode: SHARED - all sessions use collection: {}",
+                        qdrantProperties.getSharedCollectionName());
+            } else {
+                log.info("Storage mode: PER_SESSION - collection per session");
+            }
+
             log.info("Qdrant Vector service initialized successfully");
 
         } catch (Exception e) {
@@ -59,33 +114,33 @@ public class QdrantVectorService {
     public EmbeddingStore<TextSegment> getEmbeddingStoreForSession(ChatSession chatSession) {
         validateChatSession(chatSession);
 
-        String collectionName = generateSessionCollectionName(
-                chatSession.getId(),
-                chatSession.getUser().getId()
-        );
-
-        return getOrCreateEmbeddingStore(collectionName);
+        return getOrCreateEmbeddingStore(chatSession.getId(), chatSession.getUser().getId());
     }
 
     /**
      * קבלת embedding store לשיחה לפי IDs
      */
     public EmbeddingStore<TextSegment> getEmbeddingStoreForSession(Long sessionId, Long userId) {
-        String collectionName = generateSessionCollectionName(sessionId, userId);
-        return getOrCreateEmbeddingStore(collectionName);
+        return getOrCreateEmbeddingStore(sessionId, userId);
     }
 
     /**
-     * יצירה או קבלה של embedding store לcollection ספציפי
+     * יצירה או קבלה של embedding store לשיחה - collection משלה, או תצוגה מסוננת של ה-collection המשותף
      */
-    private EmbeddingStore<TextSegment> getOrCreateEmbeddingStore(String collectionName) {
-        return sessionEmbeddingStores.computeIfAbsent(collectionName, name -> {
+    private EmbeddingStore<TextSegment> getOrCreateEmbeddingStore(Long sessionId, Long userId) {
+        String collectionName = generateSessionCollectionName(sessionId, userId);
+
+        return sessionEmbeddingStores.get(collectionName, name -> {
+            if (isSharedCollectionMode()) {
+                log.debug("Creating session-scoped view on shared collection for: {}", name);
+                return new SessionScopedEmbeddingStore(sharedEmbeddingStore, this, sessionId, userId);
+            }
+
             log.info("Creating new Qdrant embedding store for collection: {}", name);
 
             try {
                 EmbeddingStore<TextSegment> store = QdrantEmbeddingStore.builder()
-                        .host(qdrantProperties.getHost())
-                        .port(qdrantProperties.getPort())
+                        .client(qdrantClient)
                         .collectionName(name)
                         .build();
 
@@ -105,7 +160,7 @@ public class QdrantVectorService {
     public void removeEmbeddingStoreForSession(Long sessionId, Long userId) {
         String collectionName = generateSessionCollectionName(sessionId, userId);
 
-        EmbeddingStore<TextSegment> removed = sessionEmbeddingStores.remove(collectionName);
+        EmbeddingStore<TextSegment> removed = sessionEmbeddingStores.invalidate(collectionName);
 
         if (removed != null) {
             log.info("Removed embedding store from cache for collection: {}", collectionName);
@@ -133,15 +188,14 @@ public class QdrantVectorService {
      * קבלת רשימת כל שמות הcollections הפעילים
      */
     public java.util.Set<String> getActiveCollectionNames() {
-        return new java.util.HashSet<>(sessionEmbeddingStores.keySet());
+        return new java.util.HashSet<>(sessionEmbeddingStores.keys());
     }
 
     /**
      * ניקוי cache של embedding stores (לתחזוקה)
      */
     public void clearEmbeddingStoresCache() {
-        int clearedCount = sessionEmbeddingStores.size();
-        sessionEmbeddingStores.clear();
+        int clearedCount = sessionEmbeddingStores.invalidateAll();
         log.info("Cleared {} embedding stores from cache", clearedCount);
     }
 
@@ -170,6 +224,339 @@ public class QdrantVectorService {
                 sessionEmbeddingStores.size());
     }
 
+    public boolean isSharedCollectionMode() {
+        return qdrantProperties.getStorageMode() == QdrantProperties.StorageMode.SHARED;
+    }
+
+    /**
+     * יצירת ה-collection המשותף אם אינו קיים, ואינדוקס שדות ה-payload שלפיהם מסננים
+     */
+    public void ensureSharedCollection() {
+        Map<String, Collections.PayloadSchemaType> indexedFields = new LinkedHashMap<>();
+        for (String field : SHARED_COLLECTION_INDEXED_FIELDS) {
+            indexedFields.put(field, Collections.PayloadSchemaType.Keyword);
+        }
+        ensureCollection(qdrantProperties.getSharedCollectionName(), indexedFields);
+    }
+
+    /**
+     * יצירת collection (במימד ובמרחק של ה-embeddings) אם אינו קיים, ואינדוקס שדות payload.
+     * יצירת אינדקס קיים היא no-op, ולכן אפשר לקרוא שוב בבטחה.
+     */
+    public void ensureCollection(String collectionName, Map<String, Collections.PayloadSchemaType> indexedFields) {
+        try {
+            List<String> existing = qdrantClient.listCollectionsAsync().get();
+            if (!existing.contains(collectionName)) {
+                log.info("Creating Qdrant collection: {} (dimension: {}, distance: {})",
+                        collectionName, qdrantProperties.getDimension(), qdrantProperties.getDistance());
+
+                qdrantClient.createCollectionAsync(collectionName,
+                        Collections.VectorParams.newBuilder()
+                                .setSize(qdrantProperties.getDimension())
+                                .setDistance(Collections.Distance.valueOf(qdrantProperties.getDistance()))
+                                .build()).get();
+            }
+
+            // כל סינון לפי שדות אלה משתמש באינדקס ולא בסריקה
+            for (Map.Entry<String, Collections.PayloadSchemaType> field : indexedFields.entrySet()) {
+                qdrantClient.createPayloadIndexAsync(collectionName, field.getKey(),
+                        field.getValue(), null, true, null, null).get();
+            }
+
+            log.info("Collection ready: {} (indexed fields: {})", collectionName, indexedFields.keySet());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while preparing collection: " + collectionName, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to prepare collection: " + collectionName, e.getCause());
+        }
+    }
+
+    /**
+     * קריאת ה-chunks של מסמכים בשיחה ישירות מה-payload ב-Qdrant (scroll, בלי vectors),
+     * מקובצים לפי מסמך. משמש לבניית אינדקסים מקומיים מעל ה-chunks שכבר אוחסנו.
+     */
+    public Map<Long, List<TextSegment>> loadSessionSegments(Long sessionId, Long userId,
+                                                            Collection<Long> documentIds, int batchSize) {
+        String collectionName = storageCollectionName(sessionId, userId);
+        Points.Filter filter = sessionFilter(sessionId, userId)
+                .addMust(ConditionFactory.matchKeywords(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY,
+                        documentIds.stream().map(String::valueOf).toList()))
+                .build();
+
+        Map<Long, List<TextSegment>> segmentsByDocument = new HashMap<>();
+
+        try {
+            scroll(collectionName, filter, batchSize, WithPayloadSelectorFactory.enable(true), false, point -> {
+                TextSegment segment = toTextSegment(point.getPayloadMap());
+                String documentId = segment != null
+                        ? segment.metadata().getString(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY) : null;
+                if (documentId != null) {
+                    segmentsByDocument.computeIfAbsent(Long.valueOf(documentId), id -> new ArrayList<>())
+                            .add(segment);
+                }
+            });
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading segments from: " + collectionName, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load segments from: " + collectionName, e.getCause());
+        }
+
+        log.debug("Loaded segments of {} documents from collection {} (session {})",
+                segmentsByDocument.size(), collectionName, sessionId);
+        return segmentsByDocument;
+    }
+
+    /**
+     * כל הנקודות של מסמך בשיחה, עם ה-id וה-payload (בלי vectors).
+     * נקודה בלי טקסט ב-payload מוחזרת עם segment ריק (null) - עדיין צריך לדעת עליה כדי למחוק אותה.
+     */
+    public List<StoredPoint> loadDocumentPoints(Long sessionId, Long userId, Long documentId, int batchSize) {
+        String collectionName = storageCollectionName(sessionId, userId);
+        Points.Filter filter = sessionFilter(sessionId, userId)
+                .addMust(ConditionFactory.matchKeyword(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY, documentId.toString()))
+                .build();
+
+        List<StoredPoint> points = new ArrayList<>();
+        try {
+            scroll(collectionName, filter, batchSize, WithPayloadSelectorFactory.enable(true), false,
+                    point -> points.add(new StoredPoint(point.getId(), toTextSegment(point.getPayloadMap()))));
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading points of document " + documentId, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load points of document " + documentId, e.getCause());
+        }
+        return points;
+    }
+
+    /**
+     * מחיקת נקודות לפי id. ב-SHARED mode רק נקודות של השיחה - id של שיחה אחרת לא נמחק
+     */
+    public void deletePoints(Long sessionId, Long userId, List<Points.PointId> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        String collectionName = storageCollectionName(sessionId, userId);
+        Points.Filter filter = sessionFilter(sessionId, userId)
+                .addMust(ConditionFactory.hasId(ids))
+                .build();
+        try {
+            qdrantClient.deleteAsync(collectionName, filter).get();
+            log.debug("Deleted up to {} points from collection {}", ids.size(), collectionName);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while deleting points from: " + collectionName, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to delete points from: " + collectionName, e.getCause());
+        }
+    }
+
+    /**
+     * כתיבת vectors בלי טקסט, עם ids נתונים. ב-SHARED mode ה-payload כולל את user_id ו-session_id,
+     * כך שהנקודות נשארות בתחום השיחה (חיפוש ומחיקה לפי השיחה מוצאים אותן)
+     */
+    public void upsertVectors(Long sessionId, Long userId, List<String> ids, List<Embedding> embeddings) {
+        if (ids.size() != embeddings.size()) {
+            throw new IllegalArgumentException("ids and embeddings must have the same size");
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        String collectionName = storageCollectionName(sessionId, userId);
+        List<Points.PointStruct> points = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Points.PointStruct.Builder point = Points.PointStruct.newBuilder()
+                    .setId(PointIdFactory.id(UUID.fromString(ids.get(i))))
+                    .setVectors(VectorsFactory.vectors(embeddings.get(i).vector()));
+            if (isSharedCollectionMode()) {
+                point.putPayload(SessionScopedEmbeddingStore.USER_ID_KEY, ValueFactory.value(userId.toString()))
+                        .putPayload(SessionScopedEmbeddingStore.SESSION_ID_KEY, ValueFactory.value(sessionId.toString()));
+            }
+            points.add(point.build());
+        }
+
+        try {
+            qdrantClient.upsertAsync(collectionName, points).get();
+            log.debug("Upserted {} vectors into collection {}", points.size(), collectionName);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while upserting vectors into: " + collectionName, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to upsert vectors into: " + collectionName, e.getCause());
+        }
+    }
+
+    /**
+     * עדכון שדות payload של נקודות קיימות בלי embedding מחדש: הנקודות נקראות עם ה-vector שלהן
+     * ונכתבות שוב עם אותו id. ערך null מוחק את השדה.
+     *
+     * @return כמה נקודות נכתבו מחדש
+     */
+    public int rewritePayloads(Long sessionId, Long userId, Map<Points.PointId, Map<String, Object>> updates,
+                               int batchSize) {
+        String collectionName = storageCollectionName(sessionId, userId);
+        List<Points.PointId> ids = new ArrayList<>(updates.keySet());
+        int size = Math.max(1, batchSize);
+        int rewritten = 0;
+
+        try {
+            for (int from = 0; from < ids.size(); from += size) {
+                List<Points.PointId> slice = ids.subList(from, Math.min(from + size, ids.size()));
+                Points.Filter filter = Points.Filter.newBuilder().addMust(ConditionFactory.hasId(slice)).build();
+
+                List<Points.PointStruct> points = new ArrayList<>(slice.size());
+                scroll(collectionName, filter, slice.size(), WithPayloadSelectorFactory.enable(true), true, point -> {
+                    Map<String, JsonWithInt.Value> payload = new HashMap<>(point.getPayloadMap());
+                    updates.get(point.getId()).forEach((key, value) -> {
+                        if (value == null) {
+                            payload.remove(key);
+                        } else {
+                            payload.put(key, toPayloadValue(value));
+                        }
+                    });
+                    points.add(Points.PointStruct.newBuilder()
+                            .setId(point.getId())
+                            .setVectors(VectorsFactory.vectors(point.getVectors().getVector().getDataList()))
+                            .putAllPayload(payload)
+                            .build());
+                });
+
+                if (!points.isEmpty()) {
+                    qdrantClient.upsertAsync(collectionName, points).get();
+                    rewritten += points.size();
+                }
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rewriting payloads in: " + collectionName, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to rewrite payloads in: " + collectionName, e.getCause());
+        }
+        return rewritten;
+    }
+
+    /**
+     * מחיקת כל הנקודות של מסמך בשיחה לפי document_id ב-payload
+     *
+     * @return כמה נקודות נמחקו
+     */
+    public long deleteDocumentPoints(Long sessionId, Long userId, Long documentId) {
+        String collectionName = storageCollectionName(sessionId, userId);
+        Points.Filter filter = sessionFilter(sessionId, userId)
+                .addMust(ConditionFactory.matchKeyword(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY, documentId.toString()))
+                .build();
+        return deleteByFilter(collectionName, filter);
+    }
+
+    /**
+     * מחיקת כל הנקודות של שיחה: ב-PER_SESSION ה-collection שלה נמחק כולו, ב-SHARED נמחקות הנקודות שלה בלבד
+     *
+     * @return כמה נקודות נמחקו
+     */
+    public long deleteSessionPoints(Long sessionId, Long userId) {
+        if (!isSharedCollectionMode()) {
+            return dropCollection(generateSessionCollectionName(sessionId, userId));
+        }
+        return deleteByFilter(qdrantProperties.getSharedCollectionName(), sessionFilter(sessionId, userId).build());
+    }
+
+    /**
+     * מחיקת collection שלם אם הוא קיים
+     *
+     * @return כמה נקודות היו בו (0 אם לא היה קיים)
+     */
+    public long dropCollection(String collectionName) {
+        try {
+            if (!qdrantClient.listCollectionsAsync().get().contains(collectionName)) {
+                return 0;
+            }
+
+            long points = qdrantClient.getCollectionInfoAsync(collectionName).get().getPointsCount();
+            qdrantClient.deleteCollectionAsync(collectionName).get();
+            sessionEmbeddingStores.invalidate(collectionName);
+
+            log.info("Dropped Qdrant collection {} ({} points)", collectionName, points);
+            return points;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while dropping collection: " + collectionName, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to drop collection: " + collectionName, e.getCause());
+        }
+    }
+
+    /**
+     * כל ה-collections ב-Qdrant (לא רק אלה שב-registry)
+     */
+    public List<String> listCollections() {
+        try {
+            return qdrantClient.listCollectionsAsync().get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing collections", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to list collections", e.getCause());
+        }
+    }
+
+    /**
+     * ספירת הנקודות ב-collection לפי (שיחה, מסמך), מתוך שדות ה-payload בלבד (בלי טקסט ובלי vectors).
+     * נקודות בלי document_id/session_id/user_id לא נספרות.
+     */
+    public List<DocumentPoints> countPointsByDocument(String collectionName, int batchSize) {
+        return countPointsByDocument(collectionName, null, batchSize);
+    }
+
+    /**
+     * ספירת הנקודות של שיחה אחת לפי מסמך
+     */
+    public List<DocumentPoints> countSessionPointsByDocument(Long sessionId, Long userId, int batchSize) {
+        Points.Filter filter = isSharedCollectionMode() ? sessionFilter(sessionId, userId).build() : null;
+        return countPointsByDocument(storageCollectionName(sessionId, userId), filter, batchSize);
+    }
+
+    private List<DocumentPoints> countPointsByDocument(String collectionName, Points.Filter filter, int batchSize) {
+        Points.WithPayloadSelector ownershipFields = Points.WithPayloadSelector.newBuilder()
+                .setInclude(Points.PayloadIncludeSelector.newBuilder()
+                        .addFields(SessionScopedEmbeddingStore.USER_ID_KEY)
+                        .addFields(SessionScopedEmbeddingStore.SESSION_ID_KEY)
+                        .addFields(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY))
+                .build();
+
+        Map<String, DocumentPoints> counts = new LinkedHashMap<>();
+        try {
+            scroll(collectionName, filter, batchSize, ownershipFields, false, point -> {
+                Long userId = longPayload(point.getPayloadMap(), SessionScopedEmbeddingStore.USER_ID_KEY);
+                Long sessionId = longPayload(point.getPayloadMap(), SessionScopedEmbeddingStore.SESSION_ID_KEY);
+                Long documentId = longPayload(point.getPayloadMap(), SessionScopedEmbeddingStore.DOCUMENT_ID_KEY);
+                if (userId == null || sessionId == null || documentId == null) {
+                    return;
+                }
+                counts.computeIfAbsent(userId + ":" + sessionId + ":" + documentId,
+                        key -> new DocumentPoints(sessionId, userId, documentId)).points++;
+            });
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while counting points in: " + collectionName, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to count points in: " + collectionName, e.getCause());
+        }
+        return new ArrayList<>(counts.values());
+    }
+
     /**
      * בדיקה אם השירות מוכן לעבודה
      */
@@ -177,22 +564,165 @@ public class QdrantVectorService {
         return defaultEmbeddingStore != null;
     }
 
+    /**
+     * פינוי stores שלא היו בשימוש מעבר לזמן המוגדר
+     */
+    public int evictIdleEmbeddingStores() {
+        int evicted = sessionEmbeddingStores.evictIdle();
+        if (evicted > 0) {
+            log.info("Evicted {} idle embedding stores", evicted);
+        }
+        return evicted;
+    }
+
     /**
      * סטטיסטיקות על השימוש
      */
     public Map<String, Object> getUsageStats() {
+        BoundedLruCache.Stats registryStats = sessionEmbeddingStores.getStats();
+
         Map<String, Object> stats = new java.util.HashMap<>();
-        stats.put("activeSessionCollections", sessionEmbeddingStores.size());
+        stats.put("activeSessionCollections", registryStats.size);
+        stats.put("maxSessionCollections", registryStats.maxSize);
+        stats.put("registryHits", registryStats.hits);
+        stats.put("registryMisses", registryStats.misses);
+        stats.put("registryEvictions", registryStats.evictions);
+        stats.put("registryHitRate", registryStats.getHitRate());
         stats.put("defaultCollection", qdrantProperties.getCollectionName());
+        stats.put("storageMode", qdrantProperties.getStorageMode().name());
+        if (isSharedCollectionMode()) {
+            stats.put("sharedCollection", qdrantProperties.getSharedCollectionName());
+        }
         stats.put("host", qdrantProperties.getHost());
         stats.put("port", qdrantProperties.getPort());
-        stats.put("collectionNames", new java.util.ArrayList<>(sessionEmbeddingStores.keySet()));
+        stats.put("collectionNames", sessionEmbeddingStores.keys());
 
         return stats;
     }
 
     // Helper methods
 
+    /**
+     * ה-collection שבו נמצאות הנקודות של השיחה בפועל
+     */
+    private String storageCollectionName(Long sessionId, Long userId) {
+        return isSharedCollectionMode()
+                ? qdrantProperties.getSharedCollectionName()
+                : generateSessionCollectionName(sessionId, userId);
+    }
+
+    /**
+     * ב-SHARED mode כל קריאה ישירה מצומצמת לשיחה; ב-collection לשיחה אין צורך
+     */
+    private Points.Filter.Builder sessionFilter(Long sessionId, Long userId) {
+        Points.Filter.Builder filter = Points.Filter.newBuilder();
+        if (isSharedCollectionMode()) {
+            filter.addMust(ConditionFactory.matchKeyword(SessionScopedEmbeddingStore.USER_ID_KEY, userId.toString()))
+                    .addMust(ConditionFactory.matchKeyword(SessionScopedEmbeddingStore.SESSION_ID_KEY, sessionId.toString()));
+        }
+        return filter;
+    }
+
+    /**
+     * מעבר על נקודות ב-collection בדפים
+     *
+     * @param filter          null - כל ה-collection
+     * @param payloadSelector אילו שדות payload לקרוא
+     */
+    private void scroll(String collectionName, Points.Filter filter, int batchSize,
+                        Points.WithPayloadSelector payloadSelector, boolean withVectors,
+                        Consumer<Points.RetrievedPoint> pointConsumer) throws InterruptedException, ExecutionException {
+        Points.PointId offset = null;
+        do {
+            Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                    .setCollectionName(collectionName)
+                    .setLimit(Math.max(1, batchSize))
+                    .setWithPayload(payloadSelector)
+                    .setWithVectors(WithVectorsSelectorFactory.enable(withVectors));
+            if (filter != null) {
+                request.setFilter(filter);
+            }
+            if (offset != null) {
+                request.setOffset(offset);
+            }
+
+            Points.ScrollResponse response = qdrantClient.scrollAsync(request.build()).get();
+            response.getResultList().forEach(pointConsumer);
+
+            offset = response.hasNextPageOffset() ? response.getNextPageOffset() : null;
+        } while (offset != null);
+    }
+
+    private long deleteByFilter(String collectionName, Points.Filter filter) {
+        try {
+            long points = qdrantClient.countAsync(collectionName, filter, true).get();
+            if (points > 0) {
+                qdrantClient.deleteAsync(collectionName, filter).get();
+            }
+            return points;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while deleting points from: " + collectionName, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to delete points from: " + collectionName, e.getCause());
+        }
+    }
+
+    private static Long longPayload(Map<String, JsonWithInt.Value> payload, String key) {
+        JsonWithInt.Value value = payload.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value.hasIntegerValue()) {
+            return value.getIntegerValue();
+        }
+        if (value.hasStringValue()) {
+            try {
+                return Long.valueOf(value.getStringValue());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static JsonWithInt.Value toPayloadValue(Object value) {
+        if (value instanceof Integer || value instanceof Long) {
+            return ValueFactory.value(((Number) value).longValue());
+        }
+        if (value instanceof Number number) {
+            return ValueFactory.value(number.doubleValue());
+        }
+        return ValueFactory.value(String.valueOf(value));
+    }
+
+    /**
+     * TextSegment מה-payload ש-QdrantEmbeddingStore כותב: הטקסט תחת text_segment, וה-metadata כשדות נוספים
+     */
+    private TextSegment toTextSegment(Map<String, JsonWithInt.Value> payload) {
+        JsonWithInt.Value text = payload.get(TEXT_SEGMENT_PAYLOAD_KEY);
+        if (text == null || !text.hasStringValue()) {
+            return null;
+        }
+
+        Metadata metadata = new Metadata();
+        for (Map.Entry<String, JsonWithInt.Value> field : payload.entrySet()) {
+            JsonWithInt.Value value = field.getValue();
+            if (field.getKey().equals(TEXT_SEGMENT_PAYLOAD_KEY)) {
+                continue;
+            }
+            if (value.hasStringValue()) {
+                metadata.put(field.getKey(), value.getStringValue());
+            } else if (value.hasIntegerValue()) {
+                metadata.put(field.getKey(), value.getIntegerValue());
+            } else if (value.hasDoubleValue()) {
+                metadata.put(field.getKey(), value.getDoubleValue());
+            }
+        }
+        return TextSegment.from(text.getStringValue(), metadata);
+    }
+
     private void validateChatSession(ChatSession chatSession) {
         if (chatSession == null) {
             throw new IllegalArgumentException("ChatSession cannot be null");
@@ -210,4 +740,33 @@ public class QdrantVectorService {
             throw new IllegalArgumentException("ChatSession must be active");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * כמות הנקודות של מסמך אחד בשיחה
+     */
+    public static class DocumentPoints {
+        public final Long sessionId;
+        public final Long userId;
+        public final Long documentId;
+        public long points;
+
+        public DocumentPoints(Long sessionId, Long userId, Long documentId) {
+            this.sessionId = sessionId;
+            this.userId = userId;
+            this.documentId = documentId;
+        }
+    }
+
+    /**
+     * נקודה שמורה: ה-id שלה וה-chunk מה-payload (null אם אין בו טקסט)
+     */
+    public static class StoredPoint {
+        public final Points.PointId id;
+        public final TextSegment segment;
+
+        public StoredPoint(Points.PointId id, TextSegment segment) {
+            this.id = id;
+            this.segment = segment;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import dev.langchain4j.chain.ConversationalRetrievalChain;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+
+/**
+ * בניית retrieval chain לכל בקשה. לא שומר כלום: מודל הצ'אט הוא singleton (חיבורי HTTP משותפים),
+ * והשליפה עוברת דרך HybridRetriever - כך שה-chain וה-retriever שבתוכו זולים לבנייה.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetrievalChainFactory {
+
+    private final ChatLanguageModel chatLanguageModel;
+    private final HybridRetriever hybridRetriever;
+
+    /**
+     * retrieval chain לשיחה דרך HybridRetriever: רק chunks של המסמכים שנבחרו, עם top-k ו-min score של הבקשה,
+     * עם זיכרון שיחה ושאילתת שליפה נפרדת מהטקסט שנשלח למודל -
+     * ה-chain שולף לפי retrievalQuery, ו-execute מקבל את פרומפט הניסוח.
+     *
+     * @param documentIds        מסמכים לחיפוש, או null/ריק לכל מסמכי השיחה
+     * @param maxResults         top-k, או null לברירת המחדל
+     * @param minScore           ציון מינימלי, או null ללא סף
+     * @param chatMemory         זיכרון לבקשה הזו, או null לזיכרון ריק
+     * @param retrievalQuery     הטקסט לשליפה, או null לשליפה לפי הטקסט שנשלח ל-execute
+     * @param retrievalEmbedding ה-embedding של retrievalQuery אם כבר חושב, או null
+     * @param searchMode         מצב השליפה דרך HybridRetriever
+     */
+    public ConversationalRetrievalChain createChain(ChatSession chatSession, Collection<Long> documentIds,
+                                                    Integer maxResults, Double minScore, ChatMemory chatMemory,
+                                                    String retrievalQuery, Embedding retrievalEmbedding,
+                                                    HybridRetriever.SearchMode searchMode) {
+        boolean filtered = documentIds != null && !documentIds.isEmpty();
+        int limit = maxResults != null ? Math.max(1, maxResults) : hybridRetriever.getDefaultMaxResults();
+        double threshold = minScore != null ? minScore : 0.0;
+        Embedding queryEmbedding = retrievalQuery != null ? retrievalEmbedding : null;
+
+        ContentRetriever retriever = query -> hybridRetriever.retrieve(chatSession, query.text(), searchMode,
+                        filtered ? documentIds : null, limit, threshold, queryEmbedding).stream()
+                .map(result -> Content.from(result.segment))
+                .toList();
+
+        log.debug("Creating {} retrieval chain for session {} (documents: {}, maxResults: {}, minScore: {})",
+                searchMode, chatSession.getId(), filtered ? documentIds : "all", limit, minScore);
+
+        if (retrievalQuery != null) {
+            ContentRetriever byQuery = retriever;
+            retriever = query -> byQuery.retrieve(Query.from(retrievalQuery));
+        }
+
+        return ConversationalRetrievalChain.builder()
+                .chatLanguageModel(chatLanguageModel)
+                .chatMemory(chatMemory)
+                .contentRetriever(retriever)
+                .build();
+    }
+}
@@ -0,0 +1,284 @@
+package com.smartdocumentchat.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * Cache סמנטי לתשובות: שאלות שנענו נשמרות עם ה-embedding שלהן ב-collection ייעודי ב-Qdrant,
+ * ושאלה חדשה באותה שיחה ועל אותו סט מסמכים מקבלת את התשובה השמורה אם הדמיון מעל הסף.
+ * משלים את ה-cache המדויק לפי hash - "מה מדיניות ההחזרים?" ו-"what's the refund policy" יפגעו שניהם.
+ * רשומות של שיחה נמחקות כשמסמך בה מעובד מחדש, נמחק או עובר לשיחה אחרת - התשובות נגזרו מהתוכן הישן.
+ * כל כשל כאן נחשב miss ולא מפיל את הבקשה.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SemanticAnswerCache {
+
+    private static final String DOCUMENTS_KEY = "documents_key";
+    private static final String ANSWER_KEY = "answer";
+    private static final String CREATED_AT_KEY = "created_at";
+
+    private final EmbeddingModel embeddingModel;
+    private final QdrantClient qdrantClient;
+    private final QdrantVectorService qdrantVectorService;
+
+    @Value("${chat.semantic-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.semantic-cache.collection-name:qa_semantic_cache}")
+    private String collectionName;
+
+    // מעל הסף - התשובה השמורה מוחזרת
+    @Value("${chat.semantic-cache.similarity-threshold:0.93}")
+    private double similarityThreshold;
+
+    // בין הרצפה לסף - near hit: לא מוחזר, רק נספר (לכיול הסף)
+    @Value("${chat.semantic-cache.near-hit-floor:0.85}")
+    private double nearHitFloor;
+
+    @Value("${chat.semantic-cache.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    // מחיקת רשומות שפג תוקפן אחת ל-N כתיבות
+    @Value("${chat.semantic-cache.purge-every-writes:200}")
+    private int purgeEveryWrites;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    private volatile EmbeddingStore<TextSegment> store;
+
+    /**
+     * חיפוש תשובה לשאלה דומה באותה שיחה ועל אותו סט מסמכים.
+     * ה-embedding של השאלה מוחזר ב-Lookup כדי שהשמירה אחרי miss לא תחשב אותו שוב.
+     */
+    public Lookup lookup(String question, Long sessionId, Long userId, Collection<String> documentIds) {
+        if (!enabled) {
+            return Lookup.MISS;
+        }
+
+        lookups.incrementAndGet();
+        Embedding questionEmbedding = null;
+
+        try {
+            questionEmbedding = embeddingModel.embed(question).content();
+
+            List<EmbeddingMatch<TextSegment>> matches = getStore().search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(questionEmbedding)
+                    .maxResults(1)
+                    .minScore(Math.min(nearHitFloor, similarityThreshold))
+                    .filter(scopeFilter(sessionId, userId, documentIds, System.currentTimeMillis()))
+                    .build()).matches();
+
+            if (matches.isEmpty()) {
+                misses.incrementAndGet();
+                return new Lookup(null, null, 0.0, questionEmbedding);
+            }
+
+            EmbeddingMatch<TextSegment> best = matches.get(0);
+            if (best.score() < similarityThreshold) {
+                nearHits.incrementAndGet();
+                log.debug("Semantic cache near hit (score: {}, threshold: {}) for session {}",
+                        best.score(), similarityThreshold, sessionId);
+                return new Lookup(null, null, best.score(), questionEmbedding);
+            }
+
+            hits.incrementAndGet();
+            TextSegment cached = best.embedded();
+            log.debug("Semantic cache HIT (score: {}) for session {} - matched question: '{}'",
+                    best.score(), sessionId, cached.text());
+            return new Lookup(cached.metadata().getString(ANSWER_KEY), cached.text(), best.score(),
+                    questionEmbedding);
+
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            misses.incrementAndGet();
+            log.warn("Semantic cache lookup failed for session {}: {}", sessionId, e.getMessage());
+            return new Lookup(null, null, 0.0, questionEmbedding);
+        }
+    }
+
+    /**
+     * שמירת שאלה שנענתה. משתמש ב-embedding מה-lookup אם קיים.
+     */
+    public void store(Lookup lookup, String question, String answer, Long sessionId, Long userId,
+                      Collection<String> documentIds) {
+        if (!enabled || answer == null || answer.isBlank()) {
+            return;
+        }
+
+        try {
+            Embedding questionEmbedding = lookup != null && lookup.questionEmbedding != null
+                    ? lookup.questionEmbedding
+                    : embeddingModel.embed(question).content();
+
+            Metadata metadata = new Metadata();
+            metadata.put(SessionScopedEmbeddingStore.SESSION_ID_KEY, sessionId.toString());
+            metadata.put(SessionScopedEmbeddingStore.USER_ID_KEY, userId.toString());
+            metadata.put(DOCUMENTS_KEY, documentsKey(documentIds));
+            metadata.put(ANSWER_KEY, answer);
+            metadata.put(CREATED_AT_KEY, System.currentTimeMillis());
+
+            getStore().add(questionEmbedding, TextSegment.from(question, metadata));
+
+            if (purgeEveryWrites > 0 && writes.incrementAndGet() % purgeEveryWrites == 0) {
+                purgeExpired();
+            }
+
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.warn("Failed to store answer in semantic cache for session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * מחיקת כל התשובות השמורות של שיחה. לא רק של סט המסמכים שהשתנה - מסמך שעובד מחדש שומר על ה-id שלו,
+     * כך שמפתח סט המסמכים לא מבדיל בין תשובה על הגרסה הישנה לתשובה על החדשה.
+     */
+    public void invalidateSession(Long sessionId, Long userId) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            getStore().removeAll(sessionFilter(sessionId, userId));
+            log.debug("Invalidated semantic cache entries of session {}", sessionId);
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.warn("Failed to invalidate semantic cache entries of session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * מחיקת רשומות ישנות מה-TTL (החיפוש ממילא מסנן אותן, זה רק לשחרור מקום)
+     */
+    public void purgeExpired() {
+        try {
+            long cutoff = System.currentTimeMillis() - ttlMinutes * 60_000;
+            getStore().removeAll(metadataKey(CREATED_AT_KEY).isLessThan(cutoff));
+            log.debug("Purged semantic cache entries older than {} minutes", ttlMinutes);
+        } catch (Exception e) {
+            log.warn("Failed to purge expired semantic cache entries: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long totalLookups = lookups.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("similarityThreshold", similarityThreshold);
+        stats.put("nearHitFloor", nearHitFloor);
+        stats.put("lookups", totalLookups);
+        stats.put("hits", hits.get());
+        stats.put("nearHits", nearHits.get());
+        stats.put("misses", misses.get());
+        stats.put("errors", errors.get());
+        stats.put("hitRate", totalLookups == 0 ? 0.0 : (double) hits.get() / totalLookups);
+        stats.put("nearHitRate", totalLookups == 0 ? 0.0 : (double) nearHits.get() / totalLookups);
+        return stats;
+    }
+
+    private Filter scopeFilter(Long sessionId, Long userId, Collection<String> documentIds, long now) {
+        return new And(
+                sessionFilter(sessionId, userId),
+                new And(
+                        metadataKey(DOCUMENTS_KEY).isEqualTo(documentsKey(documentIds)),
+                        metadataKey(CREATED_AT_KEY).isGreaterThanOrEqualTo(now - ttlMinutes * 60_000)));
+    }
+
+    private Filter sessionFilter(Long sessionId, Long userId) {
+        return new And(
+                metadataKey(SessionScopedEmbeddingStore.USER_ID_KEY).isEqualTo(userId.toString()),
+                metadataKey(SessionScopedEmbeddingStore.SESSION_ID_KEY).isEqualTo(sessionId.toString()));
+    }
+
+    /**
+     * מפתח קנוני לסט המסמכים - אותו סט בכל סדר נותן אותו מפתח
+     */
+    private String documentsKey(Collection<String> documentIds) {
+        return documentIds.stream()
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * ה-collection נוצר בשימוש הראשון, כדי ש-Qdrant לא זמין לא יפיל את עליית האפליקציה
+     */
+    private EmbeddingStore<TextSegment> getStore() {
+        EmbeddingStore<TextSegment> current = store;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (store == null) {
+                Map<String, Collections.PayloadSchemaType> indexedFields = new LinkedHashMap<>();
+                indexedFields.put(SessionScopedEmbeddingStore.USER_ID_KEY, Collections.PayloadSchemaType.Keyword);
+                indexedFields.put(SessionScopedEmbeddingStore.SESSION_ID_KEY, Collections.PayloadSchemaType.Keyword);
+                indexedFields.put(DOCUMENTS_KEY, Collections.PayloadSchemaType.Keyword);
+                indexedFields.put(CREATED_AT_KEY, Collections.PayloadSchemaType.Integer);
+                qdrantVectorService.ensureCollection(collectionName, indexedFields);
+
+                store = QdrantEmbeddingStore.builder()
+                        .client(qdrantClient)
+                        .collectionName(collectionName)
+                        .build();
+
+                log.info("Semantic answer cache ready - collection: {}, threshold: {}, ttl: {}min",
+                        collectionName, similarityThreshold, ttlMinutes);
+            }
+            return store;
+        }
+    }
+
+    public static class Lookup {
+        private static final Lookup MISS = new Lookup(null, null, 0.0, null);
+
+        public final String answer;
+        public final String matchedQuestion;
+        public final double score;
+        // ה-embedding של השאלה (null אם ה-cache כבוי או שה-embedding נכשל) - משמש גם לשליפה אחרי miss
+        public final Embedding questionEmbedding;
+
+        private Lookup(String answer, String matchedQuestion, double score, Embedding questionEmbedding) {
+            this.answer = answer;
+            this.matchedQuestion = matchedQuestion;
+            this.score = score;
+            this.questionEmbedding = questionEmbedding;
+        }
+
+        public boolean isHit() {
+            return answer != null;
+        }
+    }
+}
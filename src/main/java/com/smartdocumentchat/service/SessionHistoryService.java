@@ -3,6 +3,9 @@ package com.smartdocumentchat.service;
 import com.smartdocumentchat.entity.ChatSession;
 import com.smartdocumentchat.entity.User;
 import com.smartdocumentchat.repository.ChatSessionRepository;
+import com.smartdocumentchat.repository.ChatSessionView;
+import com.smartdocumentchat.repository.UserSessionAggregate;
+import com.smartdocumentchat.util.CursorPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -21,6 +24,7 @@ import java.util.stream.Collectors;
 public class SessionHistoryService {
 
     private final ChatSessionRepository chatSessionRepository;
+    private final ChatSessionService chatSessionService;
     private final CacheService cacheService;
     private final PdfProcessingService pdfProcessingService;
 
@@ -74,7 +78,8 @@ public class SessionHistoryService {
     public SessionActivityHistory getSessionActivityHistory(Long sessionId, User user) {
         validateUser(user);
 
-        Optional<ChatSession> sessionOpt = chatSessionRepository.findById(sessionId);
+        Optional<ChatSession> sessionOpt = chatSessionRepository.findViewById(sessionId)
+                .map(ChatSessionView::toEntity);
         if (sessionOpt.isEmpty()) {
             throw new IllegalArgumentException("שיחה לא נמצאה");
         }
@@ -86,7 +91,8 @@ public class SessionHistoryService {
         }
 
         String cacheKey = "session_activity:" + sessionId;
-        SessionActivityHistory cachedHistory = (SessionActivityHistory) cacheService.get(cacheKey);
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.sessionTag(sessionId));
+        SessionActivityHistory cachedHistory = (SessionActivityHistory) cached.value();
 
         if (cachedHistory != null) {
             log.debug("Session activity history for session {} retrieved from cache", sessionId);
@@ -124,45 +130,53 @@ public class SessionHistoryService {
                 getActivityLevel(daysSinceLastActivity)
         );
 
-        cacheService.set(cacheKey, history, java.time.Duration.ofHours(2));
+        cacheService.setTagged(cached, cacheKey, history, java.time.Duration.ofHours(2));
         log.debug("Session activity history for session {} calculated and cached", sessionId);
 
         return history;
     }
 
     /**
-     * קבלת היסטוריה של כל השיחות של משתמש
+     * קבלת היסטוריה של השיחות של משתמש, עמוד אחר עמוד.
+     * מיון לפי עמודה (updated/created/title) עובר ב-keyset pagination ב-DB; מיון לפי דירוג מחושב
+     * (activity/documents/messages) מדרג את כל ההיסטוריה, מחזיר את limit הראשונות ואין לו עמוד הבא.
      */
-    public List<SessionSummary> getUserSessionsHistory(User user, int limit, String sortBy) {
+    public CursorPage<SessionSummary> getUserSessionsHistory(User user, int limit, String sortBy, String cursor) {
         validateUser(user);
 
+        if (!isRankingSort(sortBy)) {
+            CursorPage<ChatSession> page = chatSessionService.getUserSessionsPage(user, sortBy, true, cursor, limit);
+            return new CursorPage<>(createSessionSummaries(page.items), page.nextCursor);
+        }
+
+        if (cursor != null && !cursor.isBlank()) {
+            throw new IllegalArgumentException("מיון לפי " + sortBy + " אינו תומך בעמודים נוספים");
+        }
+
         String cacheKey = "user_sessions_history:" + user.getId() + "_" + limit + "_" + sortBy;
 
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.userTag(user.getId()));
         @SuppressWarnings("unchecked")
-        List<SessionSummary> cachedHistory = (List<SessionSummary>) cacheService.get(cacheKey);
+        List<SessionSummary> cachedHistory = (List<SessionSummary>) cached.value();
 
         if (cachedHistory != null) {
             log.debug("User sessions history for user {} retrieved from cache", user.getId());
-            return cachedHistory;
+            return new CursorPage<>(cachedHistory, null);
         }
 
-        List<ChatSession> allSessions = chatSessionRepository.findByUserOrderByUpdatedAtDesc(user);
-
-        List<SessionSummary> sessionSummaries = allSessions.stream()
-                .map(session -> createSessionSummary(session, user))
-                .collect(Collectors.toList());
-
-        sessionSummaries = sortSessionSummaries(sessionSummaries, sortBy);
+        // שאילתה אחת לשיחות עם המונים ואחת לסטטיסטיקות המסמכים של כולן
+        List<ChatSession> allSessions = toSessions(chatSessionRepository.findViewsByUser(user));
+        List<SessionSummary> sessionSummaries = rankSessionSummaries(createSessionSummaries(allSessions), sortBy);
 
         if (limit > 0 && sessionSummaries.size() > limit) {
-            sessionSummaries = sessionSummaries.subList(0, limit);
+            sessionSummaries = new ArrayList<>(sessionSummaries.subList(0, limit));
         }
 
-        cacheService.set(cacheKey, sessionSummaries, java.time.Duration.ofMinutes(30));
+        cacheService.setTagged(cached, cacheKey, sessionSummaries, java.time.Duration.ofMinutes(30));
         log.debug("User sessions history for user {} calculated and cached ({} sessions)",
                 user.getId(), sessionSummaries.size());
 
-        return sessionSummaries;
+        return new CursorPage<>(sessionSummaries, null);
     }
 
     /**
@@ -178,18 +192,19 @@ public class SessionHistoryService {
 
         String normalizedSearchTerm = searchTerm.trim().toLowerCase();
 
-        List<ChatSession> allSessions;
+        List<ChatSessionView> allSessions;
 
         if (fromDate != null && toDate != null) {
-            allSessions = chatSessionRepository.findByUserAndCreatedAtBetweenOrderByCreatedAtDesc(
-                    user, fromDate, toDate);
+            allSessions = chatSessionRepository.findViewsByUserAndCreatedAtBetween(user, fromDate, toDate);
         } else {
-            allSessions = chatSessionRepository.findByUserOrderByUpdatedAtDesc(user);
+            allSessions = chatSessionRepository.findViewsByUser(user);
         }
 
-        List<SessionSummary> searchResults = allSessions.stream()
+        List<ChatSession> matchingSessions = toSessions(allSessions).stream()
                 .filter(session -> sessionMatchesSearchTerm(session, normalizedSearchTerm))
-                .map(session -> createSessionSummary(session, user))
+                .collect(Collectors.toList());
+
+        List<SessionSummary> searchResults = createSessionSummaries(matchingSessions).stream()
                 .sorted((s1, s2) -> s2.lastActivity.compareTo(s1.lastActivity))
                 .collect(Collectors.toList());
 
@@ -203,35 +218,25 @@ public class SessionHistoryService {
         validateUser(user);
 
         String cacheKey = "user_sessions_stats:" + user.getId();
-        UserSessionsStats cachedStats = (UserSessionsStats) cacheService.get(cacheKey);
+        CacheService.TaggedRead cached = cacheService.readTagged(cacheKey, CacheService.userTag(user.getId()));
+        UserSessionsStats cachedStats = (UserSessionsStats) cached.value();
 
         if (cachedStats != null) {
             log.debug("User sessions stats for user {} retrieved from cache", user.getId());
             return cachedStats;
         }
 
-        List<ChatSession> allSessions = chatSessionRepository.findByUserOrderByUpdatedAtDesc(user);
+        // שאילתת aggregate אחת במקום טעינת כל השיחות וספירה בזיכרון
+        UserSessionAggregate aggregate = chatSessionRepository.aggregateByUser(user);
 
-        long totalSessions = allSessions.size();
-        long activeSessions = allSessions.stream().filter(ChatSession::getActive).count();
+        long totalSessions = aggregate.totalSessions;
+        long activeSessions = aggregate.activeSessions;
         long inactiveSessions = totalSessions - activeSessions;
+        long totalDocuments = aggregate.totalDocuments;
+        long totalMessages = aggregate.totalMessages;
 
-        long totalDocuments = allSessions.stream()
-                .mapToLong(ChatSession::getDocumentCount)
-                .sum();
-
-        long totalMessages = allSessions.stream()
-                .mapToLong(ChatSession::getMessageCount)
-                .sum();
-
-        Optional<LocalDateTime> lastActivity = allSessions.stream()
-                .map(ChatSession::getLastActivityAt)
-                .filter(Objects::nonNull)
-                .max(LocalDateTime::compareTo);
-
-        Optional<LocalDateTime> firstSession = allSessions.stream()
-                .map(ChatSession::getCreatedAt)
-                .min(LocalDateTime::compareTo);
+        Optional<LocalDateTime> lastActivity = Optional.ofNullable(aggregate.lastActivity);
+        Optional<LocalDateTime> firstSession = Optional.ofNullable(aggregate.firstSession);
 
         long totalActiveDays = 0;
         if (firstSession.isPresent()) {
@@ -256,7 +261,7 @@ public class SessionHistoryService {
                 firstSession.orElse(null)
         );
 
-        cacheService.set(cacheKey, stats, java.time.Duration.ofHours(1));
+        cacheService.setTagged(cached, cacheKey, stats, java.time.Duration.ofHours(1));
         log.debug("User sessions stats for user {} calculated and cached", user.getId());
 
         return stats;
@@ -282,10 +287,27 @@ public class SessionHistoryService {
         return Math.max(0, diffDays);
     }
 
-    private SessionSummary createSessionSummary(ChatSession session, User user) {
-        PdfProcessingService.SessionDocumentStats docStats =
-                pdfProcessingService.getSessionDocumentStats(session);
+    private List<ChatSession> toSessions(List<ChatSessionView> views) {
+        return views.stream()
+                .map(ChatSessionView::toEntity)
+                .collect(Collectors.toList());
+    }
 
+    /**
+     * סיכומים לכמה שיחות - סטטיסטיקות המסמכים של כולן בשאילתת aggregate אחת
+     */
+    private List<SessionSummary> createSessionSummaries(List<ChatSession> sessions) {
+        Map<Long, PdfProcessingService.SessionDocumentStats> statsBySession =
+                pdfProcessingService.getSessionDocumentStats(
+                        sessions.stream().map(ChatSession::getId).collect(Collectors.toList()));
+
+        return sessions.stream()
+                .map(session -> createSessionSummary(session, statsBySession.get(session.getId())))
+                .collect(Collectors.toList());
+    }
+
+    private SessionSummary createSessionSummary(ChatSession session,
+                                                PdfProcessingService.SessionDocumentStats docStats) {
         return new SessionSummary(
                 session.getId(),
                 session.getDisplayTitle(),
@@ -353,20 +375,13 @@ public class SessionHistoryService {
         return false;
     }
 
-    private List<SessionSummary> sortSessionSummaries(List<SessionSummary> summaries, String sortBy) {
-        if ("created".equalsIgnoreCase(sortBy)) {
-            return summaries.stream()
-                    .sorted((s1, s2) -> s2.createdAt.compareTo(s1.createdAt))
-                    .collect(Collectors.toList());
-        } else if ("title".equalsIgnoreCase(sortBy)) {
-            return summaries.stream()
-                    .sorted((s1, s2) -> s1.title.compareToIgnoreCase(s2.title))
-                    .collect(Collectors.toList());
-        } else if ("activity".equalsIgnoreCase(sortBy)) {
-            return summaries.stream()
-                    .sorted((s1, s2) -> Integer.compare(s2.activityScore, s1.activityScore))
-                    .collect(Collectors.toList());
-        } else if ("documents".equalsIgnoreCase(sortBy)) {
+    private boolean isRankingSort(String sortBy) {
+        return "activity".equalsIgnoreCase(sortBy) || "documents".equalsIgnoreCase(sortBy)
+                || "messages".equalsIgnoreCase(sortBy);
+    }
+
+    private List<SessionSummary> rankSessionSummaries(List<SessionSummary> summaries, String sortBy) {
+        if ("documents".equalsIgnoreCase(sortBy)) {
             return summaries.stream()
                     .sorted((s1, s2) -> Integer.compare(s2.totalDocuments, s1.totalDocuments))
                     .collect(Collectors.toList());
@@ -374,21 +389,16 @@ public class SessionHistoryService {
             return summaries.stream()
                     .sorted((s1, s2) -> Integer.compare(s2.totalMessages, s1.totalMessages))
                     .collect(Collectors.toList());
-        } else { // "updated" - default
+        } else { // "activity"
             return summaries.stream()
-                    .sorted((s1, s2) -> {
-                        LocalDateTime updated1 = s1.updatedAt != null ? s1.updatedAt : s1.createdAt;
-                        LocalDateTime updated2 = s2.updatedAt != null ? s2.updatedAt : s2.createdAt;
-                        return updated2.compareTo(updated1);
-                    })
+                    .sorted((s1, s2) -> Integer.compare(s2.activityScore, s1.activityScore))
                     .collect(Collectors.toList());
         }
     }
 
     private void invalidateSessionCaches(Long sessionId, Long userId) {
-        cacheService.delete("session_activity:" + sessionId);
-        cacheService.delete("user_sessions_history:" + userId);
-        cacheService.delete("user_sessions_stats:" + userId);
+        // כל הווריאציות של user_sessions_history (limit/sortBy) תלויות ב-tag של המשתמש
+        cacheService.invalidateTags(CacheService.sessionTag(sessionId), CacheService.userTag(userId));
         log.debug("Invalidated session history caches for session {} and user {}", sessionId, userId);
     }
 
@@ -0,0 +1,150 @@
+package com.smartdocumentchat.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import io.qdrant.client.PointIdFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * תצוגה של שיחה אחת מתוך ה-collection המשותף (multi-tenant).
+ * כל כתיבה מסומנת ב-user_id וב-session_id של השיחה (גם vector בלי טקסט),
+ * וכל חיפוש/מחיקה מצומצמים לשיחה באמצעות filter על שדות ה-payload המאונדקסים.
+ */
+public class SessionScopedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    public static final String USER_ID_KEY = "user_id";
+    public static final String SESSION_ID_KEY = "session_id";
+    public static final String DOCUMENT_ID_KEY = "document_id";
+
+    private final EmbeddingStore<TextSegment> sharedStore;
+    // כתיבה ומחיקה לפי id - ישירות ב-Qdrant, עם ה-payload/filter של השיחה
+    private final QdrantVectorService qdrantVectorService;
+    private final Filter sessionFilter;
+    private final Long sessionId;
+    private final Long userId;
+
+    public SessionScopedEmbeddingStore(EmbeddingStore<TextSegment> sharedStore, QdrantVectorService qdrantVectorService,
+                                       Long sessionId, Long userId) {
+        this.sharedStore = sharedStore;
+        this.qdrantVectorService = qdrantVectorService;
+        this.sessionId = sessionId;
+        this.userId = userId;
+        this.sessionFilter = new And(
+                metadataKey(USER_ID_KEY).isEqualTo(userId.toString()),
+                metadataKey(SESSION_ID_KEY).isEqualTo(sessionId.toString()));
+    }
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Filter getSessionFilter() {
+        return sessionFilter;
+    }
+
+    /**
+     * filter על שדה ה-document_id ב-payload של ה-chunks
+     */
+    public static Filter documentIdFilter(Collection<Long> documentIds) {
+        return metadataKey(DOCUMENT_ID_KEY).isIn(
+                documentIds.stream().map(String::valueOf).collect(Collectors.toList()));
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        qdrantVectorService.upsertVectors(sessionId, userId, List.of(id), List.of(embedding));
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        return sharedStore.add(embedding, scoped(textSegment));
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = embeddings.stream().map(embedding -> UUID.randomUUID().toString()).toList();
+        qdrantVectorService.upsertVectors(sessionId, userId, ids, embeddings);
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        return sharedStore.addAll(embeddings, textSegments.stream().map(this::scoped).toList());
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        Filter filter = request.filter() != null ? new And(sessionFilter, request.filter()) : sessionFilter;
+
+        return sharedStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(request.queryEmbedding())
+                .maxResults(request.maxResults())
+                .minScore(request.minScore())
+                .filter(filter)
+                .build());
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults,
+                                                          double minScore) {
+        return search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(referenceEmbedding)
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .build()).matches();
+    }
+
+    /**
+     * מחיקה לפי id - רק נקודות של השיחה; id של שיחה אחרת ב-collection המשותף לא נמחק
+     */
+    @Override
+    public void removeAll(Collection<String> ids) {
+        qdrantVectorService.deletePoints(sessionId, userId,
+                ids.stream().map(id -> PointIdFactory.id(UUID.fromString(id))).toList());
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        sharedStore.removeAll(new And(sessionFilter, filter));
+    }
+
+    /**
+     * מחיקת כל ה-chunks של השיחה בלבד - לא של ה-collection המשותף
+     */
+    @Override
+    public void removeAll() {
+        sharedStore.removeAll(sessionFilter);
+    }
+
+    // עותק של ה-segment עם השיוך לשיחה - chunk בלי שדות השיחה לא היה נמצא בחיפוש ולא נמחק איתה
+    private TextSegment scoped(TextSegment segment) {
+        Metadata metadata = segment.metadata().copy();
+        metadata.put(USER_ID_KEY, userId.toString());
+        metadata.put(SESSION_ID_KEY, sessionId.toString());
+        return TextSegment.from(segment.text(), metadata);
+    }
+}
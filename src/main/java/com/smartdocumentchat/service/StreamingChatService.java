@@ -0,0 +1,357 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * תשובות בזרימה (SSE) לשיחה: קודם המקורות שנשלפו, אחר כך ה-tokens כפי שהם מגיעים מהמודל.
+ * ה-thread של ה-servlet משתחרר מיד; השליפה רצה ב-worker והמודל מחזיר tokens ב-callback.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StreamingChatService {
+
+    public static final String EVENT_SOURCES = "sources";
+    public static final String EVENT_TOKEN = "token";
+    public static final String EVENT_DONE = "done";
+    public static final String EVENT_ERROR = "error";
+
+    // אותה תבנית שה-ConversationalRetrievalChain מזריק, כדי שתשובות בזרימה ותשובות רגילות יהיו זהות
+    private static final String PROMPT_TEMPLATE = "%s\n\nAnswer using the following information:\n%s";
+
+    private static final int SOURCE_PREVIEW_LENGTH = 300;
+
+    private final StreamingChatLanguageModel streamingChatModel;
+    private final HybridRetriever hybridRetriever;
+    private final CacheService cacheService;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final ChatTranscriptService chatTranscriptService;
+
+    @Value("${chat.streaming.timeout-ms:120000}")
+    private long emitterTimeoutMs;
+
+    // כמה מקורות נשלחים באירוע ה-sources (תצוגה בלבד - ה-top-k של השליפה כמו ב-endpoint הרגיל)
+    @Value("${chat.streaming.max-sources:2}")
+    private int maxSources;
+
+    @Value("${chat.streaming.worker-threads:8}")
+    private int workerThreads;
+
+    // בקשות שממתינות ל-worker; מעבר לזה הבקשה נדחית מיד עם אירוע שגיאה במקום לחכות ל-timeout
+    @Value("${chat.streaming.queue-capacity:100}")
+    private int queueCapacity;
+
+    // כמה מילים בכל אירוע token כשמשחזרים תשובה מה-cache
+    @Value("${chat.streaming.replay-words-per-event:5}")
+    private int replayWordsPerEvent;
+
+    private ExecutorService streamingExecutor;
+
+    @PostConstruct
+    public void initialize() {
+        int threads = Math.max(1, workerThreads);
+        AtomicInteger threadCounter = new AtomicInteger();
+
+        this.streamingExecutor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chat-stream-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        log.info("Streaming chat service initialized - workers: {}, queueCapacity: {}, timeout: {}ms, maxSources: {}",
+                threads, queueCapacity, emitterTimeoutMs, maxSources);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (streamingExecutor != null) {
+            streamingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * פתיחת זרם תשובה. במקרה של cache hit (מדויק או סמנטי) התשובה משוחזרת מה-cache.
+     *
+     * @param question          השאלה כפי שנשאלה - נרשמת בתמליל
+     * @param standaloneQuestion השאלה כשאלה עצמאית (אחרי ניסוח מחדש לפי זיכרון השיחה) - מפתח ה-cache הסמנטי
+     * @param prompt            שאילתת השליפה ופרומפט הניסוח (כמו ב-endpoint הרגיל)
+     * @param questionHash      מפתח ה-cache של Q&A - משותף עם ה-endpoint הרגיל
+     * @param scopeDocumentIds  כל המסמכים שהשאלה נשאלת עליהם - ה-scope של ה-cache הסמנטי
+     * @param documentIds       מסמכים לצמצום השליפה, או null לכל מסמכי השיחה
+     * @param searchMode        מצב השליפה (כמו ב-endpoint הרגיל)
+     * @param history           חלון ההיסטוריה של השיחה, נשלח למודל לפני השאלה
+     * @param responseMetadata  שדות שנשלחים באירוע ה-done
+     */
+    public SseEmitter streamAnswer(ChatSession chatSession, String question, String standaloneQuestion,
+                                   PromptAssembler.AssembledPrompt prompt, String questionHash,
+                                   List<String> scopeDocumentIds, Collection<Long> documentIds,
+                                   HybridRetriever.SearchMode searchMode, List<ChatMessage> history,
+                                   Map<String, Object> responseMetadata) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        StreamContext context = new StreamContext(emitter, System.currentTimeMillis(), chatSession, question);
+
+        emitter.onCompletion(() -> context.closed.set(true));
+        emitter.onTimeout(() -> {
+            log.warn("Streaming answer timed out: sessionId={}", chatSession.getId());
+            context.closed.set(true);
+        });
+        emitter.onError(e -> context.closed.set(true));
+
+        try {
+            streamingExecutor.execute(() -> processQuestion(context, chatSession, standaloneQuestion, prompt,
+                    questionHash, scopeDocumentIds, documentIds, searchMode, history, responseMetadata));
+        } catch (RejectedExecutionException e) {
+            log.warn("Streaming answer rejected, workers busy: sessionId={}", chatSession.getId());
+            sendError(context, "השרת עמוס כרגע, נסה שוב בעוד מספר שניות");
+        }
+
+        return emitter;
+    }
+
+    private void processQuestion(StreamContext context, ChatSession chatSession, String standaloneQuestion,
+                                 PromptAssembler.AssembledPrompt prompt, String questionHash,
+                                 List<String> scopeDocumentIds, Collection<Long> documentIds,
+                                 HybridRetriever.SearchMode searchMode, List<ChatMessage> history,
+                                 Map<String, Object> responseMetadata) {
+        try {
+            String cachedAnswer = cacheService.getCachedQAResult(questionHash);
+            if (cachedAnswer != null) {
+                log.debug("Cache HIT for streamed question hash: {} (session: {})",
+                        questionHash, chatSession.getId());
+                replayCachedAnswer(context, cachedAnswer, "exact", responseMetadata);
+                return;
+            }
+
+            Long userId = chatSession.getUser().getId();
+            SemanticAnswerCache.Lookup semanticLookup = semanticAnswerCache.lookup(
+                    standaloneQuestion, chatSession.getId(), userId, scopeDocumentIds);
+            if (semanticLookup.isHit()) {
+                log.debug("Semantic cache HIT for streamed question hash: {} (score: {}, session: {})",
+                        questionHash, semanticLookup.score, chatSession.getId());
+                cacheService.cacheQAResult(questionHash, semanticLookup.answer);
+                replayCachedAnswer(context, semanticLookup.answer, "semantic", responseMetadata);
+                return;
+            }
+
+            // השמירה ב-cache הסמנטי חוזרת ל-worker ולא חוסמת את ה-callback של המודל
+            streamFromModel(context, chatSession, prompt, semanticLookup.questionEmbedding, questionHash,
+                    documentIds, searchMode, history, responseMetadata, answer -> storeSemanticAsync(semanticLookup, standaloneQuestion,
+                            answer, chatSession.getId(), userId, scopeDocumentIds));
+        } catch (Exception e) {
+            log.error("Failed to stream answer for session {}", chatSession.getId(), e);
+            sendError(context, "שגיאה בעיבוד השאלה: " + e.getMessage());
+        }
+    }
+
+    /**
+     * זרם שמכיל רק אירוע שגיאה - עבור שגיאות ולידציה לפני תחילת העיבוד
+     */
+    public SseEmitter errorEmitter(String errorMessage) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        sendError(new StreamContext(emitter, System.currentTimeMillis(), null, null), errorMessage);
+        return emitter;
+    }
+
+    private void replayCachedAnswer(StreamContext context, String answer, String cacheType,
+                                    Map<String, Object> responseMetadata) {
+        if (!send(context, EVENT_SOURCES, Map.of("sources", List.of(), "cacheHit", true))) {
+            return;
+        }
+
+        String[] words = answer.split("(?<=\\s)");
+        int wordsPerEvent = Math.max(1, replayWordsPerEvent);
+        for (int i = 0; i < words.length; i += wordsPerEvent) {
+            String chunk = String.join("", Arrays.copyOfRange(
+                    words, i, Math.min(i + wordsPerEvent, words.length)));
+            if (!send(context, EVENT_TOKEN, Map.of("text", chunk))) {
+                return;
+            }
+        }
+
+        complete(context, answer, cacheType, responseMetadata, null);
+    }
+
+    private void streamFromModel(StreamContext context, ChatSession chatSession,
+                                 PromptAssembler.AssembledPrompt prompt, Embedding retrievalEmbedding,
+                                 String questionHash, Collection<Long> documentIds,
+                                 HybridRetriever.SearchMode searchMode, List<ChatMessage> history,
+                                 Map<String, Object> responseMetadata, Consumer<String> answerListener) {
+        // שלב 1: שליפת מקורות מה-collection של השיחה, במצב שהתבקש וב-top-k של ברירת המחדל (כמו ה-chain הרגיל).
+        // שאילתת השליפה היא השאלה העצמאית - ה-embedding שלה כבר חושב ב-lookup של ה-cache הסמנטי
+        List<HybridRetriever.ScoredSegment> matches = hybridRetriever.retrieve(chatSession,
+                prompt.retrievalQuery, searchMode, documentIds,
+                hybridRetriever.getDefaultMaxResults(), 0.0, retrievalEmbedding);
+
+        List<HybridRetriever.ScoredSegment> displayed = matches.subList(0, Math.min(Math.max(0, maxSources),
+                matches.size()));
+        if (!send(context, EVENT_SOURCES, Map.of("sources", toSources(displayed), "cacheHit", false))) {
+            return;
+        }
+
+        // שלב 2: הזרמת התשובה מהמודל
+        String contents = matches.stream()
+                .map(match -> match.segment.text())
+                .collect(Collectors.joining("\n\n"));
+        List<ChatMessage> messages = new ArrayList<>(history);
+        messages.add(UserMessage.from(String.format(PROMPT_TEMPLATE, prompt.generationPrompt, contents)));
+
+        streamingChatModel.generate(messages, new StreamingResponseHandler<AiMessage>() {
+            @Override
+            public void onNext(String token) {
+                send(context, EVENT_TOKEN, Map.of("text", token));
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                String answer = response.content().text();
+
+                // שומרים ב-cache גם אם הלקוח התנתק באמצע - השאלה הבאה תוחזר מיד
+                cacheService.cacheQAResult(questionHash, answer);
+                answerListener.accept(answer);
+                log.debug("Cache MISS for streamed question hash: {}, answer cached (session: {})",
+                        questionHash, chatSession.getId());
+
+                complete(context, answer, "none", responseMetadata, response.tokenUsage());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                log.error("Streaming model failed for session {}", chatSession.getId(), error);
+                sendError(context, "שגיאה בעיבוד השאלה: " + error.getMessage());
+            }
+        });
+    }
+
+    // אין worker פנוי - מדלגים על השמירה ב-cache הסמנטי, התשובה עצמה כבר נשלחה
+    private void storeSemanticAsync(SemanticAnswerCache.Lookup lookup, String standaloneQuestion, String answer,
+                                    Long sessionId, Long userId, List<String> scopeDocumentIds) {
+        try {
+            streamingExecutor.execute(() -> semanticAnswerCache.store(lookup, standaloneQuestion, answer,
+                    sessionId, userId, scopeDocumentIds));
+        } catch (RejectedExecutionException e) {
+            log.debug("Skipped semantic cache store, workers busy: sessionId={}", sessionId);
+        }
+    }
+
+    private List<Map<String, Object>> toSources(List<HybridRetriever.ScoredSegment> matches) {
+        List<Map<String, Object>> sources = new ArrayList<>(matches.size());
+
+        for (HybridRetriever.ScoredSegment match : matches) {
+            TextSegment segment = match.segment;
+            String text = segment.text();
+
+            Map<String, Object> source = new HashMap<>();
+            source.put("documentId", segment.metadata().getString("document_id"));
+            source.put("source", segment.metadata().getString("source"));
+            source.put("page", segment.metadata().getInteger(StreamingPdfParser.PAGE_NUMBER_KEY));
+            source.put("section", segment.metadata().getString(DocumentChunker.SECTION_KEY));
+            source.put("score", match.score);
+            source.put("denseScore", match.denseScore);
+            source.put("lexicalScore", match.lexicalScore);
+            source.put("preview", text.length() > SOURCE_PREVIEW_LENGTH
+                    ? text.substring(0, SOURCE_PREVIEW_LENGTH) + "..." : text);
+            sources.add(source);
+        }
+
+        return sources;
+    }
+
+    private void complete(StreamContext context, String answer, String cacheType,
+                          Map<String, Object> responseMetadata, TokenUsage tokenUsage) {
+        long processingTime = System.currentTimeMillis() - context.startTime;
+
+        // נרשם גם אם הלקוח כבר התנתק - התשובה נוצרה
+        chatTranscriptService.recordTurn(context.chatSession, context.question, answer, cacheType,
+                processingTime, tokenUsage);
+
+        Map<String, Object> done = new HashMap<>(responseMetadata);
+        done.put("success", true);
+        done.put("cacheHit", !"none".equals(cacheType));
+        done.put("cacheType", cacheType);
+        done.put("answerLength", answer.length());
+        done.put("processingTime", processingTime);
+
+        if (send(context, EVENT_DONE, done)) {
+            context.emitter.complete();
+        }
+    }
+
+    private void sendError(StreamContext context, String errorMessage) {
+        if (send(context, EVENT_ERROR, Map.of("success", false, "error", errorMessage))) {
+            context.emitter.complete();
+        }
+    }
+
+    /**
+     * שליחת אירוע. מחזיר false אם הזרם כבר נסגר (ניתוק לקוח / timeout).
+     */
+    private boolean send(StreamContext context, String eventName, Object data) {
+        if (context.closed.get()) {
+            return false;
+        }
+
+        try {
+            synchronized (context.emitter) {
+                context.emitter.send(SseEmitter.event().name(eventName).data(data));
+            }
+            return true;
+
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Client disconnected from answer stream: {}", e.getMessage());
+            context.closed.set(true);
+            return false;
+        }
+    }
+
+    private static class StreamContext {
+        private final SseEmitter emitter;
+        private final long startTime;
+        private final ChatSession chatSession;
+        private final String question;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        StreamContext(SseEmitter emitter, long startTime, ChatSession chatSession, String question) {
+            this.emitter = emitter;
+            this.startTime = startTime;
+            this.chatSession = chatSession;
+            this.question = question;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.IngestionProperties;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * פרסור PDF עמוד אחרי עמוד. התוכן נכתב לקובץ זמני (PDF צריך גישה אקראית - ה-xref בסוף הקובץ),
+ * PDFBox עובד מעליו עם זיכרון scratch חסום שגולש לקבצים זמניים, והטקסט מוחזר כ-Document לכל עמוד.
+ * כך הזיכרון חסום בחלון של עמודים ולא בגודל המסמך - אין byte[] של כל הקובץ ואין String של כל הטקסט.
+ * כש-document.ingestion.streaming-parse כבוי - הקובץ נטען לזיכרון והטקסט כולו מוחזר כ-Document אחד.
+ * <p>
+ * מסמך גדול (לפחות parallel-extraction-min-pages עמודים) מחולץ במקביל: טווחי עמודים נשלחים ל-ForkJoinPool
+ * משותף בגודל מספר הליבות, וכל טווח עובד על עותק PDDocument משלו (PDDocument לא thread-safe).
+ * העמודים מוחזרים לפי הסדר, ומספר הטווחים שבדרך ומספר העותקים חסומים, וזיכרון ה-scratch מתחלק בין
+ * העותקים - כך הזיכרון נשאר חסום גם בחילוץ המקבילי.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StreamingPdfParser {
+
+    public static final String PAGE_NUMBER_KEY = "page_number";
+
+    private final IngestionProperties ingestionProperties;
+
+    private ForkJoinPool extractionPool;
+
+    @PostConstruct
+    public void initialize() {
+        int parallelism = ingestionProperties.getExtractionParallelism() > 0
+                ? ingestionProperties.getExtractionParallelism()
+                : Runtime.getRuntime().availableProcessors();
+
+        // ה-workers משותפים לכל ה-listeners; כל מסמך מגביל בעצמו את כמות הטווחים שבדרך
+        this.extractionPool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("pdf-extract-worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        log.info("PDF parser initialized - streamingParse: {}, extractionParallelism: {}, " +
+                        "parallelExtractionMinPages: {}, extractionRangePages: {}",
+                ingestionProperties.isStreamingParse(), parallelism,
+                ingestionProperties.getParallelExtractionMinPages(), ingestionProperties.getExtractionRangePages());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (extractionPool != null) {
+            extractionPool.shutdownNow();
+        }
+    }
+
+    /**
+     * פתיחת המסמך. התוכן נקרא עד הסוף ונסגר כאן (כולל אימות ה-hash של HashVerifyingInputStream),
+     * כך שתוכן פגום נדחה לפני שמתחילים לפרסר.
+     *
+     * @param baseMetadata metadata שמועתק לכל עמוד
+     */
+    public PdfPages open(InputStream content, Metadata baseMetadata) throws IOException {
+        if (!ingestionProperties.isStreamingParse()) {
+            byte[] bytes;
+            try (content) {
+                bytes = content.readAllBytes();
+            }
+            return new PdfPages(PDDocument.load(bytes), null, baseMetadata, false, null);
+        }
+
+        return openPaged(content, baseMetadata, extractionPool, ingestionProperties.getParallelExtractionMinPages());
+    }
+
+    /**
+     * פתיחה לפי עמודים מקובץ זמני
+     *
+     * @param pool             ה-pool לחילוץ המקבילי, או null לחילוץ ב-thread של הקורא בלבד
+     * @param parallelMinPages מתחת למספר העמודים הזה החילוץ נשאר ב-thread של הקורא
+     */
+    PdfPages openPaged(InputStream content, Metadata baseMetadata, ForkJoinPool pool,
+                       int parallelMinPages) throws IOException {
+        Path spoolFile = Files.createTempFile("pdf-ingest-", ".pdf");
+        try {
+            try (content) {
+                Files.copy(content, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            long mainMemoryBytes = ingestionProperties.getParserMainMemoryBytes();
+            PDDocument pdf = PDDocument.load(spoolFile.toFile(), MemoryUsageSetting.setupMixed(mainMemoryBytes));
+            int pageCount = pdf.getNumberOfPages();
+
+            ParallelExtraction parallel = null;
+            if (pool != null && pool.getParallelism() > 1 && pageCount >= parallelMinPages) {
+                parallel = new ParallelExtraction(pool, pdf, spoolFile.toFile(), mainMemoryBytes, pageCount,
+                        Math.max(1, ingestionProperties.getExtractionRangePages()), pool.getParallelism() * 2);
+            }
+
+            log.debug("Opened PDF for page streaming: pages={}, parallel={}, spoolFile={}, size={} bytes",
+                    pageCount, parallel != null, spoolFile, Files.size(spoolFile));
+            return new PdfPages(pdf, spoolFile, baseMetadata, true, parallel);
+
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spoolFile);
+            throw e;
+        }
+    }
+
+    private static String strip(PDFTextStripper stripper, PDDocument pdf, int firstPage, int lastPage) {
+        try {
+            stripper.setStartPage(firstPage);
+            stripper.setEndPage(lastPage);
+            return stripper.getText(pdf);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to extract text from pages " + firstPage + "-" + lastPage, e);
+        }
+    }
+
+    /**
+     * העמודים של מסמך פתוח, לפי הסדר (או Document אחד לכל המסמך כשלא בפרסור לפי עמודים).
+     * עמוד בלי טקסט (למשל סרוק בלי OCR) מדולג.
+     * חובה לסגור - הסגירה משחררת את PDFBox ומוחקת את הקובץ הזמני.
+     */
+    public static class PdfPages implements Iterator<Document>, AutoCloseable {
+
+        private final PDDocument pdf;
+        private final Path spoolFile;
+        private final Metadata baseMetadata;
+        private final PDFTextStripper stripper;
+        private final int pageCount;
+        private final boolean perPage;
+        private final ParallelExtraction parallel;
+
+        private int nextPage = 1;
+        private Document pending;
+        private long characterCount;
+
+        PdfPages(PDDocument pdf, Path spoolFile, Metadata baseMetadata, boolean perPage,
+                 ParallelExtraction parallel) throws IOException {
+            this.pdf = pdf;
+            this.spoolFile = spoolFile;
+            this.baseMetadata = baseMetadata;
+            this.stripper = new PDFTextStripper();
+            this.pageCount = pdf.getNumberOfPages();
+            this.perPage = perPage;
+            this.parallel = parallel;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending == null && nextPage <= pageCount) {
+                int lastPage = perPage ? nextPage : pageCount;
+                String text = parallel != null
+                        ? parallel.pageText(nextPage)
+                        : strip(stripper, pdf, nextPage, lastPage);
+                pending = toDocument(text, nextPage);
+                nextPage = lastPage + 1;
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Document page = pending;
+            pending = null;
+            return page;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        /**
+         * כמה עמודים נקראו עד עכשיו (כולל עמודים ריקים שדולגו)
+         */
+        public int getPagesRead() {
+            return nextPage - 1;
+        }
+
+        /**
+         * סך התווים בעמודים שהוחזרו עד עכשיו
+         */
+        public long getCharacterCount() {
+            return characterCount;
+        }
+
+        public boolean isParallel() {
+            return parallel != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (parallel != null) {
+                    // ה-PDDocument הראשי נמסר ל-ParallelExtraction ונסגר שם
+                    parallel.close();
+                } else {
+                    pdf.close();
+                }
+            } finally {
+                if (spoolFile != null) {
+                    Files.deleteIfExists(spoolFile);
+                }
+            }
+        }
+
+        private Document toDocument(String text, int firstPage) {
+            if (text == null || text.isBlank()) {
+                return null;
+            }
+
+            characterCount += text.length();
+            Metadata metadata = baseMetadata.copy();
+            if (perPage) {
+                metadata.put(PAGE_NUMBER_KEY, firstPage);
+            }
+            return Document.from(text, metadata);
+        }
+    }
+
+    /**
+     * חילוץ מקבילי של מסמך אחד: טווחי עמודים רצופים נשלחים ל-pool לפי הסדר, עד maxInFlightRanges קדימה,
+     * והקורא מושך את הטקסט עמוד אחרי עמוד מהטווח שבראש התור (הרכבה מחדש לפי הסדר).
+     * כל משימה שואלת עותק PDDocument פנוי ומחזירה אותו בסוף. מספר העותקים חסום ב-maxCopies
+     * (ה-parallelism של ה-pool), ומשימה שאין לה עותק מחכה לעותק שמשימה אחרת מחזירה.
+     *
+     * זיכרון ה-scratch: העותק הראשון נפתח עם mainMemoryBytes לפני שידוע שהחילוץ מקבילי, וכל עותק
+     * נוסף מקבל mainMemoryBytes / maxCopies. כך מסמך אחד לא עובר 2 * mainMemoryBytes, לא משנה כמה ליבות יש.
+     */
+    static class ParallelExtraction {
+
+        private final ForkJoinPool pool;
+        private final File spoolFile;
+        private final long copyMemoryBytes;
+        private final int maxCopies;
+        private final int pageCount;
+        private final int rangePages;
+        private final int maxInFlightRanges;
+
+        // נגיש רק מה-thread של הקורא
+        private final Deque<PageRange> inFlight = new ArrayDeque<>();
+        private int nextRangeStart = 1;
+
+        // משותף ל-workers, תחת הנעילה של idleCopies
+        private final Deque<PDDocument> idleCopies = new ArrayDeque<>();
+        private int openCopies = 1;
+        private boolean closed;
+
+        ParallelExtraction(ForkJoinPool pool, PDDocument pdf, File spoolFile, long mainMemoryBytes,
+                           int pageCount, int rangePages, int maxInFlightRanges) {
+            this.pool = pool;
+            this.spoolFile = spoolFile;
+            this.maxCopies = Math.max(1, pool.getParallelism());
+            this.copyMemoryBytes = mainMemoryBytes / maxCopies;
+            this.pageCount = pageCount;
+            this.rangePages = rangePages;
+            this.maxInFlightRanges = Math.max(1, maxInFlightRanges);
+            this.idleCopies.add(pdf);
+        }
+
+        /**
+         * הטקסט של עמוד. העמודים מתבקשים לפי הסדר, אחד אחרי השני
+         */
+        String pageText(int pageNumber) {
+            submitAhead();
+            PageRange head = inFlight.peekFirst();
+            // join זורק מחדש את השגיאה של המשימה (IOException עטופה ב-RuntimeException)
+            String text = head.task.join().get(pageNumber - head.firstPage);
+            if (pageNumber == head.lastPage) {
+                inFlight.pollFirst();
+                submitAhead();
+            }
+            return text;
+        }
+
+        void close() {
+            for (PageRange range : inFlight) {
+                range.task.cancel(false);
+            }
+            inFlight.clear();
+
+            List<PDDocument> copies;
+            synchronized (idleCopies) {
+                closed = true;
+                copies = new ArrayList<>(idleCopies);
+                idleCopies.clear();
+                idleCopies.notifyAll();
+            }
+            // עותק שמשימה רצה עדיין מחזיקה נסגר כשהיא מחזירה אותו
+            copies.forEach(ParallelExtraction::closeQuietly);
+        }
+
+        private void submitAhead() {
+            while (inFlight.size() < maxInFlightRanges && nextRangeStart <= pageCount) {
+                int firstPage = nextRangeStart;
+                int lastPage = Math.min(pageCount, firstPage + rangePages - 1);
+                inFlight.addLast(new PageRange(firstPage, lastPage,
+                        pool.submit(() -> extractRange(firstPage, lastPage))));
+                nextRangeStart = lastPage + 1;
+            }
+        }
+
+        private List<String> extractRange(int firstPage, int lastPage) throws IOException {
+            PDDocument copy = borrowCopy();
+            boolean reusable = false;
+            try {
+                PDFTextStripper stripper = new PDFTextStripper();
+                List<String> texts = new ArrayList<>(lastPage - firstPage + 1);
+                for (int page = firstPage; page <= lastPage; page++) {
+                    texts.add(strip(stripper, copy, page, page));
+                }
+                reusable = true;
+                return texts;
+            } finally {
+                returnCopy(copy, reusable);
+            }
+        }
+
+        private PDDocument borrowCopy() throws IOException {
+            synchronized (idleCopies) {
+                while (true) {
+                    if (closed) {
+                        throw new IOException("PDF extraction already closed");
+                    }
+                    PDDocument idle = idleCopies.pollFirst();
+                    if (idle != null) {
+                        return idle;
+                    }
+                    if (openCopies < maxCopies) {
+                        openCopies++;
+                        break;
+                    }
+                    try {
+                        idleCopies.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for a PDF copy");
+                    }
+                }
+            }
+
+            try {
+                return PDDocument.load(spoolFile, MemoryUsageSetting.setupMixed(copyMemoryBytes));
+            } catch (IOException | RuntimeException e) {
+                releaseSlot();
+                throw e;
+            }
+        }
+
+        // עותק שנכשל באמצע החילוץ לא חוזר לשימוש - המצב הפנימי שלו לא ידוע
+        private void returnCopy(PDDocument copy, boolean reusable) {
+            synchronized (idleCopies) {
+                if (reusable && !closed) {
+                    idleCopies.addFirst(copy);
+                    idleCopies.notify();
+                    return;
+                }
+            }
+            closeQuietly(copy);
+            releaseSlot();
+        }
+
+        // עותק שנסגר מפנה מקום לעותק חדש
+        private void releaseSlot() {
+            synchronized (idleCopies) {
+                openCopies--;
+                idleCopies.notify();
+            }
+        }
+
+        private static void closeQuietly(PDDocument pdf) {
+            try {
+                pdf.close();
+            } catch (IOException e) {
+                log.debug("Failed to close PDF copy: {}", e.getMessage());
+            }
+        }
+
+        private static class PageRange {
+            private final int firstPage;
+            private final int lastPage;
+            private final ForkJoinTask<List<String>> task;
+
+            PageRange(int firstPage, int lastPage, ForkJoinTask<List<String>> task) {
+                this.firstPage = firstPage;
+                this.lastPage = lastPage;
+                this.task = task;
+            }
+        }
+    }
+}
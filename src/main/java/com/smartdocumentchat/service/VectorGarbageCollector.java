@@ -0,0 +1,311 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.QdrantProperties;
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.Document;
+import com.smartdocumentchat.repository.ChatSessionRepository;
+import com.smartdocumentchat.repository.DocumentRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * איסוף ה-vectors של מסמכים ושיחות שנמחקו. המחיקה ב-DB היא soft delete, וה-vectors נמחקים מ-Qdrant ברקע:
+ * מיד אחרי ה-commit של המחיקה (לפי document_id ב-payload, או כל ה-collection של השיחה),
+ * ובנוסף reconciliation תקופתי מול DocumentRepository - נקודות של מסמך שאינו פעיל (או שעבר לשיחה אחרת)
+ * נמחקות, ו-collections של שיחות שנמחקו יורדים. כל העבודה רצה ב-thread אחד, כך שמחיקות ו-reconciliation לא חופפים.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VectorGarbageCollector {
+
+    private static final Pattern SESSION_COLLECTION_PATTERN = Pattern.compile("session_(\\d+)_user_(\\d+)");
+
+    private final QdrantVectorService qdrantVectorService;
+    private final QdrantProperties qdrantProperties;
+    private final DocumentRepository documentRepository;
+    private final ChatSessionRepository chatSessionRepository;
+
+    // 0 מכבה את ה-reconciliation התקופתי; המחיקות לפי אירוע ממשיכות לרוץ
+    @Value("${qdrant.gc.reconcile-interval-minutes:60}")
+    private long reconcileIntervalMinutes;
+
+    @Value("${qdrant.gc.initial-delay-minutes:5}")
+    private long initialDelayMinutes;
+
+    @Value("${qdrant.gc.scroll-batch-size:512}")
+    private int scrollBatchSize;
+
+    private ScheduledThreadPoolExecutor gcExecutor;
+
+    private final AtomicLong totalDeletedPoints = new AtomicLong();
+    private final AtomicLong totalDroppedCollections = new AtomicLong();
+    private final AtomicLong failedTasks = new AtomicLong();
+    private volatile ReconcileReport lastReconcile;
+
+    @PostConstruct
+    public void initialize() {
+        this.gcExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "vector-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (reconcileIntervalMinutes > 0) {
+            gcExecutor.scheduleWithFixedDelay(this::scheduledReconcile,
+                    initialDelayMinutes, reconcileIntervalMinutes, TimeUnit.MINUTES);
+        }
+
+        log.info("Vector garbage collector initialized - reconcileInterval: {}min, scrollBatchSize: {}",
+                reconcileIntervalMinutes, scrollBatchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (gcExecutor != null) {
+            gcExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * מחיקת ה-vectors של מסמך שנמחק (ברקע, אחרי ה-commit)
+     */
+    public void deleteDocumentVectors(Long sessionId, Long userId, Long documentId) {
+        submitAfterCommit("document " + documentId, () -> {
+            long points = qdrantVectorService.deleteDocumentPoints(sessionId, userId, documentId);
+            totalDeletedPoints.addAndGet(points);
+            log.info("Deleted vectors of document {} in session {}: {} points (~{} bytes)",
+                    documentId, sessionId, points, vectorBytes(points));
+        });
+    }
+
+    /**
+     * מחיקת ה-vectors של שיחה שנמחקה (ברקע, אחרי ה-commit)
+     */
+    public void deleteSessionVectors(Long sessionId, Long userId) {
+        submitAfterCommit("session " + sessionId, () -> {
+            long points = qdrantVectorService.deleteSessionPoints(sessionId, userId);
+            totalDeletedPoints.addAndGet(points);
+            if (!qdrantVectorService.isSharedCollectionMode()) {
+                totalDroppedCollections.incrementAndGet();
+            }
+            log.info("Deleted vectors of session {}: {} points (~{} bytes)", sessionId, points, vectorBytes(points));
+        });
+    }
+
+    /**
+     * reconciliation של שיחה אחת בלבד (ברקע) - מחיקת הנקודות של מסמכים שכבר לא פעילים בה
+     */
+    public void reconcileSessionAsync(Long sessionId, Long userId) {
+        submitAfterCommit("reconcile session " + sessionId, () -> {
+            ReconcileReport report = new ReconcileReport();
+            reconcileDocuments(qdrantVectorService.countSessionPointsByDocument(sessionId, userId, scrollBatchSize),
+                    report);
+            report.finish();
+            record(report);
+            log.info("Reconciled vectors of session {}: {}", sessionId, report);
+        });
+    }
+
+    /**
+     * reconciliation מלא עכשיו. רץ על ה-thread של ה-GC (אחרי מחיקות שכבר בתור) ומחכה לתוצאה.
+     */
+    public ReconcileReport reconcileNow() throws InterruptedException, ExecutionException {
+        return gcExecutor.submit(this::reconcile).get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("storageMode", qdrantProperties.getStorageMode().name());
+        stats.put("reconcileIntervalMinutes", reconcileIntervalMinutes);
+        stats.put("pendingTasks", gcExecutor.getQueue().size());
+        stats.put("totalDeletedPoints", totalDeletedPoints.get());
+        stats.put("totalDroppedCollections", totalDroppedCollections.get());
+        stats.put("totalReclaimedVectorBytes", vectorBytes(totalDeletedPoints.get()));
+        stats.put("failedTasks", failedTasks.get());
+        stats.put("lastReconcile", lastReconcile);
+        return stats;
+    }
+
+    private void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            // חריגה מבטלת משימה מתוזמנת - נבלעת כאן כדי שהסבב הבא ירוץ
+            failedTasks.incrementAndGet();
+            log.error("Scheduled vector reconciliation failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * מעבר על כל ה-collections: collection של שיחה שנמחקה (או שאינה קיימת) יורד כולו;
+     * בשאר - ה-collection המשותף ו-collections של שיחות פעילות - נמחקות הנקודות של מסמכים שאינם פעילים.
+     */
+    private ReconcileReport reconcile() {
+        ReconcileReport report = new ReconcileReport();
+
+        List<String> collections = qdrantVectorService.listCollections();
+        if (qdrantVectorService.isSharedCollectionMode()
+                && collections.contains(qdrantProperties.getSharedCollectionName())) {
+            report.collectionsScanned++;
+            reconcileDocuments(qdrantVectorService.countPointsByDocument(
+                    qdrantProperties.getSharedCollectionName(), scrollBatchSize), report);
+        }
+
+        Map<String, Long> sessionCollections = new HashMap<>();
+        for (String collectionName : collections) {
+            Matcher matcher = SESSION_COLLECTION_PATTERN.matcher(collectionName);
+            if (matcher.matches()) {
+                sessionCollections.put(collectionName, Long.valueOf(matcher.group(1)));
+            }
+        }
+        Set<Long> activeSessions = activeSessionIds(new HashSet<>(sessionCollections.values()));
+
+        for (Map.Entry<String, Long> entry : sessionCollections.entrySet()) {
+            report.collectionsScanned++;
+            if (activeSessions.contains(entry.getValue())) {
+                reconcileDocuments(qdrantVectorService.countPointsByDocument(entry.getKey(), scrollBatchSize), report);
+            } else {
+                report.deletedPoints += qdrantVectorService.dropCollection(entry.getKey());
+                report.droppedCollections++;
+            }
+        }
+
+        report.finish();
+        record(report);
+        lastReconcile = report;
+
+        log.info("Vector reconciliation completed: {}", report);
+        return report;
+    }
+
+    /**
+     * מחיקת הנקודות של כל מסמך שאינו פעיל, שאינו קיים ב-DB, שעבר לשיחה אחרת או ששיחתו נמחקה
+     */
+    private void reconcileDocuments(List<QdrantVectorService.DocumentPoints> storedDocuments, ReconcileReport report) {
+        if (storedDocuments.isEmpty()) {
+            return;
+        }
+
+        Set<Long> documentIds = storedDocuments.stream().map(stored -> stored.documentId).collect(Collectors.toSet());
+        Map<Long, Document> documents = new HashMap<>();
+        for (Document document : documentRepository.findAllById(documentIds)) {
+            documents.put(document.getId(), document);
+        }
+        Set<Long> activeSessions = activeSessionIds(
+                storedDocuments.stream().map(stored -> stored.sessionId).collect(Collectors.toSet()));
+
+        for (QdrantVectorService.DocumentPoints stored : storedDocuments) {
+            report.documentsScanned++;
+            report.pointsScanned += stored.points;
+
+            Document document = documents.get(stored.documentId);
+            boolean live = document != null
+                    && Boolean.TRUE.equals(document.getActive())
+                    && document.getChatSession() != null
+                    && stored.sessionId.equals(document.getChatSession().getId())
+                    && activeSessions.contains(stored.sessionId);
+            if (!live) {
+                report.deletedPoints += qdrantVectorService.deleteDocumentPoints(
+                        stored.sessionId, stored.userId, stored.documentId);
+                report.orphanedDocuments++;
+            }
+        }
+    }
+
+    private Set<Long> activeSessionIds(Set<Long> sessionIds) {
+        Set<Long> active = new HashSet<>();
+        for (ChatSession session : chatSessionRepository.findAllById(sessionIds)) {
+            if (Boolean.TRUE.equals(session.getActive())) {
+                active.add(session.getId());
+            }
+        }
+        return active;
+    }
+
+    private void record(ReconcileReport report) {
+        totalDeletedPoints.addAndGet(report.deletedPoints);
+        totalDroppedCollections.addAndGet(report.droppedCollections);
+        report.reclaimedVectorBytes = vectorBytes(report.deletedPoints);
+    }
+
+    /**
+     * הערכת הזיכרון שהתפנה - vectors בלבד (float לכל מימד), בלי payload ואינדקסים
+     */
+    private long vectorBytes(long points) {
+        return points * qdrantProperties.getDimension() * Float.BYTES;
+    }
+
+    /**
+     * הרצה על ה-thread של ה-GC. בתוך טרנזקציה - רק אחרי commit, כדי שמחיקה שבוטלה לא תמחק vectors.
+     * כשלון נרשם בלבד: ה-reconciliation הבא ימחק את מה שנשאר.
+     */
+    private void submitAfterCommit(String description, Runnable task) {
+        Runnable guarded = () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                failedTasks.incrementAndGet();
+                log.warn("Vector GC task failed ({}): {} - will be retried by the next reconciliation",
+                        description, e.getMessage());
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    gcExecutor.execute(guarded);
+                }
+            });
+        } else {
+            gcExecutor.execute(guarded);
+        }
+    }
+
+    public static class ReconcileReport {
+        public final LocalDateTime startedAt = LocalDateTime.now();
+        public long durationMs;
+        public int collectionsScanned;
+        public int documentsScanned;
+        public long pointsScanned;
+        public int orphanedDocuments;
+        public long deletedPoints;
+        public int droppedCollections;
+        public long reclaimedVectorBytes;
+
+        private final long startNanos = System.nanoTime();
+
+        void finish() {
+            durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("collections=%d, documents=%d, points=%d, orphanedDocuments=%d, deletedPoints=%d, " +
+                            "droppedCollections=%d, reclaimed~%d bytes, time=%dms",
+                    collectionsScanned, documentsScanned, pointsScanned, orphanedDocuments, deletedPoints,
+                    droppedCollections, reclaimedVectorBytes, durationMs);
+        }
+    }
+}
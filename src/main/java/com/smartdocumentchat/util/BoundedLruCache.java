@@ -0,0 +1,230 @@
+package com.smartdocumentchat.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Cache בזיכרון עם גודל מקסימלי (LRU) ופינוי רשומות שלא נגעו בהן זמן מוגדר.
+ * מיועד לרכיבים יקרים לבנייה שנוצרים לכל שיחה (retrievers, embedding stores).
+ */
+@Slf4j
+public class BoundedLruCache<K, V> {
+
+    private final String name;
+    private final int maxSize;
+    private final long idleTimeoutMs;
+    private final BiConsumer<K, V> removalListener;
+
+    // access-order: הרשומה הראשונה היא זו שלא נגעו בה הכי הרבה זמן
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long lastIdleSweep = System.currentTimeMillis();
+
+    public BoundedLruCache(String name, int maxSize, Duration idleTimeout, BiConsumer<K, V> removalListener) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.idleTimeoutMs = idleTimeout != null ? idleTimeout.toMillis() : 0;
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * קבלת ערך קיים או יצירתו. ה-loader רץ תחת נעילה, ולכן צריך להיות זול יחסית.
+     */
+    public V get(K key, Function<K, V> loader) {
+        List<Map.Entry<K, V>> removed = new ArrayList<>();
+        V value;
+
+        synchronized (this) {
+            sweepIdleIfDue(removed);
+
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                entry.touch();
+                value = entry.value;
+            } else {
+                misses++;
+                value = loader.apply(key);
+                entries.put(key, new Entry<>(value));
+
+                while (entries.size() > maxSize) {
+                    Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+                    Map.Entry<K, Entry<V>> evicted = eldest.next();
+                    eldest.remove();
+                    evictions++;
+                    removed.add(Map.entry(evicted.getKey(), evicted.getValue().value));
+                }
+            }
+        }
+
+        notifyRemoved(removed, "size");
+        return value;
+    }
+
+    /**
+     * קבלת ערך קיים בלבד (ללא יצירה)
+     */
+    public synchronized V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.touch();
+        return entry.value;
+    }
+
+    public synchronized boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    public V invalidate(K key) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = entries.remove(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        notifyRemoved(List.of(Map.entry(key, entry.value)), "explicit");
+        return entry.value;
+    }
+
+    /**
+     * הסרת כל הרשומות שהמפתח שלהן מקיים תנאי
+     */
+    public int invalidateIf(Predicate<K> keyPredicate) {
+        List<Map.Entry<K, V>> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Entry<V>> entry = iterator.next();
+                if (keyPredicate.test(entry.getKey())) {
+                    iterator.remove();
+                    removed.add(Map.entry(entry.getKey(), entry.getValue().value));
+                }
+            }
+        }
+        notifyRemoved(removed, "explicit");
+        return removed.size();
+    }
+
+    public int invalidateAll() {
+        return invalidateIf(key -> true);
+    }
+
+    /**
+     * פינוי רשומות שלא נגעו בהן יותר מ-idleTimeout
+     */
+    public int evictIdle() {
+        List<Map.Entry<K, V>> removed = new ArrayList<>();
+        synchronized (this) {
+            sweepIdle(removed);
+        }
+        notifyRemoved(removed, "idle");
+        return removed.size();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized List<K> keys() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(name, entries.size(), maxSize, hits, misses, evictions);
+    }
+
+    private void sweepIdleIfDue(List<Map.Entry<K, V>> removed) {
+        long now = System.currentTimeMillis();
+        if (idleTimeoutMs > 0 && now - lastIdleSweep >= Math.max(1000, idleTimeoutMs / 4)) {
+            sweepIdle(removed);
+        }
+    }
+
+    private void sweepIdle(List<Map.Entry<K, V>> removed) {
+        long now = System.currentTimeMillis();
+        lastIdleSweep = now;
+        if (idleTimeoutMs <= 0) {
+            return;
+        }
+
+        // בסדר גישה - ברגע שמגיעים לרשומה טרייה, כל השאר טריות
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (now - entry.getValue().lastAccess < idleTimeoutMs) {
+                break;
+            }
+            iterator.remove();
+            evictions++;
+            removed.add(Map.entry(entry.getKey(), entry.getValue().value));
+        }
+    }
+
+    private void notifyRemoved(List<Map.Entry<K, V>> removed, String cause) {
+        for (Map.Entry<K, V> entry : removed) {
+            log.debug("Cache '{}' removed entry {} (cause: {})", name, entry.getKey(), cause);
+            if (removalListener != null) {
+                try {
+                    removalListener.accept(entry.getKey(), entry.getValue());
+                } catch (Exception e) {
+                    log.warn("Removal listener failed for cache '{}', key {}: {}", name, entry.getKey(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private long lastAccess;
+
+        Entry(V value) {
+            this.value = value;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        void touch() {
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    public static class Stats {
+        public final String name;
+        public final int size;
+        public final int maxSize;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+
+        public Stats(String name, int size, int maxSize, long hits, long misses, long evictions) {
+            this.name = name;
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.smartdocumentchat.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * עמוד של keyset pagination. nextCursor הוא null כשאין עמוד נוסף.
+ */
+public class CursorPage<T> {
+
+    public final List<T> items;
+    public final String nextCursor;
+
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * בניית עמוד משאילתה שהביאה limit + 1 שורות - השורה העודפת רק מסמנת שיש עמוד נוסף
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int limit, Function<T, String> cursorOf) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new CursorPage<>(items, cursorOf.apply(items.get(limit - 1)));
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(items.stream().map(mapper).toList(), nextCursor);
+    }
+
+    public boolean isHasMore() {
+        return nextCursor != null;
+    }
+}
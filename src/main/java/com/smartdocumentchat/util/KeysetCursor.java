@@ -0,0 +1,75 @@
+package com.smartdocumentchat.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * cursor אטום ל-keyset pagination: המיון שבו נוצר, ערך מפתח המיון והמזהה של השורה האחרונה בעמוד.
+ * הלקוח מחזיר אותו כמו שהוא; cursor שנוצר למיון אחר או שלא ניתן לפענח נדחה.
+ */
+public final class KeysetCursor {
+
+    private static final String VERSION = "k1";
+
+    public final String sort;
+    public final String value;
+    public final long id;
+
+    private KeysetCursor(String sort, String value, long id) {
+        this.sort = sort;
+        this.value = value;
+        this.id = id;
+    }
+
+    public static String encode(String sort, Object value, long id) {
+        // הערך אחרון - הוא יכול להכיל כל תו (גם מעבר שורה)
+        String raw = VERSION + "\n" + sort + "\n" + id + "\n" + (value != null ? value : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * פענוח cursor שנוצר עבור המיון הנתון. null או ריק - העמוד הראשון (מחזיר null).
+     */
+    public static KeysetCursor decode(String cursor, String expectedSort) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 4);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("cursor לא תקין");
+        }
+
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("cursor לא תקין");
+        }
+        if (!parts[1].equals(expectedSort)) {
+            throw new IllegalArgumentException("ה-cursor שייך למיון אחר");
+        }
+
+        try {
+            return new KeysetCursor(parts[1], parts[3], Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("cursor לא תקין");
+        }
+    }
+
+    public LocalDateTime timeValue() {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("cursor לא תקין");
+        }
+    }
+
+    public long longValue() {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("cursor לא תקין");
+        }
+    }
+}
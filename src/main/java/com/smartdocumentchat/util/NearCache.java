@@ -0,0 +1,164 @@
+package com.smartdocumentchat.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Cache מקומי (in-JVM) חסום בגודל, עם TTL לכל רשומה.
+ * משמש כשכבה ראשונה לפני Redis; פינוי LRU כשמגיעים לגודל המקסימלי.
+ * <p>
+ * כל פינוי מקדם מונה. מי שקורא מ-Redis לוקח את המונה לפני הקריאה ומכניס דרך
+ * put(key, value, ttlMs, sequence) - אם היה פינוי בינתיים הערך שנקרא אולי ישן, והוא לא נכנס.
+ */
+public class NearCache<V> {
+
+    private final int maxSize;
+
+    // access-order - הרשומה הראשונה היא ה-LRU
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    // עולה בכל invalidate, גם למפתח שלא קיים - קריאה שבדרך עלולה להכניס אותו
+    private long invalidationSequence;
+
+    public NearCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * קבלת ערך; רשומה שפג תוקפה נמחקת ונחשבת miss
+     */
+    public synchronized V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(String key, V value, long ttlMs) {
+        if (ttlMs <= 0) {
+            entries.remove(key);
+            return;
+        }
+
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMs));
+
+        while (entries.size() > maxSize) {
+            Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * הכנסה רק אם לא היה פינוי מאז שנלקח sequence (מ-invalidationSequence)
+     *
+     * @return false אם הערך לא נכנס
+     */
+    public synchronized boolean put(String key, V value, long ttlMs, long sequence) {
+        if (sequence != invalidationSequence) {
+            return false;
+        }
+        put(key, value, ttlMs);
+        return ttlMs > 0;
+    }
+
+    public synchronized long invalidationSequence() {
+        return invalidationSequence;
+    }
+
+    public synchronized void invalidate(String key) {
+        invalidationSequence++;
+        if (entries.remove(key) != null) {
+            invalidations++;
+        }
+    }
+
+    public synchronized int invalidateIf(Predicate<String> keyPredicate) {
+        invalidationSequence++;
+        int removed = 0;
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (keyPredicate.test(iterator.next())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        invalidations += removed;
+        return removed;
+    }
+
+    public synchronized int invalidateAll() {
+        invalidationSequence++;
+        int removed = entries.size();
+        entries.clear();
+        invalidations += removed;
+        return removed;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(entries.size(), maxSize, hits, misses, evictions, expirations, invalidations);
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    public static class Stats {
+        public final int size;
+        public final int maxSize;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long expirations;
+        public final long invalidations;
+
+        public Stats(int size, int maxSize, long hits, long misses, long evictions,
+                     long expirations, long invalidations) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+}
@@ -5,8 +5,12 @@ import com.smartdocumentchat.entity.Document;
 import com.smartdocumentchat.entity.User;
 import com.smartdocumentchat.service.CacheService;
 import com.smartdocumentchat.service.ChatSessionService;
+import com.smartdocumentchat.service.ConversationMemoryService;
+import com.smartdocumentchat.service.LexicalIndexService;
 import com.smartdocumentchat.service.PdfProcessingService;
 import com.smartdocumentchat.service.QdrantVectorService;
+import com.smartdocumentchat.service.SemanticAnswerCache;
+import com.smartdocumentchat.service.VectorGarbageCollector;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -28,6 +32,10 @@ public class SessionCollectionManager {
     private final PdfProcessingService pdfProcessingService;
     private final ChatSessionService chatSessionService;
     private final CacheService cacheService;
+    private final ConversationMemoryService conversationMemoryService;
+    private final LexicalIndexService lexicalIndexService;
+    private final VectorGarbageCollector vectorGarbageCollector;
+    private final SemanticAnswerCache semanticAnswerCache;
 
     /**
      * אתחול collection לשיחה חדשה
@@ -66,10 +74,14 @@ public class SessionCollectionManager {
 
             // הסרה מהcache
             qdrantVectorService.removeEmbeddingStoreForSession(sessionId, userId);
+            conversationMemoryService.invalidateSession(sessionId);
+            lexicalIndexService.invalidateSession(sessionId);
+
+            // מחיקת ה-vectors עצמם מ-Qdrant (ברקע)
+            vectorGarbageCollector.deleteSessionVectors(sessionId, userId);
 
             // ניקוי cache קשור
-            String cacheKey = "session_docs:" + sessionId + "_user:" + userId;
-            cacheService.delete(cacheKey);
+            invalidateSessionCache(sessionId, userId);
 
             log.info("Collection cleanup completed for session: {}", sessionId);
 
@@ -104,6 +116,9 @@ public class SessionCollectionManager {
             document.setChatSession(toSession);
             document.setVectorCollectionName(newCollectionName);
 
+            // ה-chunks של המסמך לא עוברים לאינדקס של השיחה החדשה
+            lexicalIndexService.removeDocument(fromSession.getId(), document.getId());
+
             // ניקוי cache עבור שתי השיחות
             invalidateSessionCache(fromSession.getId(), fromSession.getUser().getId());
             invalidateSessionCache(toSession.getId(), toSession.getUser().getId());
@@ -121,6 +136,19 @@ public class SessionCollectionManager {
      * קבלת סטטיסטיקות collection עבור שיחה
      */
     public SessionCollectionStats getSessionCollectionStats(ChatSession chatSession) {
+        try {
+            return getSessionCollectionStats(chatSession,
+                    pdfProcessingService.getDocumentsBySession(chatSession));
+
+        } catch (Exception e) {
+            log.error("Failed to get collection stats for session: {}", chatSession.getId(), e);
+            return new SessionCollectionStats(
+                    "unknown", false, 0, 0, 0, 0, 0, 0, null
+            );
+        }
+    }
+
+    private SessionCollectionStats getSessionCollectionStats(ChatSession chatSession, List<Document> documents) {
         try {
             String collectionName = qdrantVectorService.generateSessionCollectionName(
                     chatSession.getId(), chatSession.getUser().getId());
@@ -128,8 +156,6 @@ public class SessionCollectionManager {
             boolean hasEmbeddingStore = qdrantVectorService.hasEmbeddingStoreForSession(
                     chatSession.getId(), chatSession.getUser().getId());
 
-            List<Document> documents = pdfProcessingService.getDocumentsBySession(chatSession);
-
             long totalDocuments = documents.size();
             long processedDocuments = documents.stream().filter(Document::isProcessed).count();
             long failedDocuments = documents.stream().filter(Document::hasFailed).count();
@@ -178,10 +204,13 @@ public class SessionCollectionManager {
             int totalProcessedDocuments = 0;
             int totalFailedDocuments = 0;
 
+            // המסמכים של כל השיחות ב-round-trip אחד ל-Redis ולא אחד לכל שיחה
+            Map<Long, List<Document>> documentsBySession = pdfProcessingService.getDocumentsBySessions(userSessions);
+
             Map<String, SessionCollectionStats> sessionStats = userSessions.stream()
                     .collect(Collectors.toMap(
                             session -> session.getId().toString(),
-                            this::getSessionCollectionStats
+                            session -> getSessionCollectionStats(session, documentsBySession.get(session.getId()))
                     ));
 
             for (SessionCollectionStats stats : sessionStats.values()) {
@@ -219,6 +248,9 @@ public class SessionCollectionManager {
             LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysOld);
             int cleanedCount = 0;
 
+            // פינוי stores שלא היו בשימוש מה-registry
+            qdrantVectorService.evictIdleEmbeddingStores();
+
             // קבלת כל השמות של collections פעילים
             var activeCollections = qdrantVectorService.getActiveCollectionNames();
 
@@ -233,13 +265,18 @@ public class SessionCollectionManager {
 
                             // בדיקה אם השיחה ישנה
                             var sessionOpt = chatSessionService.findById(sessionId);
-                            if (sessionOpt.isEmpty() ||
-                                    !sessionOpt.get().getActive() ||
+                            boolean deleted = sessionOpt.isEmpty() || !sessionOpt.get().getActive();
+                            if (deleted ||
                                     (sessionOpt.get().getLastActivityAt() != null &&
                                             sessionOpt.get().getLastActivityAt().isBefore(cutoffDate))) {
 
                                 // ניקוי הcollection
                                 qdrantVectorService.removeEmbeddingStoreForSession(sessionId, userId);
+                                lexicalIndexService.invalidateSession(sessionId);
+                                // שיחה ישנה אבל פעילה שומרת את ה-vectors; של שיחה שנמחקה - נמחקים
+                                if (deleted) {
+                                    vectorGarbageCollector.deleteSessionVectors(sessionId, userId);
+                                }
                                 cleanedCount++;
 
                                 log.info("Cleaned up old collection: {}", collectionName);
@@ -293,8 +330,8 @@ public class SessionCollectionManager {
     // Helper methods
 
     private void invalidateSessionCache(Long sessionId, Long userId) {
-        String cacheKey = "session_docs:" + sessionId + "_user:" + userId;
-        cacheService.delete(cacheKey);
+        cacheService.invalidateTags(CacheService.sessionTag(sessionId), CacheService.userTag(userId));
+        semanticAnswerCache.invalidateSession(sessionId, userId);
         log.debug("Invalidated session cache for session: {} and user: {}", sessionId, userId);
     }
 
@@ -0,0 +1,10 @@
+-- Runs after Hibernate's ddl-auto=update (spring.jpa.defer-datasource-initialization), so the tables exist.
+-- Every statement is idempotent: the script runs on each startup (spring.sql.init.mode=always).
+
+-- Keyset pagination compares and orders by updated_at, so it must never be NULL.
+-- ddl-auto=update does not tighten existing columns; older rows take their creation time.
+UPDATE chat_sessions SET updated_at = created_at WHERE updated_at IS NULL;
+ALTER TABLE chat_sessions ALTER COLUMN updated_at SET NOT NULL;
+
+-- Title sort (ORDER BY lower(title), id). JPA @Index cannot declare an expression index.
+CREATE INDEX IF NOT EXISTS idx_chat_sessions_user_title ON chat_sessions (user_id, lower(title), id);
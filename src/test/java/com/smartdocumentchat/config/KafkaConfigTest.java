@@ -0,0 +1,119 @@
+package com.smartdocumentchat.config;
+
+import com.smartdocumentchat.event.ChatTurnEvent;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaConfigTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition(KafkaConfig.CHAT_TRANSCRIPT_TOPIC, 1);
+
+    @Mock
+    private KafkaOperations<String, Object> template;
+
+    @Mock
+    private Consumer<String, Object> consumer;
+
+    @Mock
+    private MessageListenerContainer container;
+
+    private DefaultErrorHandler errorHandler;
+    private ConsumerRecords<String, Object> records;
+
+    @BeforeEach
+    void setUp() {
+        KafkaConfig kafkaConfig = new KafkaConfig();
+        ReflectionTestUtils.setField(kafkaConfig, "transcriptRetryInitialIntervalMs", 1L);
+        ReflectionTestUtils.setField(kafkaConfig, "transcriptRetryMultiplier", 2.0);
+        ReflectionTestUtils.setField(kafkaConfig, "transcriptRetryMaxIntervalMs", 4L);
+        ReflectionTestUtils.setField(kafkaConfig, "transcriptRetryMaxElapsedMs", 10L);
+        errorHandler = kafkaConfig.chatTranscriptErrorHandler(template);
+
+        records = new ConsumerRecords<>(Map.of(PARTITION, List.of(
+                new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), 10L, "7", turn("a")),
+                new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), 11L, "7", turn("b")))));
+        lenient().when(container.isRunning()).thenReturn(true);
+        lenient().when(container.getContainerFor(any(), any(Integer.class))).thenReturn(container);
+    }
+
+    @Test
+    void batchIsRedeliveredUntilWriteSucceeds() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        errorHandler.handleBatch(writeFailure(), records, consumer, container, () -> {
+            if (attempts.incrementAndGet() < 2) {
+                throw writeFailure();
+            }
+        });
+
+        assertEquals(2, attempts.get());
+        verify(template, never()).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    void exhaustedBatchIsPublishedToDeadLetterTopic() {
+        when(template.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+        AtomicInteger attempts = new AtomicInteger();
+
+        errorHandler.handleBatch(writeFailure(), records, consumer, container, () -> {
+            attempts.incrementAndGet();
+            throw writeFailure();
+        });
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<ProducerRecord<String, Object>> published = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(template, times(2)).send(published.capture());
+        for (ProducerRecord<String, Object> record : published.getAllValues()) {
+            assertEquals(KafkaConfig.CHAT_TRANSCRIPT_DLT_TOPIC, record.topic());
+            assertEquals(PARTITION.partition(), record.partition());
+        }
+        assertEquals(List.of("a", "b"), published.getAllValues().stream()
+                .map(record -> ((ChatTurnEvent) record.value()).getTurnId())
+                .toList());
+        assertTrue(attempts.get() >= 1);
+    }
+
+    private static ListenerExecutionFailedException writeFailure() {
+        return new ListenerExecutionFailedException("transcript write failed",
+                new DataAccessResourceFailureException("db down"));
+    }
+
+    private static ChatTurnEvent turn(String turnId) {
+        ChatTurnEvent event = new ChatTurnEvent();
+        event.setTurnId(turnId);
+        return event;
+    }
+}
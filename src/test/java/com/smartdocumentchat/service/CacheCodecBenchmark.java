@@ -0,0 +1,188 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.Document;
+import com.smartdocumentchat.entity.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * השוואת גודל ועלות serde בין ה-codecs הבינאריים ל-JSON (GenericJackson2JsonRedisSerializer)
+ * על נתונים סינתטיים בצורה של ה-cache האמיתי. רץ in-process, בלי Redis.
+ * המספרים הם ממוצע אחרי חימום - לא JMH, אבל מספיק כדי לראות סדרי גודל.
+ *
+ * לא רץ ב-build: mvn test -Dtest=CacheCodecBenchmark -Dbenchmark=true
+ * (אפשר לשנות -Dbenchmark.iterations ו--Dbenchmark.list-size)
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CacheCodecBenchmark {
+
+    @Test
+    void compareCodecsToJson() {
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        CacheSerializer cacheSerializer = new CacheSerializer(redisTemplate);
+        ReflectionTestUtils.setField(cacheSerializer, "binaryEnabled", true);
+        ReflectionTestUtils.setField(cacheSerializer, "compressionThresholdBytes", 1024);
+        cacheSerializer.initialize();
+
+        int iterations = Integer.getInteger("benchmark.iterations", 10_000);
+        int listSize = Integer.getInteger("benchmark.list-size", 20);
+        for (CaseResult result : run(cacheSerializer, iterations, listSize)) {
+            System.out.printf("%-34s items=%-4d json=%-7d codec=%-7d ratio=%.2f compressed=%-5s "
+                            + "serialize json/codec=%d/%dns deserialize json/codec=%d/%dns%s%n",
+                    result.key, result.items, result.jsonBytes, result.codecBytes, result.getSizeRatio(),
+                    result.compressed, result.jsonSerializeNanos, result.codecSerializeNanos,
+                    result.jsonDeserializeNanos, result.codecDeserializeNanos,
+                    result.jsonError != null ? " jsonError=" + result.jsonError : "");
+        }
+    }
+
+    private List<CaseResult> run(CacheSerializer cacheSerializer, int iterations, int listSize) {
+        int rounds = Math.max(1, iterations);
+        int size = Math.max(1, Math.min(listSize, 1000));
+
+        User user = new User();
+        user.setId(42L);
+        user.setUsername("benchmark_user");
+
+        List<ChatSession> sessions = new ArrayList<>(size);
+        List<Document> documents = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ChatSession session = sampleSession(user, i);
+            sessions.add(session);
+            documents.add(sampleDocument(user, session, i));
+        }
+
+        Map<String, Object> cases = new LinkedHashMap<>();
+        cases.put("session:1", sessions.get(0));
+        cases.put("user_sessions:42", sessions);
+        cases.put("doc_meta:document:1_user:42", documents.get(0));
+        cases.put("doc_meta:session_docs:1_user:42", documents);
+        cases.put("user_sessions_stats:42", new SessionHistoryService.UserSessionsStats(size, size - 1, 1,
+                size * 3L, size * 20L, 3.0, 20.0, 90, LocalDateTime.now(), LocalDateTime.now().minusDays(90)));
+
+        List<CaseResult> results = new ArrayList<>();
+        cases.forEach((key, value) -> results.add(runCase(cacheSerializer, key, value, rounds)));
+        return results;
+    }
+
+    private CaseResult runCase(CacheSerializer cacheSerializer, String key, Object value, int rounds) {
+        CacheSerializer.Encoded encoded = cacheSerializer.encode(key, value);
+        long codecSerialize = timePerOp(rounds, () -> cacheSerializer.encode(key, value));
+        long codecDeserialize = timePerOp(rounds, () -> cacheSerializer.deserialize(encoded.bytes));
+
+        byte[] json = null;
+        long jsonSerialize = -1;
+        long jsonDeserialize = -1;
+        String jsonError = null;
+        try {
+            byte[] jsonBytes = cacheSerializer.serializeJson(value);
+            json = jsonBytes;
+            jsonSerialize = timePerOp(rounds, () -> cacheSerializer.serializeJson(value));
+            cacheSerializer.deserializeJson(jsonBytes);
+            jsonDeserialize = timePerOp(rounds, () -> cacheSerializer.deserializeJson(jsonBytes));
+        } catch (Exception e) {
+            // ה-JSON לא תמיד עושה round-trip לישויות (getters מחושבים, מחלקות בלי constructor ריק)
+            jsonError = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+        return new CaseResult(key, value instanceof List<?> list ? list.size() : 1,
+                json != null ? json.length : -1, encoded.bytes.length, encoded.codecId, encoded.compressed,
+                jsonSerialize, jsonDeserialize, codecSerialize, codecDeserialize, jsonError);
+    }
+
+    // חימום בסבב זהה, ואז מדידה; מחזיר ננו-שניות לפעולה
+    private long timePerOp(int rounds, Runnable operation) {
+        for (int i = 0; i < rounds; i++) {
+            operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            operation.run();
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    private ChatSession sampleSession(User user, int index) {
+        LocalDateTime now = LocalDateTime.now();
+        ChatSession session = new ChatSession();
+        session.setId(1000L + index);
+        session.setTitle("שיחה על דוח רבעוני " + index);
+        session.setDescription("ניתוח הכנסות והוצאות לרבעון השלישי");
+        session.setActive(true);
+        session.setCreatedAt(now.minusDays(index));
+        session.setUpdatedAt(now.minusHours(index));
+        session.setLastActivityAt(now.minusMinutes(index));
+        session.setUser(user);
+        session.setCachedMessageCount(12 + index);
+        session.setCachedDocumentCount(3);
+        return session;
+    }
+
+    private Document sampleDocument(User user, ChatSession session, int index) {
+        LocalDateTime now = LocalDateTime.now();
+        Document document = new Document();
+        document.setId(5000L + index);
+        document.setFileName("q3-report-" + index + "-8f14e45f.pdf");
+        document.setOriginalFileName("Q3 Financial Report " + index + ".pdf");
+        document.setFileType("application/pdf");
+        document.setFileSize(1_048_576L + index);
+        document.setContentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        document.setProcessingStatus(Document.ProcessingStatus.COMPLETED);
+        document.setProcessingProgress(100);
+        document.setCharacterCount(48_000 + index);
+        document.setChunkCount(40);
+        document.setVectorCollectionName("documents_shared");
+        document.setActive(true);
+        document.setCreatedAt(now.minusDays(index));
+        document.setUpdatedAt(now.minusHours(index));
+        document.setProcessedAt(now.minusHours(index));
+        document.setUser(user);
+        document.setChatSession(session);
+        return document;
+    }
+
+    static class CaseResult {
+        public final String key;
+        public final int items;
+        public final int jsonBytes;
+        public final int codecBytes;
+        public final int codecId;
+        public final boolean compressed;
+        public final long jsonSerializeNanos;
+        public final long jsonDeserializeNanos;
+        public final long codecSerializeNanos;
+        public final long codecDeserializeNanos;
+        public final String jsonError;
+
+        CaseResult(String key, int items, int jsonBytes, int codecBytes, int codecId, boolean compressed,
+                          long jsonSerializeNanos, long jsonDeserializeNanos, long codecSerializeNanos,
+                          long codecDeserializeNanos, String jsonError) {
+            this.key = key;
+            this.items = items;
+            this.jsonBytes = jsonBytes;
+            this.codecBytes = codecBytes;
+            this.codecId = codecId;
+            this.compressed = compressed;
+            this.jsonSerializeNanos = jsonSerializeNanos;
+            this.jsonDeserializeNanos = jsonDeserializeNanos;
+            this.codecSerializeNanos = codecSerializeNanos;
+            this.codecDeserializeNanos = codecDeserializeNanos;
+            this.jsonError = jsonError;
+        }
+
+        double getSizeRatio() {
+            return jsonBytes <= 0 ? 0.0 : (double) codecBytes / jsonBytes;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.Document;
+import com.smartdocumentchat.entity.User;
+import com.smartdocumentchat.util.CacheCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheSerializerTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 1, 10, 15, 30, 123_456_789);
+
+    private CacheSerializer cacheSerializer;
+
+    @BeforeEach
+    void setUp() {
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        cacheSerializer = new CacheSerializer(redisTemplate);
+        ReflectionTestUtils.setField(cacheSerializer, "binaryEnabled", true);
+        ReflectionTestUtils.setField(cacheSerializer, "compressionThresholdBytes", 1024);
+        cacheSerializer.initialize();
+    }
+
+    @Test
+    void sessionRoundTrip() {
+        ChatSession session = session(7L, "דוח רבעוני");
+
+        byte[] bytes = cacheSerializer.serialize("session:7", session);
+
+        assertHeader(bytes, CacheEntityCodecs.SESSION.id(), false);
+        assertSameSession(session, (ChatSession) cacheSerializer.deserialize(bytes));
+    }
+
+    @Test
+    void sessionWithNullFieldsRoundTrip() {
+        ChatSession session = new ChatSession();
+        session.setActive(null);
+        session.setCachedMessageCount(0);
+        session.setCachedDocumentCount(0);
+
+        ChatSession decoded = (ChatSession) cacheSerializer.deserialize(
+                cacheSerializer.serialize("session:0", session));
+
+        assertSameSession(session, decoded);
+        assertNull(decoded.getUser());
+    }
+
+    @Test
+    void documentRoundTrip() {
+        Document document = document(11L, session(7L, "דוח"));
+        document.setErrorMessage("retry after timeout");
+
+        byte[] bytes = cacheSerializer.serialize("doc_meta:document:11_user:3", document);
+
+        assertHeader(bytes, CacheEntityCodecs.DOCUMENT.id(), false);
+        assertSameDocument(document, (Document) cacheSerializer.deserialize(bytes));
+    }
+
+    @Test
+    void documentWithNullFieldsRoundTrip() {
+        Document document = new Document();
+        document.setProcessingStatus(null);
+        document.setProcessingProgress(null);
+        document.setActive(null);
+
+        Document decoded = (Document) cacheSerializer.deserialize(
+                cacheSerializer.serialize("doc_meta:document:0_user:0", document));
+
+        assertSameDocument(document, decoded);
+        assertNull(decoded.getProcessingStatus());
+        assertNull(decoded.getUser());
+        assertNull(decoded.getChatSession());
+    }
+
+    @Test
+    void statsRoundTrip() {
+        SessionHistoryService.UserSessionsStats stats = new SessionHistoryService.UserSessionsStats(
+                5, 4, 1, 12, 90, 2.4, 18.0, 30, CREATED, null);
+
+        byte[] bytes = cacheSerializer.serialize("user_sessions_stats:3", stats);
+
+        assertHeader(bytes, CacheEntityCodecs.USER_SESSIONS_STATS.id(), false);
+        SessionHistoryService.UserSessionsStats decoded =
+                (SessionHistoryService.UserSessionsStats) cacheSerializer.deserialize(bytes);
+        assertEquals(5, decoded.totalSessions);
+        assertEquals(4, decoded.activeSessions);
+        assertEquals(1, decoded.inactiveSessions);
+        assertEquals(12, decoded.totalDocuments);
+        assertEquals(90, decoded.totalMessages);
+        assertEquals(2.4, decoded.avgDocumentsPerSession);
+        assertEquals(18.0, decoded.avgMessagesPerSession);
+        assertEquals(30, decoded.totalActiveDays);
+        assertEquals(CREATED, decoded.lastActivity);
+        assertNull(decoded.firstSession);
+    }
+
+    @Test
+    void largeListsAreCompressedAndRoundTrip() {
+        List<ChatSession> sessions = new ArrayList<>();
+        List<Document> documents = new ArrayList<>();
+        for (long i = 0; i < 50; i++) {
+            ChatSession session = session(100 + i, "שיחה " + i);
+            sessions.add(session);
+            documents.add(document(500 + i, session));
+        }
+
+        byte[] sessionBytes = cacheSerializer.serialize("user_sessions:3", sessions);
+        byte[] documentBytes = cacheSerializer.serialize("doc_meta:session_docs:7_user:3", documents);
+
+        assertHeader(sessionBytes, CacheEntityCodecs.SESSION_LIST.id(), true);
+        assertHeader(documentBytes, CacheEntityCodecs.DOCUMENT_LIST.id(), true);
+        List<?> decodedSessions = (List<?>) cacheSerializer.deserialize(sessionBytes);
+        List<?> decodedDocuments = (List<?>) cacheSerializer.deserialize(documentBytes);
+        assertEquals(50, decodedSessions.size());
+        assertEquals(50, decodedDocuments.size());
+        for (int i = 0; i < 50; i++) {
+            assertSameSession(sessions.get(i), (ChatSession) decodedSessions.get(i));
+            assertSameDocument(documents.get(i), (Document) decodedDocuments.get(i));
+        }
+    }
+
+    @Test
+    void emptyListRoundTrip() {
+        byte[] bytes = cacheSerializer.serialize("user_sessions:3", List.of());
+
+        assertHeader(bytes, CacheEntityCodecs.SESSION_LIST.id(), false);
+        assertEquals(List.of(), cacheSerializer.deserialize(bytes));
+    }
+
+    @Test
+    void valuesWithoutCodecFallBackToJson() {
+        Map<String, Object> value = new HashMap<>(Map.of("answer", "42"));
+
+        byte[] plain = cacheSerializer.serialize("semantic_answer:abc", value);
+        byte[] wrongType = cacheSerializer.serialize("session:7", value);
+
+        // JSON לא דחוס נשמר בלי כותרת - תואם לרשומות שנכתבו לפני ה-codecs
+        assertNotEquals(0, plain[0]);
+        assertNotEquals(0, wrongType[0]);
+        assertEquals(value, cacheSerializer.deserialize(plain));
+        assertEquals(value, cacheSerializer.deserialize(wrongType));
+    }
+
+    @Test
+    void largeJsonIsCompressedWithJsonCodecId() {
+        Map<String, Object> value = new HashMap<>(Map.of("answer", "תשובה ארוכה ".repeat(200)));
+
+        byte[] bytes = cacheSerializer.serialize("semantic_answer:abc", value);
+
+        assertHeader(bytes, (byte) 0, true);
+        assertEquals(value, cacheSerializer.deserialize(bytes));
+    }
+
+    @Test
+    void nullValueRoundTrip() {
+        assertNull(cacheSerializer.deserialize(cacheSerializer.serialize("session:7", null)));
+        assertNull(cacheSerializer.deserialize(null));
+    }
+
+    @Test
+    void binaryDisabledWritesJsonThatIsStillReadable() {
+        byte[] binary = cacheSerializer.serialize("session:7", session(7L, "דוח"));
+        ReflectionTestUtils.setField(cacheSerializer, "binaryEnabled", false);
+
+        byte[] json = cacheSerializer.serialize("user_sessions_stats:3",
+                new SessionHistoryService.UserSessionsStats(1, 1, 0, 0, 0, 0.0, 0.0, 1, null, null));
+
+        assertNotEquals(0, json[0]);
+        // רשומות בינאריות שכבר נכתבו ממשיכות להיקרא לפי הכותרת
+        assertInstanceOf(ChatSession.class, cacheSerializer.deserialize(binary));
+    }
+
+    @Test
+    void unknownCodecIdIsRejected() {
+        byte[] bytes = cacheSerializer.serialize("session:7", session(7L, "דוח"));
+        // id 5 הוצא משימוש - רשומה בפורמט ישן לא מפוענחת בטעות ב-codec אחר
+        bytes[2] = 5;
+
+        assertThrows(SerializationException.class, () -> cacheSerializer.deserialize(bytes));
+    }
+
+    @Test
+    void truncatedPayloadIsRejected() {
+        byte[] bytes = cacheSerializer.serialize("session:7", session(7L, "דוח"));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 6);
+
+        assertThrows(SerializationException.class, () -> cacheSerializer.deserialize(truncated));
+    }
+
+    @Test
+    void corruptCompressedPayloadIsRejected() {
+        List<ChatSession> sessions = new ArrayList<>();
+        for (long i = 0; i < 50; i++) {
+            sessions.add(session(i, "שיחה " + i));
+        }
+        byte[] bytes = cacheSerializer.serialize("user_sessions:3", sessions);
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+
+        assertThrows(SerializationException.class, () -> cacheSerializer.deserialize(truncated));
+    }
+
+    @Test
+    void codecIdsMustBeUnique() {
+        assertThrows(IllegalArgumentException.class,
+                () -> cacheSerializer.register("other_session:", new CacheCodec<ChatSession>() {
+                    @Override
+                    public byte id() {
+                        return CacheEntityCodecs.SESSION.id();
+                    }
+
+                    @Override
+                    public String name() {
+                        return "other-session";
+                    }
+
+                    @Override
+                    public boolean supports(Object value) {
+                        return value instanceof ChatSession;
+                    }
+
+                    @Override
+                    public void write(ChatSession value, DataOutputStream out) {
+                    }
+
+                    @Override
+                    public ChatSession read(DataInputStream in) {
+                        return null;
+                    }
+                }));
+    }
+
+    @Test
+    void nullableFieldHelpersRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            CacheCodec.writeString(out, null);
+            CacheCodec.writeString(out, "");
+            CacheCodec.writeString(out, "שלום");
+            CacheCodec.writeLong(out, null);
+            CacheCodec.writeLong(out, Long.MIN_VALUE);
+            CacheCodec.writeInt(out, null);
+            CacheCodec.writeInt(out, -1);
+            CacheCodec.writeBoolean(out, null);
+            CacheCodec.writeBoolean(out, false);
+            CacheCodec.writeBoolean(out, true);
+            CacheCodec.writeDateTime(out, null);
+            CacheCodec.writeDateTime(out, CREATED);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertNull(CacheCodec.readString(in));
+            assertEquals("", CacheCodec.readString(in));
+            assertEquals("שלום", CacheCodec.readString(in));
+            assertNull(CacheCodec.readLong(in));
+            assertEquals(Long.MIN_VALUE, CacheCodec.readLong(in));
+            assertNull(CacheCodec.readInt(in));
+            assertEquals(-1, CacheCodec.readInt(in));
+            assertNull(CacheCodec.readBoolean(in));
+            assertFalse(CacheCodec.readBoolean(in));
+            assertTrue(CacheCodec.readBoolean(in));
+            assertNull(CacheCodec.readDateTime(in));
+            assertEquals(CREATED, CacheCodec.readDateTime(in));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    private static void assertHeader(byte[] bytes, byte codecId, boolean compressed) {
+        assertEquals(0, bytes[0]);
+        assertEquals('C', bytes[1]);
+        assertEquals(codecId, bytes[2]);
+        assertEquals(compressed ? 1 : 0, bytes[3]);
+    }
+
+    private static ChatSession session(Long id, String title) {
+        User user = new User();
+        user.setId(3L);
+        user.setUsername("dana");
+
+        ChatSession session = new ChatSession();
+        session.setId(id);
+        session.setTitle(title);
+        session.setDescription("ניתוח הכנסות");
+        session.setActive(true);
+        session.setCreatedAt(CREATED);
+        session.setUpdatedAt(CREATED.plusHours(1));
+        session.setLastActivityAt(CREATED.plusHours(2));
+        session.setUser(user);
+        session.setCachedMessageCount(12);
+        session.setCachedDocumentCount(3);
+        return session;
+    }
+
+    private static Document document(Long id, ChatSession session) {
+        Document document = new Document();
+        document.setId(id);
+        document.setFileName("report-" + id + ".pdf");
+        document.setOriginalFileName("Report " + id + ".pdf");
+        document.setFileType("application/pdf");
+        document.setFileSize(1_048_576L);
+        document.setContentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        document.setProcessingStatus(Document.ProcessingStatus.COMPLETED);
+        document.setProcessingProgress(100);
+        document.setCharacterCount(48_000);
+        document.setChunkCount(40);
+        document.setVectorCollectionName("session_documents");
+        document.setActive(true);
+        document.setCreatedAt(CREATED);
+        document.setUpdatedAt(CREATED.plusMinutes(5));
+        document.setProcessedAt(CREATED.plusMinutes(4));
+        document.setUser(session.getUser());
+        document.setChatSession(session);
+        return document;
+    }
+
+    private static void assertSameSession(ChatSession expected, ChatSession actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getActive(), actual.getActive());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+        assertEquals(expected.getLastActivityAt(), actual.getLastActivityAt());
+        assertEquals(expected.getMessageCount(), actual.getMessageCount());
+        assertEquals(expected.getDocumentCount(), actual.getDocumentCount());
+        if (expected.getUser() != null) {
+            assertEquals(expected.getUser().getId(), actual.getUser().getId());
+            assertEquals(expected.getUser().getUsername(), actual.getUser().getUsername());
+        }
+    }
+
+    private static void assertSameDocument(Document expected, Document actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getFileName(), actual.getFileName());
+        assertEquals(expected.getOriginalFileName(), actual.getOriginalFileName());
+        assertEquals(expected.getFileType(), actual.getFileType());
+        assertEquals(expected.getFileSize(), actual.getFileSize());
+        assertEquals(expected.getContentHash(), actual.getContentHash());
+        assertEquals(expected.getProcessingStatus(), actual.getProcessingStatus());
+        assertEquals(expected.getProcessingProgress(), actual.getProcessingProgress());
+        assertEquals(expected.getErrorMessage(), actual.getErrorMessage());
+        assertEquals(expected.getCharacterCount(), actual.getCharacterCount());
+        assertEquals(expected.getChunkCount(), actual.getChunkCount());
+        assertEquals(expected.getVectorCollectionName(), actual.getVectorCollectionName());
+        assertEquals(expected.getActive(), actual.getActive());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+        assertEquals(expected.getProcessedAt(), actual.getProcessedAt());
+        if (expected.getUser() != null) {
+            assertEquals(expected.getUser().getId(), actual.getUser().getId());
+            assertEquals(expected.getUser().getUsername(), actual.getUser().getUsername());
+        }
+        if (expected.getChatSession() != null) {
+            assertEquals(expected.getChatSession().getId(), actual.getChatSession().getId());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.smartdocumentchat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CacheServiceTest {
+
+    private static final String KEY = "user_sessions:1";
+    private static final String USER_TAG = CacheService.userTag(1L);
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    private CacheSerializer cacheSerializer;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private RedisConnection connection;
+
+    private CacheService cacheService;
+
+    // תוצאות ה-pipelines לפי סדר הקריאה; null - Redis לא זמין
+    private final Deque<List<Object>> pipelineResults = new ArrayDeque<>();
+
+    // מה שקורה "בזמן" ה-pipeline - למשל הודעת invalidation מ-node אחר
+    private Runnable duringPipeline = () -> {
+    };
+
+    @BeforeEach
+    void setUp() {
+        cacheService = new CacheService(redisTemplate, cacheSerializer);
+        ReflectionTestUtils.setField(cacheService, "nearCacheEnabled", true);
+        ReflectionTestUtils.setField(cacheService, "nearCacheMaxSize", 100);
+        ReflectionTestUtils.setField(cacheService, "tagGenerationLocalTtlSeconds", 300L);
+        ReflectionTestUtils.setField(cacheService, "nearCacheMaxTtlSeconds", 30L);
+        ReflectionTestUtils.setField(cacheService, "invalidationChannel", "cache:invalidate");
+        cacheService.initialize();
+
+        // טסטים של הערוץ בלבד לא מגיעים ל-Redis
+        lenient().when(redisTemplate.executePipelined(any(RedisCallback.class), isNull())).thenAnswer(invocation -> {
+            List<Object> results = pipelineResults.poll();
+            if (results == null) {
+                throw new RedisConnectionFailureException("redis down");
+            }
+            invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            duringPipeline.run();
+            duringPipeline = () -> {
+            };
+            return results;
+        });
+    }
+
+    @Test
+    void missReadStampsGenerationsSeenBeforeInvalidation() {
+        // GET+PTTL למפתח (miss), ואז ה-generations של global ו-user:1
+        pipelineResults.add(Arrays.asList(null, -2L, bytes("0"), bytes("3")));
+        CacheService.TaggedRead read = cacheService.readTagged(KEY, USER_TAG);
+        assertNull(read.value());
+
+        // פסילה בין הקריאה מה-DB לכתיבה: INCR, EXPIRE, PUBLISH
+        pipelineResults.add(List.of(4L, true, 1L));
+        cacheService.invalidateTags(USER_TAG);
+
+        when(cacheSerializer.serialize(eq(KEY), any())).thenReturn(bytes("[]"));
+        pipelineResults.add(List.of(true, 1L));
+        cacheService.setTagged(read, KEY, List.of(), Duration.ofMinutes(15));
+
+        String stored = new String(storedValue(), StandardCharsets.UTF_8);
+        assertTrue(stored.contains(USER_TAG + "=3"), stored);
+
+        // העותק המקומי לא תקף (generation 4 ידוע מקומית), וגם זה שב-Redis
+        pipelineResults.add(Arrays.asList(storedValue(), 900_000L, bytes("0"), bytes("4")));
+        assertNull(cacheService.getTagged(KEY, USER_TAG));
+        verify(cacheSerializer, never()).deserialize(any());
+    }
+
+    @Test
+    void writeAfterChangeUsesCurrentGeneration() {
+        pipelineResults.add(List.of(4L, true, 1L));
+        cacheService.invalidateTags(USER_TAG);
+
+        when(cacheSerializer.serialize(eq(KEY), any())).thenReturn(bytes("[]"));
+        // ה-generation של global לא ידוע מקומית - GET אחד, ואז ה-SET
+        pipelineResults.add(Arrays.asList((Object) bytes("0")));
+        pipelineResults.add(List.of(true, 1L));
+        cacheService.setTagged(KEY, List.of(), Duration.ofMinutes(15), USER_TAG);
+
+        String stored = new String(storedValue(), StandardCharsets.UTF_8);
+        assertTrue(stored.contains(USER_TAG + "=4"), stored);
+    }
+
+    @Test
+    void valueIsNotCachedWhenGenerationsWereNotRead() {
+        // הקריאה נכשלה - אין generations שאפשר לכתוב איתם
+        CacheService.TaggedRead read = cacheService.readTagged(KEY, USER_TAG);
+        assertNull(read.value());
+
+        cacheService.setTagged(read, KEY, List.of(), Duration.ofMinutes(15));
+
+        verify(cacheSerializer, never()).serialize(any(), any());
+    }
+
+    @Test
+    void invalidationDuringRemoteReadKeepsValueOutOfNearCache() {
+        when(cacheSerializer.deserialize(any())).thenReturn("value");
+        pipelineResults.add(List.of(bytes("value"), 900_000L));
+        duringPipeline = () -> cacheService.onMessage(invalidation(KEY), null);
+        cacheService.get(KEY);
+
+        // העותק שנקרא לפני הפסילה לא נשמר מקומית - הקריאה הבאה חוזרת ל-Redis
+        pipelineResults.add(Arrays.asList(null, -2L));
+        assertNull(cacheService.get(KEY));
+        assertTrue(pipelineResults.isEmpty());
+    }
+
+    @Test
+    void tagInvalidatedDuringReadIsNotRememberedWithOldGeneration() {
+        pipelineResults.add(Arrays.asList(null, -2L, bytes("0"), bytes("3")));
+        duringPipeline = () -> cacheService.onMessage(invalidation("tag_gen:" + USER_TAG), null);
+        CacheService.TaggedRead read = cacheService.readTagged(KEY, USER_TAG);
+
+        when(cacheSerializer.serialize(eq(KEY), any())).thenReturn(bytes("[]"));
+        pipelineResults.add(List.of(true, 1L));
+        cacheService.setTagged(read, KEY, List.of(), Duration.ofMinutes(15));
+
+        // generation 3 לא נשמר מקומית, אז העותק המקומי לא מאומת בלי Redis - שם ה-generation כבר 4
+        pipelineResults.add(Arrays.asList(storedValue(), 900_000L, bytes("0"), bytes("4")));
+        assertNull(cacheService.getTagged(KEY, USER_TAG));
+        assertTrue(pipelineResults.isEmpty());
+    }
+
+    @Test
+    void olderGenerationDoesNotReplaceNewerOne() {
+        pipelineResults.add(List.of(4L, true, 1L));
+        cacheService.invalidateTags(USER_TAG);
+
+        // קריאה שהתחילה לפני ה-INCR ומסתיימת אחריו
+        pipelineResults.add(Arrays.asList(null, -2L, bytes("0"), bytes("3")));
+        cacheService.readTagged(KEY, USER_TAG);
+
+        when(cacheSerializer.serialize(eq(KEY), any())).thenReturn(bytes("[]"));
+        pipelineResults.add(List.of(true, 1L));
+        cacheService.setTagged(KEY, List.of(), Duration.ofMinutes(15), USER_TAG);
+
+        String stored = new String(storedValue(), StandardCharsets.UTF_8);
+        assertTrue(stored.contains(USER_TAG + "=4"), stored);
+    }
+
+    @Test
+    void peerMessagesReachTheirListenerWithoutThePrefix() {
+        List<String> received = new ArrayList<>();
+        cacheService.addPeerListener("conv_turn:", received::add);
+
+        cacheService.onMessage(invalidation("conv_turn:7:YQ==:Yg=="), null);
+        cacheService.onMessage(invalidation(KEY), null);
+
+        assertEquals(List.of("7:YQ==:Yg=="), received);
+    }
+
+    private static Message invalidation(String key) {
+        return new DefaultMessage(bytes("cache:invalidate"), bytes("other-node|" + key));
+    }
+
+    private byte[] storedValue() {
+        ArgumentCaptor<byte[]> value = ArgumentCaptor.forClass(byte[].class);
+        verify(connection.stringCommands()).set(eq(bytes(KEY)), value.capture(), any(Expiration.class),
+                any(RedisStringCommands.SetOption.class));
+        return value.getValue();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,116 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.User;
+import com.smartdocumentchat.repository.ChatSessionRepository;
+import com.smartdocumentchat.repository.UserRepository;
+import com.smartdocumentchat.util.CursorPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * בלי טרנזקציה של הטסט - כמו בקריאה מה-controller, כך שכל UPDATE צריך טרנזקציה משלו
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sessions;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE",
+        "spring.sql.init.mode=never"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(ChatSessionService.class)
+class ChatSessionServiceTest {
+
+    @Autowired
+    private ChatSessionService chatSessionService;
+
+    @Autowired
+    private ChatSessionRepository chatSessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockBean
+    private CacheService cacheService;
+
+    @MockBean
+    private VectorGarbageCollector vectorGarbageCollector;
+
+    @BeforeEach
+    void cacheMisses() {
+        // כל קריאה מה-cache היא miss - הטסטים בודקים את ה-DB
+        CacheService.TaggedRead miss = mock(CacheService.TaggedRead.class);
+        when(cacheService.readTagged(anyString(), any(String[].class))).thenReturn(miss);
+        when(cacheService.readSessionData(anyString(), any(String[].class))).thenReturn(miss);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        chatSessionRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void setActiveSessionUpdatesLastActivity() {
+        User user = saveUser();
+
+        ChatSession session = new ChatSession();
+        session.setTitle("Replication notes");
+        session.setUser(user);
+        session.setLastActivityAt(LocalDateTime.of(2024, 1, 1, 0, 0));
+        session = chatSessionRepository.save(session);
+
+        LocalDateTime before = LocalDateTime.now().minusSeconds(1);
+        chatSessionService.setActiveSession(user, session);
+
+        ChatSession stored = chatSessionRepository.findById(session.getId()).orElseThrow();
+        assertTrue(stored.getLastActivityAt().isAfter(before));
+        assertEquals(stored.getLastActivityAt(), stored.getUpdatedAt());
+    }
+
+    @Test
+    void titlePagesFollowCaseInsensitiveOrderWithoutGapsOrRepeats() {
+        User user = saveUser();
+        for (String title : List.of("beta", "Alpha", "alpha", "Gamma", "ALPHA")) {
+            ChatSession session = new ChatSession();
+            session.setTitle(title);
+            session.setUser(user);
+            chatSessionRepository.save(session);
+        }
+
+        List<String> titles = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<ChatSession> page = chatSessionService.getUserSessionsPage(user, "title", false, cursor, 2);
+            page.items.forEach(session -> titles.add(session.getTitle()));
+            cursor = page.nextCursor;
+        } while (cursor != null);
+
+        // שוויון ב-lower(title) מוכרע לפי id - סדר ההכנסה
+        assertEquals(List.of("Alpha", "alpha", "ALPHA", "beta", "Gamma"), titles);
+    }
+
+    private User saveUser() {
+        User user = new User();
+        user.setUsername("dana");
+        user.setEmail("dana@example.com");
+        user.setPasswordHash("hash");
+        return userRepository.save(user);
+    }
+}
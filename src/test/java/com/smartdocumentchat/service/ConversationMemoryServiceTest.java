@@ -0,0 +1,134 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.User;
+import com.smartdocumentchat.entity.UserPreferences;
+import com.smartdocumentchat.repository.ChatMessageRepository;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * שני instances של השירות שמחוברים דרך ערוץ מדומה, כמו שני nodes מאחורי load balancer
+ */
+@ExtendWith(MockitoExtension.class)
+class ConversationMemoryServiceTest {
+
+    @Mock
+    private ChatMessageRepository chatMessageRepository;
+
+    @Mock
+    private ChatLanguageModel chatLanguageModel;
+
+    @Mock
+    private Tokenizer tokenizer;
+
+    @Mock
+    private UserPreferencesService userPreferencesService;
+
+    // ההודעות שפורסמו לערוץ, כל אחת עם ה-listener של ה-node שלא פרסם אותה
+    private final List<Runnable> channel = new ArrayList<>();
+
+    private ConversationMemoryService first;
+    private ConversationMemoryService second;
+    private ChatSession chatSession;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        when(chatMessageRepository.findLastMessages(any(ChatSession.class), anyInt())).thenReturn(List.of());
+        UserPreferences preferences = new UserPreferences();
+        preferences.setMaxContextLength(5);
+        when(userPreferencesService.getUserPreferences(any())).thenReturn(preferences);
+
+        CacheService firstCache = mock(CacheService.class);
+        CacheService secondCache = mock(CacheService.class);
+        connect(firstCache, secondCache);
+        connect(secondCache, firstCache);
+        first = node(firstCache);
+        second = node(secondCache);
+
+        user = new User();
+        user.setId(2L);
+        chatSession = new ChatSession();
+        chatSession.setId(1L);
+        chatSession.setUser(user);
+    }
+
+    @Test
+    void turnRecordedOnOneNodeReachesTheOtherNodesWindow() {
+        when(tokenizer.estimateTokenCountInText(anyString())).thenReturn(5);
+
+        // שני ה-nodes כבר מחזיקים את החלון (ריק) של השיחה
+        assertTrue(first.getContext(chatSession, user).isEmpty());
+        assertTrue(second.getContext(chatSession, user).isEmpty());
+
+        first.appendTurn(1L, "מה זה hinted handoff?", "a: b|c");
+        deliver();
+
+        ConversationMemoryService.ConversationContext context = second.getContext(chatSession, user);
+        assertEquals(1, context.turns.size());
+        assertEquals("מה זה hinted handoff?", context.turns.get(0).question);
+        assertEquals("a: b|c", context.turns.get(0).answer);
+        assertEquals(1, first.getContext(chatSession, user).turns.size());
+    }
+
+    @Test
+    void malformedMessageIsIgnored() {
+        assertTrue(second.getContext(chatSession, user).isEmpty());
+
+        second.onPeerTurn("1:not-base64!");
+        second.onPeerTurn("x:YQ==:Yg==");
+
+        assertTrue(second.getContext(chatSession, user).isEmpty());
+    }
+
+    private ConversationMemoryService node(CacheService cacheService) {
+        ConversationMemoryService service = new ConversationMemoryService(
+                chatMessageRepository, chatLanguageModel, tokenizer, userPreferencesService, cacheService);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxSessions", 10);
+        ReflectionTestUtils.setField(service, "idleTimeoutMinutes", 30);
+        ReflectionTestUtils.setField(service, "maxTurns", 20);
+        ReflectionTestUtils.setField(service, "maxTokens", 1500);
+        ReflectionTestUtils.setField(service, "condenseQuestions", false);
+        service.initialize();
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void connect(CacheService publisher, CacheService subscriber) {
+        List<Consumer<String>> listeners = new ArrayList<>();
+        // החיווט של הערוץ לא נדרש בכל טסט
+        lenient().doAnswer(invocation -> listeners.add(invocation.getArgument(1)))
+                .when(subscriber).addPeerListener(anyString(), any(Consumer.class));
+        lenient().doAnswer(invocation -> {
+            String payload = invocation.getArgument(1);
+            channel.add(() -> listeners.forEach(listener -> listener.accept(payload)));
+            return null;
+        }).when(publisher).publishToPeers(anyString(), anyString());
+    }
+
+    private void deliver() {
+        channel.forEach(Runnable::run);
+        channel.clear();
+    }
+}
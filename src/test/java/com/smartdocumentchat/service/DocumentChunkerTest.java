@@ -0,0 +1,172 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.IngestionProperties;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentChunkerTest {
+
+    private final DocumentChunker chunker = new DocumentChunker(new IngestionProperties(), null);
+
+    private static final String PAGE_ONE = """
+            1. Introduction
+            The storage engine writes every update to a commit log first. Memtables are flushed to
+            immutable SSTables when they grow past the configured threshold.
+
+            Compaction merges SSTables in the background and drops tombstones after the grace period.
+            """;
+
+    private static final String PAGE_TWO = """
+            Reads consult the row cache, then the bloom filters, then the partition index of each SSTable.
+
+            2. Replication
+            Every keyspace defines a replication strategy. NetworkTopologyStrategy places replicas
+            in distinct racks of each data center.
+            """;
+
+    @Test
+    void chunkTextMatchesOffsetsInEveryMode() {
+        String fullText = PAGE_ONE + PAGE_TWO;
+
+        for (DocumentChunker.ChunkingMode mode : DocumentChunker.ChunkingMode.values()) {
+            List<TextSegment> segments = split(mode, 80, 20, PAGE_ONE, PAGE_TWO);
+
+            assertFalse(segments.isEmpty(), mode.name());
+            for (TextSegment segment : segments) {
+                int start = segment.metadata().getInteger(DocumentChunker.START_OFFSET_KEY);
+                int end = segment.metadata().getInteger(DocumentChunker.END_OFFSET_KEY);
+                assertEquals(fullText.substring(start, end), segment.text(), mode.name());
+                assertTrue(segment.text().length() <= 80, mode + ": " + segment.text());
+                assertEquals(segment.text().strip(), segment.text(), mode.name());
+            }
+        }
+    }
+
+    @Test
+    void chunksDoNotCrossPagesAndKeepPageNumber() {
+        List<TextSegment> segments = split(DocumentChunker.ChunkingMode.PARAGRAPH, 1000, 0, PAGE_ONE, PAGE_TWO);
+
+        assertEquals(2, segments.size());
+        assertEquals(1, segments.get(0).metadata().getInteger(StreamingPdfParser.PAGE_NUMBER_KEY));
+        assertEquals(2, segments.get(1).metadata().getInteger(StreamingPdfParser.PAGE_NUMBER_KEY));
+        assertEquals(PAGE_ONE.length(), segments.get(1).metadata().getInteger(DocumentChunker.START_OFFSET_KEY));
+    }
+
+    @Test
+    void overlapStartsOnWordBoundary() {
+        String text = words(400);
+        List<TextSegment> segments = split(DocumentChunker.ChunkingMode.PARAGRAPH, 120, 30, text);
+
+        int overlaps = 0;
+        for (int i = 1; i < segments.size(); i++) {
+            int previousEnd = segments.get(i - 1).metadata().getInteger(DocumentChunker.END_OFFSET_KEY);
+            int start = segments.get(i).metadata().getInteger(DocumentChunker.START_OFFSET_KEY);
+            assertFalse(Character.isWhitespace(text.charAt(start)));
+            if (start < previousEnd) {
+                overlaps++;
+                assertTrue(Character.isWhitespace(text.charAt(start - 1)), "overlap starts mid-word at " + start);
+                assertTrue(previousEnd - start <= 30, "overlap longer than requested at " + start);
+            }
+        }
+        assertTrue(overlaps > 0);
+    }
+
+    @Test
+    void longParagraphBreaksAtSentenceEnd() {
+        String text = "Alpha beta gamma delta. Epsilon zeta eta theta iota kappa lambda.";
+        List<TextSegment> segments = split(DocumentChunker.ChunkingMode.PARAGRAPH, 40, 0, text);
+
+        assertEquals("Alpha beta gamma delta.", segments.get(0).text());
+        assertEquals("Epsilon zeta eta theta iota kappa", segments.get(1).text());
+        assertEquals("lambda.", segments.get(2).text());
+    }
+
+    @Test
+    void wordLongerThanChunkIsCutAtChunkSize() {
+        String text = "x".repeat(25);
+        List<TextSegment> segments = split(DocumentChunker.ChunkingMode.PARAGRAPH, 10, 0, text);
+
+        assertEquals(3, segments.size());
+        assertEquals(10, segments.get(0).text().length());
+        assertEquals(10, segments.get(1).text().length());
+        assertEquals(5, segments.get(2).text().length());
+        assertEquals(20, segments.get(2).metadata().getInteger(DocumentChunker.START_OFFSET_KEY));
+    }
+
+    @Test
+    void headingCarriesOverToNextPage() {
+        List<TextSegment> segments = split(DocumentChunker.ChunkingMode.HEADING, 200, 0, PAGE_ONE, PAGE_TWO);
+
+        for (TextSegment segment : segments) {
+            int page = segment.metadata().getInteger(StreamingPdfParser.PAGE_NUMBER_KEY);
+            String section = segment.metadata().getString(DocumentChunker.SECTION_KEY);
+            if (segment.text().startsWith("Reads consult")) {
+                assertEquals(2, page);
+                assertEquals("1. Introduction", section);
+            } else if (segment.text().contains("NetworkTopologyStrategy")) {
+                assertEquals("2. Replication", section);
+            } else if (page == 1) {
+                assertEquals("1. Introduction", section);
+            }
+        }
+        assertTrue(segments.stream().anyMatch(segment -> segment.text().startsWith("Reads consult")));
+    }
+
+    @Test
+    void textBeforeFirstHeadingHasNoSection() {
+        String text = "Preface without a heading.\n\nChapter 1: Basics\nFirst chapter body text.";
+        List<TextSegment> segments = split(DocumentChunker.ChunkingMode.HEADING, 30, 0, text);
+
+        assertEquals("Preface without a heading.", segments.get(0).text());
+        assertNull(segments.get(0).metadata().getString(DocumentChunker.SECTION_KEY));
+        assertEquals("Chapter 1: Basics", segments.get(segments.size() - 1).metadata()
+                .getString(DocumentChunker.SECTION_KEY));
+    }
+
+    @Test
+    void largePageIsSplitIntoBalancedParts() {
+        StringBuilder page = new StringBuilder();
+        for (int line = 0; line < 30; line++) {
+            page.append("line ").append(line).append(" of the page body\n");
+        }
+        List<TextSegment> segments = split(DocumentChunker.ChunkingMode.PAGE, 300, 0, page.toString());
+
+        int total = page.toString().strip().length();
+        int parts = (total + 299) / 300;
+        assertEquals(parts, segments.size());
+        int shortest = segments.stream().mapToInt(segment -> segment.text().length()).min().orElseThrow();
+        assertTrue(shortest > 300 / 2, "tail chunk too small: " + shortest);
+    }
+
+    private List<TextSegment> split(DocumentChunker.ChunkingMode mode, int chunkSize, int overlap, String... pages) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < pages.length; i++) {
+            Metadata metadata = new Metadata();
+            metadata.put(StreamingPdfParser.PAGE_NUMBER_KEY, i + 1);
+            documents.add(Document.from(pages[i], metadata));
+        }
+
+        List<TextSegment> segments = new ArrayList<>();
+        chunker.splitLazily(documents.iterator(), new DocumentChunker.ChunkSpec(mode, chunkSize, overlap, true))
+                .forEachRemaining(segments::add);
+        return segments;
+    }
+
+    private static String words(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i % 7 == 6 ? "sentence." : "word" + i).append(i % 11 == 10 ? "\n" : " ");
+        }
+        return text.toString().strip();
+    }
+}
@@ -0,0 +1,214 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.Document;
+import com.smartdocumentchat.entity.User;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HybridRetrieverTest {
+
+    private static final int RRF_K = 60;
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @Mock
+    private QdrantVectorService qdrantVectorService;
+
+    @Mock
+    private LexicalIndexService lexicalIndexService;
+
+    @Mock
+    private PdfProcessingService pdfProcessingService;
+
+    @Mock
+    private EmbeddingStore<TextSegment> embeddingStore;
+
+    private HybridRetriever retriever;
+    private ChatSession chatSession;
+    private final Embedding queryEmbedding = Embedding.from(new float[]{0.1f, 0.2f, 0.3f});
+
+    @BeforeEach
+    void setUp() {
+        retriever = new HybridRetriever(embeddingModel, qdrantVectorService, lexicalIndexService, pdfProcessingService);
+        ReflectionTestUtils.setField(retriever, "rrfK", RRF_K);
+        ReflectionTestUtils.setField(retriever, "candidateMultiplier", 4);
+        ReflectionTestUtils.setField(retriever, "defaultMode", "hybrid");
+        ReflectionTestUtils.setField(retriever, "defaultMaxResults", 2);
+
+        User user = new User();
+        user.setId(2L);
+        chatSession = new ChatSession();
+        chatSession.setId(1L);
+        chatSession.setUser(user);
+    }
+
+    @Test
+    void hybridFusesByReciprocalRank() {
+        TextSegment a = segment(10L, "a");
+        TextSegment b = segment(10L, "b");
+        TextSegment c = segment(10L, "c");
+        TextSegment d = segment(11L, "d");
+        denseResults(match(a, 0.9), match(b, 0.8), match(c, 0.7));
+        lexicalResults(lexical(c, 7.5), lexical(d, 3.0));
+        completedDocuments(10L, 11L);
+
+        List<HybridRetriever.ScoredSegment> results = retriever.retrieve(chatSession, "query",
+                HybridRetriever.SearchMode.HYBRID, null, 3, 0.0, queryEmbedding);
+
+        assertEquals(List.of("c", "a", "b"), texts(results));
+        assertEquals(1.0 / (RRF_K + 3) + 1.0 / (RRF_K + 1), results.get(0).score, 1e-12);
+        assertEquals(0.7, results.get(0).denseScore);
+        assertEquals(7.5, results.get(0).lexicalScore);
+        assertEquals(1.0 / (RRF_K + 1), results.get(1).score, 1e-12);
+        assertNull(results.get(1).lexicalScore);
+    }
+
+    @Test
+    void sameTextInDifferentDocumentsIsNotMerged() {
+        TextSegment fromFirst = segment(10L, "shared footer");
+        TextSegment fromSecond = segment(11L, "shared footer");
+        denseResults(match(fromFirst, 0.9));
+        lexicalResults(lexical(fromSecond, 2.0));
+        completedDocuments(10L, 11L);
+
+        List<HybridRetriever.ScoredSegment> results = retriever.retrieve(chatSession, "footer",
+                HybridRetriever.SearchMode.HYBRID, null, 5, 0.0, queryEmbedding);
+
+        assertEquals(2, results.size());
+        assertEquals(results.get(0).score, results.get(1).score, 1e-12);
+    }
+
+    @Test
+    void hybridRequestsMultipliedCandidatesFromBothSources() {
+        denseResults();
+        lexicalResults();
+        completedDocuments(10L);
+
+        retriever.retrieve(chatSession, "query", HybridRetriever.SearchMode.HYBRID, null, 2, 0.0, queryEmbedding);
+
+        ArgumentCaptor<EmbeddingSearchRequest> request = ArgumentCaptor.forClass(EmbeddingSearchRequest.class);
+        verify(embeddingStore).search(request.capture());
+        assertEquals(8, request.getValue().maxResults());
+        verify(lexicalIndexService).search(eq(chatSession), eq("query"), eq(List.of(10L)), eq(8), eq(false));
+    }
+
+    @Test
+    void precomputedEmbeddingSkipsEmbeddingCall() {
+        denseResults(match(segment(10L, "a"), 0.9));
+
+        retriever.retrieve(chatSession, "query", HybridRetriever.SearchMode.SEMANTIC, null, 2, 0.0, queryEmbedding);
+
+        verifyNoInteractions(embeddingModel);
+        verifyNoInteractions(lexicalIndexService);
+    }
+
+    @Test
+    void semanticWithoutEmbeddingEmbedsQuery() {
+        when(embeddingModel.embed("query")).thenReturn(Response.from(queryEmbedding));
+        denseResults(match(segment(10L, "a"), 0.9));
+
+        List<HybridRetriever.ScoredSegment> results = retriever.retrieve(chatSession, "query",
+                HybridRetriever.SearchMode.SEMANTIC, null, 2, 0.0);
+
+        assertEquals(List.of("a"), texts(results));
+        assertEquals(0.9, results.get(0).score);
+    }
+
+    @Test
+    void exactModeSearchesOnlyCompletedRequestedDocuments() {
+        Document completed = document(10L, Document.ProcessingStatus.COMPLETED);
+        Document processing = document(11L, Document.ProcessingStatus.PROCESSING);
+        Document notRequested = document(12L, Document.ProcessingStatus.COMPLETED);
+        when(pdfProcessingService.getDocumentsBySession(chatSession))
+                .thenReturn(List.of(completed, processing, notRequested));
+        lexicalResults();
+
+        retriever.retrieve(chatSession, "ABC-123", HybridRetriever.SearchMode.EXACT, List.of(10L, 11L), 2, 0.0);
+
+        verify(lexicalIndexService).search(eq(chatSession), eq("ABC-123"), eq(List.of(10L)), eq(2), eq(true));
+        verifyNoInteractions(embeddingModel);
+        verify(qdrantVectorService, never()).getEmbeddingStoreForSession(any());
+    }
+
+    @Test
+    void resolveModeUsesDefaultAndRejectsUnknown() {
+        assertEquals(HybridRetriever.SearchMode.HYBRID, retriever.resolveMode(null));
+        assertEquals(HybridRetriever.SearchMode.KEYWORD, retriever.resolveMode(" keyword "));
+        assertThrows(IllegalArgumentException.class, () -> retriever.resolveMode("fuzzy"));
+    }
+
+    @SafeVarargs
+    private void denseResults(EmbeddingMatch<TextSegment>... matches) {
+        when(qdrantVectorService.getEmbeddingStoreForSession(chatSession)).thenReturn(embeddingStore);
+        when(embeddingStore.search(any())).thenReturn(new EmbeddingSearchResult<>(List.of(matches)));
+    }
+
+    private void lexicalResults(LexicalIndexService.LexicalMatch... matches) {
+        when(lexicalIndexService.search(eq(chatSession), anyString(), any(), anyInt(), anyBoolean()))
+                .thenReturn(List.of(matches));
+    }
+
+    private void completedDocuments(Long... documentIds) {
+        List<Document> documents = new ArrayList<>();
+        for (Long documentId : documentIds) {
+            documents.add(document(documentId, Document.ProcessingStatus.COMPLETED));
+        }
+        when(pdfProcessingService.getDocumentsBySession(chatSession)).thenReturn(documents);
+    }
+
+    private static Document document(Long id, Document.ProcessingStatus status) {
+        Document document = new Document();
+        document.setId(id);
+        document.setProcessingStatus(status);
+        return document;
+    }
+
+    private static TextSegment segment(Long documentId, String text) {
+        return TextSegment.from(text, Metadata.from(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY, documentId.toString()));
+    }
+
+    private static EmbeddingMatch<TextSegment> match(TextSegment segment, double score) {
+        return new EmbeddingMatch<>(score, segment.text(), null, segment);
+    }
+
+    private static LexicalIndexService.LexicalMatch lexical(TextSegment segment, double score) {
+        return new LexicalIndexService.LexicalMatch(segment, score);
+    }
+
+    private static List<String> texts(List<HybridRetriever.ScoredSegment> results) {
+        return results.stream().map(result -> result.segment.text()).toList();
+    }
+}
@@ -0,0 +1,201 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.IngestionProperties;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.qdrant.client.PointIdFactory.id;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IncrementalIngestionServiceTest {
+
+    private static final Long SESSION_ID = 1L;
+    private static final Long USER_ID = 2L;
+    private static final Long DOCUMENT_ID = 3L;
+    private static final String MODEL = "text-embedding-3-large";
+
+    @Mock
+    private QdrantVectorService qdrantVectorService;
+
+    @Mock
+    private EmbeddingCacheService embeddingCacheService;
+
+    private IncrementalIngestionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new IncrementalIngestionService(qdrantVectorService, embeddingCacheService, new IngestionProperties());
+        when(embeddingCacheService.getEmbeddingModelName()).thenReturn(MODEL);
+    }
+
+    @Test
+    void duplicateChunkTextsMatchStoredPointsInOrder() {
+        storedPoints(
+                stored(10, "repeated footer", MODEL, 0),
+                stored(11, "repeated footer", MODEL, 5));
+
+        IncrementalIngestionService.ChunkDiff diff = service.begin(SESSION_ID, USER_ID, DOCUMENT_ID);
+        assertTrue(diff.hasStoredPoints());
+        assertTrue(diff.claim(chunk("repeated footer", 0)));
+        assertTrue(diff.claim(chunk("repeated footer", 5)));
+        // מופע שלישי - אין לו נקודה שמורה
+        assertFalse(diff.claim(chunk("repeated footer", 9)));
+
+        IncrementalIngestionService.DiffResult result = service.finish(diff);
+
+        assertEquals(2, result.reusedChunks);
+        assertEquals(1, result.addedChunks);
+        assertEquals(0, result.repositionedChunks);
+        assertEquals(0, result.deletedPoints);
+        verify(qdrantVectorService, never()).rewritePayloads(eq(SESSION_ID), eq(USER_ID), anyMap(), anyInt());
+        verify(qdrantVectorService).deletePoints(SESSION_ID, USER_ID, List.of());
+    }
+
+    @Test
+    void movedChunkRewritesOnlyChangedPositionFields() {
+        TextSegment storedSegment = storedSegment("unchanged paragraph", MODEL, 0);
+        storedSegment.metadata().put(StreamingPdfParser.PAGE_NUMBER_KEY, 1L);
+        storedSegment.metadata().put(DocumentChunker.START_OFFSET_KEY, 0L);
+        storedSegment.metadata().put(DocumentChunker.END_OFFSET_KEY, 19L);
+        storedSegment.metadata().put(DocumentChunker.SECTION_KEY, "1. Intro");
+        storedPoints(new QdrantVectorService.StoredPoint(id(10), storedSegment));
+        when(qdrantVectorService.rewritePayloads(eq(SESSION_ID), eq(USER_ID), anyMap(), anyInt())).thenReturn(1);
+
+        IncrementalIngestionService.ChunkDiff diff = service.begin(SESSION_ID, USER_ID, DOCUMENT_ID);
+        TextSegment moved = chunk("unchanged paragraph", 0);
+        moved.metadata().put(StreamingPdfParser.PAGE_NUMBER_KEY, 2);
+        moved.metadata().put(DocumentChunker.START_OFFSET_KEY, 120);
+        moved.metadata().put(DocumentChunker.END_OFFSET_KEY, 139);
+        assertTrue(diff.claim(moved));
+
+        IncrementalIngestionService.DiffResult result = service.finish(diff);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Points.PointId, Map<String, Object>>> updates = ArgumentCaptor.forClass(Map.class);
+        verify(qdrantVectorService).rewritePayloads(eq(SESSION_ID), eq(USER_ID), updates.capture(), anyInt());
+
+        Map<String, Object> changes = updates.getValue().get(id(10));
+        assertEquals(2, changes.get(StreamingPdfParser.PAGE_NUMBER_KEY));
+        assertEquals(120, changes.get(DocumentChunker.START_OFFSET_KEY));
+        assertEquals(139, changes.get(DocumentChunker.END_OFFSET_KEY));
+        // הכותרת נעלמה - השדה נמחק
+        assertTrue(changes.containsKey(DocumentChunker.SECTION_KEY));
+        assertNull(changes.get(DocumentChunker.SECTION_KEY));
+        // chunk_index זהה (0 מול 0L) - לא נכתב מחדש
+        assertFalse(changes.containsKey(EmbeddingCacheService.CHUNK_INDEX_KEY));
+        assertEquals(1, result.repositionedChunks);
+        assertEquals(0, result.deletedPoints);
+    }
+
+    @Test
+    void legacyPointsWithoutHashAreDeleted() {
+        TextSegment legacy = TextSegment.from("same text", new Metadata());
+        storedPoints(
+                new QdrantVectorService.StoredPoint(id(10), legacy),
+                new QdrantVectorService.StoredPoint(id(11), null));
+
+        IncrementalIngestionService.ChunkDiff diff = service.begin(SESSION_ID, USER_ID, DOCUMENT_ID);
+        TextSegment current = chunk("same text", 0);
+        assertFalse(diff.claim(current));
+        assertEquals(IncrementalIngestionService.chunkHash(MODEL, "same text"),
+                current.metadata().getString(IncrementalIngestionService.CHUNK_HASH_KEY));
+
+        IncrementalIngestionService.DiffResult result = service.finish(diff);
+
+        assertEquals(2, result.deletedPoints);
+        verify(qdrantVectorService).deletePoints(SESSION_ID, USER_ID, List.of(id(10), id(11)));
+    }
+
+    @Test
+    void embeddingModelChangeInvalidatesEveryHash() {
+        storedPoints(
+                stored(10, "first", "text-embedding-ada-002", 0),
+                stored(11, "second", "text-embedding-ada-002", 1));
+
+        IncrementalIngestionService.ChunkDiff diff = service.begin(SESSION_ID, USER_ID, DOCUMENT_ID);
+        List<TextSegment> changed = drain(diff.changedOnly(List.of(chunk("first", 0), chunk("second", 1)).iterator()));
+
+        assertEquals(2, changed.size());
+        IncrementalIngestionService.DiffResult result = service.finish(diff);
+
+        assertEquals(0, result.reusedChunks);
+        assertEquals(2, result.addedChunks);
+        assertEquals(Set.of(id(10), id(11)), deletedIds());
+    }
+
+    @Test
+    void changedOnlySkipsStoredChunksAndDeletesRemovedOnes() {
+        storedPoints(
+                stored(10, "kept", MODEL, 0),
+                stored(11, "removed", MODEL, 1));
+
+        IncrementalIngestionService.ChunkDiff diff = service.begin(SESSION_ID, USER_ID, DOCUMENT_ID);
+        List<TextSegment> changed = drain(diff.changedOnly(List.of(chunk("kept", 0), chunk("added", 1)).iterator()));
+
+        assertEquals(1, changed.size());
+        assertEquals("added", changed.get(0).text());
+        service.finish(diff);
+        verify(qdrantVectorService).deletePoints(SESSION_ID, USER_ID, List.of(id(11)));
+    }
+
+    // הנקודות שנמחקו, בלי תלות בסדר
+    private Set<Points.PointId> deletedIds() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Points.PointId>> ids = ArgumentCaptor.forClass(List.class);
+        verify(qdrantVectorService).deletePoints(eq(SESSION_ID), eq(USER_ID), ids.capture());
+        return new HashSet<>(ids.getValue());
+    }
+
+    private void storedPoints(QdrantVectorService.StoredPoint... points) {
+        when(qdrantVectorService.loadDocumentPoints(eq(SESSION_ID), eq(USER_ID), eq(DOCUMENT_ID), anyInt()))
+                .thenReturn(List.of(points));
+    }
+
+    private static QdrantVectorService.StoredPoint stored(long pointId, String text, String model, long chunkIndex) {
+        return new QdrantVectorService.StoredPoint(id(pointId), storedSegment(text, model, chunkIndex));
+    }
+
+    // כמו שחוזר מ-Qdrant: מספרים כ-long
+    private static TextSegment storedSegment(String text, String model, long chunkIndex) {
+        Metadata metadata = new Metadata();
+        metadata.put(IncrementalIngestionService.CHUNK_HASH_KEY, IncrementalIngestionService.chunkHash(model, text));
+        metadata.put(EmbeddingCacheService.CHUNK_INDEX_KEY, chunkIndex);
+        return TextSegment.from(text, metadata);
+    }
+
+    private static TextSegment chunk(String text, int chunkIndex) {
+        Metadata metadata = new Metadata();
+        metadata.put(EmbeddingCacheService.CHUNK_INDEX_KEY, chunkIndex);
+        return TextSegment.from(text, metadata);
+    }
+
+    private static List<TextSegment> drain(Iterator<TextSegment> segments) {
+        List<TextSegment> result = new ArrayList<>();
+        segments.forEachRemaining(result::add);
+        return result;
+    }
+}
@@ -0,0 +1,207 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.entity.ChatSession;
+import com.smartdocumentchat.entity.User;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LexicalIndexServiceTest {
+
+    private static final Long SESSION_ID = 1L;
+    private static final Long USER_ID = 2L;
+
+    @Mock
+    private QdrantVectorService qdrantVectorService;
+
+    private LexicalIndexService service;
+    private ChatSession chatSession;
+    private final Map<Long, List<TextSegment>> stored = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        service = new LexicalIndexService(qdrantVectorService);
+        ReflectionTestUtils.setField(service, "maxSessions", 10);
+        ReflectionTestUtils.setField(service, "maxChunks", 4L);
+        ReflectionTestUtils.setField(service, "idleTimeoutMinutes", 30);
+        ReflectionTestUtils.setField(service, "loadBatchSize", 256);
+        service.initialize();
+
+        User user = new User();
+        user.setId(USER_ID);
+        chatSession = new ChatSession();
+        chatSession.setId(SESSION_ID);
+        chatSession.setUser(user);
+
+        when(qdrantVectorService.loadSessionSegments(any(), eq(USER_ID), any(), anyInt()))
+                .thenAnswer(invocation -> {
+                    Map<Long, List<TextSegment>> loaded = new HashMap<>();
+                    for (Long documentId : invocation.<Collection<Long>>getArgument(2)) {
+                        if (stored.containsKey(documentId)) {
+                            loaded.put(documentId, stored.get(documentId));
+                        }
+                    }
+                    return loaded;
+                });
+    }
+
+    @Test
+    void scoreFollowsBm25Formula() {
+        document(10L, "alpha beta", "gamma delta epsilon");
+
+        List<LexicalIndexService.LexicalMatch> matches = search("alpha", List.of(10L), false);
+
+        // idf = ln(1 + (2 - 1 + 0.5) / (1 + 0.5)), אורך ממוצע 2.5
+        double idf = Math.log(2);
+        double norm = 1 + 1.2 * (1 - 0.75 + 0.75 * 2 / 2.5);
+        assertEquals(1, matches.size());
+        assertEquals("alpha beta", matches.get(0).segment.text());
+        assertEquals(idf * 2.2 / norm, matches.get(0).score, 1e-9);
+    }
+
+    @Test
+    void shorterChunkAndHigherTermFrequencyRankFirst() {
+        document(10L,
+                "replica placement depends on the snitch and the configured strategy for every keyspace",
+                "replica placement",
+                "replica replica replica placement depends on the snitch and the configured strategy",
+                "unrelated text about compaction");
+
+        List<LexicalIndexService.LexicalMatch> matches = search("replica", List.of(10L), false);
+
+        assertEquals(3, matches.size());
+        assertEquals("replica placement", matches.get(0).segment.text());
+        assertTrue(matches.get(1).segment.text().startsWith("replica replica replica"));
+        assertTrue(matches.get(1).score > matches.get(2).score);
+    }
+
+    @Test
+    void rareTermOutweighsCommonTerm() {
+        document(10L,
+                "the cluster uses gossip",
+                "the cluster uses hinted handoff",
+                "the cluster stores tombstones",
+                "the cluster repairs data");
+
+        List<LexicalIndexService.LexicalMatch> matches = search("cluster tombstones", List.of(10L), false);
+
+        assertEquals(4, matches.size());
+        assertEquals("the cluster stores tombstones", matches.get(0).segment.text());
+    }
+
+    @Test
+    void matchesCompoundIdentifiersAndHebrewPrefixes() {
+        document(10L, "ראה סעיף 4.2.1 בנספח", "והמערכת שומרת עותקים", "error code ABC-123 returned");
+
+        assertEquals("ראה סעיף 4.2.1 בנספח", search("4.2.1", List.of(10L), false).get(0).segment.text());
+        assertEquals("ראה סעיף 4.2.1 בנספח", search("2", List.of(10L), false).get(0).segment.text());
+        assertEquals("והמערכת שומרת עותקים", search("המערכת", List.of(10L), false).get(0).segment.text());
+        assertEquals("error code ABC-123 returned", search("abc", List.of(10L), false).get(0).segment.text());
+    }
+
+    @Test
+    void exactPhraseRequiresContiguousText() {
+        document(10L, "writes go to the commit log first", "the log of every commit");
+
+        List<LexicalIndexService.LexicalMatch> all = search("commit log", List.of(10L), false);
+        List<LexicalIndexService.LexicalMatch> exact = search("Commit   Log", List.of(10L), true);
+
+        assertEquals(2, all.size());
+        assertEquals(1, exact.size());
+        assertEquals("writes go to the commit log first", exact.get(0).segment.text());
+    }
+
+    @Test
+    void searchIsLimitedToRequestedDocumentsAndLoadsEachOnce() {
+        document(10L, "bloom filter false positives");
+        document(11L, "bloom filter memory usage");
+        document(12L);
+
+        assertEquals(1, search("bloom", List.of(10L), false).size());
+        assertEquals(2, search("bloom", List.of(10L, 11L, 12L), false).size());
+        assertEquals(2, search("bloom", List.of(10L, 11L, 12L), false).size());
+
+        // 10 נטען בחיפוש הראשון, 11 ו-12 (ריק) בשני; השלישי כולו מהזיכרון
+        verify(qdrantVectorService, times(2)).loadSessionSegments(eq(SESSION_ID), eq(USER_ID), any(), anyInt());
+    }
+
+    @Test
+    void removedDocumentIsReloadedOnNextSearch() {
+        document(10L, "old version of the text");
+        assertEquals(1, search("old", List.of(10L), false).size());
+
+        document(10L, "new version of the text");
+        service.removeDocument(SESSION_ID, 10L);
+
+        assertEquals(0, search("old", List.of(10L), false).size());
+        assertEquals(1, search("new", List.of(10L), false).size());
+    }
+
+    @Test
+    void leastRecentlyUsedSessionIsEvictedWhenChunkBudgetIsExceeded() {
+        document(10L, "first session chunk one", "first session chunk two", "first session chunk three");
+        document(20L, "second session chunk one", "second session chunk two");
+        ChatSession otherSession = new ChatSession();
+        otherSession.setId(3L);
+        otherSession.setUser(chatSession.getUser());
+
+        search("first", List.of(10L), false);
+        assertEquals(3L, service.getStats().get("indexedChunks"));
+
+        // 3 + 2 מעל התקציב (4) - השיחה הראשונה מפונה, השנייה נשארת
+        assertEquals(2, service.search(otherSession, "second", List.of(20L), 10, false).size());
+        assertEquals(2L, service.getStats().get("indexedChunks"));
+        assertEquals(1, service.getStats().get("cachedSessions"));
+
+        // הראשונה נטענת מחדש, והפעם השנייה מפונה
+        assertEquals(3, search("first", List.of(10L), false).size());
+        assertEquals(3L, service.getStats().get("indexedChunks"));
+        verify(qdrantVectorService, times(2)).loadSessionSegments(eq(SESSION_ID), eq(USER_ID), any(), anyInt());
+    }
+
+    @Test
+    void removedAndInvalidatedChunksLeaveTheBudget() {
+        document(10L, "bloom filter false positives");
+        document(11L, "bloom filter memory usage", "bloom filter sizing");
+        search("bloom", List.of(10L, 11L), false);
+        assertEquals(3L, service.getStats().get("indexedChunks"));
+
+        service.removeDocument(SESSION_ID, 11L);
+        assertEquals(1L, service.getStats().get("indexedChunks"));
+
+        service.invalidateSession(SESSION_ID);
+        assertEquals(0L, service.getStats().get("indexedChunks"));
+    }
+
+    private List<LexicalIndexService.LexicalMatch> search(String query, List<Long> documentIds, boolean exact) {
+        return service.search(chatSession, query, documentIds, 10, exact);
+    }
+
+    private void document(Long documentId, String... chunks) {
+        stored.put(documentId, Arrays.stream(chunks)
+                .map(text -> TextSegment.from(text, Metadata.from(
+                        SessionScopedEmbeddingStore.DOCUMENT_ID_KEY, documentId.toString())))
+                .toList());
+    }
+}
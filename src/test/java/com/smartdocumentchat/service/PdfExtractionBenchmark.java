@@ -0,0 +1,207 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.IngestionProperties;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * עקומת ה-speedup של חילוץ הטקסט המקבילי (StreamingPdfParser) על ה-cassandra.pdf שמגיע עם האפליקציה
+ * ועל PDF-ים סינתטיים גדולים שנבנים משכפול העמודים שלו. כל מסמך מחולץ ב-thread אחד (baseline)
+ * ואז עם pool של 2, 4, ... עד מספר הליבות, ולכל רמה נבדק שהטקסט זהה לחילוץ הסדרתי ובאותו סדר.
+ * רץ in-process, בלי Kafka ובלי Qdrant. המספרים הם ממוצע אחרי חימום - לא JMH, אבל מספיק כדי לראות את העקומה.
+ *
+ * לא רץ ב-build: mvn test -Dtest=PdfExtractionBenchmark -Dbenchmark=true
+ * (אפשר לשנות -Dbenchmark.synthetic-pages=250,1000 ו--Dbenchmark.rounds=3)
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class PdfExtractionBenchmark {
+
+    private static final String BUNDLED_PDF = "cassandra.pdf";
+
+    private final StreamingPdfParser streamingPdfParser = new StreamingPdfParser(new IngestionProperties());
+
+    @Test
+    void extractionSpeedupCurve() throws IOException {
+        List<Integer> syntheticPages = Arrays.stream(System.getProperty("benchmark.synthetic-pages", "250,1000")
+                .split(",")).map(String::trim).map(Integer::valueOf).toList();
+        int rounds = Integer.getInteger("benchmark.rounds", 3);
+
+        System.out.printf("availableProcessors=%d rounds=%d%n", Runtime.getRuntime().availableProcessors(), rounds);
+        for (CaseResult result : run(syntheticPages, rounds)) {
+            System.out.printf("%-18s pages=%-5d characters=%-9d fileBytes=%d%n",
+                    result.name, result.pages, result.characters, result.fileBytes);
+            for (CurvePoint point : result.curve) {
+                System.out.printf("    parallelism=%-3d avg=%.1fms speedup=%.2f%n",
+                        point.parallelism, point.averageMillis, point.speedup);
+                assertTrue(point.matchesSequential, result.name + " at parallelism " + point.parallelism);
+            }
+        }
+    }
+
+    private List<CaseResult> run(List<Integer> syntheticPageCounts, int rounds) throws IOException {
+        int measuredRounds = Math.max(1, rounds);
+        List<Integer> levels = parallelismLevels();
+
+        List<Path> tempFiles = new ArrayList<>();
+        try {
+            Path bundled = Files.createTempFile("pdf-benchmark-", ".pdf");
+            tempFiles.add(bundled);
+            try (InputStream content = new ClassPathResource(BUNDLED_PDF).getInputStream()) {
+                Files.copy(content, bundled, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Map<String, Path> cases = new LinkedHashMap<>();
+            cases.put(BUNDLED_PDF, bundled);
+            for (int pages : syntheticPageCounts.stream().map(pages -> Math.max(1, pages)).distinct().toList()) {
+                Path synthetic = Files.createTempFile("pdf-benchmark-synthetic-", ".pdf");
+                tempFiles.add(synthetic);
+                writeSynthetic(bundled, synthetic, pages);
+                cases.put("synthetic:" + pages, synthetic);
+            }
+
+            List<CaseResult> results = new ArrayList<>();
+            for (Map.Entry<String, Path> entry : cases.entrySet()) {
+                results.add(runCase(entry.getKey(), entry.getValue(), levels, measuredRounds));
+            }
+            return results;
+
+        } finally {
+            for (Path tempFile : tempFiles) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    private CaseResult runCase(String name, Path file, List<Integer> levels, int rounds) throws IOException {
+        Extraction baseline = null;
+        long baselineNanos = 0;
+        List<CurvePoint> curve = new ArrayList<>();
+
+        for (int parallelism : levels) {
+            // רמה 1 היא המסלול הסדרתי עצמו (בלי pool), לא pool עם worker אחד
+            ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+            try {
+                Extraction extraction = extract(file, pool);
+                long start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    extract(file, pool);
+                }
+                long nanos = (System.nanoTime() - start) / rounds;
+
+                if (baseline == null) {
+                    baseline = extraction;
+                    baselineNanos = nanos;
+                }
+                curve.add(new CurvePoint(parallelism, nanos / 1_000_000.0,
+                        nanos == 0 ? 0.0 : (double) baselineNanos / nanos,
+                        extraction.checksum == baseline.checksum && extraction.characters == baseline.characters));
+            } finally {
+                if (pool != null) {
+                    pool.shutdownNow();
+                }
+            }
+        }
+
+        return new CaseResult(name, baseline.pages, baseline.characters, Files.size(file), curve);
+    }
+
+    // חילוץ מלא דרך אותו מסלול של האינג'סט; ה-checksum תלוי בסדר העמודים
+    private Extraction extract(Path file, ForkJoinPool pool) throws IOException {
+        try (StreamingPdfParser.PdfPages pages = streamingPdfParser.openPaged(
+                Files.newInputStream(file), new Metadata(), pool, 0)) {
+            long checksum = 17;
+            while (pages.hasNext()) {
+                Document page = pages.next();
+                checksum = 31 * checksum + page.metadata().getInteger(StreamingPdfParser.PAGE_NUMBER_KEY);
+                checksum = 31 * checksum + page.text().hashCode();
+            }
+            return new Extraction(pages.getPageCount(), pages.getCharacterCount(), checksum);
+        }
+    }
+
+    /**
+     * PDF בגודל הנתון מעמודי המקור, במחזוריות. ה-resources משותפים בין העותקים, כך שהקובץ קטן,
+     * אבל כל עמוד מפורסר ומחולץ מחדש - עלות ה-CPU לעמוד כמו במקור.
+     */
+    private void writeSynthetic(Path source, Path target, int pages) throws IOException {
+        try (PDDocument sourcePdf = PDDocument.load(source.toFile());
+             PDDocument targetPdf = new PDDocument()) {
+            int sourcePages = sourcePdf.getNumberOfPages();
+            for (int i = 0; i < pages; i++) {
+                targetPdf.importPage(sourcePdf.getPage(i % sourcePages));
+            }
+            targetPdf.save(target.toFile());
+        }
+    }
+
+    // 1, 2, 4, ... ועד מספר הליבות (כולל)
+    private static List<Integer> parallelismLevels() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> levels = new ArrayList<>();
+        for (int level = 1; level < cores; level *= 2) {
+            levels.add(level);
+        }
+        levels.add(cores);
+        return levels;
+    }
+
+    private static class Extraction {
+        private final int pages;
+        private final long characters;
+        private final long checksum;
+
+        Extraction(int pages, long characters, long checksum) {
+            this.pages = pages;
+            this.characters = characters;
+            this.checksum = checksum;
+        }
+    }
+
+    private static class CurvePoint {
+        private final int parallelism;
+        private final double averageMillis;
+        private final double speedup;
+        private final boolean matchesSequential;
+
+        CurvePoint(int parallelism, double averageMillis, double speedup, boolean matchesSequential) {
+            this.parallelism = parallelism;
+            this.averageMillis = averageMillis;
+            this.speedup = speedup;
+            this.matchesSequential = matchesSequential;
+        }
+    }
+
+    private static class CaseResult {
+        private final String name;
+        private final int pages;
+        private final long characters;
+        private final long fileBytes;
+        private final List<CurvePoint> curve;
+
+        CaseResult(String name, int pages, long characters, long fileBytes, List<CurvePoint> curve) {
+            this.name = name;
+            this.pages = pages;
+            this.characters = characters;
+            this.fileBytes = fileBytes;
+            this.curve = curve;
+        }
+    }
+}
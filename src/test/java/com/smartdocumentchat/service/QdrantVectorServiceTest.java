@@ -0,0 +1,88 @@
+package com.smartdocumentchat.service;
+
+import com.google.common.util.concurrent.Futures;
+import com.smartdocumentchat.config.QdrantProperties;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.UUID;
+
+import static io.qdrant.client.PointIdFactory.id;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QdrantVectorServiceTest {
+
+    private static final Long SESSION_ID = 1L;
+    private static final Long USER_ID = 2L;
+
+    @Mock
+    private QdrantClient qdrantClient;
+
+    @Mock
+    private EmbeddingStore<TextSegment> defaultEmbeddingStore;
+
+    private final QdrantProperties qdrantProperties = new QdrantProperties();
+    private QdrantVectorService service;
+
+    @BeforeEach
+    void setUp() {
+        qdrantProperties.setStorageMode(QdrantProperties.StorageMode.SHARED);
+        service = new QdrantVectorService(qdrantProperties, defaultEmbeddingStore, qdrantClient);
+    }
+
+    @Test
+    void deletePointsInSharedCollectionIsScopedToSession() {
+        when(qdrantClient.deleteAsync(eq("session_documents"), any(Points.Filter.class)))
+                .thenReturn(Futures.immediateFuture(Points.UpdateResult.getDefaultInstance()));
+        UUID pointId = UUID.randomUUID();
+
+        service.deletePoints(SESSION_ID, USER_ID, List.of(id(pointId)));
+
+        ArgumentCaptor<Points.Filter> filter = ArgumentCaptor.forClass(Points.Filter.class);
+        verify(qdrantClient).deleteAsync(eq("session_documents"), filter.capture());
+        List<Points.Condition> must = filter.getValue().getMustList();
+        assertEquals(3, must.size());
+        assertTrue(must.stream().anyMatch(condition -> condition.hasField()
+                && condition.getField().getKey().equals(SessionScopedEmbeddingStore.USER_ID_KEY)
+                && condition.getField().getMatch().getKeyword().equals("2")));
+        assertTrue(must.stream().anyMatch(condition -> condition.hasField()
+                && condition.getField().getKey().equals(SessionScopedEmbeddingStore.SESSION_ID_KEY)
+                && condition.getField().getMatch().getKeyword().equals("1")));
+        assertTrue(must.stream().anyMatch(condition -> condition.hasHasId()
+                && condition.getHasId().getHasIdList().equals(List.of(id(pointId)))));
+    }
+
+    @Test
+    void upsertVectorsInSharedCollectionCarriesSessionPayload() {
+        when(qdrantClient.upsertAsync(eq("session_documents"), anyList()))
+                .thenReturn(Futures.immediateFuture(Points.UpdateResult.getDefaultInstance()));
+        String pointId = UUID.randomUUID().toString();
+
+        service.upsertVectors(SESSION_ID, USER_ID, List.of(pointId), List.of(Embedding.from(new float[]{0.5f})));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Points.PointStruct>> points = ArgumentCaptor.forClass(List.class);
+        verify(qdrantClient).upsertAsync(eq("session_documents"), points.capture());
+        Points.PointStruct point = points.getValue().get(0);
+        assertEquals(id(UUID.fromString(pointId)), point.getId());
+        assertEquals("2", point.getPayloadMap().get(SessionScopedEmbeddingStore.USER_ID_KEY).getStringValue());
+        assertEquals("1", point.getPayloadMap().get(SessionScopedEmbeddingStore.SESSION_ID_KEY).getStringValue());
+    }
+}
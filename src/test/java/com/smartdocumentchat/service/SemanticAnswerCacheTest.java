@@ -0,0 +1,74 @@
+package com.smartdocumentchat.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import io.qdrant.client.QdrantClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class SemanticAnswerCacheTest {
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @Mock
+    private QdrantClient qdrantClient;
+
+    @Mock
+    private QdrantVectorService qdrantVectorService;
+
+    @Mock
+    private EmbeddingStore<TextSegment> store;
+
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SemanticAnswerCache(embeddingModel, qdrantClient, qdrantVectorService);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "store", store);
+    }
+
+    @Test
+    void invalidateSessionRemovesOnlyThatSessionsAnswers() {
+        cache.invalidateSession(1L, 2L);
+
+        ArgumentCaptor<Filter> filter = ArgumentCaptor.forClass(Filter.class);
+        verify(store).removeAll(filter.capture());
+        assertTrue(filter.getValue().test(answer("1", "2")));
+        assertFalse(filter.getValue().test(answer("3", "2")));
+        assertFalse(filter.getValue().test(answer("1", "4")));
+    }
+
+    @Test
+    void invalidationFailureIsCountedAndNotThrown() {
+        doThrow(new RuntimeException("qdrant down")).when(store).removeAll(any(Filter.class));
+
+        cache.invalidateSession(1L, 2L);
+
+        assertEquals(1L, cache.getStats().get("errors"));
+    }
+
+    private static Metadata answer(String sessionId, String userId) {
+        Metadata metadata = new Metadata();
+        metadata.put(SessionScopedEmbeddingStore.SESSION_ID_KEY, sessionId);
+        metadata.put(SessionScopedEmbeddingStore.USER_ID_KEY, userId);
+        return metadata;
+    }
+}
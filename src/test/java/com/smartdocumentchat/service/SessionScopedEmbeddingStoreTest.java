@@ -0,0 +1,115 @@
+package com.smartdocumentchat.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.UUID;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static io.qdrant.client.PointIdFactory.id;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class SessionScopedEmbeddingStoreTest {
+
+    private static final Long SESSION_ID = 1L;
+    private static final Long USER_ID = 2L;
+
+    @Mock
+    private EmbeddingStore<TextSegment> sharedStore;
+
+    @Mock
+    private QdrantVectorService qdrantVectorService;
+
+    private SessionScopedEmbeddingStore store;
+    private final Embedding embedding = Embedding.from(new float[]{0.1f, 0.2f});
+
+    @BeforeEach
+    void setUp() {
+        store = new SessionScopedEmbeddingStore(sharedStore, qdrantVectorService, SESSION_ID, USER_ID);
+    }
+
+    @Test
+    void removeByIdsIsScopedToSession() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        store.removeAll(List.of(first.toString(), second.toString()));
+
+        verify(qdrantVectorService).deletePoints(SESSION_ID, USER_ID, List.of(id(first), id(second)));
+        verifyNoInteractions(sharedStore);
+    }
+
+    @Test
+    void embeddingsWithoutTextAreWrittenWithSessionPayload() {
+        String id = store.add(embedding);
+        store.add("9b1deb4d-3b7d-4bad-9bdd-2b0d7b3dcb6d", embedding);
+        List<String> ids = store.addAll(List.of(embedding, embedding));
+
+        verify(qdrantVectorService).upsertVectors(SESSION_ID, USER_ID, List.of(id), List.of(embedding));
+        verify(qdrantVectorService).upsertVectors(SESSION_ID, USER_ID,
+                List.of("9b1deb4d-3b7d-4bad-9bdd-2b0d7b3dcb6d"), List.of(embedding));
+        verify(qdrantVectorService).upsertVectors(SESSION_ID, USER_ID, ids, List.of(embedding, embedding));
+        assertEquals(2, ids.stream().distinct().count());
+    }
+
+    @Test
+    void segmentsAreStampedWithSession() {
+        Metadata metadata = new Metadata();
+        metadata.put(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY, "7");
+        metadata.put(SessionScopedEmbeddingStore.SESSION_ID_KEY, "99");
+        TextSegment segment = TextSegment.from("chunk", metadata);
+
+        store.add(embedding, segment);
+        store.addAll(List.of(embedding), List.of(segment));
+
+        ArgumentCaptor<TextSegment> single = ArgumentCaptor.forClass(TextSegment.class);
+        verify(sharedStore).add(eq(embedding), single.capture());
+        assertScoped(single.getValue());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<TextSegment>> batch = ArgumentCaptor.forClass(List.class);
+        verify(sharedStore).addAll(eq(List.of(embedding)), batch.capture());
+        assertScoped(batch.getValue().get(0));
+
+        // המקור לא השתנה
+        assertEquals("99", segment.metadata().getString(SessionScopedEmbeddingStore.SESSION_ID_KEY));
+    }
+
+    @Test
+    void searchAndFilteredRemoveAreAndedWithSessionFilter() {
+        Filter documentFilter = metadataKey(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY).isEqualTo("7");
+
+        store.search(EmbeddingSearchRequest.builder().queryEmbedding(embedding).filter(documentFilter).build());
+        store.removeAll(documentFilter);
+
+        ArgumentCaptor<EmbeddingSearchRequest> request = ArgumentCaptor.forClass(EmbeddingSearchRequest.class);
+        verify(sharedStore).search(request.capture());
+        assertEquals(new And(store.getSessionFilter(), documentFilter), request.getValue().filter());
+        verify(sharedStore).removeAll(new And(store.getSessionFilter(), documentFilter));
+        verify(sharedStore, org.mockito.Mockito.never()).removeAll(any(java.util.Collection.class));
+    }
+
+    private static void assertScoped(TextSegment segment) {
+        assertEquals("chunk", segment.text());
+        assertEquals("7", segment.metadata().getString(SessionScopedEmbeddingStore.DOCUMENT_ID_KEY));
+        assertEquals(SESSION_ID.toString(), segment.metadata().getString(SessionScopedEmbeddingStore.SESSION_ID_KEY));
+        assertEquals(USER_ID.toString(), segment.metadata().getString(SessionScopedEmbeddingStore.USER_ID_KEY));
+    }
+}
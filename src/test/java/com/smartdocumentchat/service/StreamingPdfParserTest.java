@@ -0,0 +1,55 @@
+package com.smartdocumentchat.service;
+
+import com.smartdocumentchat.config.IngestionProperties;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class StreamingPdfParserTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void parallelExtractionMatchesSequentialOrder() throws IOException {
+        IngestionProperties properties = new IngestionProperties();
+        // עמוד לכל טווח - יותר טווחים בדרך מעותקים, כך שמשימות מחכות לעותק פנוי
+        properties.setExtractionRangePages(1);
+        properties.setParserMainMemoryBytes(1024 * 1024);
+        StreamingPdfParser parser = new StreamingPdfParser(properties);
+
+        List<Document> sequential = extract(parser, null);
+        List<Document> parallel = extract(parser, pool);
+
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).metadata().getInteger(StreamingPdfParser.PAGE_NUMBER_KEY),
+                    parallel.get(i).metadata().getInteger(StreamingPdfParser.PAGE_NUMBER_KEY));
+            assertEquals(sequential.get(i).text(), parallel.get(i).text());
+        }
+    }
+
+    private static List<Document> extract(StreamingPdfParser parser, ForkJoinPool pool) throws IOException {
+        List<Document> pages = new ArrayList<>();
+        try (StreamingPdfParser.PdfPages pdfPages = parser.openPaged(
+                new ClassPathResource("cassandra.pdf").getInputStream(), new Metadata(), pool, 0)) {
+            pdfPages.forEachRemaining(pages::add);
+        }
+        return pages;
+    }
+}